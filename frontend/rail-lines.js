@@ -0,0 +1,55 @@
+import Feature from 'ol/Feature';
+import Polyline from 'ol/format/Polyline';
+import Stroke from 'ol/style/Stroke';
+import Style from 'ol/style/Style';
+
+/**
+ * Draws rail lines sent as encoded polylines into a vector layer of a
+ * <vaadin-map>.
+ *
+ * The server sends each line at each level of detail once; lines are kept
+ * here by key, so panning back or zooming out again costs no bytes.
+ */
+const format = new Polyline();
+const styles = new Map();
+
+function style(colour) {
+  let lineStyle = styles.get(colour);
+  if (!lineStyle) {
+    lineStyle = new Style({ stroke: new Stroke({ color: colour, width: 3 }) });
+    styles.set(colour, lineStyle);
+  }
+  return lineStyle;
+}
+
+function show(mapElement, layerId, reset, added, visible) {
+  const layer = mapElement.$connector && mapElement.$connector.lookup.get(layerId);
+  const source = layer && layer.getSource();
+  if (!source) {
+    // the layer is created by the same round trip's configuration sync
+    return false;
+  }
+  if (reset || !mapElement.__railLines) {
+    mapElement.__railLines = new Map();
+  }
+  const lines = mapElement.__railLines;
+  const projection = mapElement.configuration.getView().getProjection();
+  added.forEach(([key, colour, encoded]) => {
+    const feature = new Feature(
+      format.readGeometry(encoded, { dataProjection: 'EPSG:4326', featureProjection: projection })
+    );
+    feature.setStyle(style(colour));
+    lines.set(key, feature);
+  });
+  source.clear(true);
+  source.addFeatures(visible.map((key) => lines.get(key)).filter((feature) => !!feature));
+  return true;
+}
+
+window.railLines = {
+  show(mapElement, layerId, reset, added, visible) {
+    if (!show(mapElement, layerId, reset, added, visible)) {
+      setTimeout(() => show(mapElement, layerId, reset, added, visible));
+    }
+  }
+};
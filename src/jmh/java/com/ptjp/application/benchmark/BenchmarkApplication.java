@@ -0,0 +1,129 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.Application;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.internal.CurrentInstance;
+import com.vaadin.flow.server.VaadinRequest;
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinServlet;
+import com.vaadin.flow.server.VaadinServletRequest;
+import com.vaadin.flow.server.VaadinServletService;
+import com.vaadin.flow.server.VaadinSession;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ResolvableType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * The whole application, booted once per benchmark fork, for benchmarks of
+ * Spring services, security and Vaadin views.
+ *
+ * The application runs as usual on a random port, with the demo data and the
+ * demo timetable, and with logging cut down to warnings. Extra arguments are
+ * passed through, so a benchmark can ask for more data with
+ * {@code --generator.bulk.users=...} and the like.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... args) {
+        List<String> all = new ArrayList<>(List.of("--server.port=0", "--management.server.port=-1",
+                "--vaadin.launch-browser=false", "--spring.main.banner-mode=off", "--logging.level.root=warn"));
+        all.addAll(Arrays.asList(args));
+        return SpringApplication.run(Application.class, all.toArray(new String[0]));
+    }
+
+    /**
+     * Makes the calling thread look like it is handling a Vaadin request from a
+     * signed-in user: the security context, Vaadin service, session, request
+     * and UI are all set as current, so views and services that ask for them
+     * behave as they would in the application.
+     *
+     * The same session is kept for the thread's later calls, as a real user's
+     * session would be.
+     */
+    static void signIn(ConfigurableApplicationContext context, String username, String... roles) {
+        List<SimpleGrantedAuthority> authorities = Arrays.stream(roles)
+                .map(role -> new SimpleGrantedAuthority("ROLE_" + role)).collect(Collectors.toList());
+        SecurityContextHolder.getContext()
+                .setAuthentication(new UsernamePasswordAuthenticationToken(username, null, authorities));
+
+        VaadinServletService service = vaadinService(context);
+        VaadinService.setCurrent(service);
+        VaadinSession session = new BenchmarkSession(service);
+        VaadinSession.setCurrent(session);
+        session.lock();
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setUserPrincipal(SecurityContextHolder.getContext().getAuthentication());
+        for (String role : roles) {
+            request.addUserRole(role);
+        }
+        CurrentInstance.set(VaadinRequest.class, new VaadinServletRequest(request, service));
+
+        UI ui = new UI();
+        ui.getInternals().setSession(session);
+        UI.setCurrent(ui);
+    }
+
+    /**
+     * @return the running Vaadin servlet's service, initialising the servlet
+     *         with a request if nothing has reached it yet
+     */
+    static VaadinServletService vaadinService(ConfigurableApplicationContext context) {
+        ObjectProvider<ServletRegistrationBean<?>> registrations = context
+                .getBeanProvider(ResolvableType.forClass(ServletRegistrationBean.class));
+        VaadinServlet servlet = registrations.stream().map(ServletRegistrationBean::getServlet)
+                .filter(VaadinServlet.class::isInstance)
+                .map(VaadinServlet.class::cast).findFirst()
+                .orElseThrow(() -> new IllegalStateException("No Vaadin servlet registered"));
+        if (servlet.getService() == null) {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            try {
+                HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/"))
+                        .build(), HttpResponse.BodyHandlers.discarding());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not reach the application", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        return servlet.getService();
+    }
+
+    /**
+     * A session that is not backed by an HTTP session, with a lock of its own.
+     */
+    private static final class BenchmarkSession extends VaadinSession {
+
+        private final Lock lock = new ReentrantLock();
+
+        BenchmarkSession(VaadinService service) {
+            super(service);
+        }
+
+        @Override
+        public Lock getLockInstance() {
+            return lock;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.entity.TimeOrderedUuidGenerator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares entity primary keys in a file-based H2 table shaped like
+ * {@code Users}: 36-character random UUIDs (the old mapping), 16-byte random
+ * UUIDs, and 16-byte time-ordered UUIDs (the current mapping).
+ *
+ * Setup bulk-loads {@code rows} rows and prints the load rate and the size of
+ * the database file, primary key index included; the benchmarks then measure
+ * primary key lookups and further inserts into the full table. Loading ten
+ * million rows takes several minutes per key type; pass {@code -p rows=...}
+ * for a quicker run.
+ */
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class EntityIdBenchmark {
+
+    private static final int LOAD_BATCH = 1000;
+    private static final int INSERT_BATCH = 100;
+    private static final int SAMPLE_SIZE = 1 << 16;
+
+    @Param({ "char36-random", "binary16-random", "binary16-time-ordered" })
+    public String key;
+
+    @Param("10000000")
+    public int rows;
+
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement select;
+    private final UUID[] sample = new UUID[SAMPLE_SIZE];
+    private final Random random = new Random(11);
+    private int sampled;
+    private int inserted;
+
+    @Setup
+    public void load() throws IOException, SQLException {
+        directory = Files.createTempDirectory("entity-id-benchmark");
+        connection = DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("db"), "sa", "");
+        String type = key.startsWith("char36") ? "CHARACTER(36)" : "BINARY(16)";
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE USERS (ID " + type + " NOT NULL PRIMARY KEY, FIRST_NAME VARCHAR(255), "
+                    + "LAST_NAME VARCHAR(255), EMAIL VARCHAR(255), PHONE VARCHAR(255))");
+        }
+        insert = connection.prepareStatement("INSERT INTO USERS VALUES (?, ?, ?, ?, ?)");
+        select = connection.prepareStatement("SELECT FIRST_NAME FROM USERS WHERE ID = ?");
+        connection.setAutoCommit(false);
+
+        int stride = Math.max(1, rows / SAMPLE_SIZE);
+        long start = System.nanoTime();
+        for (int row = 0; row < rows; row++) {
+            UUID id = nextId();
+            if (row % stride == 0 && sampled < SAMPLE_SIZE) {
+                sample[sampled++] = id;
+            }
+            addRow(id);
+            if (row % LOAD_BATCH == LOAD_BATCH - 1 || row == rows - 1) {
+                insert.executeBatch();
+                connection.commit();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CHECKPOINT SYNC");
+        }
+        System.out.printf("%n%s: loaded %,d rows in %.1f s (%,.0f rows/s), database file %,d MB%n", key, rows,
+                seconds, rows / seconds, Files.size(directory.resolve("db.mv.db")) >> 20);
+    }
+
+    @TearDown
+    public void delete() throws IOException, SQLException {
+        connection.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String lookup() throws SQLException {
+        bind(select, 1, sample[random.nextInt(sampled)]);
+        try (ResultSet result = select.executeQuery()) {
+            return result.next() ? result.getString(1) : null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(INSERT_BATCH)
+    public void insert() throws SQLException {
+        for (int i = 0; i < INSERT_BATCH; i++) {
+            addRow(nextId());
+        }
+        insert.executeBatch();
+        connection.commit();
+    }
+
+    private UUID nextId() {
+        return key.endsWith("time-ordered") ? TimeOrderedUuidGenerator.next() : UUID.randomUUID();
+    }
+
+    private void addRow(UUID id) throws SQLException {
+        int n = inserted++;
+        bind(insert, 1, id);
+        insert.setString(2, "First" + n % 5000);
+        insert.setString(3, "Last" + n % 20000);
+        insert.setString(4, "user" + n + "@example.co.za");
+        insert.setString(5, String.format("0%09d", n));
+        insert.addBatch();
+    }
+
+    private void bind(PreparedStatement statement, int index, UUID id) throws SQLException {
+        if (key.startsWith("char36")) {
+            statement.setString(index, id.toString());
+        } else {
+            statement.setBytes(index, ByteBuffer.allocate(16).putLong(id.getMostSignificantBits())
+                    .putLong(id.getLeastSignificantBits()).array());
+        }
+    }
+}
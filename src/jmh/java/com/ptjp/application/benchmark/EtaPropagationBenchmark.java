@@ -0,0 +1,87 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.live.DelayEvent;
+import com.ptjp.application.data.live.StopTimeEta;
+import com.ptjp.application.data.service.EtaService;
+import com.ptjp.application.data.service.TimetableService;
+import com.ptjp.application.data.timetable.Timetable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of real-time updates: applying one delay report to the ETAs of the
+ * stops after it, and reading a departure board with those ETAs.
+ *
+ * Reports are random delays of up to fifteen minutes, and every twentieth a
+ * cancellation, at random stops of random trips of the default network (100
+ * lines of 40 stations). A bad day's few hundred reports a minute should cost
+ * a few microseconds each.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class EtaPropagationBenchmark {
+
+    private static final LocalDate MONDAY = LocalDate.of(2026, 10, 19);
+    private static final LocalDateTime MONDAY_RUSH_HOUR = MONDAY.atTime(7, 30);
+    private static final int COUNT = 4096;
+
+    @Param("100")
+    public int lines;
+
+    @Param("40")
+    public int stationsPerLine;
+
+    private EtaService etaService;
+    private final DelayEvent[] events = new DelayEvent[COUNT];
+    private final int[] stops = new int[COUNT];
+    private int next;
+
+    @Setup
+    public void generate() {
+        TimetableService timetableService = SyntheticTimetables.radial(lines, stationsPerLine, 5);
+        etaService = new EtaService(timetableService, "Africa/Johannesburg", 20, 1);
+        Timetable timetable = timetableService.getTimetable();
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            int trip = random.nextInt(timetable.tripCount());
+            int stop = random.nextInt(timetable.tripStopCount(trip));
+            events[i] = i % 20 == 0 ? DelayEvent.cancellation(timetable.tripId(trip), MONDAY, stop)
+                    : DelayEvent.delay(timetable.tripId(trip), MONDAY, stop, random.nextInt(900));
+            stops[i] = random.nextInt(timetable.stopCount());
+        }
+    }
+
+    @TearDown
+    public void shutdown() {
+        etaService.shutdown();
+    }
+
+    @Benchmark
+    public List<StopTimeEta> apply() {
+        return etaService.apply(events[next++ & (COUNT - 1)]);
+    }
+
+    @Benchmark
+    public List<StopTimeEta> departures() {
+        return etaService.departures(stops[next++ & (COUNT - 1)], MONDAY_RUSH_HOUR, 10);
+    }
+}
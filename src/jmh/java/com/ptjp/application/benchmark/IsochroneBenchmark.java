@@ -0,0 +1,96 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.service.IsochroneService;
+import com.ptjp.application.data.service.JourneyPlannerService;
+import com.ptjp.application.data.service.TimetableService;
+import com.ptjp.application.data.timetable.Isochrone;
+import com.ptjp.application.data.timetable.IsochroneSearch;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a reach overlay: the shortest travel times from a random station
+ * to every other within 90 minutes, leaving any time in an hour of the
+ * morning peak, on the default network (100 lines of 40 stations every 5
+ * minutes, so about 12 departures an hour from an outer station and 1,200
+ * from the hub).
+ *
+ * {@code sequential} runs the same searches on the calling thread. Compare it
+ * with {@code parallel} at {@code -p threads=1,2,4,8,16} on a machine with as
+ * many cores to check the speed-up stays close to linear.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class IsochroneBenchmark {
+
+    private static final LocalDate MONDAY = LocalDate.of(2026, 10, 19);
+    private static final LocalDateTime MONDAY_PEAK = MONDAY.atTime(7, 0);
+    private static final int COUNT = 256;
+
+    @Param("100")
+    public int lines;
+
+    @Param("40")
+    public int stationsPerLine;
+
+    @Param("0")
+    public int threads;
+
+    private IsochroneService isochroneService;
+    private TimetableSnapshot snapshot;
+    private IsochroneSearch sequential;
+    private final int[] from = new int[COUNT];
+    private int next;
+
+    @Setup
+    public void loadTimetable() {
+        TimetableService timetableService = SyntheticTimetables.radial(lines, stationsPerLine, 5);
+        JourneyPlannerService planner = new JourneyPlannerService(timetableService);
+        isochroneService = new IsochroneService(timetableService, planner, threads);
+        snapshot = timetableService.acquire();
+        sequential = new IsochroneSearch(planner.getRouter(snapshot), ForkJoinPool.commonPool());
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            from[i] = random.nextInt(snapshot.timetable().stopCount());
+        }
+    }
+
+    @TearDown
+    public void shutdown() {
+        snapshot.close();
+        isochroneService.shutdown();
+    }
+
+    @Benchmark
+    public Isochrone parallel() {
+        return isochroneService.isochrone(snapshot, from[next++ & (COUNT - 1)], MONDAY_PEAK, Duration.ofHours(1),
+                Duration.ofMinutes(90));
+    }
+
+    @Benchmark
+    public Isochrone sequential() {
+        int start = MONDAY_PEAK.toLocalTime().toSecondOfDay();
+        return sequential.searchSequentially(from[next++ & (COUNT - 1)], MONDAY, start, start + 3600, 90 * 60);
+    }
+}
@@ -0,0 +1,101 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.service.JourneyPlannerService;
+import com.ptjp.application.data.service.TimetableService;
+import com.ptjp.application.data.timetable.Journey;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of earliest-arrival queries between random station pairs at random
+ * times of a weekday.
+ *
+ * Target: p99 below 10 ms per query on the default network (100 lines of 40
+ * stations, 4,001 stops, about 2.7 million stop times) with one query per
+ * core. Sample-time mode reports the percentiles; run with
+ * {@code -t <cores>} to check the target under concurrency, and with
+ * {@code -prof gc} to confirm the search itself does not allocate.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class JourneyPlannerBenchmark {
+
+    @Param("100")
+    public int lines;
+
+    @Param("40")
+    public int stationsPerLine;
+
+    @Param("5")
+    public int headwayMinutes;
+
+    private JourneyPlannerService planner;
+    private TimetableSnapshot snapshot;
+    private int stops;
+
+    @Setup
+    public void loadTimetable() {
+        TimetableService timetableService = SyntheticTimetables.radial(lines, stationsPerLine, headwayMinutes);
+        planner = new JourneyPlannerService(timetableService);
+        snapshot = timetableService.acquire();
+        stops = snapshot.timetable().stopCount();
+    }
+
+    @TearDown
+    public void release() {
+        snapshot.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Queries {
+
+        private static final LocalDate MONDAY = LocalDate.of(2026, 10, 19);
+        private static final int COUNT = 4096;
+
+        private final int[] from = new int[COUNT];
+        private final int[] to = new int[COUNT];
+        private final int[] departure = new int[COUNT];
+        private int next;
+
+        @Setup
+        public void generate(JourneyPlannerBenchmark benchmark) {
+            Random random = new Random(Thread.currentThread().getId());
+            for (int i = 0; i < COUNT; i++) {
+                from[i] = random.nextInt(benchmark.stops);
+                to[i] = random.nextInt(benchmark.stops);
+                departure[i] = 5 * 3600 + random.nextInt(16 * 3600);
+            }
+        }
+    }
+
+    @Benchmark
+    public int earliestArrival(Queries queries) {
+        int i = queries.next++ & (Queries.COUNT - 1);
+        return planner.earliestArrival(snapshot, queries.from[i], queries.to[i], Queries.MONDAY, queries.departure[i]);
+    }
+
+    @Benchmark
+    public Optional<Journey> plan(Queries queries) {
+        int i = queries.next++ & (Queries.COUNT - 1);
+        return planner.plan(snapshot, queries.from[i], queries.to[i], Queries.MONDAY, queries.departure[i]);
+    }
+}
@@ -0,0 +1,65 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.security.BoundedPasswordEncoder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Sign-in capacity: password checks per second, and their latency, through
+ * the bounded bcrypt pool at several cost factors.
+ *
+ * Benchmark threads stand in for request threads arriving at once; the pool
+ * size is what bounds CPU. Throughput mode gives checks per second, sample
+ * mode the p99 a commuter waits. Pick the highest strength whose throughput
+ * covers the morning peak with the pool size deployed.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LoginThroughputBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({ "8", "10", "12" })
+    public int strength;
+
+    @Param("0")
+    public int poolThreads;
+
+    private BoundedPasswordEncoder encoder;
+    private String hash;
+
+    @Setup
+    public void hash() {
+        int threads = poolThreads > 0 ? poolThreads : Runtime.getRuntime().availableProcessors();
+        encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), threads, 1024, 60_000);
+        hash = encoder.encode(PASSWORD);
+    }
+
+    @TearDown
+    public void shutdown() {
+        encoder.shutdown();
+    }
+
+    @Benchmark
+    public boolean login() {
+        return encoder.matches(PASSWORD, hash);
+    }
+}
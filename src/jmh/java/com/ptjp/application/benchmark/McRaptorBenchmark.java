@@ -0,0 +1,112 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.service.JourneyPlannerService;
+import com.ptjp.application.data.service.TimetableService;
+import com.ptjp.application.data.timetable.Fares;
+import com.ptjp.application.data.timetable.Journey;
+import com.ptjp.application.data.timetable.McRaptorRouter;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.data.timetable.TripPatterns;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency and heap churn of multi-criteria (arrival, trains, fare) searches
+ * between random station pairs at random times of a weekday, on the same
+ * network as {@link JourneyPlannerBenchmark}.
+ *
+ * {@code search} runs McRAPTOR alone on a warmed-up scratch and should
+ * allocate nothing; {@code alternatives} also builds the journeys, which is
+ * all a query allocates. Run with {@code -prof gc} and read
+ * {@code gc.alloc.rate.norm} for the bytes allocated per query; add
+ * {@code -bm avgt} to leave out the couple of hundred bytes sample-time mode
+ * itself allocates per sample.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class McRaptorBenchmark {
+
+    @Param("100")
+    public int lines;
+
+    @Param("40")
+    public int stationsPerLine;
+
+    @Param("5")
+    public int headwayMinutes;
+
+    private JourneyPlannerService planner;
+    private McRaptorRouter router;
+    private TimetableSnapshot snapshot;
+    private int stops;
+
+    @Setup
+    public void loadTimetable() {
+        TimetableService timetableService = SyntheticTimetables.radial(lines, stationsPerLine, headwayMinutes);
+        planner = new JourneyPlannerService(timetableService);
+        router = new McRaptorRouter(new TripPatterns(timetableService.getTimetable()), Fares.DEFAULT,
+                JourneyPlannerService.MAX_TRAINS, JourneyPlannerService.TRANSFER_SECONDS,
+                JourneyPlannerService.MAX_LABELS);
+        snapshot = timetableService.acquire();
+        stops = snapshot.timetable().stopCount();
+    }
+
+    @TearDown
+    public void release() {
+        snapshot.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Queries {
+
+        private static final LocalDate MONDAY = LocalDate.of(2026, 10, 19);
+        private static final int COUNT = 4096;
+
+        private final int[] from = new int[COUNT];
+        private final int[] to = new int[COUNT];
+        private final int[] departure = new int[COUNT];
+        private McRaptorRouter.Scratch scratch;
+        private int next;
+
+        @Setup
+        public void generate(McRaptorBenchmark benchmark) {
+            Random random = new Random(Thread.currentThread().getId());
+            for (int i = 0; i < COUNT; i++) {
+                from[i] = random.nextInt(benchmark.stops);
+                to[i] = random.nextInt(benchmark.stops);
+                departure[i] = 5 * 3600 + random.nextInt(16 * 3600);
+            }
+            scratch = benchmark.router.newScratch();
+        }
+    }
+
+    @Benchmark
+    public int search(Queries queries) {
+        int i = queries.next++ & (Queries.COUNT - 1);
+        return router.search(queries.from[i], queries.to[i], Queries.MONDAY, queries.departure[i], queries.scratch);
+    }
+
+    @Benchmark
+    public List<Journey> alternatives(Queries queries) {
+        int i = queries.next++ & (Queries.COUNT - 1);
+        return planner.planAlternatives(snapshot, queries.from[i], queries.to[i], Queries.MONDAY, queries.departure[i]);
+    }
+}
@@ -0,0 +1,82 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.security.AuthenticatedUser;
+import com.ptjp.application.security.SignedInUser;
+import com.ptjp.application.views.MainLayout;
+import com.vaadin.flow.server.auth.AccessAnnotationChecker;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+/**
+ * What every navigation and sign-in costs for the user's own details: loading
+ * them for Spring Security at sign-in, {@link AuthenticatedUser#get()} from
+ * within a Vaadin session, and building the {@link MainLayout} header and menu
+ * around each view.
+ *
+ * The application is booted once for all threads; each thread signs in with a
+ * Vaadin session of its own, as each user would.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignedInUserBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private UserDetailsService userDetailsService;
+    private AuthenticatedUser authenticatedUser;
+    private AccessAnnotationChecker accessChecker;
+
+    @Setup
+    public void start() {
+        context = BenchmarkApplication.start();
+        userDetailsService = context.getBean(UserDetailsService.class);
+        authenticatedUser = context.getBean(AuthenticatedUser.class);
+        accessChecker = context.getBean(AccessAnnotationChecker.class);
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+
+        @Setup
+        public void signIn(SignedInUserBenchmark benchmark) {
+            BenchmarkApplication.signIn(benchmark.context, "admin", "USER", "ADMIN");
+        }
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        return userDetailsService.loadUserByUsername("admin");
+    }
+
+    @Benchmark
+    public Optional<SignedInUser> authenticatedUser(Session session) {
+        return authenticatedUser.get();
+    }
+
+    @Benchmark
+    public MainLayout mainLayout(Session session) {
+        return new MainLayout(authenticatedUser, accessChecker);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.spatial.StationGrid;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of viewport and nearest-station lookups over stations scattered
+ * across a metropolitan-sized area, as issued on every map pan or click.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StationGridBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    @Param({ "4000", "20000" })
+    public int stations;
+
+    @Param("5")
+    public int k;
+
+    private StationGrid grid;
+    private final double[] lat = new double[QUERIES];
+    private final double[] lon = new double[QUERIES];
+    private final int[] found = new int[1024];
+    private double[] distances;
+    private int[] nearest;
+    private int next;
+
+    @Setup
+    public void scatter() {
+        Random random = new Random(42);
+        double[] lats = new double[stations];
+        double[] lons = new double[stations];
+        for (int i = 0; i < stations; i++) {
+            lats[i] = -34.3 + random.nextDouble() * 0.6;
+            lons[i] = 18.3 + random.nextDouble() * 0.6;
+        }
+        grid = new StationGrid(lats, lons);
+        for (int i = 0; i < QUERIES; i++) {
+            lat[i] = -34.3 + random.nextDouble() * 0.6;
+            lon[i] = 18.3 + random.nextDouble() * 0.6;
+        }
+        nearest = new int[k];
+        distances = new double[k];
+    }
+
+    /** A viewport of roughly 2 km by 2 km, a street-level zoom. */
+    @Benchmark
+    public int within() {
+        int i = next++ & (QUERIES - 1);
+        return grid.within(lat[i] - 0.01, lon[i] - 0.01, lat[i] + 0.01, lon[i] + 0.01, found);
+    }
+
+    @Benchmark
+    public int nearest() {
+        int i = next++ & (QUERIES - 1);
+        return grid.nearest(lat[i], lon[i], nearest, distances);
+    }
+}
@@ -0,0 +1,90 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.search.StationNameIndex;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of station suggestions per keystroke: every prefix of a random
+ * station name as typed, and the same with one letter mistyped so the
+ * near-miss search runs. Names are made-up two- and three-word names of
+ * syllables, so many share prefixes.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StationSuggestBenchmark {
+
+    private static final int QUERIES = 4096;
+    private static final String[] SYLLABLES = { "ka", "pe", "to", "wn", "sa", "lt", "ri", "ve", "bo", "sch", "kh",
+            "ay", "el", "it", "sha", "nya", "nga", "mui", "zen", "berg", "fon", "tein", "ville", "wood", "hoek" };
+
+    @Param({ "120", "4000" })
+    public int stations;
+
+    private StationNameIndex index;
+    private final String[] typed = new String[QUERIES];
+    private final String[] mistyped = new String[QUERIES];
+    private int next;
+
+    @Setup
+    public void generate() {
+        Random random = new Random(42);
+        String[] names = new String[stations];
+        int[] weights = new int[stations];
+        for (int i = 0; i < stations; i++) {
+            names[i] = name(random);
+            weights[i] = random.nextInt(1000);
+        }
+        index = new StationNameIndex(names, Collections.emptyMap(), weights);
+        for (int i = 0; i < QUERIES; i++) {
+            String name = names[random.nextInt(stations)];
+            typed[i] = name.substring(0, 1 + random.nextInt(name.length()));
+            char[] wrong = name.substring(0, Math.min(name.length(), 5 + random.nextInt(6))).toCharArray();
+            wrong[1 + random.nextInt(wrong.length - 1)] = 'q';
+            mistyped[i] = new String(wrong);
+        }
+    }
+
+    @Benchmark
+    public int[] prefix() {
+        return index.suggest(typed[next++ & (QUERIES - 1)], StationNameIndex.MAX_SUGGESTIONS);
+    }
+
+    @Benchmark
+    public int[] mistyped() {
+        return index.suggest(mistyped[next++ & (QUERIES - 1)], StationNameIndex.MAX_SUGGESTIONS);
+    }
+
+    private static String name(Random random) {
+        StringBuilder name = new StringBuilder();
+        int words = 2 + random.nextInt(2);
+        for (int word = 0; word < words; word++) {
+            if (word > 0) {
+                name.append(' ');
+            }
+            int syllables = 1 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                String syllable = SYLLABLES[random.nextInt(SYLLABLES.length)];
+                name.append(name.length() == 0 || name.charAt(name.length() - 1) == ' '
+                        ? Character.toUpperCase(syllable.charAt(0)) + syllable.substring(1) : syllable);
+            }
+        }
+        return name.toString();
+    }
+}
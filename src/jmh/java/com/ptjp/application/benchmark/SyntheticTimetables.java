@@ -0,0 +1,35 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.generator.SyntheticGtfsFeed;
+import com.ptjp.application.data.service.TimetableService;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Synthetic feeds shared by the benchmarks, written once per JVM fork.
+ */
+final class SyntheticTimetables {
+
+    private SyntheticTimetables() {
+    }
+
+    /**
+     * Writes a radial feed (see {@link SyntheticGtfsFeed#radial(int, int)}) and
+     * loads it into a fresh {@link TimetableService}.
+     */
+    static TimetableService radial(int lines, int stationsPerLine, int headwayMinutes) {
+        try {
+            Path feed = Files.createTempFile("benchmark-gtfs", ".zip");
+            feed.toFile().deleteOnExit();
+            SyntheticGtfsFeed.radial(lines, stationsPerLine).headways(headwayMinutes, headwayMinutes * 2)
+                    .write(feed);
+            TimetableService timetableService = new TimetableService();
+            timetableService.load(feed);
+            return timetableService;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
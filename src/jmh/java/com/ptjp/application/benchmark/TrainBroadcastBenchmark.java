@@ -0,0 +1,94 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.service.EtaService;
+import com.ptjp.application.data.service.TimetableService;
+import com.ptjp.application.data.service.TrainPositionBroadcaster;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fan-out latency of live train positions: the time from one broadcast tick
+ * until every viewer's listener has applied the changes.
+ *
+ * Each simulated viewer has its own session lock and watches the whole
+ * network, the worst case, so every tick reaches every viewer. Run with
+ * {@code -p viewers=...} to trace how latency grows with the audience; it
+ * should stay roughly linear in viewers divided by push threads.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TrainBroadcastBenchmark {
+
+    private static final LocalDateTime MONDAY_RUSH_HOUR = LocalDateTime.of(2026, 10, 19, 7, 0);
+
+    @Param({ "100", "1000", "5000" })
+    public int viewers;
+
+    @Param("4")
+    public int pushThreads;
+
+    @Param("20")
+    public int lines;
+
+    private EtaService etaService;
+    private TrainPositionBroadcaster broadcaster;
+    private volatile CountDownLatch pending;
+    private final AtomicLong positionsApplied = new AtomicLong();
+    private int tick;
+
+    @Setup
+    public void subscribe() throws InterruptedException {
+        TimetableService timetableService = SyntheticTimetables.radial(lines, 40, 5);
+        etaService = new EtaService(timetableService, "Africa/Johannesburg", 20, 1);
+        broadcaster = new TrainPositionBroadcaster(etaService, event -> {
+        }, "Africa/Johannesburg", pushThreads, 10_000);
+        broadcaster.publish(MONDAY_RUSH_HOUR);
+        pending = new CountDownLatch(viewers);
+        for (int i = 0; i < viewers; i++) {
+            Object sessionLock = new Object();
+            broadcaster.subscribe(command -> {
+                synchronized (sessionLock) {
+                    command.run();
+                }
+            }, update -> {
+                positionsApplied.addAndGet(update.getPositions().size());
+                pending.countDown();
+            });
+        }
+        pending.await();
+    }
+
+    @TearDown
+    public void shutdown() {
+        broadcaster.shutdown();
+        etaService.shutdown();
+    }
+
+    @Benchmark
+    public long fanOut() throws InterruptedException {
+        pending = new CountDownLatch(viewers);
+        // five-second ticks through the first hour of the morning peak
+        tick = (tick + 1) % 720;
+        broadcaster.publish(MONDAY_RUSH_HOUR.plusSeconds(5L * tick));
+        pending.await();
+        return positionsApplied.get();
+    }
+}
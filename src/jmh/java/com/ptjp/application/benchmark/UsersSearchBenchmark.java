@@ -0,0 +1,73 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.search.TrigramIndex;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one search-as-you-type keystroke: the first grid page of matches
+ * for a partly typed name, email or phone number, among a million users.
+ *
+ * Target: a few milliseconds at p99. The index's heap footprint is printed
+ * during setup.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class UsersSearchBenchmark {
+
+    private static final String[] FIRST_NAMES = { "Thandiwe", "Sipho", "Ayanda", "Lerato", "Johan", "Annelie",
+            "Mohamed", "Fatima", "Pieter", "Nomvula", "Kagiso", "Zanele", "Michael", "Jessica", "Lindiwe",
+            "Themba", "Riaan", "Chantelle", "Bongani", "Naledi" };
+    private static final String[] LAST_NAMES = { "Nkosi", "van der Merwe", "Dlamini", "Botha", "Naidoo", "Mokoena",
+            "Adams", "Jacobs", "Pillay", "Khumalo", "Smit", "Petersen", "Ndlovu", "Isaacs", "Williams",
+            "Mthembu", "Fourie", "Hendricks", "Zulu", "Daniels" };
+
+    @Param("1000000")
+    public int users;
+
+    @Param({ "na", "nko", "thandi", "ndlovu@", "082 41" })
+    public String query;
+
+    @Param("50")
+    public int pageSize;
+
+    private TrigramIndex index;
+
+    @Setup
+    public void index() {
+        Random random = new Random(7);
+        index = new TrigramIndex();
+        for (int i = 0; i < users; i++) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String email = (first.charAt(0) + last.replace(" ", "")).toLowerCase() + random.nextInt(10_000)
+                    + "@example.co.za";
+            String phone = String.format("0%d %03d %04d", 60 + random.nextInt(30), random.nextInt(1000),
+                    random.nextInt(10_000));
+            index.put(new UUID(random.nextLong(), random.nextLong()), first, last, email, phone);
+        }
+        index.trim();
+    }
+
+    @Benchmark
+    public List<UUID> firstPage() {
+        return index.search(query, 0, pageSize);
+    }
+}
@@ -0,0 +1,83 @@
+package com.ptjp.application.benchmark;
+
+import com.ptjp.application.data.entity.Users;
+import com.ptjp.application.data.service.UsersService;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+/**
+ * The {@link UsersService} calls behind the Users grid and editor: one sorted
+ * page with its total count, loading one person, and saving an edit, against
+ * the embedded database.
+ *
+ * {@code bulkUsers} adds generated people to the 100 demo ones, to see how the
+ * calls scale with the table.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class UsersServiceBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({ "0", "100000" })
+    public int bulkUsers;
+
+    private ConfigurableApplicationContext context;
+    private UsersService usersService;
+    private List<Users> people;
+    private int pages;
+    private final Random random = new Random(5);
+
+    @Setup
+    public void start() {
+        context = BenchmarkApplication.start("--generator.bulk.users=" + bulkUsers);
+        usersService = context.getBean(UsersService.class);
+        people = usersService.list(PageRequest.of(0, 10_000)).getContent();
+        pages = (usersService.count() + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Users> list() {
+        return usersService.list(PageRequest.of(random.nextInt(pages), PAGE_SIZE, Sort.by("lastName")));
+    }
+
+    @Benchmark
+    public Optional<Users> get() {
+        return usersService.get(people.get(random.nextInt(people.size())).getId());
+    }
+
+    @Benchmark
+    public Users update() {
+        Users person = people.get(random.nextInt(people.size()));
+        person.setPhone(String.format("(0%d) %03d-%04d", 60 + random.nextInt(24), random.nextInt(1000),
+                random.nextInt(10_000)));
+        return usersService.update(person);
+    }
+}
@@ -0,0 +1,249 @@
+package com.ptjp.application.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless load generator: thousands of {@link VirtualUser}s, each a
+ * {@link VaadinClient} speaking Vaadin's HTTP and UIDL protocol directly, so
+ * no browser is needed and a user costs a few kilobytes and no thread.
+ *
+ * Run against a server started elsewhere, ideally in production mode:
+ *
+ * <pre>
+ * mvnw -Pload verify -Dload.args="--users=2000 --ramp-up=60 --duration=300"
+ * </pre>
+ *
+ * Options, as {@code --name=value}:
+ * <ul>
+ * <li>{@code url}: the application, {@code http://localhost:8080/} by default</li>
+ * <li>{@code users}: virtual users, 100</li>
+ * <li>{@code ramp-up}: seconds over which users start, 30</li>
+ * <li>{@code duration}: seconds to run after the ramp-up, 120</li>
+ * <li>{@code think-time}: mean milliseconds between steps, 1000</li>
+ * <li>{@code username}, {@code password}: the account to sign in with,
+ * admin/admin, as only admins see the Users grid</li>
+ * <li>{@code accounts}: if set, user {@code i} signs in as the username
+ * followed by {@code i % accounts}, e.g. {@code --username=user
+ * --password=user --accounts=5000} for the generated load-test accounts</li>
+ * <li>{@code scroll-pages}, {@code page-size}: grid pages fetched per visit,
+ * 5 of 50 rows</li>
+ * <li>{@code threads}: threads handling responses, two per processor</li>
+ * <li>{@code result}: a JSON file to write the summary to</li>
+ * </ul>
+ *
+ * Users think between steps, so the load is a closed model: when the server
+ * slows down, so does the request rate, and latencies show it.
+ */
+public class LoadDriver {
+
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+
+    private final URI url;
+    private final int users;
+    private final long rampUpSeconds;
+    private final long durationSeconds;
+    private final long thinkTimeMillis;
+    private final String username;
+    private final String password;
+    private final int accounts;
+    private final int scrollPages;
+    private final int pageSize;
+    private final int threads;
+    private final Path result;
+
+    private final Map<String, StepStatistics> statistics = new LinkedHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private ScheduledExecutorService scheduler;
+    private HttpClient http;
+    private volatile boolean stopping;
+
+    LoadDriver(Map<String, String> options) {
+        Map<String, String> remaining = new HashMap<>(options);
+        url = URI.create(withTrailingSlash(option(remaining, "url", "http://localhost:8080/")));
+        users = Integer.parseInt(option(remaining, "users", "100"));
+        rampUpSeconds = Long.parseLong(option(remaining, "ramp-up", "30"));
+        durationSeconds = Long.parseLong(option(remaining, "duration", "120"));
+        thinkTimeMillis = Long.parseLong(option(remaining, "think-time", "1000"));
+        username = option(remaining, "username", "admin");
+        password = option(remaining, "password", "admin");
+        accounts = Integer.parseInt(option(remaining, "accounts", "0"));
+        scrollPages = Integer.parseInt(option(remaining, "scroll-pages", "5"));
+        pageSize = Integer.parseInt(option(remaining, "page-size", "50"));
+        threads = Integer.parseInt(option(remaining, "threads",
+                String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+        String resultFile = option(remaining, "result", "");
+        result = resultFile.isEmpty() ? null : Path.of(resultFile);
+        if (!remaining.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + remaining.keySet());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadDriver(options).run();
+    }
+
+    void run() throws InterruptedException, IOException {
+        ExecutorService responses = Executors.newFixedThreadPool(threads);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10)).executor(responses).build();
+        System.out.printf("%d users against %s, ramping up over %d s, then running for %d s%n", users, url,
+                rampUpSeconds, durationSeconds);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            String account = accounts > 0 ? username + (i % accounts) : username;
+            VirtualUser user = new VirtualUser(this, account);
+            running.incrementAndGet();
+            scheduler.schedule(user::start, rampUpSeconds * 1000 * i / users, TimeUnit.MILLISECONDS);
+        }
+        long[] lastRuns = { 0 };
+        scheduler.scheduleAtFixedRate(() -> {
+            long runs = totalRuns();
+            System.out.printf("%5d s  %6d users  %8.1f steps/s  %d failed%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started), running.get(),
+                    (runs - lastRuns[0]) / (double) REPORT_INTERVAL_SECONDS, totalFailures());
+            lastRuns[0] = runs;
+        }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        TimeUnit.SECONDS.sleep(rampUpSeconds + durationSeconds);
+        stopping = true;
+        long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (running.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        scheduler.shutdownNow();
+        responses.shutdownNow();
+
+        report(Math.max(1, elapsedSeconds));
+    }
+
+    VaadinClient newClient() {
+        return new VaadinClient(http, url);
+    }
+
+    StepStatistics statistics(String step) {
+        synchronized (statistics) {
+            return statistics.computeIfAbsent(step, StepStatistics::new);
+        }
+    }
+
+    void schedule(Runnable task, long delayMillis) {
+        scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    boolean isStopping() {
+        return stopping;
+    }
+
+    void userStopped() {
+        running.decrementAndGet();
+    }
+
+    String getPassword() {
+        return password;
+    }
+
+    long getThinkTimeMillis() {
+        return thinkTimeMillis;
+    }
+
+    int getScrollPages() {
+        return scrollPages;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    private void report(long elapsedSeconds) throws IOException {
+        List<StepStatistics> steps;
+        synchronized (statistics) {
+            steps = new ArrayList<>(statistics.values());
+        }
+        System.out.printf("%n%-20s %8s %7s %8s %8s %8s %8s %8s%n", "Step", "Runs", "Failed", "Runs/s", "p50 ms",
+                "p90 ms", "p99 ms", "max ms");
+        ObjectMapper json = new ObjectMapper();
+        ArrayNode summary = json.createArrayNode();
+        for (StepStatistics step : steps) {
+            double throughput = step.getSuccesses() / (double) elapsedSeconds;
+            System.out.printf("%-20s %8d %7d %8.1f %8.1f %8.1f %8.1f %8.1f%n", step.getName(), step.getSuccesses(),
+                    step.getFailures(), throughput, step.percentileMillis(50), step.percentileMillis(90),
+                    step.percentileMillis(99), step.maxMillis());
+            ObjectNode row = summary.addObject();
+            row.put("step", step.getName());
+            row.put("runs", step.getSuccesses());
+            row.put("failures", step.getFailures());
+            row.put("runsPerSecond", throughput);
+            row.put("p50Millis", step.percentileMillis(50));
+            row.put("p90Millis", step.percentileMillis(90));
+            row.put("p99Millis", step.percentileMillis(99));
+            row.put("maxMillis", step.maxMillis());
+            row.put("lastFailure", step.getLastFailure());
+        }
+        for (StepStatistics step : steps) {
+            if (step.getLastFailure() != null) {
+                System.out.printf("%s last failed with %s%n", step.getName(), step.getLastFailure());
+            }
+        }
+        if (result != null) {
+            Files.writeString(result, json.writerWithDefaultPrettyPrinter().writeValueAsString(summary));
+            System.out.println("Summary written to " + result);
+        }
+    }
+
+    private long totalRuns() {
+        long runs = 0;
+        synchronized (statistics) {
+            for (StepStatistics step : statistics.values()) {
+                runs += step.getSuccesses() + step.getFailures();
+            }
+        }
+        return runs;
+    }
+
+    private long totalFailures() {
+        long failures = 0;
+        synchronized (statistics) {
+            for (StepStatistics step : statistics.values()) {
+                failures += step.getFailures();
+            }
+        }
+        return failures;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static String withTrailingSlash(String url) {
+        return url.endsWith("/") ? url : url + "/";
+    }
+}
@@ -0,0 +1,67 @@
+package com.ptjp.application.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies and failures of one scenario step across all virtual users.
+ * Latencies are kept in an HDR histogram, to three significant digits up to
+ * a minute, so recording stays cheap and percentiles stay exact enough with
+ * thousands of users.
+ */
+class StepStatistics {
+
+    private static final long MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final Histogram latencies = new ConcurrentHistogram(MAX_NANOS, 3);
+    private final LongAdder failures = new LongAdder();
+    private final AtomicReference<String> lastFailure = new AtomicReference<>();
+
+    StepStatistics(String name) {
+        this.name = name;
+    }
+
+    void recordSuccess(long nanos) {
+        latencies.recordValue(Math.min(nanos, MAX_NANOS));
+    }
+
+    void recordFailure(Throwable failure) {
+        failures.increment();
+        lastFailure.set(failure.getClass().getSimpleName() + ": " + failure.getMessage());
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getSuccesses() {
+        return latencies.getTotalCount();
+    }
+
+    long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the message of the latest failure, or {@code null}
+     */
+    String getLastFailure() {
+        return lastFailure.get();
+    }
+
+    /**
+     * @return the latency at {@code percentile} (0 to 100) of the successful
+     *         runs, in milliseconds
+     */
+    double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    double maxMillis() {
+        return latencies.getMaxValue() / 1e6;
+    }
+}
@@ -0,0 +1,356 @@
+package com.ptjp.application.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One browser tab, as far as the server can tell: a session cookie, the
+ * Spring Security CSRF token of the last page loaded, and the Vaadin UI in
+ * that page, driven over the same HTTP requests the Flow client sends.
+ *
+ * <ul>
+ * <li>a page load is the bootstrap page, {@code ?v-r=init} for the UI and
+ * its security key, then the client-side router's {@code connectClient}
+ * call, which renders the route;</li>
+ * <li>navigating is another {@code connectClient} call in the same UI;</li>
+ * <li>components are driven by their {@code @ClientCallable} methods and DOM
+ * events, addressed by state node id.</li>
+ * </ul>
+ *
+ * The client keeps only what the scenario needs from the state tree: the
+ * latest node of each tag, the menu's router links, and grid updates that
+ * still have to be confirmed. Push is not used; anything the server pushes
+ * arrives with the next round-trip instead, as with the XHR transport.
+ *
+ * Not thread safe: a virtual user runs one step at a time.
+ */
+class VaadinClient {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String UIDL_PREFIX = "for(;;);";
+    private static final Pattern CSRF = Pattern.compile("<meta name=\"_csrf\" content=\"([^\"]+)\"");
+    private static final Pattern SESSION_COOKIE = Pattern.compile("JSESSIONID=([^;]+)");
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    /** Node feature ids of the state tree, see {@code NodeFeatureRegistry}. */
+    private static final int ELEMENT_DATA = 0;
+    private static final int ELEMENT_ATTRIBUTES = 3;
+
+    private final HttpClient http;
+    private final URI base;
+
+    private String sessionId;
+    private String csrfToken;
+    private int uiId = -1;
+    private String appId;
+    private String securityKey;
+    private int syncId;
+    private int clientId;
+    private int promises;
+    private final Map<String, Integer> nodesByTag = new HashMap<>();
+    private final Map<Integer, String> hrefs = new LinkedHashMap<>();
+    private final Set<Integer> routerLinks = new HashSet<>();
+    private final List<Integer> gridUpdates = new ArrayList<>();
+    private int gridSize = -1;
+
+    VaadinClient(HttpClient http, URI base) {
+        this.http = http;
+        this.base = base;
+    }
+
+    /**
+     * Loads {@code route} as a fresh page, as typing its URL would.
+     */
+    CompletableFuture<Void> open(String route) {
+        return send(get(route)).thenCompose(page -> {
+            expectStatus(page, 200);
+            Matcher csrf = CSRF.matcher(page.body());
+            csrfToken = csrf.find() ? csrf.group(1) : null;
+            return send(get("?v-r=init&location=" + encode(route)));
+        }).thenCompose(init -> {
+            expectStatus(init, 200);
+            startUi(read(init.body()).path("appConfig"));
+            return navigate(route);
+        });
+    }
+
+    /**
+     * Posts the login form {@code LoginView} opens, and fails unless Spring
+     * Security accepts the credentials.
+     */
+    CompletableFuture<Void> signIn(String username, String password) {
+        return send(form("login", "username", username, "password", password)).thenAccept(response -> {
+            expectStatus(response, 302);
+            String location = response.headers().firstValue("Location").orElse("");
+            if (location.contains("error")) {
+                throw new IllegalStateException("Sign in refused for " + username);
+            }
+        });
+    }
+
+    CompletableFuture<Void> signOut() {
+        return send(form("logout")).thenAccept(response -> {
+            expectStatus(response, 302);
+            sessionId = null;
+        });
+    }
+
+    /**
+     * Follows a router link in the current UI.
+     */
+    CompletableFuture<Void> navigate(String route) {
+        ArrayNode args = JsonNodeFactory.instance.arrayNode().add("flow-container-" + appId.toLowerCase()).add(appId)
+                .add(route).add("").addNull();
+        return uidl(JsonNodeFactory.instance.arrayNode().add(publishedEventHandler(1, "connectClient", args)));
+    }
+
+    /**
+     * Asks the grid on the page for rows {@code start} to
+     * {@code start + length}, as scrolling it does, confirming the updates it
+     * has sent since the last request. Like the browser, never asks past the
+     * grid's size.
+     */
+    CompletableFuture<Void> scrollGrid(int start, int length) {
+        int grid = node("vaadin-grid");
+        ArrayNode rpc = JsonNodeFactory.instance.arrayNode();
+        for (int update : gridUpdates) {
+            rpc.add(publishedEventHandler(grid, "confirmUpdate", JsonNodeFactory.instance.arrayNode().add(update)));
+        }
+        gridUpdates.clear();
+        if (gridSize >= 0) {
+            length = Math.max(0, Math.min(length, gridSize - start));
+        }
+        rpc.add(publishedEventHandler(grid, "setRequestedRange",
+                JsonNodeFactory.instance.arrayNode().add(start).add(length)));
+        return uidl(rpc);
+    }
+
+    /**
+     * Sends the map's {@code map-view-moveend} event, as panning or zooming
+     * the map does. Coordinates are EPSG:3857.
+     */
+    CompletableFuture<Void> moveMap(double centerX, double centerY, double zoom, double halfWidth,
+            double halfHeight) {
+        ObjectNode data = JsonNodeFactory.instance.objectNode();
+        data.putArray("event.detail.center").add(centerX).add(centerY);
+        data.put("event.detail.zoom", zoom);
+        data.put("event.detail.rotation", 0);
+        data.putArray("event.detail.extent").add(centerX - halfWidth).add(centerY - halfHeight)
+                .add(centerX + halfWidth).add(centerY + halfHeight);
+        ObjectNode event = JsonNodeFactory.instance.objectNode();
+        event.put("type", "event");
+        event.put("node", node("vaadin-map"));
+        event.put("event", "map-view-moveend");
+        event.set("data", data);
+        return uidl(JsonNodeFactory.instance.arrayNode().add(event));
+    }
+
+    /**
+     * Fetches the map tiles of a viewport, all at once as the browser does.
+     */
+    CompletableFuture<Void> fetchTiles(int zoom, int minX, int maxX, int minY, int maxY) {
+        List<CompletableFuture<?>> tiles = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                tiles.add(http.sendAsync(HttpRequest.newBuilder(base.resolve("tiles/" + zoom + "/" + x + "/" + y
+                        + ".png")).timeout(TIMEOUT).build(), HttpResponse.BodyHandlers.discarding())
+                        .thenAccept(tile -> expectStatus(tile, 200)));
+            }
+        }
+        return CompletableFuture.allOf(tiles.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return the row count the grid on the page was last given, or -1
+     */
+    int gridSize() {
+        return gridSize;
+    }
+
+    /**
+     * @return whether the page shows an element with {@code tag}
+     */
+    boolean has(String tag) {
+        return nodesByTag.containsKey(tag);
+    }
+
+    /**
+     * @return the routes of the router links on the page, in page order
+     */
+    List<String> routerLinks() {
+        List<String> routes = new ArrayList<>();
+        hrefs.forEach((node, href) -> {
+            if (routerLinks.contains(node)) {
+                routes.add(href);
+            }
+        });
+        return routes;
+    }
+
+    private void startUi(JsonNode appConfig) {
+        uiId = appConfig.path("v-uiId").asInt(-1);
+        appId = appConfig.path("appId").asText();
+        JsonNode uidl = appConfig.path("uidl");
+        securityKey = uidl.path("Vaadin-Security-Key").asText(null);
+        if (uiId < 0 || securityKey == null) {
+            throw new IllegalStateException("No UI in the init response");
+        }
+        nodesByTag.clear();
+        hrefs.clear();
+        routerLinks.clear();
+        gridUpdates.clear();
+        gridSize = -1;
+        promises = 0;
+        apply(uidl);
+    }
+
+    private CompletableFuture<Void> uidl(ArrayNode rpc) {
+        ObjectNode message = JsonNodeFactory.instance.objectNode();
+        message.put("csrfToken", securityKey);
+        message.set("rpc", rpc);
+        message.put("syncId", syncId);
+        message.put("clientId", clientId);
+        HttpRequest request = request("?v-r=uidl&v-uiId=" + uiId).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(message.toString())).build();
+        return send(request).thenAccept(response -> {
+            expectStatus(response, 200);
+            String body = response.body();
+            if (!body.startsWith(UIDL_PREFIX)) {
+                throw new IllegalStateException("Not a UIDL response: " + abbreviate(body));
+            }
+            apply(read(body.substring(UIDL_PREFIX.length())).path(0));
+        });
+    }
+
+    private void apply(JsonNode uidl) {
+        JsonNode meta = uidl.path("meta");
+        if (meta.has("sessionExpired") || meta.has("appError")) {
+            throw new IllegalStateException("Server reported " + meta);
+        }
+        if (uidl.has("resynchronize")) {
+            throw new IllegalStateException("Server asked the client to resynchronize");
+        }
+        syncId = uidl.path("syncId").asInt(syncId);
+        clientId = uidl.path("clientId").asInt(clientId);
+        for (JsonNode change : uidl.path("changes")) {
+            int node = change.path("node").asInt();
+            if ("detach".equals(change.path("type").asText())) {
+                nodesByTag.values().remove(node);
+                hrefs.remove(node);
+                routerLinks.remove(node);
+                continue;
+            }
+            int feature = change.path("feat").asInt(-1);
+            String key = change.path("key").asText();
+            if (feature == ELEMENT_DATA && "tag".equals(key)) {
+                nodesByTag.put(change.path("value").asText(), node);
+            } else if (feature == ELEMENT_ATTRIBUTES && "href".equals(key)) {
+                hrefs.put(node, change.path("value").asText());
+            } else if (feature == ELEMENT_ATTRIBUTES && "router-link".equals(key)) {
+                routerLinks.add(node);
+            }
+        }
+        for (JsonNode invocation : uidl.path("execute")) {
+            String script = invocation.path(invocation.size() - 1).asText();
+            if (script.contains("$connector.confirm(")) {
+                gridUpdates.add(invocation.path(invocation.size() - 2).asInt());
+            } else if (script.contains("$connector.updateSize(")) {
+                gridSize = invocation.path(invocation.size() - 2).asInt();
+            }
+        }
+    }
+
+    private ObjectNode publishedEventHandler(int node, String method, ArrayNode args) {
+        ObjectNode invocation = JsonNodeFactory.instance.objectNode();
+        invocation.put("type", "publishedEventHandler");
+        invocation.put("node", node);
+        invocation.put("templateEventMethodName", method);
+        invocation.set("templateEventMethodArgs", args);
+        invocation.put("promise", promises++);
+        return invocation;
+    }
+
+    private int node(String tag) {
+        Integer node = nodesByTag.get(tag);
+        if (node == null) {
+            throw new IllegalStateException("No <" + tag + "> on the page");
+        }
+        return node;
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest form(String path, String... fields) {
+        StringBuilder body = new StringBuilder("_csrf=").append(encode(csrfToken == null ? "" : csrfToken));
+        for (int i = 0; i < fields.length; i += 2) {
+            body.append('&').append(fields[i]).append('=').append(encode(fields[i + 1]));
+        }
+        return request(path).header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(path)).timeout(TIMEOUT);
+        if (sessionId != null) {
+            request.header("Cookie", "JSESSIONID=" + sessionId);
+        }
+        return request;
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            for (String cookie : response.headers().allValues("Set-Cookie")) {
+                Matcher session = SESSION_COOKIE.matcher(cookie);
+                if (session.find()) {
+                    sessionId = session.group(1);
+                }
+            }
+            return response;
+        });
+    }
+
+    private static void expectStatus(HttpResponse<?> response, int status) {
+        if (response.statusCode() != status) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " from " + response.uri().getPath());
+        }
+    }
+
+    private static JsonNode read(String json) {
+        try {
+            return JSON.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed JSON: " + abbreviate(json), e);
+        }
+    }
+
+    private static String abbreviate(String text) {
+        return text.length() <= 200 ? text : text.substring(0, 200) + "...";
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,138 @@
+package com.ptjp.application.load;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * One simulated user, repeating a visit until the run ends: open the login
+ * page, sign in, open the home page, follow each menu link of
+ * {@code MainLayout} (scrolling the grid on pages that have one, and panning
+ * the map and loading its tiles on pages that have a map), then sign out.
+ *
+ * Each visit is a new session. Between steps the user waits a random think
+ * time; a failed step is recorded and abandons the rest of the visit.
+ */
+class VirtualUser {
+
+    private static final double EARTH_RADIUS_METRES = 6_378_137;
+    private static final double CAPE_TOWN_LON = 18.4241;
+    private static final double CAPE_TOWN_LAT = -33.9249;
+    private static final int VIEWPORT_WIDTH = 1280;
+    private static final int VIEWPORT_HEIGHT = 800;
+    private static final int TILE_SIZE = 256;
+
+    /** Ends a visit when the run stops; not a failure. */
+    private static final RuntimeException STOPPED = new RuntimeException("stopped", null, false, false) {
+    };
+
+    private final LoadDriver driver;
+    private final String username;
+
+    VirtualUser(LoadDriver driver, String username) {
+        this.driver = driver;
+        this.username = username;
+    }
+
+    void start() {
+        visit().whenComplete((done, failure) -> {
+            if (driver.isStopping()) {
+                driver.userStopped();
+            } else {
+                start();
+            }
+        });
+    }
+
+    private CompletableFuture<Void> visit() {
+        VaadinClient client = driver.newClient();
+        return step("open login", () -> client.open("login"))
+                .thenCompose(done -> step("sign in", () -> client.signIn(username, driver.getPassword())))
+                .thenCompose(done -> step("open home", () -> client.open("")))
+                .thenCompose(done -> followMenu(client, client.routerLinks(), 0))
+                .thenCompose(done -> step("sign out", client::signOut));
+    }
+
+    private CompletableFuture<Void> followMenu(VaadinClient client, List<String> routes, int index) {
+        if (index == routes.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String route = routes.get(index);
+        return step("navigate " + route, () -> client.navigate(route)).thenCompose(done -> {
+            if (client.has("vaadin-grid")) {
+                return scrollGrid(client, 0);
+            } else if (client.has("vaadin-map")) {
+                return panMap(client);
+            }
+            return CompletableFuture.completedFuture(null);
+        }).thenCompose(done -> followMenu(client, routes, index + 1));
+    }
+
+    private CompletableFuture<Void> scrollGrid(VaadinClient client, int page) {
+        int size = client.gridSize();
+        if (page == driver.getScrollPages() || size >= 0 && page * driver.getPageSize() >= size) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int pageSize = driver.getPageSize();
+        return step("scroll grid", () -> client.scrollGrid(page * pageSize, pageSize))
+                .thenCompose(done -> scrollGrid(client, page + 1));
+    }
+
+    /**
+     * Pans somewhere around Cape Town at a street-map zoom, sending the view
+     * to the server and fetching the tiles a browser window would show.
+     */
+    private CompletableFuture<Void> panMap(VaadinClient client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int zoom = 11 + random.nextInt(3);
+        double x = Math.toRadians(CAPE_TOWN_LON + random.nextDouble(-0.1, 0.1)) * EARTH_RADIUS_METRES;
+        double lat = Math.toRadians(CAPE_TOWN_LAT + random.nextDouble(-0.1, 0.1));
+        double y = Math.log(Math.tan(Math.PI / 4 + lat / 2)) * EARTH_RADIUS_METRES;
+        double worldWidth = 2 * Math.PI * EARTH_RADIUS_METRES;
+        double tiles = 1 << zoom;
+        double metresPerPixel = worldWidth / (TILE_SIZE * tiles);
+        double halfWidth = VIEWPORT_WIDTH / 2.0 * metresPerPixel;
+        double halfHeight = VIEWPORT_HEIGHT / 2.0 * metresPerPixel;
+        int minX = (int) ((x - halfWidth + worldWidth / 2) / worldWidth * tiles);
+        int maxX = (int) ((x + halfWidth + worldWidth / 2) / worldWidth * tiles);
+        int minY = (int) ((worldWidth / 2 - (y + halfHeight)) / worldWidth * tiles);
+        int maxY = (int) ((worldWidth / 2 - (y - halfHeight)) / worldWidth * tiles);
+        return step("move map", () -> client.moveMap(x, y, zoom, halfWidth, halfHeight))
+                .thenCompose(done -> step("map tiles", () -> client.fetchTiles(zoom, minX, maxX, minY, maxY)));
+    }
+
+    /**
+     * Thinks, then runs and times {@code action} as the step {@code name}.
+     */
+    private CompletableFuture<Void> step(String name, Supplier<CompletableFuture<Void>> action) {
+        CompletableFuture<Void> thought = new CompletableFuture<>();
+        driver.schedule(() -> thought.complete(null), thinkTime());
+        return thought.thenCompose(done -> {
+            if (driver.isStopping()) {
+                throw STOPPED;
+            }
+            StepStatistics statistics = driver.statistics(name);
+            long start = System.nanoTime();
+            CompletableFuture<Void> run;
+            try {
+                run = action.get();
+            } catch (RuntimeException e) {
+                run = CompletableFuture.failedFuture(e);
+            }
+            return run.whenComplete((result, failure) -> {
+                if (failure == null) {
+                    statistics.recordSuccess(System.nanoTime() - start);
+                } else {
+                    statistics.recordFailure(failure instanceof CompletionException ? failure.getCause() : failure);
+                }
+            });
+        });
+    }
+
+    private long thinkTime() {
+        long mean = driver.getThinkTimeMillis();
+        return mean == 0 ? 0 : ThreadLocalRandom.current().nextLong(mean / 2, mean * 3 / 2 + 1);
+    }
+}
@@ -1,24 +1,31 @@
 package com.ptjp.application;
 
+import com.ptjp.application.web.OfflineTimetableController;
 import com.vaadin.flow.component.dependency.NpmPackage;
 import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.server.PWA;
 import com.vaadin.flow.theme.Theme;
 import com.vaadin.flow.theme.lumo.Lumo;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
 
 /**
  * The entry point of the Spring Boot application.
  *
  * Use the @PWA annotation make the application installable on phones, tablets
- * and some desktop browsers.
+ * and some desktop browsers. The service worker caches the timetable snapshot
+ * along with the application, so it is still at hand without a connection.
  *
  */
 @SpringBootApplication
+@EnableScheduling
+@Push
 @Theme(value = "capetowntrainmapper", variant = Lumo.DARK)
-@PWA(name = "Cape Town Train Mapper", shortName = "Cape Town Train Mapper", offlineResources = {})
+@PWA(name = "Cape Town Train Mapper", shortName = "Cape Town Train Mapper", offlineResources = {
+        OfflineTimetableController.SNAPSHOT_URL })
 @NpmPackage(value = "line-awesome", version = "1.3.0")
 public class Application extends SpringBootServletInitializer implements AppShellConfigurator {
 
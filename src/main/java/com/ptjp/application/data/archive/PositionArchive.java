@@ -0,0 +1,560 @@
+package com.ptjp.application.data.archive;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only store of train positions on disk, in memory-mapped segment
+ * files of a fixed size.
+ *
+ * Positions are written in blocks, typically a minute of samples each. A block
+ * is stored column by column (trains, times, latitudes, longitudes, speeds),
+ * sorted by train and time so that each column is a run of small deltas,
+ * written as zigzag varints and then deflated: a sample of a train that moved
+ * a few hundred metres since its last one takes a few bytes. Each block starts
+ * with a header giving its time range, and the header's magic number is
+ * written last, so a block cut short by a crash is never read.
+ *
+ * The block headers form the time index: they are read into memory when the
+ * archive is opened, and a read of a time range inflates just the blocks that
+ * overlap it, straight from the mapped file. One thread appends while any
+ * number read.
+ */
+public final class PositionArchive implements Closeable {
+
+    private static final int MAGIC = 0x50534231;
+    private static final int HEADER_BYTES = 32;
+    private static final String SEGMENT_PREFIX = "positions-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TRAINS_FILE = "trains.txt";
+    private static final double E6 = 1_000_000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path directory;
+    private final int segmentBytes;
+
+    // all guarded by this
+    private final List<String> trainNames = new ArrayList<>();
+    private final Map<String, Integer> trainIds = new HashMap<>();
+    private final BufferedWriter trainsFile;
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Block> blocks = new ArrayList<>();
+    private int writePosition;
+    private long nextSequence;
+
+    /**
+     * Opens the archive in {@code directory}, creating it if need be.
+     *
+     * @param segmentBytes the size of each segment file; a block must fit in
+     *                     one
+     */
+    public PositionArchive(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        Path trains = directory.resolve(TRAINS_FILE);
+        if (Files.exists(trains)) {
+            for (String name : Files.readAllLines(trains, StandardCharsets.UTF_8)) {
+                trainIds.put(name, trainNames.size());
+                trainNames.add(name);
+            }
+        }
+        trainsFile = Files.newBufferedWriter(trains, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)).sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            boolean last = i == files.size() - 1;
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(last ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            }
+            Segment segment = new Segment(file, number(file), buffer);
+            segments.add(segment);
+            writePosition = readBlocks(segment);
+        }
+        logger.info("Opened position archive {}: {} blocks in {} segments", directory, blocks.size(),
+                segments.size());
+    }
+
+    /**
+     * @return the archive's number for a train, given one the first time it is
+     *         asked for
+     */
+    public synchronized int trainId(String name) {
+        Integer id = trainIds.get(name);
+        if (id == null) {
+            id = trainNames.size();
+            try {
+                trainsFile.write(name);
+                trainsFile.newLine();
+                trainsFile.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            trainIds.put(name, id);
+            trainNames.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * @return the GTFS trip id behind a train number
+     */
+    public synchronized String trainName(int train) {
+        return trainNames.get(train);
+    }
+
+    /**
+     * Writes samples as one block. Blocks should be appended in time order
+     * and not overlap, as reads assume.
+     */
+    public synchronized void append(List<PositionSample> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        PositionSample[] sorted = samples.toArray(new PositionSample[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(PositionSample::getTrain)
+                .thenComparingLong(PositionSample::getTimeMillis));
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (PositionSample sample : sorted) {
+            minTime = Math.min(minTime, sample.getTimeMillis());
+            maxTime = Math.max(maxTime, sample.getTimeMillis());
+        }
+        byte[] raw = encode(sorted, minTime);
+        byte[] compressed = deflate(raw);
+
+        int length = HEADER_BYTES + compressed.length;
+        if (length > segmentBytes) {
+            throw new IllegalArgumentException("A block of " + length + " bytes does not fit a segment");
+        }
+        if (segments.isEmpty() || writePosition + length > segments.get(segments.size() - 1).buffer.capacity()) {
+            startSegment();
+        }
+        Segment segment = segments.get(segments.size() - 1);
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(writePosition + HEADER_BYTES);
+        buffer.put(compressed);
+        buffer.putInt(writePosition + 4, compressed.length);
+        buffer.putInt(writePosition + 8, sorted.length);
+        buffer.putInt(writePosition + 12, raw.length);
+        buffer.putLong(writePosition + 16, minTime);
+        buffer.putLong(writePosition + 24, maxTime);
+        buffer.putInt(writePosition, MAGIC);
+        blocks.add(new Block(nextSequence++, segment, writePosition, compressed.length, sorted.length, raw.length,
+                minTime, maxTime));
+        writePosition += length;
+    }
+
+    /**
+     * Reads the samples taken in {@code [fromMillis, toMillis)} a block at a
+     * time, in time order. Blocks appended while the cursor is open are read
+     * too.
+     */
+    public Cursor cursor(long fromMillis, long toMillis) {
+        return new Cursor(fromMillis, toMillis);
+    }
+
+    /**
+     * Deletes the segments holding nothing newer than {@code millis}, except
+     * the one being written.
+     *
+     * @return the number of segments deleted
+     */
+    public synchronized int deleteBefore(long millis) {
+        int deleted = 0;
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            long newest = blocks.stream().filter(block -> block.segment == oldest).mapToLong(block -> block.maxTime)
+                    .max().orElse(Long.MIN_VALUE);
+            if (newest >= millis) {
+                break;
+            }
+            blocks.removeIf(block -> block.segment == oldest);
+            segments.remove(0);
+            try {
+                // the mapping stays valid for readers still holding it
+                Files.delete(oldest.file);
+            } catch (IOException e) {
+                logger.warn("Could not delete {}", oldest.file, e);
+            }
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the time of the first sample, or -1 if there is none
+     */
+    public synchronized long getFirstMillis() {
+        return blocks.isEmpty() ? -1 : blocks.get(0).minTime;
+    }
+
+    /**
+     * @return the time of the last sample, or -1 if there is none
+     */
+    public synchronized long getLastMillis() {
+        return blocks.isEmpty() ? -1 : blocks.get(blocks.size() - 1).maxTime;
+    }
+
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    public synchronized long getSampleCount() {
+        return blocks.stream().mapToLong(block -> block.count).sum();
+    }
+
+    /**
+     * @return the bytes of segment files holding blocks
+     */
+    public synchronized long getStoredBytes() {
+        return blocks.stream().mapToLong(block -> HEADER_BYTES + block.length).sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+        trainsFile.close();
+    }
+
+    private int readBlocks(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity() && buffer.getInt(position) == MAGIC) {
+            int length = buffer.getInt(position + 4);
+            blocks.add(new Block(nextSequence++, segment, position, length, buffer.getInt(position + 8),
+                    buffer.getInt(position + 12), buffer.getLong(position + 16), buffer.getLong(position + 24)));
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private void startSegment() {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+        int number = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number + 1;
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segments.add(new Segment(file, number, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writePosition = 0;
+    }
+
+    /**
+     * @return the first block ending at or after {@code millis}, or of a later
+     *         sequence than {@code after}, whichever comes later; null if none
+     */
+    private synchronized Block nextBlock(long millis, long after) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get(mid);
+            if (block.maxTime < millis || block.sequence <= after) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < blocks.size() ? blocks.get(low) : null;
+    }
+
+    private static byte[] encode(PositionSample[] samples, long minTime) {
+        ByteSink out = new ByteSink(samples.length * 8);
+        long previous = 0;
+        for (PositionSample sample : samples) {
+            out.writeVarint(sample.getTrain() - previous);
+            previous = sample.getTrain();
+        }
+        previous = minTime;
+        for (PositionSample sample : samples) {
+            out.writeZigzag(sample.getTimeMillis() - previous);
+            previous = sample.getTimeMillis();
+        }
+        previous = 0;
+        for (PositionSample sample : samples) {
+            long lat = Math.round(sample.getLat() * E6);
+            out.writeZigzag(lat - previous);
+            previous = lat;
+        }
+        previous = 0;
+        for (PositionSample sample : samples) {
+            long lon = Math.round(sample.getLon() * E6);
+            out.writeZigzag(lon - previous);
+            previous = lon;
+        }
+        for (PositionSample sample : samples) {
+            out.writeVarint(Math.max(0, Math.round(sample.getSpeed() * 10)));
+        }
+        return out.toArray();
+    }
+
+    private static PositionSample[] decode(byte[] raw, int count, long minTime) {
+        ByteSource in = new ByteSource(raw);
+        int[] trains = new int[count];
+        long[] times = new long[count];
+        long[] lats = new long[count];
+        long[] lons = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += in.readVarint();
+            trains[i] = (int) previous;
+        }
+        previous = minTime;
+        for (int i = 0; i < count; i++) {
+            previous += in.readZigzag();
+            times[i] = previous;
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += in.readZigzag();
+            lats[i] = previous;
+        }
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += in.readZigzag();
+            lons[i] = previous;
+        }
+        PositionSample[] samples = new PositionSample[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = new PositionSample(trains[i], times[i], lats[i] / E6, lons[i] / E6,
+                    in.readVarint() / 10f);
+        }
+        return samples;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteSink out = new ByteSink(raw.length / 2 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                out.write(chunk, length);
+            }
+            return out.toArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(Block block) {
+        ByteBuffer compressed = block.segment.buffer.duplicate();
+        compressed.limit(block.offset + HEADER_BYTES + block.length);
+        compressed.position(block.offset + HEADER_BYTES);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[block.rawLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != raw.length) {
+                throw new IllegalStateException("Truncated block at " + block.offset + " of " + block.segment.file);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt block at " + block.offset + " of " + block.segment.file, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int number(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Reads a time range forwards. Not thread safe.
+     */
+    public final class Cursor {
+
+        private final long fromMillis;
+        private final long toMillis;
+        private PositionSample[] samples = new PositionSample[0];
+        private int next;
+        private long lastSequence = -1;
+
+        private Cursor(long fromMillis, long toMillis) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+
+        /**
+         * @return the samples not yet returned taken before
+         *         {@code untilMillis}, in time order
+         */
+        public List<PositionSample> next(long untilMillis) {
+            long until = Math.min(untilMillis, toMillis);
+            List<PositionSample> read = new ArrayList<>();
+            while (true) {
+                while (next < samples.length) {
+                    PositionSample sample = samples[next];
+                    if (sample.getTimeMillis() >= until) {
+                        return read;
+                    }
+                    if (sample.getTimeMillis() >= fromMillis) {
+                        read.add(sample);
+                    }
+                    next++;
+                }
+                Block block = nextBlock(fromMillis, lastSequence);
+                if (block == null || block.minTime >= until) {
+                    return read;
+                }
+                lastSequence = block.sequence;
+                samples = decode(inflate(block), block.count, block.minTime);
+                Arrays.sort(samples, Comparator.comparingLong(PositionSample::getTimeMillis));
+                next = 0;
+            }
+        }
+    }
+
+    private static final class Segment {
+
+        private final Path file;
+        private final int number;
+        private final MappedByteBuffer buffer;
+
+        Segment(Path file, int number, MappedByteBuffer buffer) {
+            this.file = file;
+            this.number = number;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Block {
+
+        private final long sequence;
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int count;
+        private final int rawLength;
+        private final long minTime;
+        private final long maxTime;
+
+        Block(long sequence, Segment segment, int offset, int length, int count, int rawLength, long minTime,
+                long maxTime) {
+            this.sequence = sequence;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.rawLength = rawLength;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+    }
+
+    private static final class ByteSink {
+
+        private byte[] bytes;
+        private int size;
+
+        ByteSink(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] chunk, int length) {
+            ensure(length);
+            System.arraycopy(chunk, 0, bytes, size, length);
+            size += length;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+    }
+
+    private static final class ByteSource {
+
+        private final byte[] bytes;
+        private int position;
+
+        ByteSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readZigzag() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ptjp.application.data.archive;
+
+/**
+ * Where a train was at one moment, as kept in a {@link PositionArchive}.
+ *
+ * Trains are identified by a number the archive gives each GTFS trip id, which
+ * unlike a trip index stays the same when a new timetable is loaded.
+ * Coordinates are kept to a millionth of a degree and speed to a tenth of a
+ * metre per second.
+ */
+public final class PositionSample {
+
+    private final int train;
+    private final long timeMillis;
+    private final double lat;
+    private final double lon;
+    private final float speed;
+
+    public PositionSample(int train, long timeMillis, double lat, double lon, float speed) {
+        this.train = train;
+        this.timeMillis = timeMillis;
+        this.lat = lat;
+        this.lon = lon;
+        this.speed = speed;
+    }
+
+    /**
+     * @return the archive's number for the train, see
+     *         {@link PositionArchive#trainName(int)}
+     */
+    public int getTrain() {
+        return train;
+    }
+
+    /**
+     * @return milliseconds since the epoch
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    /**
+     * @return metres per second
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    public boolean isWithin(double south, double west, double north, double east) {
+        return lat >= south && lat <= north && lon >= west && lon <= east;
+    }
+
+    @Override
+    public String toString() {
+        return "Train " + train + " at " + lat + "," + lon + " at " + timeMillis + ", " + speed + " m/s";
+    }
+}
@@ -0,0 +1,113 @@
+package com.ptjp.application.data.cluster;
+
+import com.ptjp.application.data.live.DelayEvent;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consecutive events of one origin's sequence, numbered from
+ * {@code firstSequence}. An empty batch says that the origin's next event will
+ * be {@code firstSequence}, which lets a node notice a gap without waiting for
+ * more events.
+ *
+ * Events name their stop by GTFS {@code stop_id} as well as by position, as
+ * the nodes may be on different versions of the timetable.
+ */
+final class Batch {
+
+    /** The most events a batch may hold, replays included. */
+    static final int MAX_EVENTS = 1 << 16;
+
+    private final String origin;
+    private final long firstSequence;
+    private final boolean replay;
+    private final List<DelayEvent> events;
+
+    Batch(String origin, long firstSequence, boolean replay, List<DelayEvent> events) {
+        this.origin = origin;
+        this.firstSequence = firstSequence;
+        this.replay = replay;
+        this.events = events;
+    }
+
+    String origin() {
+        return origin;
+    }
+
+    long firstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * @return the sequence number the event after this batch will have
+     */
+    long nextSequence() {
+        return firstSequence + events.size();
+    }
+
+    /**
+     * @return whether the batch answers a replay request, so a gap before it
+     *         cannot be filled
+     */
+    boolean isReplay() {
+        return replay;
+    }
+
+    List<DelayEvent> events() {
+        return events;
+    }
+
+    Batch asReplay() {
+        return new Batch(origin, firstSequence, true, events);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(origin);
+        out.writeLong(firstSequence);
+        out.writeBoolean(replay);
+        out.writeInt(events.size());
+        for (DelayEvent event : events) {
+            out.writeUTF(event.getTripId());
+            out.writeLong(event.getServiceDate().toEpochDay());
+            out.writeInt(event.getStopIndex());
+            out.writeUTF(event.getStopId() == null ? "" : event.getStopId());
+            out.writeInt(event.getDelaySeconds());
+            out.writeBoolean(event.isCancelled());
+        }
+    }
+
+    static Batch read(DataInput in) throws IOException {
+        String origin = in.readUTF();
+        long firstSequence = in.readLong();
+        boolean replay = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0 || count > MAX_EVENTS) {
+            throw new IOException("Batch size " + count + " out of range");
+        }
+        List<DelayEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String tripId = in.readUTF();
+            LocalDate serviceDate = LocalDate.ofEpochDay(in.readLong());
+            int stopIndex = in.readInt();
+            String stopId = in.readUTF();
+            int delaySeconds = in.readInt();
+            boolean cancelled = in.readBoolean();
+            if (stopIndex < 0) {
+                throw new IOException("Negative stop index " + stopIndex);
+            }
+            DelayEvent event = cancelled ? DelayEvent.cancellation(tripId, serviceDate, stopIndex)
+                    : DelayEvent.delay(tripId, serviceDate, stopIndex, delaySeconds);
+            events.add(stopId.isEmpty() ? event : event.atStop(stopId));
+        }
+        return new Batch(origin, firstSequence, replay, events);
+    }
+
+    @Override
+    public String toString() {
+        return (replay ? "Replayed " : "") + "Batch of " + events.size() + " from " + origin + " at " + firstSequence;
+    }
+}
@@ -0,0 +1,261 @@
+package com.ptjp.application.data.cluster;
+
+import com.ptjp.application.data.live.DelayEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batching, sequence numbers and catching up, for transports to build on.
+ *
+ * Published events are queued and sent as one batch every
+ * {@code batchMillis}, or as soon as {@code maxBatchSize} are queued, from a
+ * single flush thread so batches leave in sequence order. The last
+ * {@code replayCapacity} events sent are kept to answer replay requests with.
+ *
+ * A transport hands every batch it receives to {@link #received}, together
+ * with a way to ask the batch's origin for a replay. Batches that arrive after
+ * a gap are held back until the replay fills it; if the replay does not come
+ * within {@value #MAX_HELD_BATCHES} batches, the gap is given up on.
+ */
+abstract class BatchingBroadcaster implements ClusterBroadcaster {
+
+    static final int MAX_HELD_BATCHES = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String origin;
+    private final int maxBatchSize;
+    private final int replayCapacity;
+    private final ScheduledExecutorService flusher;
+    private final List<Consumer<List<DelayEvent>>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Sequence> sequences = new ConcurrentHashMap<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    // guarded by this
+    private List<DelayEvent> queued = new ArrayList<>();
+    private long nextSequence = 1;
+    private final ArrayDeque<Batch> sent = new ArrayDeque<>();
+    private int sentEvents;
+
+    /**
+     * @param name the node's name; origins add a random suffix, so a restarted
+     *             node starts a sequence of its own
+     */
+    BatchingBroadcaster(String name, long batchMillis, int maxBatchSize, int replayCapacity) {
+        if (maxBatchSize < 1 || replayCapacity < 0 || maxBatchSize + replayCapacity > Batch.MAX_EVENTS) {
+            // a replay holds up to a batch more than the replay capacity
+            throw new IllegalArgumentException("Batch size " + maxBatchSize + " and replay capacity "
+                    + replayCapacity + " must add up to at most " + Batch.MAX_EVENTS);
+        }
+        this.origin = name + "#" + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+        this.maxBatchSize = maxBatchSize;
+        this.replayCapacity = replayCapacity;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "cluster-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String origin() {
+        return origin;
+    }
+
+    @Override
+    public void publish(DelayEvent event) {
+        boolean full;
+        synchronized (this) {
+            queued.add(event);
+            full = queued.size() == maxBatchSize;
+        }
+        if (full) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }
+    }
+
+    @Override
+    public void addListener(Consumer<List<DelayEvent>> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public long receivedCount() {
+        return received.get();
+    }
+
+    @Override
+    public long lostCount() {
+        return lost.get();
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdownNow();
+    }
+
+    /**
+     * Sends a batch to every other node. Called from the flush thread only.
+     */
+    abstract void send(Batch batch);
+
+    /**
+     * @return an empty batch telling a node that has just connected where this
+     *         origin's sequence is, so it can ask for what it missed
+     */
+    synchronized Batch position() {
+        return new Batch(origin, nextSequence, false, List.of());
+    }
+
+    /**
+     * @return the events kept from {@code fromSequence} on, as one replayed
+     *         batch; it starts later if the earlier ones are no longer kept
+     */
+    synchronized Batch replayFrom(long fromSequence) {
+        List<DelayEvent> events = new ArrayList<>();
+        long first = nextSequence;
+        for (Batch batch : sent) {
+            if (batch.nextSequence() <= fromSequence) {
+                continue;
+            }
+            int skip = (int) Math.max(0, fromSequence - batch.firstSequence());
+            first = Math.min(first, batch.firstSequence() + skip);
+            events.addAll(batch.events().subList(skip, batch.events().size()));
+        }
+        return new Batch(origin, first, true, events);
+    }
+
+    /**
+     * Hands the events of a batch from another node to the listeners, in
+     * sequence order and once each, asking for a replay if some came before it
+     * that have not been seen.
+     *
+     * @param askReplay sends a replay request for the given sequence number on
+     *                  to the batch's origin
+     */
+    void received(Batch batch, LongConsumer askReplay) {
+        Sequence sequence = sequences.computeIfAbsent(batch.origin(), key -> new Sequence());
+        synchronized (sequence) {
+            if (batch.firstSequence() > sequence.expected && !batch.isReplay()) {
+                if (!batch.events().isEmpty()) {
+                    sequence.held.put(batch.firstSequence(), batch);
+                }
+                if (!sequence.awaitingReplay) {
+                    sequence.awaitingReplay = true;
+                    askReplay.accept(sequence.expected);
+                } else if (sequence.held.size() > MAX_HELD_BATCHES) {
+                    logger.warn("No replay from {} since {}, going on without it", batch.origin(),
+                            sequence.expected);
+                    sequence.awaitingReplay = false;
+                    accept(sequence, sequence.held.pollFirstEntry().getValue());
+                }
+            } else {
+                if (batch.isReplay()) {
+                    sequence.awaitingReplay = false;
+                }
+                accept(sequence, batch);
+            }
+            while (!sequence.held.isEmpty() && sequence.held.firstKey() <= sequence.expected) {
+                accept(sequence, sequence.held.pollFirstEntry().getValue());
+            }
+        }
+    }
+
+    /**
+     * Hands on the events of the batch not seen yet, counting any skipped
+     * before it as lost.
+     */
+    private void accept(Sequence sequence, Batch batch) {
+        if (batch.firstSequence() > sequence.expected) {
+            long missed = batch.firstSequence() - sequence.expected;
+            lost.addAndGet(missed);
+            logger.warn("Lost {} events from {}, no longer kept there", missed, batch.origin());
+        }
+        List<DelayEvent> events = batch.events();
+        int seen = (int) Math.max(0, Math.min(events.size(), sequence.expected - batch.firstSequence()));
+        sequence.expected = Math.max(sequence.expected, batch.nextSequence());
+        if (seen == events.size()) {
+            return;
+        }
+        List<DelayEvent> fresh = events.subList(seen, events.size());
+        received.addAndGet(fresh.size());
+        for (Consumer<List<DelayEvent>> listener : listeners) {
+            try {
+                listener.accept(fresh);
+            } catch (RuntimeException e) {
+                logger.warn("Listener failed on {}", batch, e);
+            }
+        }
+    }
+
+    private void flush() {
+        while (flushBatch()) {
+            // events published faster than flushed go out in several batches
+        }
+    }
+
+    /**
+     * @return whether a batch was sent
+     */
+    private boolean flushBatch() {
+        Batch batch;
+        synchronized (this) {
+            if (queued.isEmpty()) {
+                return false;
+            }
+            if (queued.size() <= maxBatchSize) {
+                batch = new Batch(origin, nextSequence, false, queued);
+                queued = new ArrayList<>();
+            } else {
+                List<DelayEvent> first = queued.subList(0, maxBatchSize);
+                batch = new Batch(origin, nextSequence, false, new ArrayList<>(first));
+                first.clear();
+            }
+            nextSequence = batch.nextSequence();
+            sent.addLast(batch);
+            sentEvents += batch.events().size();
+            // with no replay capacity, not even the batch just sent is kept
+            while (!sent.isEmpty() && sentEvents - sent.getFirst().events().size() >= replayCapacity) {
+                sentEvents -= sent.removeFirst().events().size();
+            }
+        }
+        try {
+            send(batch);
+        } catch (RuntimeException e) {
+            logger.warn("Could not send {}", batch, e);
+        }
+        return true;
+    }
+
+    /**
+     * What has been received from one origin.
+     */
+    private static final class Sequence {
+
+        /** The next event to hand on; origins number theirs from 1. */
+        private long expected = 1;
+        private boolean awaitingReplay;
+        private final TreeMap<Long, Batch> held = new TreeMap<>();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ptjp.application.data.cluster;
+
+import com.ptjp.application.data.live.DelayEvent;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Shares the live delay stream between the nodes of a cluster, so only one of
+ * them needs to read the operator's feed.
+ *
+ * Events published on a node are sent to every other node in batches, each
+ * event numbered in its origin's sequence. A node that misses part of a
+ * sequence, because it joined late or lost a connection, asks the origin to
+ * replay it before going on, so listeners see each origin's events once and in
+ * order. Events older than the origin still keeps are skipped.
+ */
+public interface ClusterBroadcaster extends AutoCloseable {
+
+    /**
+     * @return this node's name in origins, unique to this run of the node
+     */
+    String origin();
+
+    /**
+     * Queues an event for the next batch to the other nodes. Never blocks on
+     * the network.
+     */
+    void publish(DelayEvent event);
+
+    /**
+     * Adds a listener for the events published on other nodes, called with
+     * each batch as it arrives, one batch at a time per origin.
+     */
+    void addListener(Consumer<List<DelayEvent>> listener);
+
+    /**
+     * @return how many events from other nodes have been handed to the
+     *         listeners
+     */
+    long receivedCount();
+
+    /**
+     * @return how many events from other nodes were lost for good, being no
+     *         longer kept by their origin when asked for
+     */
+    long lostCount();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,80 @@
+package com.ptjp.application.data.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Nodes in one JVM, joined by a {@link Hub}: for a single node, where there is
+ * no one to send to, and for trying out several nodes without a network.
+ *
+ * Batches are handed to the other nodes on the sender's flush thread, and
+ * replays are answered on the spot. A node starts cut off from the hub, so
+ * that its listeners can be added before it catches up, and can be cut off
+ * and joined again, missing what was sent meanwhile, to see it catch up.
+ */
+public final class LoopbackBroadcaster extends BatchingBroadcaster {
+
+    /** A replay is never short of anything, so never asks for another. */
+    private static final LongConsumer NO_REPLAY = sequence -> {
+    };
+
+    private final Hub hub;
+    private volatile boolean connected;
+
+    public LoopbackBroadcaster(Hub hub, String name, long batchMillis, int maxBatchSize, int replayCapacity) {
+        super(name, batchMillis, maxBatchSize, replayCapacity);
+        this.hub = hub;
+        hub.nodes.add(this);
+    }
+
+    /**
+     * Cuts the node off from the hub, or joins it again; on joining, the node
+     * and the others catch up with what they sent each other meanwhile.
+     */
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+        if (connected) {
+            catchUp();
+        }
+    }
+
+    @Override
+    void send(Batch batch) {
+        if (!connected) {
+            return;
+        }
+        for (LoopbackBroadcaster node : hub.nodes) {
+            if (node != this && node.connected) {
+                node.receive(this, batch);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        hub.nodes.remove(this);
+        super.close();
+    }
+
+    private void catchUp() {
+        for (LoopbackBroadcaster node : hub.nodes) {
+            if (node != this && node.connected) {
+                receive(node, node.position());
+                node.receive(this, position());
+            }
+        }
+    }
+
+    private void receive(LoopbackBroadcaster sender, Batch batch) {
+        received(batch, sequence -> received(sender.replayFrom(sequence), NO_REPLAY));
+    }
+
+    /**
+     * The nodes that see each other's batches.
+     */
+    public static final class Hub {
+
+        private final List<LoopbackBroadcaster> nodes = new CopyOnWriteArrayList<>();
+    }
+}
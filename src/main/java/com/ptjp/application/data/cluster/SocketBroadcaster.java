@@ -0,0 +1,245 @@
+package com.ptjp.application.data.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Nodes in separate JVMs, joined over TCP: on one machine, or on a network
+ * trusted not to forge delays.
+ *
+ * Each node listens on a port of its own and connects to every peer it is
+ * given, so a cluster lists each node's address in every other node's peers.
+ * A node sends its batches over the connections it opened and answers replay
+ * requests that come back over them; whenever it connects or reconnects, it
+ * first sends its position, so the peer asks for whatever it missed.
+ *
+ * A frame is a type byte, then a batch ({@link Batch#write}) or a replay
+ * request (origin, first sequence number wanted).
+ */
+public final class SocketBroadcaster extends BatchingBroadcaster {
+
+    private static final int BATCH = 1;
+    private static final int REPLAY = 2;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ServerSocket server;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final ExecutorService threads;
+    private volatile boolean closed;
+
+    /**
+     * @param listen where to accept the peers' connections; port 0 picks a
+     *               free one
+     * @param peers  the other nodes' listening addresses
+     */
+    public SocketBroadcaster(String name, InetSocketAddress listen, List<InetSocketAddress> peers, long batchMillis,
+            int maxBatchSize, int replayCapacity) throws IOException {
+        super(name, batchMillis, maxBatchSize, replayCapacity);
+        AtomicInteger count = new AtomicInteger();
+        this.threads = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "cluster-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = new ServerSocket();
+        try {
+            server.setReuseAddress(true);
+            server.bind(listen);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        threads.execute(this::accept);
+        for (InetSocketAddress address : peers) {
+            Peer peer = new Peer(address);
+            this.peers.add(peer);
+            threads.execute(peer::connect);
+        }
+    }
+
+    /**
+     * @return the port peers connect to
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return how many of the peers this node is connected to
+     */
+    public int connectedPeers() {
+        return (int) peers.stream().filter(peer -> peer.out != null).count();
+    }
+
+    @Override
+    void send(Batch batch) {
+        for (Peer peer : peers) {
+            peer.send(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // nothing more to do
+        }
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing more to do
+            }
+        }
+        threads.shutdownNow();
+        super.close();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                sockets.add(socket);
+                threads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Could not accept a peer's connection on {}", server.getLocalSocketAddress(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives a peer's batches over the connection it opened, asking it for
+     * replays over the same connection.
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            for (int type = in.read(); type >= 0 && !closed; type = in.read()) {
+                if (type != BATCH) {
+                    throw new IOException("Unexpected frame type " + type);
+                }
+                Batch batch = Batch.read(in);
+                received(batch, from -> {
+                    try {
+                        synchronized (out) {
+                            out.writeByte(REPLAY);
+                            out.writeUTF(batch.origin());
+                            out.writeLong(from);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // the read fails next and the peer reconnects
+                    }
+                });
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.debug("Lost the connection from {}", socket.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private static void write(DataOutputStream out, Batch batch) throws IOException {
+        synchronized (out) {
+            out.writeByte(BATCH);
+            batch.write(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * The connection this node opens to one peer, reopened whenever it drops.
+     */
+    private final class Peer {
+
+        private final InetSocketAddress address;
+        private volatile DataOutputStream out;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void connect() {
+            boolean reported = false;
+            while (!closed) {
+                try (Socket socket = new Socket()) {
+                    sockets.add(socket);
+                    socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                    socket.setTcpNoDelay(true);
+                    DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream output = new DataOutputStream(
+                            new BufferedOutputStream(socket.getOutputStream()));
+                    // batches flushed from here on go out on this connection, those before are replayed
+                    out = output;
+                    write(output, position());
+                    logger.info("Connected to cluster peer {}", address);
+                    reported = false;
+                    for (int type = input.read(); type >= 0 && !closed; type = input.read()) {
+                        if (type != REPLAY) {
+                            throw new IOException("Unexpected frame type " + type);
+                        }
+                        String origin = input.readUTF();
+                        long from = input.readLong();
+                        if (origin.equals(origin())) {
+                            write(output, replayFrom(from));
+                        }
+                    }
+                } catch (IOException e) {
+                    if (!reported && !closed) {
+                        logger.info("Cluster peer {} is unreachable, retrying every {} ms: {}", address,
+                                RECONNECT_MILLIS, e.toString());
+                        reported = true;
+                    }
+                } finally {
+                    out = null;
+                    sockets.removeIf(Socket::isClosed);
+                }
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void send(Batch batch) {
+            DataOutputStream output = out;
+            if (output == null) {
+                // replayed once connected
+                return;
+            }
+            try {
+                write(output, batch);
+            } catch (IOException e) {
+                // the connection's reader fails too and reconnects
+            }
+        }
+    }
+}
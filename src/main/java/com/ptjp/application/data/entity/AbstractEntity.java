@@ -1,17 +1,27 @@
 package com.ptjp.application.data.entity;
 
 import java.util.UUID;
+import javax.persistence.Column;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Type;
 
 @MappedSuperclass
 public abstract class AbstractEntity {
 
+    /**
+     * Stored as 16 bytes rather than a 36-character string; new ids are
+     * time-ordered (see {@link TimeOrderedUuidGenerator}) so the primary key
+     * index grows at one end.
+     */
     @Id
-    @GeneratedValue
-    @Type(type = "uuid-char")
+    @GeneratedValue(generator = TimeOrderedUuidGenerator.NAME)
+    @GenericGenerator(name = TimeOrderedUuidGenerator.NAME,
+            strategy = "com.ptjp.application.data.entity.TimeOrderedUuidGenerator")
+    @Type(type = "uuid-binary")
+    @Column(length = 16)
     private UUID id;
 
     public UUID getId() {
@@ -1,8 +1,12 @@
 package com.ptjp.application.data.entity;
 
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 @Entity
+@Table(indexes = { @Index(columnList = "firstName, id"), @Index(columnList = "lastName, id"),
+        @Index(columnList = "email, id"), @Index(columnList = "phone, id") })
 public class Users extends AbstractEntity {
 
     private String firstName;
@@ -0,0 +1,152 @@
+package com.ptjp.application.data.generator;
+
+import com.ptjp.application.data.Role;
+import com.ptjp.application.data.entity.TimeOrderedUuidGenerator;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Fills the database with load-test volumes of {@code Users} rows and
+ * {@code User} accounts.
+ *
+ * Rows go straight from generated values into JDBC batch inserts, one
+ * transaction per batch, so memory stays flat however many rows are asked for
+ * and no entity ever enters a persistence context. Progress and the final
+ * rate are logged in rows per second.
+ */
+public class BulkDataGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkDataGenerator.class);
+    private static final String[] FIRST_NAMES = { "Thandiwe", "Sipho", "Ayanda", "Lerato", "Johan", "Annelie",
+            "Mohamed", "Fatima", "Pieter", "Nomvula", "Kagiso", "Zanele", "Michael", "Jessica", "Lindiwe",
+            "Themba", "Riaan", "Chantelle", "Bongani", "Naledi", "Ruan", "Aaliyah", "Lwazi", "Karabo", "Sarah",
+            "David", "Precious", "Thabo", "Elize", "Yusuf" };
+    private static final String[] LAST_NAMES = { "Nkosi", "van der Merwe", "Dlamini", "Botha", "Naidoo", "Mokoena",
+            "Adams", "Jacobs", "Pillay", "Khumalo", "Smit", "Petersen", "Ndlovu", "Isaacs", "Williams", "Mthembu",
+            "Fourie", "Hendricks", "Zulu", "Daniels", "Govender", "du Plessis", "Sithole", "Abrahams", "Nel",
+            "Mahlangu", "Pretorius", "Cloete", "Moodley", "Mbeki" };
+    private static final String[] MAIL_DOMAINS = { "example.co.za", "example.com", "example.org" };
+    private static final long PROGRESS_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public BulkDataGenerator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Inserts {@code count} people with made-up South African names, emails and
+     * mobile numbers. The same seed gives the same people, apart from their
+     * ids.
+     *
+     * The values come from small built-in lists rather than the example data
+     * library used for the demo data, which is far too slow for millions of
+     * rows.
+     */
+    public void generateUsers(int count, int seed) {
+        Random random = new Random(seed);
+        Progress progress = new Progress("Users", count);
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < count; i++) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String email = (first + "." + last.replace(" ", "")).toLowerCase() + random.nextInt(10_000) + "@"
+                    + MAIL_DOMAINS[random.nextInt(MAIL_DOMAINS.length)];
+            String phone = String.format("(0%d) %03d-%04d", 60 + random.nextInt(24), random.nextInt(1000),
+                    random.nextInt(10_000));
+            batch.add(new Object[] { bytes(TimeOrderedUuidGenerator.next()), first, last, email, phone });
+            if (batch.size() == batchSize || i == count - 1) {
+                insert("insert into users (id, first_name, last_name, email, phone) values (?, ?, ?, ?, ?)", batch);
+                progress.advance(batch.size());
+                batch.clear();
+            }
+        }
+        progress.done();
+    }
+
+    /**
+     * Inserts {@code count} accounts named {@code user1}, {@code user2} and so
+     * on, sharing one password hash so that generating them does not cost a
+     * bcrypt hash each. Every hundredth account is also an administrator.
+     */
+    public void generateAccounts(int count, String hashedPassword) {
+        Progress progress = new Progress("User accounts", count);
+        List<Object[]> accounts = new ArrayList<>(batchSize);
+        List<Object[]> roles = new ArrayList<>(batchSize + batchSize / 100 + 1);
+        for (int i = 1; i <= count; i++) {
+            byte[] id = bytes(TimeOrderedUuidGenerator.next());
+            accounts.add(new Object[] { id, "user" + i, "Load Test User " + i, hashedPassword });
+            roles.add(new Object[] { id, Role.USER.name() });
+            if (i % 100 == 0) {
+                roles.add(new Object[] { id, Role.ADMIN.name() });
+            }
+            if (accounts.size() == batchSize || i == count) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(
+                            "insert into application_user (id, username, name, hashed_password) values (?, ?, ?, ?)",
+                            accounts);
+                    jdbcTemplate.batchUpdate("insert into user_roles (user_id, roles) values (?, ?)", roles);
+                });
+                progress.advance(accounts.size());
+                accounts.clear();
+                roles.clear();
+            }
+        }
+        progress.done();
+    }
+
+    private void insert(String sql, List<Object[]> batch) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, batch));
+    }
+
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    private static final class Progress {
+
+        private final String what;
+        private final int total;
+        private final long start = System.nanoTime();
+        private long lastReport = start;
+        private long done;
+
+        Progress(String what, int total) {
+            this.what = what;
+            this.total = total;
+            logger.info("... generating {} {} rows in batches...", total, what);
+        }
+
+        void advance(int rows) {
+            done += rows;
+            long now = System.nanoTime();
+            if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                logger.info("... {}: {} of {} rows, {} rows/s", what, done, total, rate(now));
+            }
+        }
+
+        void done() {
+            long now = System.nanoTime();
+            logger.info("... {}: {} rows in {} s, {} rows/s", what, done, (now - start) / 1_000_000_000L, rate(now));
+        }
+
+        private long rate(long now) {
+            return Math.round(done * 1e9 / Math.max(1, now - start));
+        }
+    }
+}
@@ -3,26 +3,36 @@ package com.ptjp.application.data.generator;
 import com.ptjp.application.data.Role;
 import com.ptjp.application.data.entity.User;
 import com.ptjp.application.data.entity.Users;
+import com.ptjp.application.data.service.TimetableService;
 import com.ptjp.application.data.service.UserRepository;
 import com.ptjp.application.data.service.UsersRepository;
+import com.ptjp.application.data.service.UsersSearchService;
 import com.vaadin.exampledata.DataType;
 import com.vaadin.exampledata.ExampleDataGenerator;
 import com.vaadin.flow.spring.annotation.SpringComponent;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
 
 @SpringComponent
 public class DataGenerator {
 
     @Bean
     public CommandLineRunner loadData(PasswordEncoder passwordEncoder, UserRepository userRepository,
-            UsersRepository usersRepository) {
+            UsersRepository usersRepository, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            @Value("${generator.bulk.users:0}") int bulkUsers,
+            @Value("${generator.bulk.accounts:0}") int bulkAccounts,
+            @Value("${generator.bulk.batch-size:1000}") int batchSize) {
         return args -> {
             Logger logger = LoggerFactory.getLogger(getClass());
             if (userRepository.count() != 0L) {
@@ -30,6 +40,8 @@ public class DataGenerator {
                 return;
             }
             int seed = 123;
+            // before spending minutes on rows the search index could not hold
+            UsersSearchService.checkHeap(100L + bulkUsers);
 
             logger.info("Generating demo data");
 
@@ -59,8 +71,42 @@ public class DataGenerator {
             usersRepositoryGenerator.setData(Users::setPhone, DataType.PHONE_NUMBER);
             usersRepository.saveAll(usersRepositoryGenerator.create(100, seed));
 
+            if (bulkUsers > 0 || bulkAccounts > 0) {
+                BulkDataGenerator bulk = new BulkDataGenerator(jdbcTemplate, transactionManager, batchSize);
+                bulk.generateAccounts(bulkAccounts, user.getHashedPassword());
+                bulk.generateUsers(bulkUsers, seed);
+            }
+
             logger.info("Generated demo data");
         };
     }
 
+    @Bean
+    public CommandLineRunner loadTimetable(TimetableService timetableService,
+            @Value("${timetable.gtfs-path:}") String gtfsPath,
+            @Value("${generator.bulk.network-lines:0}") int networkLines,
+            @Value("${generator.bulk.stations-per-line:40}") int stationsPerLine) {
+        return args -> {
+            Logger logger = LoggerFactory.getLogger(getClass());
+            Path feed;
+            if (gtfsPath.isEmpty() && networkLines > 0) {
+                logger.info("... generating a synthetic network of {} lines...", networkLines);
+                feed = Files.createTempFile("synthetic-gtfs", ".zip");
+                feed.toFile().deleteOnExit();
+                long start = System.nanoTime();
+                long stopTimes = SyntheticGtfsFeed.radial(networkLines, stationsPerLine).write(feed);
+                logger.info("... wrote {} stop times, {} rows/s", stopTimes,
+                        Math.round(stopTimes * 1e9 / (System.nanoTime() - start)));
+            } else if (gtfsPath.isEmpty()) {
+                logger.info("... generating the Metrorail demo timetable...");
+                feed = Files.createTempFile("metrorail-gtfs", ".zip");
+                feed.toFile().deleteOnExit();
+                SyntheticGtfsFeed.metrorail().write(feed);
+            } else {
+                feed = Path.of(gtfsPath);
+            }
+            timetableService.load(feed);
+        };
+    }
+
 }
\ No newline at end of file
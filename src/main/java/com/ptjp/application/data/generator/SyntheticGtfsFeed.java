@@ -0,0 +1,350 @@
+package com.ptjp.application.data.generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a GTFS zip for a rail network, either the Cape Town Metrorail demo
+ * network or a synthetic radial network of any size for load testing.
+ *
+ * Trips run in both directions on every line at a fixed headway, with a
+ * thinner weekend service. Each line has a shape with a point every few tens
+ * of metres, curving gently between stations, as surveyed track would. The feed is streamed straight into the zip, so
+ * feeds with millions of stop times need no more memory than the network
+ * description.
+ */
+public class SyntheticGtfsFeed {
+
+    private static final double CBD_LAT = -33.9222;
+    private static final double CBD_LON = 18.4260;
+    private static final int DWELL_SECONDS = 30;
+    private static final double METRES_PER_SECOND = 12.5;
+    private static final double SHAPE_POINT_METRES = 20;
+    private static final double CURVE_METRES = 60;
+
+    private final Map<String, Station> stations = new LinkedHashMap<>();
+    private final List<Line> lines = new ArrayList<>();
+    private int weekdayHeadwayMinutes = 15;
+    private int weekendHeadwayMinutes = 30;
+    private int firstDeparture = 4 * 3600 + 30 * 60;
+    private int lastDeparture = 22 * 3600 + 30 * 60;
+
+    /**
+     * The four Metrorail lines out of Cape Town station, with approximate
+     * station locations.
+     */
+    public static SyntheticGtfsFeed metrorail() {
+        SyntheticGtfsFeed feed = new SyntheticGtfsFeed();
+        feed.station("Cape Town", -33.9222, 18.4260).station("Woodstock", -33.9275, 18.4470)
+                .station("Salt River", -33.9290, 18.4620);
+
+        feed.station("Observatory", -33.9380, 18.4690).station("Mowbray", -33.9480, 18.4720)
+                .station("Rosebank", -33.9550, 18.4720).station("Rondebosch", -33.9620, 18.4720)
+                .station("Newlands", -33.9720, 18.4670).station("Claremont", -33.9800, 18.4650)
+                .station("Harfield Road", -33.9870, 18.4680).station("Kenilworth", -33.9960, 18.4710)
+                .station("Wynberg", -34.0040, 18.4690).station("Wittebome", -34.0110, 18.4700)
+                .station("Plumstead", -34.0200, 18.4720).station("Steurhof", -34.0270, 18.4710)
+                .station("Diep River", -34.0340, 18.4720).station("Heathfield", -34.0440, 18.4730)
+                .station("Retreat", -34.0550, 18.4760).station("Steenberg", -34.0670, 18.4740)
+                .station("Lakeside", -34.0850, 18.4570).station("False Bay", -34.0930, 18.4630)
+                .station("Muizenberg", -34.1060, 18.4700).station("St James", -34.1190, 18.4580)
+                .station("Kalk Bay", -34.1280, 18.4480).station("Clovelly", -34.1300, 18.4380)
+                .station("Fish Hoek", -34.1370, 18.4330).station("Sunny Cove", -34.1440, 18.4400)
+                .station("Glencairn", -34.1600, 18.4330).station("Simon's Town", -34.1880, 18.4330);
+        feed.line("SOUTHERN", "Southern Line", "Cape Town", "Woodstock", "Salt River", "Observatory", "Mowbray",
+                "Rosebank", "Rondebosch", "Newlands", "Claremont", "Harfield Road", "Kenilworth", "Wynberg",
+                "Wittebome", "Plumstead", "Steurhof", "Diep River", "Heathfield", "Retreat", "Steenberg", "Lakeside",
+                "False Bay", "Muizenberg", "St James", "Kalk Bay", "Clovelly", "Fish Hoek", "Sunny Cove", "Glencairn",
+                "Simon's Town");
+
+        feed.station("Koeberg Road", -33.9220, 18.4870).station("Maitland", -33.9240, 18.4950)
+                .station("Kensington", -33.9140, 18.5040).station("Goodwood", -33.9110, 18.5510)
+                .station("Vasco", -33.9090, 18.5720).station("Elsies River", -33.9130, 18.5830)
+                .station("Parow", -33.9020, 18.5950).station("Tygerberg", -33.8990, 18.6110)
+                .station("Bellville", -33.8970, 18.6290).station("Stellenberg", -33.8890, 18.6560)
+                .station("Kraaifontein", -33.8480, 18.7220);
+        feed.line("NORTHERN", "Northern Line", "Cape Town", "Woodstock", "Salt River", "Koeberg Road", "Maitland",
+                "Kensington", "Goodwood", "Vasco", "Elsies River", "Parow", "Tygerberg", "Bellville", "Stellenberg",
+                "Kraaifontein");
+
+        feed.station("Mutual", -33.9380, 18.5070).station("Langa", -33.9440, 18.5290)
+                .station("Bonteheuwel", -33.9510, 18.5500).station("Netreg", -33.9610, 18.5610)
+                .station("Heideveld", -33.9660, 18.5650).station("Nyanga", -33.9850, 18.5750)
+                .station("Philippi", -34.0010, 18.5970).station("Mandalay", -34.0150, 18.6160)
+                .station("Nolungile", -34.0290, 18.6580).station("Nonkqubela", -34.0330, 18.6700)
+                .station("Khayelitsha", -34.0390, 18.6820).station("Kuyasa", -34.0530, 18.6920)
+                .station("Chris Hani", -34.0400, 18.7050);
+        feed.line("CENTRAL", "Central Line", "Cape Town", "Woodstock", "Salt River", "Mutual", "Langa",
+                "Bonteheuwel", "Netreg", "Heideveld", "Nyanga", "Philippi", "Mandalay", "Nolungile", "Nonkqubela",
+                "Khayelitsha", "Kuyasa", "Chris Hani");
+
+        feed.station("Pinelands", -33.9380, 18.5050).station("Hazendal", -33.9560, 18.5110)
+                .station("Athlone", -33.9630, 18.5110).station("Crawford", -33.9740, 18.5080)
+                .station("Lansdowne", -33.9850, 18.5040).station("Wetton", -34.0030, 18.4990)
+                .station("Ottery", -34.0170, 18.5020).station("Southfield", -34.0310, 18.4900);
+        feed.line("CAPE_FLATS", "Cape Flats Line", "Cape Town", "Woodstock", "Salt River", "Pinelands", "Hazendal",
+                "Athlone", "Crawford", "Lansdowne", "Wetton", "Ottery", "Southfield", "Heathfield", "Retreat");
+        return feed;
+    }
+
+    /**
+     * A synthetic network of {@code lineCount} lines radiating from the CBD,
+     * {@code stationsPerLine} stations each about 1.5 km apart, joined by ring
+     * lines every ten stations so journeys need transfers.
+     */
+    public static SyntheticGtfsFeed radial(int lineCount, int stationsPerLine) {
+        SyntheticGtfsFeed feed = new SyntheticGtfsFeed();
+        feed.station("HUB", "Central Hub", CBD_LAT, CBD_LON);
+        double degreesPerKm = 1 / 111.0;
+        for (int line = 0; line < lineCount; line++) {
+            double angle = 2 * Math.PI * line / lineCount;
+            String[] ids = new String[stationsPerLine + 1];
+            ids[0] = "HUB";
+            for (int i = 1; i <= stationsPerLine; i++) {
+                double km = 1.5 * i;
+                double lat = CBD_LAT + Math.sin(angle) * km * degreesPerKm;
+                double lon = CBD_LON + Math.cos(angle) * km * degreesPerKm / Math.cos(Math.toRadians(CBD_LAT));
+                ids[i] = "S" + line + "_" + i;
+                feed.station(ids[i], "Line " + (line + 1) + " Station " + i, lat, lon);
+            }
+            feed.lines.add(new Line("R" + line, "Radial " + (line + 1), ids));
+        }
+        for (int ring = 10; ring <= stationsPerLine && lineCount > 2; ring += 10) {
+            String[] ids = new String[lineCount];
+            for (int line = 0; line < lineCount; line++) {
+                ids[line] = "S" + line + "_" + ring;
+            }
+            feed.lines.add(new Line("RING" + ring, "Ring " + ring, ids));
+        }
+        return feed;
+    }
+
+    public SyntheticGtfsFeed headways(int weekdayMinutes, int weekendMinutes) {
+        this.weekdayHeadwayMinutes = weekdayMinutes;
+        this.weekendHeadwayMinutes = weekendMinutes;
+        return this;
+    }
+
+    public int stationCount() {
+        return stations.size();
+    }
+
+    /**
+     * Writes the feed to {@code zip}, replacing any existing file.
+     *
+     * @return the number of stop times written
+     */
+    public long write(Path zip) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+            entry(out, writer, "agency.txt");
+            writer.write("agency_id,agency_name,agency_url,agency_timezone\n");
+            writer.write("METRORAIL,Metrorail Western Cape,https://www.metrorail.co.za,Africa/Johannesburg\n");
+
+            entry(out, writer, "stops.txt");
+            writer.write("stop_id,stop_name,stop_lat,stop_lon\n");
+            for (Station station : stations.values()) {
+                writer.write(String.format(Locale.ROOT, "%s,\"%s\",%.6f,%.6f\n", station.id, station.name,
+                        station.lat, station.lon));
+            }
+
+            entry(out, writer, "routes.txt");
+            writer.write("route_id,agency_id,route_short_name,route_long_name,route_type\n");
+            for (Line line : lines) {
+                writer.write(line.id + ",METRORAIL,\"" + line.name + "\",\"" + line.name + "\",2\n");
+            }
+
+            entry(out, writer, "calendar.txt");
+            writer.write("service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date\n");
+            writer.write("WEEKDAY,1,1,1,1,1,0,0,20220101,20301231\n");
+            writer.write("WEEKEND,0,0,0,0,0,1,1,20220101,20301231\n");
+
+            entry(out, writer, "trips.txt");
+            writer.write("route_id,service_id,trip_id,direction_id,shape_id\n");
+            forEachTrip((line, service, direction, departure, tripId) -> writer
+                    .write(line.id + "," + service + "," + tripId + "," + direction + "," + line.id + "\n"));
+
+            entry(out, writer, "shapes.txt");
+            writer.write("shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\n");
+            for (Line line : lines) {
+                writeShape(writer, line);
+            }
+
+            entry(out, writer, "stop_times.txt");
+            writer.write("trip_id,arrival_time,departure_time,stop_id,stop_sequence\n");
+            long[] stopTimes = new long[1];
+            StringBuilder row = new StringBuilder(64);
+            forEachTrip((line, service, direction, departure, tripId) -> {
+                String[] ids = line.stations;
+                int time = departure;
+                for (int sequence = 0; sequence < ids.length; sequence++) {
+                    Station station = stations.get(ids[direction == 0 ? sequence : ids.length - 1 - sequence]);
+                    if (sequence > 0) {
+                        Station previous = stations.get(
+                                ids[direction == 0 ? sequence - 1 : ids.length - sequence]);
+                        time += runningSeconds(previous, station);
+                    }
+                    int leave = sequence == 0 || sequence == ids.length - 1 ? time : time + DWELL_SECONDS;
+                    row.setLength(0);
+                    row.append(tripId).append(',');
+                    appendTime(row, time).append(',');
+                    appendTime(row, leave).append(',');
+                    row.append(station.id).append(',').append(sequence + 1).append('\n');
+                    writer.append(row);
+                    time = leave;
+                    stopTimes[0]++;
+                }
+            });
+            writer.flush();
+            out.closeEntry();
+            return stopTimes[0];
+        }
+    }
+
+    private SyntheticGtfsFeed station(String name, double lat, double lon) {
+        return station(name.toUpperCase(Locale.ROOT).replaceAll("[^A-Z]+", "_"), name, lat, lon);
+    }
+
+    private SyntheticGtfsFeed station(String id, String name, double lat, double lon) {
+        stations.put(id, new Station(id, name, lat, lon));
+        return this;
+    }
+
+    private void line(String id, String name, String... stationNames) {
+        String[] ids = new String[stationNames.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = stationNames[i].toUpperCase(Locale.ROOT).replaceAll("[^A-Z]+", "_");
+            if (!stations.containsKey(ids[i])) {
+                throw new IllegalArgumentException("Unknown station " + stationNames[i]);
+            }
+        }
+        lines.add(new Line(id, name, ids));
+    }
+
+    private void forEachTrip(TripConsumer consumer) throws IOException {
+        for (Line line : lines) {
+            for (int direction = 0; direction < 2; direction++) {
+                int trip = 0;
+                for (int departure = firstDeparture; departure <= lastDeparture; departure += weekdayHeadwayMinutes
+                        * 60) {
+                    consumer.accept(line, "WEEKDAY", direction, departure,
+                            line.id + "_WD_" + direction + "_" + trip++);
+                }
+                trip = 0;
+                for (int departure = firstDeparture + 90 * 60; departure <= lastDeparture
+                        - 120 * 60; departure += weekendHeadwayMinutes * 60) {
+                    consumer.accept(line, "WEEKEND", direction, departure,
+                            line.id + "_WE_" + direction + "_" + trip++);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the line's track as points between consecutive stations, bowed to
+     * one side and back by up to {@link #CURVE_METRES}.
+     */
+    private void writeShape(Writer writer, Line line) throws IOException {
+        int sequence = 1;
+        for (int i = 0; i < line.stations.length; i++) {
+            Station to = stations.get(line.stations[i]);
+            if (i == 0) {
+                writeShapePoint(writer, line, to.lat, to.lon, sequence++);
+                continue;
+            }
+            Station from = stations.get(line.stations[i - 1]);
+            double metresPerDegreeLon = 111_000 * Math.cos(Math.toRadians(from.lat));
+            double north = (to.lat - from.lat) * 111_000;
+            double east = (to.lon - from.lon) * metresPerDegreeLon;
+            double metres = Math.sqrt(north * north + east * east);
+            int steps = Math.max(1, (int) Math.ceil(metres / SHAPE_POINT_METRES));
+            for (int step = 1; step <= steps; step++) {
+                double t = (double) step / steps;
+                double bow = metres == 0 ? 0
+                        : CURVE_METRES * Math.sin(Math.PI * t) * Math.sin(2 * Math.PI * t) / metres;
+                // perpendicular to the straight line between the stations
+                double lat = from.lat + (north * t + east * bow) / 111_000;
+                double lon = from.lon + (east * t - north * bow) / metresPerDegreeLon;
+                writeShapePoint(writer, line, lat, lon, sequence++);
+            }
+        }
+    }
+
+    private static void writeShapePoint(Writer writer, Line line, double lat, double lon, int sequence)
+            throws IOException {
+        writer.write(String.format(Locale.ROOT, "%s,%.6f,%.6f,%d\n", line.id, lat, lon, sequence));
+    }
+
+    private static int runningSeconds(Station from, Station to) {
+        double dLat = Math.toRadians(to.lat - from.lat);
+        double dLon = Math.toRadians(to.lon - from.lon) * Math.cos(Math.toRadians(from.lat));
+        double metres = 6_371_000 * Math.sqrt(dLat * dLat + dLon * dLon);
+        return Math.max(60, (int) Math.round(metres / METRES_PER_SECOND / 30) * 30);
+    }
+
+    private static StringBuilder appendTime(StringBuilder row, int seconds) {
+        int hours = seconds / 3600;
+        int minutes = seconds / 60 % 60;
+        int secs = seconds % 60;
+        if (hours < 10) {
+            row.append('0');
+        }
+        row.append(hours).append(':');
+        if (minutes < 10) {
+            row.append('0');
+        }
+        row.append(minutes).append(':');
+        if (secs < 10) {
+            row.append('0');
+        }
+        return row.append(secs);
+    }
+
+    private static void entry(ZipOutputStream out, Writer writer, String name) throws IOException {
+        writer.flush();
+        out.putNextEntry(new ZipEntry(name));
+    }
+
+    @FunctionalInterface
+    private interface TripConsumer {
+        void accept(Line line, String service, int direction, int departure, String tripId) throws IOException;
+    }
+
+    private static final class Station {
+        private final String id;
+        private final String name;
+        private final double lat;
+        private final double lon;
+
+        Station(String id, String name, double lat, double lon) {
+            this.id = id;
+            this.name = name;
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+
+    private static final class Line {
+        private final String id;
+        private final String name;
+        private final String[] stations;
+
+        Line(String id, String name, String[] stations) {
+            this.id = id;
+            this.name = name;
+            this.stations = stations;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.ptjp.application.data.live;
+
+import java.time.LocalDate;
+
+/**
+ * A real-time report about one run of a trip: it is running late (or early)
+ * at a stop, or it has been cancelled from a stop onwards.
+ *
+ * Published as a Spring application event by whatever reads the operator's
+ * feed; {@code EtaService} applies it to the ETAs of the stops after it.
+ */
+public final class DelayEvent {
+
+    private final String tripId;
+    private final LocalDate serviceDate;
+    private final int stopIndex;
+    private final String stopId;
+    private final int delaySeconds;
+    private final boolean cancelled;
+
+    private DelayEvent(String tripId, LocalDate serviceDate, int stopIndex, String stopId, int delaySeconds,
+            boolean cancelled) {
+        if (stopIndex < 0) {
+            throw new IllegalArgumentException("Negative stop index " + stopIndex);
+        }
+        this.tripId = tripId;
+        this.serviceDate = serviceDate;
+        this.stopIndex = stopIndex;
+        this.stopId = stopId;
+        this.delaySeconds = delaySeconds;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * The trip reaches the stop at {@code stopIndex} (0 for its first stop)
+     * {@code delaySeconds} after its scheduled arrival, or before it if
+     * negative. A delay reported for a cancelled stop reinstates the trip.
+     */
+    public static DelayEvent delay(String tripId, LocalDate serviceDate, int stopIndex, int delaySeconds) {
+        return new DelayEvent(tripId, serviceDate, stopIndex, null, delaySeconds, false);
+    }
+
+    /**
+     * The trip no longer calls at the stop at {@code stopIndex} nor at any
+     * after it; 0 cancels the whole trip.
+     */
+    public static DelayEvent cancellation(String tripId, LocalDate serviceDate, int stopIndex) {
+        return new DelayEvent(tripId, serviceDate, stopIndex, null, 0, true);
+    }
+
+    /**
+     * @return the same report, naming its stop by GTFS {@code stop_id} too,
+     *         for a timetable in which the trip calls at other stops before it
+     */
+    public DelayEvent atStop(String stopId) {
+        return new DelayEvent(tripId, serviceDate, stopIndex, stopId, delaySeconds, cancelled);
+    }
+
+    /**
+     * @return the GTFS {@code trip_id}
+     */
+    public String getTripId() {
+        return tripId;
+    }
+
+    /**
+     * @return the service day of the run, which for trips past midnight is the
+     *         day before the calendar date
+     */
+    public LocalDate getServiceDate() {
+        return serviceDate;
+    }
+
+    /**
+     * @return the position of the stop within the trip, from 0
+     */
+    public int getStopIndex() {
+        return stopIndex;
+    }
+
+    /**
+     * @return the GTFS {@code stop_id} of the stop, or {@code null} if the
+     *         report gives only its position
+     */
+    public String getStopId() {
+        return stopId;
+    }
+
+    public int getDelaySeconds() {
+        return delaySeconds;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        String stop = stopId == null ? "stop " + stopIndex : "stop " + stopIndex + " (" + stopId + ")";
+        return cancelled ? "Trip " + tripId + " on " + serviceDate + " cancelled from " + stop
+                : "Trip " + tripId + " on " + serviceDate + " " + delaySeconds + " s late at " + stop;
+    }
+}
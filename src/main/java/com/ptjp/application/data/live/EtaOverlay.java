@@ -0,0 +1,235 @@
+package com.ptjp.application.data.live;
+
+import com.ptjp.application.data.timetable.Timetable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Expected arrival and departure times, layered over a static
+ * {@link Timetable} without changing it.
+ *
+ * Only runs that deviate from the schedule have an entry: a {@link TripEtas}
+ * per trip and service day. A {@link DelayEvent} recomputes just the stops
+ * after the one it reports, and stops as soon as a stop's times come out as
+ * they were, since nothing after it can change either. A late train makes up
+ * time where it was scheduled to dwell longer than {@code minDwellSeconds};
+ * it never leaves a stop before its scheduled departure.
+ *
+ * Events are applied one at a time. Entries are immutable and replaced
+ * whole, so readers, such as the train positions worked out every few
+ * seconds, need no lock and always see a consistent run.
+ */
+public final class EtaOverlay {
+
+    private final Timetable timetable;
+    private final int minDwellSeconds;
+    private final ConcurrentHashMap<Long, TripEtas> trips = new ConcurrentHashMap<>();
+
+    public EtaOverlay(Timetable timetable, int minDwellSeconds) {
+        this.timetable = timetable;
+        this.minDwellSeconds = minDwellSeconds;
+    }
+
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    /**
+     * @return the expected times of a run of a trip, or {@code null} if it runs
+     *         to schedule
+     */
+    public TripEtas get(int trip, LocalDate serviceDate) {
+        return trips.get(key(trip, serviceDate));
+    }
+
+    /**
+     * @return the runs that deviate from the schedule
+     */
+    public int size() {
+        return trips.size();
+    }
+
+    /**
+     * @return the expected times at one stop of a run, as scheduled if nothing
+     *         has been reported
+     */
+    public StopTimeEta eta(int trip, int stopTime, LocalDate serviceDate) {
+        TripEtas etas = get(trip, serviceDate);
+        int arrival = etas == null ? timetable.arrival(stopTime) : etas.arrival(stopTime);
+        int departure = etas == null ? timetable.departure(stopTime) : etas.departure(stopTime);
+        return new StopTimeEta(serviceDate, trip, stopTime, timetable.stopTimeStop(stopTime),
+                timetable.departure(stopTime), arrival, departure, etas != null && etas.isCancelled(stopTime));
+    }
+
+    /**
+     * Applies a report to the stops it affects.
+     *
+     * @return the stop times whose expected times or cancellation changed, in
+     *         trip order
+     * @throws IllegalArgumentException if the timetable has no such trip, or
+     *                                  the trip no such stop
+     */
+    public synchronized List<StopTimeEta> apply(DelayEvent event) {
+        int trip = timetable.tripIndex(event.getTripId());
+        if (trip < 0) {
+            throw new IllegalArgumentException("Unknown trip " + event.getTripId());
+        }
+        int first = timetable.tripFirstStopTime(trip);
+        int count = timetable.tripStopCount(trip);
+        int index = stopIndex(event, first, count);
+        long key = key(trip, event.getServiceDate());
+        TripEtas before = trips.get(key);
+        int wasCancelledFrom = before == null ? count : before.cancelledFrom;
+        int[] arrivals = new int[count];
+        int[] departures = new int[count];
+        for (int i = 0; i < count; i++) {
+            arrivals[i] = before == null ? timetable.arrival(first + i) : before.arrivals[i];
+            departures[i] = before == null ? timetable.departure(first + i) : before.departures[i];
+        }
+
+        int cancelledFrom = wasCancelledFrom;
+        int changedFrom = index;
+        int changedTo = index;
+        if (event.isCancelled()) {
+            cancelledFrom = Math.min(index, wasCancelledFrom);
+            changedTo = wasCancelledFrom;
+        } else {
+            if (index >= wasCancelledFrom) {
+                // the train is running after all
+                cancelledFrom = count;
+                changedFrom = wasCancelledFrom;
+            }
+            int arrival = timetable.arrival(first + index) + event.getDelaySeconds();
+            for (int i = index; i < count; i++) {
+                int stopTime = first + i;
+                if (i > index) {
+                    arrival = departures[i - 1] + timetable.arrival(stopTime) - timetable.departure(stopTime - 1);
+                }
+                int departure = Math.max(timetable.departure(stopTime),
+                        arrival + Math.min(timetable.departure(stopTime) - timetable.arrival(stopTime),
+                                minDwellSeconds));
+                boolean unchanged = arrival == arrivals[i] && departure == departures[i]
+                        && (i < wasCancelledFrom) == (i < cancelledFrom);
+                if (unchanged && i > index) {
+                    break;
+                }
+                arrivals[i] = arrival;
+                departures[i] = departure;
+                changedTo = i + 1;
+            }
+        }
+
+        TripEtas after = new TripEtas(first, arrivals, departures, cancelledFrom);
+        if (after.isOnSchedule(timetable)) {
+            trips.remove(key);
+        } else {
+            trips.put(key, after);
+        }
+        List<StopTimeEta> changes = new ArrayList<>(Math.max(changedTo - changedFrom, 0));
+        for (int i = changedFrom; i < changedTo; i++) {
+            int stopTime = first + i;
+            boolean cancelled = i >= cancelledFrom;
+            int previousArrival = before == null ? timetable.arrival(stopTime) : before.arrivals[i];
+            int previousDeparture = before == null ? timetable.departure(stopTime) : before.departures[i];
+            if (arrivals[i] != previousArrival || departures[i] != previousDeparture
+                    || cancelled != i >= wasCancelledFrom) {
+                changes.add(new StopTimeEta(event.getServiceDate(), trip, stopTime, timetable.stopTimeStop(stopTime),
+                        timetable.departure(stopTime), arrivals[i], departures[i], cancelled));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Forgets runs of service days before {@code serviceDate}.
+     */
+    public void expireBefore(LocalDate serviceDate) {
+        long firstKey = key(0, serviceDate);
+        trips.keySet().removeIf(key -> key < firstKey);
+    }
+
+    /**
+     * @return the position of the reported stop in the trip: the one given,
+     *         unless the report names a stop that the trip calls at elsewhere
+     *         in this timetable, then the call there nearest to it
+     */
+    private int stopIndex(DelayEvent event, int first, int count) {
+        int index = event.getStopIndex();
+        String stopId = event.getStopId();
+        if (stopId == null) {
+            if (index >= count) {
+                throw new IllegalArgumentException("Trip " + event.getTripId() + " has " + count + " stops, not "
+                        + (index + 1));
+            }
+            return index;
+        }
+        int nearest = -1;
+        for (int i = 0; i < count; i++) {
+            if (timetable.stopId(timetable.stopTimeStop(first + i)).equals(stopId)
+                    && (nearest < 0 || Math.abs(i - index) < Math.abs(nearest - index))) {
+                nearest = i;
+            }
+        }
+        if (nearest < 0) {
+            throw new IllegalArgumentException("Trip " + event.getTripId() + " does not call at " + stopId);
+        }
+        return nearest;
+    }
+
+    private static long key(int trip, LocalDate serviceDate) {
+        return serviceDate.toEpochDay() << 32 | trip;
+    }
+
+    /**
+     * Expected times of one run of a trip, looked up by the timetable's stop
+     * time indexes.
+     */
+    public static final class TripEtas {
+
+        private final int firstStopTime;
+        private final int[] arrivals;
+        private final int[] departures;
+        private final int cancelledFrom;
+
+        TripEtas(int firstStopTime, int[] arrivals, int[] departures, int cancelledFrom) {
+            this.firstStopTime = firstStopTime;
+            this.arrivals = arrivals;
+            this.departures = departures;
+            this.cancelledFrom = cancelledFrom;
+        }
+
+        public int arrival(int stopTime) {
+            return arrivals[stopTime - firstStopTime];
+        }
+
+        public int departure(int stopTime) {
+            return departures[stopTime - firstStopTime];
+        }
+
+        public boolean isCancelled(int stopTime) {
+            return stopTime - firstStopTime >= cancelledFrom;
+        }
+
+        /**
+         * @return the number of stops the train still calls at, from the first
+         */
+        public int getStopsServed() {
+            return cancelledFrom;
+        }
+
+        private boolean isOnSchedule(Timetable timetable) {
+            if (cancelledFrom < arrivals.length) {
+                return false;
+            }
+            for (int i = 0; i < arrivals.length; i++) {
+                if (arrivals[i] != timetable.arrival(firstStopTime + i)
+                        || departures[i] != timetable.departure(firstStopTime + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
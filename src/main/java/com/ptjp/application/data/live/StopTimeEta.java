@@ -0,0 +1,88 @@
+package com.ptjp.application.data.live;
+
+import java.time.LocalDate;
+
+/**
+ * When a train is now expected at one of its stops, next to when it was
+ * scheduled. Times are seconds since the start of the service day, as in the
+ * timetable.
+ */
+public final class StopTimeEta {
+
+    private final LocalDate serviceDate;
+    private final int trip;
+    private final int stopTime;
+    private final int stop;
+    private final int scheduledDeparture;
+    private final int arrival;
+    private final int departure;
+    private final boolean cancelled;
+
+    public StopTimeEta(LocalDate serviceDate, int trip, int stopTime, int stop, int scheduledDeparture, int arrival,
+            int departure, boolean cancelled) {
+        this.serviceDate = serviceDate;
+        this.trip = trip;
+        this.stopTime = stopTime;
+        this.stop = stop;
+        this.scheduledDeparture = scheduledDeparture;
+        this.arrival = arrival;
+        this.departure = departure;
+        this.cancelled = cancelled;
+    }
+
+    public LocalDate getServiceDate() {
+        return serviceDate;
+    }
+
+    public int getTrip() {
+        return trip;
+    }
+
+    /**
+     * @return the index of the stop time in the timetable
+     */
+    public int getStopTime() {
+        return stopTime;
+    }
+
+    public int getStop() {
+        return stop;
+    }
+
+    public int getScheduledDeparture() {
+        return scheduledDeparture;
+    }
+
+    /**
+     * @return the expected arrival
+     */
+    public int getArrival() {
+        return arrival;
+    }
+
+    /**
+     * @return the expected departure
+     */
+    public int getDeparture() {
+        return departure;
+    }
+
+    /**
+     * @return the expected departure less the scheduled one
+     */
+    public int getDelaySeconds() {
+        return departure - scheduledDeparture;
+    }
+
+    /**
+     * @return whether the train no longer calls here
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        return "Trip " + trip + " at stop " + stop + (cancelled ? " cancelled" : " +" + getDelaySeconds() + " s");
+    }
+}
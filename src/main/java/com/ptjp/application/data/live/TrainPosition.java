@@ -0,0 +1,57 @@
+package com.ptjp.application.data.live;
+
+/**
+ * Where a train is at one moment, identified by the index of the trip it is
+ * running in the current timetable.
+ *
+ * A position without coordinates marks a train that is no longer running, or
+ * no longer visible to the receiver.
+ */
+public final class TrainPosition {
+
+    private final int trip;
+    private final double lat;
+    private final double lon;
+
+    public TrainPosition(int trip, double lat, double lon) {
+        this.trip = trip;
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    public static TrainPosition gone(int trip) {
+        return new TrainPosition(trip, Double.NaN, Double.NaN);
+    }
+
+    public int getTrip() {
+        return trip;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public boolean isGone() {
+        return Double.isNaN(lat);
+    }
+
+    public boolean isWithin(double south, double west, double north, double east) {
+        return lat >= south && lat <= north && lon >= west && lon <= east;
+    }
+
+    /**
+     * @return whether both positions put the same train in the same place
+     */
+    public boolean samePlace(TrainPosition other) {
+        return trip == other.trip && Double.compare(lat, other.lat) == 0 && Double.compare(lon, other.lon) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return isGone() ? "Trip " + trip + " gone" : "Trip " + trip + " at " + lat + "," + lon;
+    }
+}
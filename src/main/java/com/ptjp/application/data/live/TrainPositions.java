@@ -0,0 +1,112 @@
+package com.ptjp.application.data.live;
+
+import com.ptjp.application.data.timetable.Timetable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out where every train is from its scheduled times, or its expected
+ * ones once delays are reported: a train dwelling at a station is at the
+ * station, and a train between stations is placed on the straight line
+ * between them in proportion to the time elapsed.
+ */
+public final class TrainPositions {
+
+    private static final int SECONDS_PER_DAY = 24 * 3600;
+
+    private TrainPositions() {
+    }
+
+    /**
+     * @param secondsOfDay seconds since midnight on {@code date}; trips of the
+     *                     previous service day running past midnight are included
+     * @return the running trains, ordered by trip index
+     */
+    public static TrainPosition[] at(Timetable timetable, LocalDate date, int secondsOfDay) {
+        return at(new EtaOverlay(timetable, 0), date, secondsOfDay);
+    }
+
+    /**
+     * Places trains by their expected rather than scheduled times, leaving out
+     * cancelled ones.
+     *
+     * @param secondsOfDay seconds since midnight on {@code date}; trips of the
+     *                     previous service day running past midnight are included
+     * @return the running trains, ordered by trip index
+     */
+    public static TrainPosition[] at(EtaOverlay etas, LocalDate date, int secondsOfDay) {
+        Timetable timetable = etas.getTimetable();
+        boolean delays = etas.size() > 0;
+        LocalDate previousDay = date.minusDays(1);
+        boolean[] today = activeServices(timetable, date);
+        boolean[] yesterday = activeServices(timetable, previousDay);
+        List<TrainPosition> running = new ArrayList<>();
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            int service = timetable.tripService(trip);
+            TrainPosition position = null;
+            if (today[service]) {
+                position = position(timetable, delays ? etas.get(trip, date) : null, trip, secondsOfDay);
+            }
+            if (position == null && yesterday[service]) {
+                position = position(timetable, delays ? etas.get(trip, previousDay) : null, trip,
+                        secondsOfDay + SECONDS_PER_DAY);
+            }
+            if (position != null) {
+                running.add(position);
+            }
+        }
+        return running.toArray(new TrainPosition[0]);
+    }
+
+    /**
+     * @param etas the run's expected times, or {@code null} if it runs to
+     *             schedule
+     * @param time seconds since the start of the trip's service day
+     * @return the trip's position, or {@code null} if it is not running then
+     */
+    static TrainPosition position(Timetable timetable, EtaOverlay.TripEtas etas, int trip, int time) {
+        int first = timetable.tripFirstStopTime(trip);
+        int last = first + (etas == null ? timetable.tripStopCount(trip) : etas.getStopsServed()) - 1;
+        if (last <= first || time < departure(timetable, etas, first) || time > arrival(timetable, etas, last)) {
+            return null;
+        }
+        // the last stop time the train has arrived at
+        int low = first;
+        int high = last;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (arrival(timetable, etas, mid) <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int from = timetable.stopTimeStop(low);
+        if (low == last || time <= departure(timetable, etas, low)) {
+            return new TrainPosition(trip, timetable.stopLat(from), timetable.stopLon(from));
+        }
+        int to = timetable.stopTimeStop(low + 1);
+        int leave = departure(timetable, etas, low);
+        double fraction = (time - leave) / (double) (arrival(timetable, etas, low + 1) - leave);
+        return new TrainPosition(trip,
+                timetable.stopLat(from) + fraction * (timetable.stopLat(to) - timetable.stopLat(from)),
+                timetable.stopLon(from) + fraction * (timetable.stopLon(to) - timetable.stopLon(from)));
+    }
+
+    private static int arrival(Timetable timetable, EtaOverlay.TripEtas etas, int stopTime) {
+        return etas == null ? timetable.arrival(stopTime) : etas.arrival(stopTime);
+    }
+
+    private static int departure(Timetable timetable, EtaOverlay.TripEtas etas, int stopTime) {
+        return etas == null ? timetable.departure(stopTime) : etas.departure(stopTime);
+    }
+
+    private static boolean[] activeServices(Timetable timetable, LocalDate date) {
+        boolean[] active = new boolean[timetable.serviceCount()];
+        for (int service = 0; service < active.length; service++) {
+            active[service] = timetable.isServiceActive(service, date);
+        }
+        return active;
+    }
+}
@@ -0,0 +1,113 @@
+package com.ptjp.application.data.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts entity ids written as strings by earlier versions into the 16-byte
+ * binary form the entities now map to.
+ *
+ * Runs once at startup, before Hibernate builds its schema, against databases
+ * kept between runs (a file-based H2 database with
+ * {@code spring.jpa.hibernate.ddl-auto=update}); the default in-memory
+ * database starts empty and is left alone. Each table whose {@code ID} primary
+ * key is still a character column is converted in place, together with the
+ * foreign key columns referencing it. Existing ids keep their value; only new
+ * rows get time-ordered ids.
+ */
+@Component
+public class BinaryIdMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryIdMigration.class);
+
+    private final DataSource dataSource;
+
+    @Autowired
+    public BinaryIdMigration(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    public void migrate() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            if (!"H2".equals(metaData.getDatabaseProductName())) {
+                return;
+            }
+            List<String> tables = new ArrayList<>();
+            try (ResultSet columns = metaData.getColumns(null, connection.getSchema(), null, "ID")) {
+                while (columns.next()) {
+                    if (isCharacter(columns.getInt("DATA_TYPE"))
+                            && isPrimaryKey(metaData, connection.getSchema(), columns.getString("TABLE_NAME"))) {
+                        tables.add(columns.getString("TABLE_NAME"));
+                    }
+                }
+            }
+            for (String table : tables) {
+                convert(connection, table);
+            }
+        }
+    }
+
+    private void convert(Connection connection, String table) throws SQLException {
+        List<String[]> references = new ArrayList<>();
+        try (ResultSet keys = connection.getMetaData().getExportedKeys(null, connection.getSchema(), table)) {
+            while (keys.next()) {
+                references.add(new String[] { keys.getString("FKTABLE_NAME"), keys.getString("FKCOLUMN_NAME"),
+                        keys.getString("FK_NAME") });
+            }
+        }
+        logger.info("Converting {}.ID and {} referencing column(s) to binary ids", table, references.size());
+        try (Statement statement = connection.createStatement()) {
+            for (String[] reference : references) {
+                statement.execute("ALTER TABLE " + reference[0] + " DROP CONSTRAINT " + reference[2]);
+            }
+            // strings parse as UUID, and a UUID casts to its 16 bytes
+            toBinary(statement, table, "ID");
+            for (String[] reference : references) {
+                toBinary(statement, reference[0], reference[1]);
+                statement.execute("ALTER TABLE " + reference[0] + " ADD CONSTRAINT " + reference[2]
+                        + " FOREIGN KEY (" + reference[1] + ") REFERENCES " + table + " (ID)");
+            }
+        }
+    }
+
+    private static void toBinary(Statement statement, String table, String column) throws SQLException {
+        statement.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " SET DATA TYPE UUID");
+        statement.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " SET DATA TYPE BINARY(16)");
+    }
+
+    private static boolean isPrimaryKey(DatabaseMetaData metaData, String schema, String table) throws SQLException {
+        try (ResultSet keys = metaData.getPrimaryKeys(null, schema, table)) {
+            return keys.next() && "ID".equals(keys.getString("COLUMN_NAME")) && !keys.next();
+        }
+    }
+
+    private static boolean isCharacter(int type) {
+        return type == Types.CHAR || type == Types.VARCHAR || type == Types.NCHAR || type == Types.NVARCHAR;
+    }
+
+    /**
+     * Holds back the entity manager factory until the ids are converted.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(BinaryIdMigration.class);
+        }
+    }
+}
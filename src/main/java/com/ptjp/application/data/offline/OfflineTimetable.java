@@ -0,0 +1,470 @@
+package com.ptjp.application.data.offline;
+
+import com.ptjp.application.data.timetable.Timetable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact, gzipped binary copy of a timetable for clients to keep offline,
+ * and deltas that bring an older copy up to date.
+ *
+ * A snapshot is:
+ *
+ * <pre>
+ * "CTT1" version:fixed64
+ * stops    count, then per stop: id*, name, lat:zz, lon:zz
+ * routes   count, then per route: id*, name
+ * services count, then per service: id*, weekdays:byte, start:zz, end - start:signed,
+ *          exception count, exceptions:zz
+ * patterns count, then per pattern: stop count, stops:zz
+ * profiles count, then per profile: stop count, first dwell, then per further
+ *          stop: running time:signed, dwell
+ * trips    count, then per trip: id*, route, service, pattern:delta,
+ *          profile, first departure:delta
+ * </pre>
+ *
+ * Integers are unsigned LEB128 varints; {@code signed} marks zigzag varints
+ * and {@code zz} zigzag varints of the difference from the previous value in
+ * the same list, with coordinates in 1e-5 degrees and dates as
+ * {@code yyyymmdd}. Strings are a
+ * varint byte length and UTF-8; {@code id*} strings are preceded by the length
+ * of the prefix they share with the previous id of their section, which is not
+ * repeated. Trips that stop at the same stops form a pattern and trips whose
+ * running and dwell times are the same share a profile, so a trip costs a
+ * handful of bytes rather than a row per stop. Trips are ordered by pattern
+ * and departure: {@code pattern:delta} is the difference from the previous
+ * trip's pattern and {@code first departure:delta} from the previous trip's
+ * departure in the same pattern, in seconds since the start of the service
+ * day.
+ *
+ * A delta is:
+ *
+ * <pre>
+ * "CTD1" base version:fixed64 version:fixed64 sections:byte
+ * [stops] [routes] [services]   as above, if bit 0, 1 or 2 of sections is set
+ * runs     count, then per run: length &lt;&lt; 1 | new, and for kept trips
+ *          the first trip's index in the base snapshot:zz from the end of the
+ *          previous kept run
+ * patterns, profiles, trips     as above, for the new trips only
+ * </pre>
+ *
+ * The runs list the trips of the new version in order, either kept from the
+ * base or new; trips of the base that no run keeps are gone. Deltas are only
+ * made between versions with the same stops, routes and services in the same
+ * order, so stop, route and service indexes mean the same in both.
+ */
+public final class OfflineTimetable {
+
+    private static final int SECTION_STOPS = 1;
+    private static final int SECTION_ROUTES = 2;
+    private static final int SECTION_SERVICES = 4;
+
+    private static final double COORDINATE_SCALE = 1e5;
+
+    private static final int TRIP_MASK = (1 << 24) - 1;
+    private static final int DEPARTURE_MASK = (1 << 20) - 1;
+
+    private final Timetable timetable;
+    private final int[] tripOrder;
+    private final Version version;
+    private final byte[] snapshot;
+
+    public OfflineTimetable(Timetable timetable) {
+        this.timetable = timetable;
+        this.tripOrder = tripOrder(timetable);
+        this.version = new Version(timetable, tripOrder);
+        VarintOutput out = new VarintOutput();
+        writeMagic(out, "CTT1");
+        out.writeFixed64(version.id);
+        writeStops(out);
+        writeRoutes(out);
+        writeServices(out);
+        writeTrips(out, tripOrder);
+        this.snapshot = gzip(out.toByteArray());
+    }
+
+    public Timetable timetable() {
+        return timetable;
+    }
+
+    public Version version() {
+        return version;
+    }
+
+    /**
+     * @return the gzipped snapshot; callers must not modify it
+     */
+    public byte[] snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the gzipped delta from {@code base} to this version, or
+     *         {@code null} if the two differ in their stops, routes or services
+     *         or the delta would be no smaller than the snapshot
+     */
+    public byte[] delta(Version base) {
+        if (base.stopIds != version.stopIds || base.routeIds != version.routeIds
+                || base.serviceIds != version.serviceIds) {
+            return null;
+        }
+        Map<Long, Integer> baseTrips = new HashMap<>(base.trips.length * 2);
+        for (int i = 0; i < base.trips.length; i++) {
+            baseTrips.putIfAbsent(base.trips[i], i);
+        }
+
+        List<int[]> runs = new ArrayList<>();
+        int[] added = new int[tripOrder.length];
+        int addedCount = 0;
+        int[] run = null;
+        for (int i = 0; i < tripOrder.length; i++) {
+            Integer kept = baseTrips.get(version.trips[i]);
+            if (kept == null) {
+                added[addedCount++] = tripOrder[i];
+                if (run == null || run[1] >= 0) {
+                    run = new int[] { 0, -1 };
+                    runs.add(run);
+                }
+            } else if (run == null || run[1] < 0 || run[1] + run[0] != kept) {
+                run = new int[] { 0, kept };
+                runs.add(run);
+            }
+            run[0]++;
+        }
+
+        VarintOutput out = new VarintOutput();
+        writeMagic(out, "CTD1");
+        out.writeFixed64(base.id);
+        out.writeFixed64(version.id);
+        int sections = (base.stops != version.stops ? SECTION_STOPS : 0)
+                | (base.routes != version.routes ? SECTION_ROUTES : 0)
+                | (base.services != version.services ? SECTION_SERVICES : 0);
+        out.writeByte(sections);
+        if ((sections & SECTION_STOPS) != 0) {
+            writeStops(out);
+        }
+        if ((sections & SECTION_ROUTES) != 0) {
+            writeRoutes(out);
+        }
+        if ((sections & SECTION_SERVICES) != 0) {
+            writeServices(out);
+        }
+        out.writeVarint(runs.size());
+        int keptEnd = 0;
+        for (int[] r : runs) {
+            boolean isNew = r[1] < 0;
+            out.writeVarint((long) r[0] << 1 | (isNew ? 1 : 0));
+            if (!isNew) {
+                out.writeSigned(r[1] - keptEnd);
+                keptEnd = r[1] + r[0];
+            }
+        }
+        writeTrips(out, Arrays.copyOf(added, addedCount));
+        byte[] delta = gzip(out.toByteArray());
+        return delta.length < snapshot.length ? delta : null;
+    }
+
+    private void writeStops(VarintOutput out) {
+        out.writeVarint(timetable.stopCount());
+        String previousId = "";
+        long previousLat = 0;
+        long previousLon = 0;
+        for (int stop = 0; stop < timetable.stopCount(); stop++) {
+            String id = timetable.stopId(stop);
+            out.writeString(id, previousId);
+            out.writeString(timetable.stopName(stop));
+            long lat = Math.round(timetable.stopLat(stop) * COORDINATE_SCALE);
+            long lon = Math.round(timetable.stopLon(stop) * COORDINATE_SCALE);
+            out.writeSigned(lat - previousLat);
+            out.writeSigned(lon - previousLon);
+            previousId = id;
+            previousLat = lat;
+            previousLon = lon;
+        }
+    }
+
+    private void writeRoutes(VarintOutput out) {
+        out.writeVarint(timetable.routeCount());
+        String previousId = "";
+        for (int route = 0; route < timetable.routeCount(); route++) {
+            String id = timetable.routeId(route);
+            out.writeString(id, previousId);
+            out.writeString(timetable.routeName(route));
+            previousId = id;
+        }
+    }
+
+    private void writeServices(VarintOutput out) {
+        out.writeVarint(timetable.serviceCount());
+        String previousId = "";
+        int previousStart = 0;
+        for (int service = 0; service < timetable.serviceCount(); service++) {
+            String id = timetable.serviceId(service);
+            out.writeString(id, previousId);
+            out.writeByte(timetable.serviceDays(service));
+            int start = timetable.serviceStart(service);
+            out.writeSigned(start - previousStart);
+            out.writeSigned(timetable.serviceEnd(service) - start);
+            int[] exceptions = timetable.serviceExceptions(service);
+            out.writeVarint(exceptions.length);
+            int previous = 0;
+            for (int exception : exceptions) {
+                out.writeSigned(exception - previous);
+                previous = exception;
+            }
+            previousId = id;
+            previousStart = start;
+        }
+    }
+
+    /**
+     * Writes the patterns and profiles of {@code trips}, then the trips, which
+     * must be in snapshot order.
+     */
+    private void writeTrips(VarintOutput out, int[] trips) {
+        Map<IntsKey, Integer> patterns = new HashMap<>();
+        Map<IntsKey, Integer> profiles = new HashMap<>();
+        List<int[]> patternList = new ArrayList<>();
+        List<int[]> profileList = new ArrayList<>();
+        int[] tripPattern = new int[trips.length];
+        int[] tripProfile = new int[trips.length];
+        for (int i = 0; i < trips.length; i++) {
+            int trip = trips[i];
+            int first = timetable.tripFirstStopTime(trip);
+            int count = timetable.tripStopCount(trip);
+            int[] stops = new int[count];
+            int[] profile = new int[2 * count - 1];
+            for (int s = 0; s < count; s++) {
+                stops[s] = timetable.stopTimeStop(first + s);
+                if (s > 0) {
+                    profile[2 * s - 1] = timetable.arrival(first + s) - timetable.departure(first + s - 1);
+                }
+                profile[2 * s] = timetable.departure(first + s) - timetable.arrival(first + s);
+            }
+            tripPattern[i] = intern(patterns, patternList, stops);
+            tripProfile[i] = intern(profiles, profileList, profile);
+        }
+
+        out.writeVarint(patternList.size());
+        for (int[] stops : patternList) {
+            out.writeVarint(stops.length);
+            int previous = 0;
+            for (int stop : stops) {
+                out.writeSigned(stop - previous);
+                previous = stop;
+            }
+        }
+        out.writeVarint(profileList.size());
+        for (int[] profile : profileList) {
+            out.writeVarint((profile.length + 1) / 2);
+            out.writeVarint(profile[0]);
+            for (int i = 1; i < profile.length; i += 2) {
+                out.writeSigned(profile[i]);
+                out.writeVarint(profile[i + 1]);
+            }
+        }
+
+        out.writeVarint(trips.length);
+        String previousId = "";
+        int previousPattern = 0;
+        int previousDeparture = 0;
+        for (int i = 0; i < trips.length; i++) {
+            int trip = trips[i];
+            String id = timetable.tripId(trip);
+            int departure = timetable.departure(timetable.tripFirstStopTime(trip));
+            if (tripPattern[i] != previousPattern) {
+                previousDeparture = 0;
+            }
+            out.writeString(id, previousId);
+            out.writeVarint(timetable.tripRoute(trip));
+            out.writeVarint(timetable.tripService(trip));
+            out.writeVarint(tripPattern[i] - previousPattern);
+            out.writeVarint(tripProfile[i]);
+            out.writeVarint(departure - previousDeparture);
+            previousId = id;
+            previousPattern = tripPattern[i];
+            previousDeparture = departure;
+        }
+    }
+
+    private static int intern(Map<IntsKey, Integer> index, List<int[]> values, int[] value) {
+        Integer existing = index.putIfAbsent(new IntsKey(value), values.size());
+        if (existing != null) {
+            return existing;
+        }
+        values.add(value);
+        return values.size() - 1;
+    }
+
+    /**
+     * Orders trips by pattern, in the order patterns are first met, then by
+     * departure, so the deltas {@link #writeTrips} writes are never negative.
+     */
+    private static int[] tripOrder(Timetable timetable) {
+        if (timetable.tripCount() > TRIP_MASK) {
+            throw new IllegalArgumentException("Too many trips to order: " + timetable.tripCount());
+        }
+        Map<IntsKey, Integer> patterns = new HashMap<>();
+        List<int[]> patternList = new ArrayList<>();
+        long[] keys = new long[timetable.tripCount()];
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            int first = timetable.tripFirstStopTime(trip);
+            int[] stops = new int[timetable.tripStopCount(trip)];
+            for (int s = 0; s < stops.length; s++) {
+                stops[s] = timetable.stopTimeStop(first + s);
+            }
+            long pattern = intern(patterns, patternList, stops);
+            long departure = stops.length == 0 ? 0 : Math.min(DEPARTURE_MASK, Math.max(0, timetable.departure(first)));
+            keys[trip] = pattern << 44 | departure << 24 | trip;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) (keys[i] & TRIP_MASK);
+        }
+        return order;
+    }
+
+    private static void writeMagic(VarintOutput out, String magic) {
+        for (int i = 0; i < magic.length(); i++) {
+            out.writeByte(magic.charAt(i));
+        }
+    }
+
+    private static byte[] gzip(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            for (byte[] part : parts) {
+                gzip.write(part);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * What a client's copy of a timetable holds, in enough detail to make a
+     * delta from it without keeping the timetable itself.
+     */
+    public static final class Version {
+
+        private final long id;
+        private final long stopIds;
+        private final long routeIds;
+        private final long serviceIds;
+        private final long stops;
+        private final long routes;
+        private final long services;
+        /** A fingerprint of each trip's id and stop times, in snapshot order. */
+        private final long[] trips;
+
+        Version(Timetable timetable, int[] tripOrder) {
+            long stopIdHash = 0;
+            long stopHash = 0;
+            for (int stop = 0; stop < timetable.stopCount(); stop++) {
+                stopIdHash = mix(stopIdHash, hash(timetable.stopId(stop)));
+                stopHash = mix(mix(stopHash, hash(timetable.stopName(stop))),
+                        Math.round(timetable.stopLat(stop) * COORDINATE_SCALE) << 32
+                                ^ Math.round(timetable.stopLon(stop) * COORDINATE_SCALE));
+            }
+            long routeIdHash = 0;
+            long routeHash = 0;
+            for (int route = 0; route < timetable.routeCount(); route++) {
+                routeIdHash = mix(routeIdHash, hash(timetable.routeId(route)));
+                routeHash = mix(routeHash, hash(timetable.routeName(route)));
+            }
+            long serviceIdHash = 0;
+            long serviceHash = 0;
+            for (int service = 0; service < timetable.serviceCount(); service++) {
+                serviceIdHash = mix(serviceIdHash, hash(timetable.serviceId(service)));
+                serviceHash = mix(serviceHash, timetable.serviceDays(service));
+                serviceHash = mix(serviceHash, (long) timetable.serviceStart(service) << 32
+                        | timetable.serviceEnd(service));
+                for (int exception : timetable.serviceExceptions(service)) {
+                    serviceHash = mix(serviceHash, exception);
+                }
+            }
+            this.stopIds = stopIdHash;
+            this.routeIds = routeIdHash;
+            this.serviceIds = serviceIdHash;
+            this.stops = mix(stopIdHash, stopHash);
+            this.routes = mix(routeIdHash, routeHash);
+            this.services = mix(serviceIdHash, serviceHash);
+
+            this.trips = new long[tripOrder.length];
+            long id = mix(mix(stops, routes), services);
+            for (int i = 0; i < tripOrder.length; i++) {
+                int trip = tripOrder[i];
+                long hash = mix(hash(timetable.tripId(trip)),
+                        (long) timetable.tripRoute(trip) << 32 | timetable.tripService(trip));
+                int first = timetable.tripFirstStopTime(trip);
+                for (int s = first; s < first + timetable.tripStopCount(trip); s++) {
+                    hash = mix(hash, (long) timetable.stopTimeStop(s) << 40
+                            ^ (long) timetable.arrival(s) << 20 ^ timetable.departure(s));
+                }
+                trips[i] = hash;
+                id = mix(id, hash);
+            }
+            this.id = id;
+        }
+
+        /**
+         * @return the version as sixteen hex digits; equal timetables have
+         *         equal versions, also across restarts
+         */
+        public String tag() {
+            return String.format("%016x", id);
+        }
+
+        public int tripCount() {
+            return trips.length;
+        }
+
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        private static long mix(long hash, long value) {
+            long mixed = (hash ^ value) * 0x9e3779b97f4a7c15L;
+            return mixed ^ mixed >>> 29;
+        }
+    }
+
+    private static final class IntsKey {
+
+        private final int[] values;
+        private final int hash;
+
+        IntsKey(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IntsKey && Arrays.equals(values, ((IntsKey) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
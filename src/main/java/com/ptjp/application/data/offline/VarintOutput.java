@@ -0,0 +1,65 @@
+package com.ptjp.application.data.offline;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unsigned LEB128 varints, zigzag-encoded signed varints and length-prefixed
+ * UTF-8 strings, appended to a growable byte array.
+ */
+final class VarintOutput {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+
+    void writeByte(int value) {
+        bytes.write(value);
+    }
+
+    void writeFixed64(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes.write((int) (value >>> shift));
+        }
+    }
+
+    void writeVarint(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative varint " + value);
+        }
+        while (value >= 0x80) {
+            bytes.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes.write((int) value);
+    }
+
+    void writeSigned(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(utf8.length);
+        bytes.write(utf8, 0, utf8.length);
+    }
+
+    /**
+     * Writes {@code value} as the length of the prefix it shares with
+     * {@code previous}, then the rest as a string.
+     */
+    void writeString(String value, String previous) {
+        int common = 0;
+        int limit = Math.min(value.length(), previous.length());
+        while (common < limit && value.charAt(common) == previous.charAt(common)) {
+            common++;
+        }
+        if (common > 0 && Character.isHighSurrogate(value.charAt(common - 1))) {
+            common--;
+        }
+        writeVarint(common);
+        writeString(value.substring(common));
+    }
+
+    byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,356 @@
+package com.ptjp.application.data.search;
+
+import com.ptjp.application.data.timetable.Timetable;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Autocomplete over station names and aliases, as a static, packed prefix
+ * trie.
+ *
+ * Names are folded to lower-case letters, digits and single spaces, with
+ * accents dropped, so "Kraaifontein" is found as "kraai" and a name with a
+ * diaeresis or circumflex as its plain spelling. Each station is keyed by its
+ * name, its aliases, and every later word of either, so "town" finds "Cape
+ * Town" and "Simon's Town".
+ *
+ * Every trie node stores its subtree's best few stations, already ranked: a
+ * match on the name's first word before one on an alias, before one on a
+ * later word, and busier stations first within each. A prefix that is in the
+ * trie is answered by walking it and copying that list, in well under a
+ * microsecond. Only a prefix that is not makes the index look for names
+ * within one or two edits of it (one from four symbols, two from seven),
+ * ranked by number of edits, in tens of microseconds.
+ *
+ * Immutable and safe for concurrent use.
+ */
+public final class StationNameIndex {
+
+    /** The most suggestions a query returns. */
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final byte NAME = 0;
+    private static final byte ALIAS = 1;
+    private static final byte LATER_WORD = 2;
+
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] suggestionStart;
+    private final int[] suggestions;
+    private final byte[] suggestionKinds;
+    /** Position of each station in order of busyness. */
+    private final int[] popularity;
+    private final int maxKeyLength;
+
+    /**
+     * @param names    the name of each station
+     * @param aliases  other names by station, such as Afrikaans or colloquial
+     *                 ones
+     * @param weights  how busy each station is; busier ones are suggested
+     *                 first among equal matches
+     */
+    public StationNameIndex(String[] names, Map<Integer, List<String>> aliases, int[] weights) {
+        List<Key> keys = new ArrayList<>();
+        for (int station = 0; station < names.length; station++) {
+            addKeys(keys, station, names[station], NAME);
+            for (String alias : aliases.getOrDefault(station, Collections.emptyList())) {
+                addKeys(keys, station, alias, ALIAS);
+            }
+        }
+        keys.sort(Comparator.comparing((Key key) -> key.text));
+        int longest = 0;
+        for (Key key : keys) {
+            longest = Math.max(longest, key.text.length());
+        }
+        maxKeyLength = longest;
+
+        Integer[] byBusyness = new Integer[names.length];
+        for (int station = 0; station < names.length; station++) {
+            byBusyness[station] = station;
+        }
+        Arrays.sort(byBusyness, Comparator.comparingInt((Integer station) -> -weights[station])
+                .thenComparing(station -> names[station]));
+        popularity = new int[names.length];
+        for (int i = 0; i < byBusyness.length; i++) {
+            popularity[byBusyness[i]] = i;
+        }
+
+        // breadth first, so each node's children are contiguous; a node is
+        // the range of sorted keys starting with its prefix
+        List<int[]> nodes = new ArrayList<>();
+        StringBuilder nodeLabels = new StringBuilder();
+        List<Integer> ranked = new ArrayList<>();
+        List<Byte> rankedKinds = new ArrayList<>();
+        nodes.add(new int[] { 0, keys.size(), 0 });
+        nodeLabels.append('\0');
+        int[] children = new int[16];
+        int[] counts = new int[16];
+        int[] ends = new int[16];
+        for (int node = 0; node < nodes.size(); node++) {
+            int low = nodes.get(node)[0];
+            int high = nodes.get(node)[1];
+            int depth = nodes.get(node)[2];
+            if (node == children.length) {
+                children = Arrays.copyOf(children, 2 * node);
+                counts = Arrays.copyOf(counts, 2 * node);
+                ends = Arrays.copyOf(ends, 2 * node);
+            }
+            children[node] = nodes.size();
+            int i = low;
+            while (i < high && keys.get(i).text.length() == depth) {
+                i++;
+            }
+            while (i < high) {
+                char label = keys.get(i).text.charAt(depth);
+                int end = i;
+                while (end < high && keys.get(end).text.charAt(depth) == label) {
+                    end++;
+                }
+                nodes.add(new int[] { i, end, depth + 1 });
+                nodeLabels.append(label);
+                i = end;
+            }
+            counts[node] = nodes.size() - children[node];
+            rankSubtree(keys, low, high, ranked, rankedKinds);
+            ends[node] = ranked.size();
+        }
+
+        int count = nodes.size();
+        labels = nodeLabels.toString().toCharArray();
+        firstChild = Arrays.copyOf(children, count);
+        childCount = Arrays.copyOf(counts, count);
+        suggestionStart = new int[count + 1];
+        System.arraycopy(ends, 0, suggestionStart, 1, count);
+        suggestions = new int[ranked.size()];
+        suggestionKinds = new byte[ranked.size()];
+        for (int i = 0; i < suggestions.length; i++) {
+            suggestions[i] = ranked.get(i);
+            suggestionKinds[i] = rankedKinds.get(i);
+        }
+    }
+
+    /**
+     * Indexes the stops of a timetable under their names and the given
+     * aliases, busier stops being those more trains call at.
+     *
+     * @param aliases other names by stop name; names not in the timetable are
+     *                ignored
+     */
+    public static StationNameIndex of(Timetable timetable, Map<String, List<String>> aliases) {
+        String[] names = new String[timetable.stopCount()];
+        HashMap<String, List<Integer>> stopsByName = new HashMap<>();
+        for (int stop = 0; stop < names.length; stop++) {
+            names[stop] = timetable.stopName(stop);
+            stopsByName.computeIfAbsent(names[stop], name -> new ArrayList<>()).add(stop);
+        }
+        HashMap<Integer, List<String>> aliasesByStop = new HashMap<>();
+        aliases.forEach((name, others) -> stopsByName.getOrDefault(name, Collections.emptyList())
+                .forEach(stop -> aliasesByStop.put(stop, others)));
+        int[] weights = new int[names.length];
+        for (int stopTime = 0; stopTime < timetable.stopTimeCount(); stopTime++) {
+            weights[timetable.stopTimeStop(stopTime)]++;
+        }
+        return new StationNameIndex(names, aliasesByStop, weights);
+    }
+
+    public int size() {
+        return popularity.length;
+    }
+
+    /**
+     * @return up to {@code limit} (at most {@link #MAX_SUGGESTIONS}) stations
+     *         matching what has been typed so far, best first; the busiest
+     *         stations for an empty query
+     */
+    public int[] suggest(String typed, int limit) {
+        limit = Math.min(limit, MAX_SUGGESTIONS);
+        String query = fold(typed);
+        int node = 0;
+        for (int i = 0; i < query.length() && node >= 0; i++) {
+            node = child(node, query.charAt(i));
+        }
+        if (node >= 0) {
+            int start = suggestionStart[node];
+            return Arrays.copyOfRange(suggestions, start, Math.min(suggestionStart[node + 1], start + limit));
+        }
+        int edits = query.length() >= 7 ? 2 : query.length() >= 4 ? 1 : 0;
+        return edits == 0 ? new int[0] : nearMisses(query, edits, limit);
+    }
+
+    /**
+     * Folds text to lower-case ASCII letters and digits separated by single
+     * spaces. Accents are dropped and apostrophes removed, so "Simon's" folds
+     * to "simons".
+     */
+    public static String fold(String text) {
+        String plain = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(plain.length());
+        boolean space = false;
+        for (int i = 0; i < plain.length(); i++) {
+            char c = plain.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK || c == '\'' || c == '\u2019') {
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+                if (space && folded.length() > 0) {
+                    folded.append(' ');
+                }
+                folded.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return folded.toString();
+    }
+
+    private int child(int node, char label) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (labels[mid] < label) {
+                low = mid + 1;
+            } else if (labels[mid] > label) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds stations whose keys start with something within {@code edits}
+     * edits of the query, fewest edits first, by walking the trie with one row
+     * of the edit distance table per level and pruning where the whole row
+     * exceeds the budget.
+     */
+    private int[] nearMisses(String query, int edits, int limit) {
+        int[][] rows = new int[maxKeyLength + 1][query.length() + 1];
+        for (int i = 0; i <= query.length(); i++) {
+            rows[0][i] = i;
+        }
+        Matches matches = new Matches();
+        for (int i = 0; i < childCount[0]; i++) {
+            nearMisses(firstChild[0] + i, 1, query, rows, edits, Integer.MAX_VALUE, matches);
+        }
+        // fewest edits first, then by kind of match and busyness
+        Arrays.sort(matches.packed, 0, matches.size);
+        int[] found = new int[limit];
+        int count = 0;
+        for (int i = 0; i < matches.size && count < limit; i++) {
+            int station = (int) matches.packed[i];
+            if (!contains(found, count, station)) {
+                found[count++] = station;
+            }
+        }
+        return count == limit ? found : Arrays.copyOf(found, count);
+    }
+
+    private void nearMisses(int node, int depth, String query, int[][] rows, int edits, int parentDistance,
+            Matches matches) {
+        int[] previous = rows[depth - 1];
+        int[] row = rows[depth];
+        row[0] = depth;
+        int best = depth;
+        for (int i = 1; i < row.length; i++) {
+            int substitute = previous[i - 1] + (query.charAt(i - 1) == labels[node] ? 0 : 1);
+            row[i] = Math.min(substitute, Math.min(previous[i] + 1, row[i - 1] + 1));
+            best = Math.min(best, row[i]);
+        }
+        if (best > edits) {
+            return;
+        }
+        int distance = row[row.length - 1];
+        // a parent as close already holds this node's best stations, or all
+        // of them if it holds fewer than its list's length
+        if (distance <= edits && distance < parentDistance) {
+            for (int i = suggestionStart[node]; i < suggestionStart[node + 1]; i++) {
+                matches.add((long) distance << 60 | (long) suggestionKinds[i] << 58
+                        | (long) popularity[suggestions[i]] << 32 | suggestions[i]);
+            }
+        }
+        for (int i = 0; i < childCount[node]; i++) {
+            nearMisses(firstChild[node] + i, depth + 1, query, rows, edits, Math.min(distance, parentDistance),
+                    matches);
+        }
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addKeys(List<Key> keys, int station, String text, byte kind) {
+        String folded = fold(text);
+        if (folded.isEmpty()) {
+            return;
+        }
+        keys.add(new Key(folded, station, kind));
+        for (int i = folded.indexOf(' '); i >= 0; i = folded.indexOf(' ', i + 1)) {
+            keys.add(new Key(folded.substring(i + 1), station, LATER_WORD));
+        }
+    }
+
+    /**
+     * Appends the best {@link #MAX_SUGGESTIONS} stations keyed in
+     * {@code [low, high)}, each once under its best kind of match.
+     */
+    private void rankSubtree(List<Key> keys, int low, int high, List<Integer> ranked, List<Byte> rankedKinds) {
+        HashMap<Integer, Byte> best = new HashMap<>();
+        for (int i = low; i < high; i++) {
+            Key key = keys.get(i);
+            best.merge(key.station, key.kind, (a, b) -> a <= b ? a : b);
+        }
+        List<Integer> stations = new ArrayList<>(best.keySet());
+        stations.sort(Comparator.comparingInt((Integer station) -> best.get(station))
+                .thenComparingInt(station -> popularity[station]));
+        for (int i = 0; i < stations.size() && i < MAX_SUGGESTIONS; i++) {
+            ranked.add(stations.get(i));
+            rankedKinds.add(best.get(stations.get(i)));
+        }
+    }
+
+    /**
+     * Near misses found so far, each packed as edits, kind, busyness and
+     * station so that sorting ranks them.
+     */
+    private static final class Matches {
+
+        private long[] packed = new long[64];
+        private int size;
+
+        void add(long match) {
+            if (size == packed.length) {
+                packed = Arrays.copyOf(packed, 2 * size);
+            }
+            packed[size++] = match;
+        }
+    }
+
+    private static final class Key {
+
+        private final String text;
+        private final int station;
+        private final byte kind;
+
+        Key(String text, int station, byte kind) {
+            this.text = text;
+            this.station = station;
+            this.kind = kind;
+        }
+    }
+}
@@ -0,0 +1,649 @@
+package com.ptjp.application.data.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory substring index over short text fields, keyed by entity id.
+ *
+ * Text is folded to a 64-symbol alphabet (lower-case letters, digits, a few
+ * punctuation marks, and a separator for everything else), so every trigram
+ * fits in 18 bits and posting lists live in one array indexed by trigram, with
+ * no hashing. Documents get increasing numbers, so appending keeps each
+ * posting list sorted. An update adds the new version under a fresh number and
+ * marks the old one deleted; the index compacts itself once a quarter of its
+ * documents are dead.
+ *
+ * A query intersects the posting lists of its trigrams, rarest first, and
+ * confirms each candidate against the stored folded text. Queries of two
+ * symbols match word prefixes only. Results are ranked: a match at the very
+ * start first, then at the start of any word, then anywhere, and by age
+ * within each rank.
+ *
+ * Safe for concurrent use; writers exclude readers.
+ */
+public final class TrigramIndex {
+
+    private static final int SYMBOL_BITS = 6;
+    private static final int TRIGRAMS = 1 << (3 * SYMBOL_BITS);
+    private static final byte SEPARATOR = 0;
+    private static final byte OTHER = 63;
+    private static final int RANKS = 3;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // all guarded by lock
+    private int[][] postings = new int[TRIGRAMS][];
+    private int[] postingSizes = new int[TRIGRAMS];
+    /** Documents by the trigram their text starts with. */
+    private int[][] leadingPostings = new int[TRIGRAMS][];
+    private int[] leadingSizes = new int[TRIGRAMS];
+    private byte[] text = new byte[1024];
+    private int textSize;
+    private int[] textStart = new int[65];
+    private long[] mostSignificant = new long[64];
+    private long[] leastSignificant = new long[64];
+    private long[] deleted = new long[1];
+    private int documents;
+    private int deletedCount;
+    private final IdTable live = new IdTable();
+
+    /**
+     * Indexes the fields of an entity, replacing whatever was indexed for it
+     * before. Null fields are skipped.
+     */
+    public void put(UUID id, String... fields) {
+        byte[] folded = fold(fields);
+        lock.writeLock().lock();
+        try {
+            int previous = live.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (previous >= 0) {
+                markDeleted(previous);
+            }
+            int document = append(id.getMostSignificantBits(), id.getLeastSignificantBits(), folded);
+            live.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), document);
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(UUID id) {
+        lock.writeLock().lock();
+        try {
+            int previous = live.remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (previous >= 0) {
+                markDeleted(previous);
+                compactIfWasteful();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings = new int[TRIGRAMS][];
+            postingSizes = new int[TRIGRAMS];
+            leadingPostings = new int[TRIGRAMS][];
+            leadingSizes = new int[TRIGRAMS];
+            textSize = 0;
+            documents = 0;
+            deletedCount = 0;
+            deleted = new long[1];
+            live.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the spare capacity of posting lists and text storage, worth
+     * doing after a bulk load.
+     */
+    public void trim() {
+        lock.writeLock().lock();
+        try {
+            for (int trigram = 0; trigram < TRIGRAMS; trigram++) {
+                if (postings[trigram] != null && postings[trigram].length > postingSizes[trigram]) {
+                    postings[trigram] = Arrays.copyOf(postings[trigram], postingSizes[trigram]);
+                }
+                if (leadingPostings[trigram] != null && leadingPostings[trigram].length > leadingSizes[trigram]) {
+                    leadingPostings[trigram] = Arrays.copyOf(leadingPostings[trigram], leadingSizes[trigram]);
+                }
+            }
+            text = Arrays.copyOf(text, textSize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of matching entities, best first, from {@code offset};
+     *         nothing for a query with fewer than two letters or digits
+     */
+    public List<UUID> search(String query, int offset, int limit) {
+        byte[] needle = fold(query);
+        int start = 0;
+        int end = needle.length;
+        while (start < end && needle[start] == SEPARATOR) {
+            start++;
+        }
+        while (end > start && needle[end - 1] == SEPARATOR) {
+            end--;
+        }
+        // a leading separator anchors short queries to the start of a word
+        byte[] pattern = new byte[end - start + 1];
+        pattern[0] = SEPARATOR;
+        System.arraycopy(needle, start, pattern, 1, end - start);
+        if (pattern.length < 3 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        boolean prefixOnly = pattern.length == 3;
+
+        lock.readLock().lock();
+        try {
+            // one pass per rank, each stopping as soon as the page is full
+            int wanted = offset + limit;
+            IntList found = new IntList();
+            int[] wordStart = distinctTrigrams(pattern, 0);
+            int leading = trigram(pattern, 0);
+            collect(leadingPostings[leading], leadingSizes[leading], wordStart, pattern, 0, found, wanted);
+            if (found.size < wanted) {
+                collect(postings[wordStart[0]], postingSizes[wordStart[0]], wordStart, pattern, 1, found, wanted);
+            }
+            if (!prefixOnly && found.size < wanted) {
+                int[] anywhere = distinctTrigrams(pattern, 1);
+                collect(postings[anywhere[0]], postingSizes[anywhere[0]], anywhere, pattern, 2, found, wanted);
+            }
+
+            List<UUID> page = new ArrayList<>(limit);
+            for (int i = offset; i < found.size; i++) {
+                int document = found.values[i];
+                page.add(new UUID(mostSignificant[document], leastSignificant[document]));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the approximate heap held by the index, in bytes
+     */
+    public long estimatedHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 2 * (16L + 4L) * TRIGRAMS;
+            for (int trigram = 0; trigram < TRIGRAMS; trigram++) {
+                if (postings[trigram] != null) {
+                    bytes += 16 + 4L * postings[trigram].length;
+                }
+                if (leadingPostings[trigram] != null) {
+                    bytes += 16 + 4L * leadingPostings[trigram].length;
+                }
+            }
+            bytes += text.length + 4L * textStart.length + 8L * mostSignificant.length
+                    + 8L * leastSignificant.length + 8L * deleted.length + live.estimatedHeapBytes();
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TrigramIndex[" + size() + " entries, about " + estimatedHeapBytes() / (1024 * 1024) + " MB]";
+    }
+
+    private int append(long msb, long lsb, byte[] folded) {
+        int document = documents++;
+        if (document + 1 >= textStart.length) {
+            int capacity = textStart.length * 2;
+            textStart = Arrays.copyOf(textStart, capacity);
+            mostSignificant = Arrays.copyOf(mostSignificant, capacity);
+            leastSignificant = Arrays.copyOf(leastSignificant, capacity);
+        }
+        if ((document >>> 6) >= deleted.length) {
+            deleted = Arrays.copyOf(deleted, deleted.length * 2);
+        }
+        mostSignificant[document] = msb;
+        leastSignificant[document] = lsb;
+        if (textSize + folded.length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textSize + folded.length));
+        }
+        System.arraycopy(folded, 0, text, textSize, folded.length);
+        textStart[document] = textSize;
+        textSize += folded.length;
+        textStart[document + 1] = textSize;
+
+        for (int i = 0; i + 2 < folded.length; i++) {
+            int trigram = trigram(folded, i);
+            // a document is listed once per trigram even if the trigram repeats
+            int size = postingSizes[trigram];
+            if (size == 0 || postings[trigram][size - 1] != document) {
+                postings[trigram] = add(postings[trigram], size, document);
+                postingSizes[trigram] = size + 1;
+            }
+            if (i == 0) {
+                leadingPostings[trigram] = add(leadingPostings[trigram], leadingSizes[trigram], document);
+                leadingSizes[trigram]++;
+            }
+        }
+        return document;
+    }
+
+    private static int[] add(int[] list, int size, int document) {
+        if (list == null) {
+            list = new int[4];
+        } else if (size == list.length) {
+            list = Arrays.copyOf(list, size + (size >> 1) + 1);
+        }
+        list[size] = document;
+        return list;
+    }
+
+    private void markDeleted(int document) {
+        deleted[document >>> 6] |= 1L << document;
+        deletedCount++;
+    }
+
+    private boolean isDeleted(int document) {
+        return (deleted[document >>> 6] & (1L << document)) != 0;
+    }
+
+    /**
+     * Rebuilds the index from its live documents once deletions waste more
+     * than a quarter of it. Document numbers keep their relative order.
+     */
+    private void compactIfWasteful() {
+        if (deletedCount < 1024 || deletedCount * 4 < documents) {
+            return;
+        }
+        byte[] oldText = text;
+        int[] oldStart = textStart;
+        long[] oldMsb = mostSignificant;
+        long[] oldLsb = leastSignificant;
+        long[] oldDeleted = deleted;
+        int oldDocuments = documents;
+
+        postings = new int[TRIGRAMS][];
+        postingSizes = new int[TRIGRAMS];
+        leadingPostings = new int[TRIGRAMS][];
+        leadingSizes = new int[TRIGRAMS];
+        text = new byte[Math.max(1024, textSize)];
+        textSize = 0;
+        int capacity = Math.max(64, Integer.highestOneBit(Math.max(1, oldDocuments - deletedCount)) * 2);
+        textStart = new int[capacity + 1];
+        mostSignificant = new long[capacity];
+        leastSignificant = new long[capacity];
+        deleted = new long[(capacity + 63) >>> 6];
+        documents = 0;
+        deletedCount = 0;
+        live.clear();
+        for (int document = 0; document < oldDocuments; document++) {
+            if ((oldDeleted[document >>> 6] & (1L << document)) != 0) {
+                continue;
+            }
+            byte[] folded = Arrays.copyOfRange(oldText, oldStart[document], oldStart[document + 1]);
+            int renumbered = append(oldMsb[document], oldLsb[document], folded);
+            live.put(oldMsb[document], oldLsb[document], renumbered);
+        }
+    }
+
+    /**
+     * Adds the live documents of the given rank that are in {@code candidates}
+     * and in the posting lists of all {@code trigrams}, in document order,
+     * until {@code found} holds {@code wanted}.
+     */
+    private void collect(int[] candidates, int candidateCount, int[] trigrams, byte[] pattern, int rank,
+            IntList found, int wanted) {
+        int[] cursors = new int[trigrams.length];
+        next:
+        for (int i = 0; i < candidateCount && found.size < wanted; i++) {
+            int document = candidates[i];
+            for (int t = 0; t < trigrams.length; t++) {
+                int[] list = postings[trigrams[t]];
+                int size = postingSizes[trigrams[t]];
+                if (list == candidates) {
+                    continue;
+                }
+                cursors[t] = seek(list, size, cursors[t], document);
+                if (cursors[t] == size) {
+                    return;
+                }
+                if (list[cursors[t]] != document) {
+                    continue next;
+                }
+            }
+            if (!isDeleted(document) && rank(document, pattern, rank < 2) == rank) {
+                found.add(document);
+            }
+        }
+    }
+
+    /**
+     * @return 0 if the document starts with the pattern, 1 if a word in it
+     *         does, 2 if it merely contains it, or -1 if it does not
+     */
+    private int rank(int document, byte[] pattern, boolean prefixOnly) {
+        int from = textStart[document];
+        int to = textStart[document + 1];
+        // the stored text starts with a separator, as does the pattern
+        int found = indexOf(from, to, pattern, 0);
+        if (found >= 0) {
+            return found == from ? 0 : 1;
+        }
+        if (prefixOnly) {
+            return -1;
+        }
+        return indexOf(from, to, pattern, 1) >= 0 ? 2 : -1;
+    }
+
+    private int indexOf(int from, int to, byte[] pattern, int patternStart) {
+        int length = pattern.length - patternStart;
+        byte first = pattern[patternStart];
+        outer:
+        for (int i = from; i <= to - length; i++) {
+            if (text[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < length; j++) {
+                if (text[i + j] != pattern[patternStart + j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the query's distinct trigrams, rarest first
+     */
+    private int[] distinctTrigrams(byte[] pattern, int from) {
+        int[] trigrams = new int[pattern.length - 2 - from];
+        int count = 0;
+        for (int i = from; i + 2 < pattern.length; i++) {
+            int trigram = trigram(pattern, i);
+            boolean seen = false;
+            for (int j = 0; j < count; j++) {
+                seen |= trigrams[j] == trigram;
+            }
+            if (!seen) {
+                trigrams[count++] = trigram;
+            }
+        }
+        Integer[] boxed = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            boxed[i] = trigrams[i];
+        }
+        Arrays.sort(boxed, (a, b) -> Integer.compare(postingSizes[a], postingSizes[b]));
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = boxed[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * @return the first position at or after {@code from} holding a value of at
+     *         least {@code target}, galloping then binary searching
+     */
+    private static int seek(int[] list, int size, int from, int target) {
+        int step = 1;
+        int high = from;
+        while (high < size && list[high] < target) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, size);
+        while (from < high) {
+            int mid = (from + high) >>> 1;
+            if (list[mid] < target) {
+                from = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return from;
+    }
+
+    private static int trigram(byte[] folded, int i) {
+        return (folded[i] << (2 * SYMBOL_BITS)) | (folded[i + 1] << SYMBOL_BITS) | folded[i + 2];
+    }
+
+    /**
+     * Folds fields to symbols, each field preceded by a separator and runs of
+     * separators collapsed. Digits inside a field are also appended as one
+     * run, so "021 555-0123" can be found as "0215550123".
+     */
+    static byte[] fold(String... fields) {
+        ByteList out = new ByteList();
+        for (String field : fields) {
+            if (field == null || field.isEmpty()) {
+                continue;
+            }
+            String plain = Normalizer.normalize(field, Normalizer.Form.NFD);
+            int digits = 0;
+            out.addSeparator();
+            for (int i = 0; i < plain.length(); i++) {
+                if (Character.getType(plain.charAt(i)) == Character.NON_SPACING_MARK) {
+                    continue;
+                }
+                byte symbol = symbol(plain.charAt(i));
+                if (symbol == SEPARATOR) {
+                    out.addSeparator();
+                } else {
+                    out.add(symbol);
+                    if (symbol >= 27 && symbol <= 36) {
+                        digits++;
+                    }
+                }
+            }
+            if (digits > 1 && hasSeparatedDigits(plain)) {
+                out.addSeparator();
+                for (int i = 0; i < plain.length(); i++) {
+                    char c = plain.charAt(i);
+                    if (c >= '0' && c <= '9') {
+                        out.add(symbol(c));
+                    }
+                }
+            }
+        }
+        out.addSeparator();
+        return out.toArray();
+    }
+
+    private static boolean hasSeparatedDigits(String field) {
+        boolean digitSeen = false;
+        boolean gap = false;
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (gap) {
+                    return true;
+                }
+                digitSeen = true;
+            } else if (digitSeen) {
+                gap = true;
+            }
+        }
+        return false;
+    }
+
+    private static byte symbol(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return (byte) (1 + c - 'a');
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (byte) (1 + c - 'A');
+        }
+        if (c >= '0' && c <= '9') {
+            return (byte) (27 + c - '0');
+        }
+        switch (c) {
+        case '@':
+            return 37;
+        case '.':
+            return 38;
+        case '-':
+            return 39;
+        case '_':
+            return 40;
+        case '+':
+            return 41;
+        case '\'':
+            return 42;
+        default:
+            return Character.isLetterOrDigit(c) ? OTHER : SEPARATOR;
+        }
+    }
+
+    private static final class IntList {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class ByteList {
+
+        private byte[] values = new byte[64];
+        private int size;
+
+        void add(byte value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addSeparator() {
+            if (size == 0 || values[size - 1] != SEPARATOR) {
+                add(SEPARATOR);
+            }
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Open-addressing map from a UUID's two halves to a document number.
+     */
+    private static final class IdTable {
+
+        private long[] msbs = new long[64];
+        private long[] lsbs = new long[64];
+        private int[] values = new int[64];
+        private int size;
+
+        IdTable() {
+            Arrays.fill(values, -1);
+        }
+
+        int get(long msb, long lsb) {
+            int mask = values.length - 1;
+            for (int slot = hash(msb, lsb) & mask; values[slot] != -1; slot = (slot + 1) & mask) {
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        void put(long msb, long lsb, int value) {
+            if ((size + 1) * 2 > values.length) {
+                grow();
+            }
+            int mask = values.length - 1;
+            int slot = hash(msb, lsb) & mask;
+            while (values[slot] != -1) {
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            values[slot] = value;
+            size++;
+        }
+
+        int remove(long msb, long lsb) {
+            int mask = values.length - 1;
+            int slot = hash(msb, lsb) & mask;
+            while (values[slot] != -1) {
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    int removed = values[slot];
+                    values[slot] = -1;
+                    size--;
+                    // re-insert the rest of the cluster so lookups never stop early
+                    for (int next = (slot + 1) & mask; values[next] != -1; next = (next + 1) & mask) {
+                        int value = values[next];
+                        values[next] = -1;
+                        size--;
+                        put(msbs[next], lsbs[next], value);
+                    }
+                    return removed;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void clear() {
+            Arrays.fill(values, -1);
+            size = 0;
+        }
+
+        long estimatedHeapBytes() {
+            return 20L * values.length;
+        }
+
+        private void grow() {
+            long[] oldMsbs = msbs;
+            long[] oldLsbs = lsbs;
+            int[] oldValues = values;
+            msbs = new long[oldValues.length * 2];
+            lsbs = new long[oldValues.length * 2];
+            values = new int[oldValues.length * 2];
+            Arrays.fill(values, -1);
+            size = 0;
+            for (int slot = 0; slot < oldValues.length; slot++) {
+                if (oldValues[slot] != -1) {
+                    put(oldMsbs[slot], oldLsbs[slot], oldValues[slot]);
+                }
+            }
+        }
+
+        private static int hash(long msb, long lsb) {
+            long h = (msb ^ lsb) * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.cluster.ClusterBroadcaster;
+import com.ptjp.application.data.cluster.LoopbackBroadcaster;
+import com.ptjp.application.data.cluster.SocketBroadcaster;
+import com.ptjp.application.data.live.DelayEvent;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.metrics.Metered;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the live delays of several application nodes in step: every
+ * {@link DelayEvent} published on this node is sent on to the others, and
+ * theirs are applied to this node's {@link EtaService}, from which train
+ * positions and departure boards follow as for a local report.
+ *
+ * Only the delays cross between nodes; each node works out positions from
+ * them on its own tick. With the default {@code loopback} transport the node
+ * has no one to send to; {@code socket} joins the nodes listed in
+ * {@code cluster.peers} over TCP.
+ *
+ * Reports are sent with the GTFS id of their stop, so a node still on another
+ * version of the timetable applies them to the same stop, or not at all.
+ */
+@Service
+public class ClusterService {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final TimetableService timetableService;
+    private final ClusterBroadcaster broadcaster;
+
+    @Autowired
+    public ClusterService(TimetableService timetableService, EtaService etaService,
+            @Value("${cluster.transport:loopback}") String transport,
+            @Value("${cluster.node-name:node}") String nodeName,
+            @Value("${cluster.address:127.0.0.1}") String address,
+            @Value("${cluster.port:0}") int port,
+            @Value("${cluster.peers:}") String[] peers,
+            @Value("${cluster.batch-millis:50}") long batchMillis,
+            @Value("${cluster.batch-size:500}") int batchSize,
+            @Value("${cluster.replay-events:10000}") int replayEvents) throws IOException {
+        this.timetableService = timetableService;
+        LoopbackBroadcaster loopback = null;
+        switch (transport) {
+            case "loopback":
+                loopback = new LoopbackBroadcaster(new LoopbackBroadcaster.Hub(), nodeName, batchMillis, batchSize,
+                        replayEvents);
+                broadcaster = loopback;
+                break;
+            case "socket":
+                List<InetSocketAddress> peerAddresses = new ArrayList<>();
+                for (String peer : peers) {
+                    peerAddresses.add(parseAddress(peer.trim()));
+                }
+                SocketBroadcaster socket = new SocketBroadcaster(nodeName, new InetSocketAddress(address, port),
+                        peerAddresses, batchMillis, batchSize, replayEvents);
+                logger.info("Cluster node {} listening on port {} for peers {}", socket.origin(), socket.port(),
+                        peerAddresses);
+                broadcaster = socket;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown cluster.transport " + transport);
+        }
+        broadcaster.addListener(events -> events.forEach(etaService::apply));
+        if (loopback != null) {
+            loopback.setConnected(true);
+        }
+    }
+
+    /**
+     * @return the broadcaster joining this node to the others
+     */
+    public ClusterBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    /**
+     * Sends a report published on this node on to the others. Reports from
+     * other nodes are applied directly, never published, so none comes back.
+     */
+    @Metered
+    @EventListener
+    public void delayed(DelayEvent event) {
+        broadcaster.publish(withStopId(event));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        broadcaster.close();
+    }
+
+    /**
+     * @return the report naming its stop by GTFS id too, as this node's
+     *         timetable has it, unless it does not know the trip or stop
+     */
+    private DelayEvent withStopId(DelayEvent event) {
+        Timetable timetable = timetableService.getTimetable();
+        int trip = timetable.tripIndex(event.getTripId());
+        if (event.getStopId() != null || trip < 0 || event.getStopIndex() >= timetable.tripStopCount(trip)) {
+            return event;
+        }
+        int stop = timetable.stopTimeStop(timetable.tripFirstStopTime(trip) + event.getStopIndex());
+        return event.atStop(timetable.stopId(stop));
+    }
+
+    private static InetSocketAddress parseAddress(String peer) {
+        int colon = peer.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port in cluster.peers, got " + peer);
+        }
+        return new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1)));
+    }
+}
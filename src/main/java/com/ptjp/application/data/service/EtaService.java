@@ -0,0 +1,311 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.live.DelayEvent;
+import com.ptjp.application.data.live.EtaOverlay;
+import com.ptjp.application.data.live.StopTimeEta;
+import com.ptjp.application.data.timetable.StopDepartures;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.metrics.Metered;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Real-time expected times: applies {@link DelayEvent}s to an
+ * {@link EtaOverlay} on top of the current timetable, and tells whoever shows
+ * departures from a stop about just the ETAs there that changed.
+ *
+ * An event costs the stops it delays, never a pass over the timetable.
+ * Subscribers are kept per stop, and like {@link TrainPositionBroadcaster}
+ * each folds changes into its own queue, keeping the latest ETA per stop time,
+ * drained on a small pool of push threads, so applying an event never waits
+ * for a session lock. Train positions pick the ETAs up on their next tick.
+ */
+@Service
+public class EtaService {
+
+    /** How long before now a late train may have been scheduled and still be to come. */
+    private static final int MAX_LATENESS_SECONDS = 2 * 3600;
+    private static final int SECONDS_PER_DAY = 24 * 3600;
+    private static final TimetableSnapshot.Key<Indexed> INDEXED = new TimetableSnapshot.Key<>("etas");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final TimetableService timetableService;
+    private final ZoneId zone;
+    private final int minDwellSeconds;
+    private final ExecutorService pushExecutor;
+
+    private final Map<Integer, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private volatile LocalDate expiredBefore;
+
+    @Autowired
+    public EtaService(TimetableService timetableService, @Value("${trains.zone:Africa/Johannesburg}") String zone,
+            @Value("${etas.min-dwell-seconds:20}") int minDwellSeconds,
+            @Value("${etas.push-threads:2}") int pushThreads) {
+        this.timetableService = timetableService;
+        this.zone = ZoneId.of(zone);
+        this.minDwellSeconds = minDwellSeconds;
+        AtomicInteger threads = new AtomicInteger();
+        this.pushExecutor = Executors.newFixedThreadPool(pushThreads, task -> {
+            Thread thread = new Thread(task, "eta-push-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timetableService.addPreparer(this::prepare);
+    }
+
+    /**
+     * @return the expected times over the current timetable
+     */
+    public EtaOverlay getOverlay() {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            return indexed(snapshot).overlay;
+        }
+    }
+
+    @EventListener
+    public void delayed(DelayEvent event) {
+        apply(event);
+    }
+
+    /**
+     * Applies a report and hands the changed ETAs to the subscribers of the
+     * stops they are at. Returns without waiting for any of them to be sent.
+     *
+     * @return the changed ETAs, empty if the report does not match the
+     *         timetable
+     */
+    @Metered
+    public List<StopTimeEta> apply(DelayEvent event) {
+        EtaOverlay overlay = getOverlay();
+        List<StopTimeEta> changes;
+        try {
+            changes = overlay.apply(event);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring {}: {}", event, e.getMessage());
+            return List.of();
+        }
+        LocalDate yesterday = LocalDate.now(zone).minusDays(1);
+        if (!yesterday.equals(expiredBefore)) {
+            // once a day, forget the runs that have all finished
+            overlay.expireBefore(yesterday);
+            expiredBefore = yesterday;
+        }
+        for (StopTimeEta change : changes) {
+            Set<Subscription> watching = subscriptions.get(change.getStop());
+            if (watching != null) {
+                watching.forEach(subscription -> subscription.offer(change));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @param stop stop index in the snapshot's timetable, of which the caller
+     *             holds a reference
+     * @return the next departures from a stop, by expected departure, with
+     *         trip and stop time indexes of the snapshot's timetable
+     */
+    @Metered
+    public List<StopTimeEta> departures(TimetableSnapshot snapshot, int stop, int limit) {
+        return departures(snapshot, stop, LocalDateTime.now(zone), limit);
+    }
+
+    /**
+     * @param stop stop index in the current timetable
+     * @return the first {@code limit} departures from a stop expected at or
+     *         after {@code time}, including cancelled ones scheduled then, and
+     *         trips of the previous service day still running past midnight
+     */
+    @Metered
+    public List<StopTimeEta> departures(int stop, LocalDateTime time, int limit) {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            return departures(snapshot, stop, time, limit);
+        }
+    }
+
+    private List<StopTimeEta> departures(TimetableSnapshot snapshot, int stop, LocalDateTime time, int limit) {
+        Indexed current = indexed(snapshot);
+        List<StopTimeEta> board = new ArrayList<>();
+        int now = time.toLocalTime().toSecondOfDay();
+        collectDepartures(current, stop, time.toLocalDate(), now, limit, board);
+        collectDepartures(current, stop, time.toLocalDate().minusDays(1), now + SECONDS_PER_DAY, limit, board);
+        board.sort(Comparator.comparingLong(EtaService::expectedDeparture));
+        return board.size() > limit ? new ArrayList<>(board.subList(0, limit)) : board;
+    }
+
+    /**
+     * Starts sending the ETA changes at a stop to a listener.
+     *
+     * @param access   runs a task while holding the listener's session,
+     *                 typically {@code command -> ui.access(command::run)}
+     * @param listener receives the changes, called through {@code access}
+     */
+    public Subscription subscribe(int stop, Executor access, Consumer<List<StopTimeEta>> listener) {
+        Subscription subscription = new Subscription(stop, access, listener);
+        subscriptions.computeIfAbsent(stop, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+        return subscription;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pushExecutor.shutdownNow();
+    }
+
+    private static void collectDepartures(Indexed indexed, int stop, LocalDate serviceDate, int now, int limit,
+            List<StopTimeEta> board) {
+        Timetable timetable = indexed.timetable;
+        StopDepartures departures = indexed.departures;
+        long latest = Long.MIN_VALUE;
+        int found = 0;
+        for (int i = departures.firstDepartingAt(stop, now - MAX_LATENESS_SECONDS); i < departures.end(stop); i++) {
+            int stopTime = departures.stopTime(i);
+            int scheduled = timetable.departure(stopTime);
+            if (found >= limit && scheduled > latest) {
+                // expected departures are never earlier than scheduled ones
+                break;
+            }
+            int trip = tripOf(timetable, stopTime);
+            if (!timetable.isServiceActive(timetable.tripService(trip), serviceDate)) {
+                continue;
+            }
+            StopTimeEta eta = indexed.overlay.eta(trip, stopTime, serviceDate);
+            if (eta.isCancelled() ? scheduled >= now : eta.getDeparture() >= now) {
+                board.add(eta);
+                found++;
+                latest = Math.max(latest, eta.getDeparture());
+            }
+        }
+    }
+
+    private static int tripOf(Timetable timetable, int stopTime) {
+        int low = 0;
+        int high = timetable.tripCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (timetable.tripFirstStopTime(mid) <= stopTime) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static long expectedDeparture(StopTimeEta eta) {
+        return eta.getServiceDate().toEpochDay() * SECONDS_PER_DAY + eta.getDeparture();
+    }
+
+    private Indexed indexed(TimetableSnapshot snapshot) {
+        return snapshot.derived(INDEXED, timetable -> new Indexed(timetable,
+                new EtaOverlay(timetable, minDwellSeconds), new StopDepartures(timetable)));
+    }
+
+    private void prepare(TimetableSnapshot next) {
+        EtaOverlay overlay = getOverlay();
+        if (overlay.size() > 0) {
+            logger.info("Timetable replaced, dropping the ETAs of {} delayed runs", overlay.size());
+        }
+        indexed(next);
+    }
+
+    /**
+     * One listener's coalescing queue of ETA changes at a stop.
+     */
+    public final class Subscription {
+
+        private final int stop;
+        private final Executor access;
+        private final Consumer<List<StopTimeEta>> listener;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // guarded by this
+        private final LinkedHashMap<Long, StopTimeEta> pending = new LinkedHashMap<>();
+
+        private Subscription(int stop, Executor access, Consumer<List<StopTimeEta>> listener) {
+            this.stop = stop;
+            this.access = access;
+            this.listener = listener;
+        }
+
+        public void cancel() {
+            subscriptions.computeIfPresent(stop, (key, watching) -> {
+                watching.remove(this);
+                return watching.isEmpty() ? null : watching;
+            });
+        }
+
+        private void offer(StopTimeEta change) {
+            synchronized (this) {
+                pending.put(change.getServiceDate().toEpochDay() << 32 | change.getStopTime(), change);
+            }
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                pushExecutor.execute(() -> {
+                    try {
+                        access.execute(this::drain);
+                    } catch (RuntimeException e) {
+                        // typically the UI has been detached without cancelling
+                        logger.debug("Dropping ETA subscriber", e);
+                        cancel();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            List<StopTimeEta> changes;
+            synchronized (this) {
+                scheduled.set(false);
+                if (pending.isEmpty()) {
+                    return;
+                }
+                changes = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            listener.accept(changes);
+        }
+    }
+
+    private static final class Indexed {
+
+        private final Timetable timetable;
+        private final EtaOverlay overlay;
+        private final StopDepartures departures;
+
+        Indexed(Timetable timetable, EtaOverlay overlay, StopDepartures departures) {
+            this.timetable = timetable;
+            this.overlay = overlay;
+            this.departures = departures;
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.timetable.Isochrone;
+import com.ptjp.application.data.timetable.IsochroneSearch;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.metrics.Metered;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * How far one can get from a station in a given time, over the current
+ * timetable, for the map's reach overlay.
+ *
+ * Searches run on a fork-join pool of their own, {@code isochrones.threads}
+ * wide (all cores by default), rather than the common pool, so a burst of
+ * them cannot starve parallel streams elsewhere. The router is
+ * {@link JourneyPlannerService}'s, so both follow a new timetable together,
+ * and a search keeps to the timetable it started on.
+ */
+@Service
+public class IsochroneService {
+
+    public static final Duration MAX_WINDOW = Duration.ofHours(3);
+    public static final Duration MAX_TRAVEL = Duration.ofHours(3);
+
+    private static final TimetableSnapshot.Key<IsochroneSearch> SEARCH = new TimetableSnapshot.Key<>("isochrones");
+
+    private final JourneyPlannerService journeyPlannerService;
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public IsochroneService(TimetableService timetableService, JourneyPlannerService journeyPlannerService,
+            @Value("${isochrones.threads:0}") int threads) {
+        this.journeyPlannerService = journeyPlannerService;
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("isochrone-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        timetableService.addPreparer(this::search);
+    }
+
+    /**
+     * @param snapshot the snapshot the stop index is of, of which the caller
+     *                 holds a reference
+     * @param from     stop index in the snapshot's timetable
+     * @param start    the earliest departure, in the timetable's time zone
+     * @param window   how long after {@code start} a departure may be
+     * @param travel   the longest journey to search for
+     * @return per stop, the shortest journey from {@code from} leaving in the
+     *         window
+     */
+    @Metered
+    public Isochrone isochrone(TimetableSnapshot snapshot, int from, LocalDateTime start, Duration window,
+            Duration travel) {
+        if (window.isNegative() || window.compareTo(MAX_WINDOW) > 0) {
+            throw new IllegalArgumentException("Departure window must be at most " + MAX_WINDOW + ", not " + window);
+        }
+        if (travel.isNegative() || travel.compareTo(MAX_TRAVEL) > 0) {
+            throw new IllegalArgumentException("Travel time must be at most " + MAX_TRAVEL + ", not " + travel);
+        }
+        int windowStart = start.toLocalTime().toSecondOfDay();
+        return search(snapshot).search(from, start.toLocalDate(), windowStart, windowStart + (int) window.getSeconds(),
+                (int) travel.getSeconds());
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private IsochroneSearch search(TimetableSnapshot snapshot) {
+        return snapshot.derived(SEARCH,
+                timetable -> new IsochroneSearch(journeyPlannerService.getRouter(snapshot), pool));
+    }
+
+}
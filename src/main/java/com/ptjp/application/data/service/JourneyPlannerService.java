@@ -0,0 +1,176 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.timetable.Fares;
+import com.ptjp.application.data.timetable.Journey;
+import com.ptjp.application.data.timetable.McRaptorRouter;
+import com.ptjp.application.data.timetable.RaptorRouter;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.data.timetable.TripPatterns;
+import com.ptjp.application.metrics.Metered;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Plans earliest-arrival journeys between stations over the current
+ * timetable, and the alternatives that trade arrival time against changing
+ * trains and fare.
+ *
+ * Each thread keeps its own {@link RaptorRouter.Scratch} and
+ * {@link McRaptorRouter.Scratch}, so once a thread has planned one journey,
+ * later searches on it allocate nothing but the returned {@link Journey}s.
+ * Fares are priced by distance zones, {@code fares.zone-km} and
+ * {@code fares.zone-cents}, for every train boarded.
+ *
+ * The trip patterns the routers scan are derived from each timetable once,
+ * before {@link TimetableService} publishes it. A search holds on to the
+ * snapshot it started on, so a timetable published meanwhile never mixes into
+ * it.
+ */
+@Service
+public class JourneyPlannerService {
+
+    public static final int MAX_TRAINS = 6;
+    public static final int TRANSFER_SECONDS = 120;
+    /** The most alternatives kept per station and number of trains. */
+    public static final int MAX_LABELS = 8;
+
+    private final TimetableService timetableService;
+    private final Fares fares;
+
+    private static final TimetableSnapshot.Key<RaptorRouter> ROUTER = new TimetableSnapshot.Key<>("router");
+    private static final TimetableSnapshot.Key<McRaptorRouter> PARETO_ROUTER =
+            new TimetableSnapshot.Key<>("pareto router");
+
+    private final ThreadLocal<RaptorRouter.Scratch> scratch = new ThreadLocal<>();
+    private final ThreadLocal<McRaptorRouter.Scratch> paretoScratch = new ThreadLocal<>();
+
+    @Autowired
+    public JourneyPlannerService(TimetableService timetableService,
+            @Value("${fares.zone-km:20,30,40,50}") String zoneKilometres,
+            @Value("${fares.zone-cents:1000,1100,1300,1500,1800}") String zoneCents) {
+        this(timetableService, Fares.parse(zoneKilometres, zoneCents));
+    }
+
+    public JourneyPlannerService(TimetableService timetableService) {
+        this(timetableService, Fares.DEFAULT);
+    }
+
+    public JourneyPlannerService(TimetableService timetableService, Fares fares) {
+        this.timetableService = timetableService;
+        this.fares = fares;
+        timetableService.addPreparer(this::paretoRouter);
+    }
+
+    @Metered
+    public Optional<Journey> plan(String fromStopId, String toStopId, LocalDateTime departure) {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            Timetable timetable = snapshot.timetable();
+            int from = timetable.stopIndex(fromStopId);
+            int to = timetable.stopIndex(toStopId);
+            if (from < 0 || to < 0) {
+                return Optional.empty();
+            }
+            return plan(router(snapshot), from, to, departure.toLocalDate(), departure.toLocalTime().toSecondOfDay());
+        }
+    }
+
+    /**
+     * @param snapshot  the snapshot the stop indexes are of, of which the
+     *                  caller holds a reference
+     * @param from      stop index in the snapshot's timetable
+     * @param to        stop index in the snapshot's timetable
+     * @param departure seconds since the start of {@code date}
+     */
+    public Optional<Journey> plan(TimetableSnapshot snapshot, int from, int to, LocalDate date, int departure) {
+        return plan(router(snapshot), from, to, date, departure);
+    }
+
+    /**
+     * Earliest arrival only, without building a {@link Journey}. Allocation
+     * free once the calling thread has warmed up.
+     *
+     * @param snapshot the snapshot the stop indexes are of, of which the
+     *                 caller holds a reference
+     * @return seconds since the start of {@code date}, or
+     *         {@link RaptorRouter#UNREACHED}
+     */
+    public int earliestArrival(TimetableSnapshot snapshot, int from, int to, LocalDate date, int departure) {
+        RaptorRouter current = router(snapshot);
+        return current.earliestArrival(from, to, date, departure, scratch(current));
+    }
+
+    /**
+     * Every journey leaving at or after {@code departure} that no other beats
+     * on arrival time, number of trains and fare together; the earliest
+     * arrival among them.
+     *
+     * @param snapshot  the snapshot the stop indexes are of, of which the
+     *                  caller holds a reference
+     * @param from      stop index in the snapshot's timetable
+     * @param to        stop index in the snapshot's timetable
+     * @param departure seconds since the start of {@code date}
+     * @return the journeys, earliest arrival first
+     */
+    @Metered
+    public List<Journey> planAlternatives(TimetableSnapshot snapshot, int from, int to, LocalDate date,
+            int departure) {
+        McRaptorRouter current = paretoRouter(snapshot);
+        McRaptorRouter.Scratch state = paretoScratch.get();
+        if (state == null || state.patterns() != current.patterns()) {
+            state = current.newScratch();
+            paretoScratch.set(state);
+        }
+        current.search(from, to, date, departure, state);
+        return current.journeys(state);
+    }
+
+    /**
+     * @return the fare of the journey in cents, as alternatives are priced
+     */
+    public int fareCents(Journey journey) {
+        return fares.journeyCents(journey.getTimetable(), journey);
+    }
+
+    /**
+     * @return the router over the snapshot's timetable, shared with other
+     *         searches such as {@link IsochroneService}'s; the caller holds a
+     *         reference to the snapshot
+     */
+    public RaptorRouter getRouter(TimetableSnapshot snapshot) {
+        return router(snapshot);
+    }
+
+    private Optional<Journey> plan(RaptorRouter current, int from, int to, LocalDate date, int departure) {
+        RaptorRouter.Scratch state = scratch(current);
+        if (current.earliestArrival(from, to, date, departure, state) == RaptorRouter.UNREACHED) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(current.journey(to, state));
+    }
+
+    private RaptorRouter router(TimetableSnapshot snapshot) {
+        return snapshot.derived(ROUTER,
+                timetable -> new RaptorRouter(new TripPatterns(timetable), MAX_TRAINS, TRANSFER_SECONDS));
+    }
+
+    private McRaptorRouter paretoRouter(TimetableSnapshot snapshot) {
+        return snapshot.derived(PARETO_ROUTER, timetable -> new McRaptorRouter(router(snapshot).patterns(), fares,
+                MAX_TRAINS, TRANSFER_SECONDS, MAX_LABELS));
+    }
+
+    private RaptorRouter.Scratch scratch(RaptorRouter current) {
+        RaptorRouter.Scratch state = scratch.get();
+        if (state == null || state.patterns() != current.patterns()) {
+            state = current.newScratch();
+            scratch.set(state);
+        }
+        return state;
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.tiles.NetworkLines;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.data.timetable.TripPatterns;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Serves the rail network overlay as vector lines, simplified per zoom band.
+ *
+ * The lines are built from each timetable before it is published and shared
+ * by every map session, so simplifying and encoding them happens once per
+ * timetable rather than on every map move.
+ */
+@Service
+public class NetworkLineService {
+
+    private static final TimetableSnapshot.Key<NetworkLines> LINES = new TimetableSnapshot.Key<>("network lines");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final TimetableService timetableService;
+    private final JourneyPlannerService journeyPlannerService;
+
+    @Autowired
+    public NetworkLineService(TimetableService timetableService, JourneyPlannerService journeyPlannerService) {
+        this.timetableService = timetableService;
+        this.journeyPlannerService = journeyPlannerService;
+        timetableService.addPreparer(this::lines);
+    }
+
+    /**
+     * @return the lines of the current timetable; a new instance whenever the
+     *         timetable is replaced
+     */
+    public NetworkLines getLines() {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            return lines(snapshot);
+        }
+    }
+
+    private NetworkLines lines(TimetableSnapshot snapshot) {
+        return snapshot.derived(LINES, timetable -> build(journeyPlannerService.getRouter(snapshot).patterns()));
+    }
+
+    private NetworkLines build(TripPatterns patterns) {
+        long start = System.nanoTime();
+        NetworkLines lines = new NetworkLines(patterns);
+        StringBuilder sizes = new StringBuilder();
+        for (int band = 0; band < NetworkLines.ZOOM_BANDS.length; band++) {
+            sizes.append(band == 0 ? "" : ", ").append("z").append(NetworkLines.ZOOM_BANDS[band]).append(' ')
+                    .append(lines.encodedLength(band)).append(" bytes");
+        }
+        logger.info("Simplified {} network lines in {} ms: {}", lines.lineCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), sizes);
+        return lines;
+    }
+
+}
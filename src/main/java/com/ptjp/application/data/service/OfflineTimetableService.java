@@ -0,0 +1,118 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.offline.OfflineTimetable;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.metrics.Metered;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Serves the current timetable as an {@link OfflineTimetable} snapshot, and
+ * deltas to it from the versions clients may still hold.
+ *
+ * The snapshot is built for each timetable before it is published. The last
+ * {@code offline.history} versions are remembered, as trip fingerprints rather
+ * than timetables, so a client that went offline a few loads ago downloads
+ * only the trips that changed; clients holding an older version, or one from
+ * before a restart that the feed has since changed, download the snapshot.
+ */
+@Service
+public class OfflineTimetableService {
+
+    private static final byte[] NO_DELTA = new byte[0];
+    private static final TimetableSnapshot.Key<Built> BUILT = new TimetableSnapshot.Key<>("offline timetable");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final TimetableService timetableService;
+    private final int history;
+
+    private final Map<String, OfflineTimetable.Version> versions = new LinkedHashMap<>();
+
+    @Autowired
+    public OfflineTimetableService(TimetableService timetableService, @Value("${offline.history:8}") int history) {
+        this.timetableService = timetableService;
+        this.history = Math.max(1, history);
+        timetableService.addPreparer(this::built);
+    }
+
+    /**
+     * @return the snapshot of the current timetable
+     */
+    @Metered
+    public OfflineTimetable getCurrent() {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            return built(snapshot).offline;
+        }
+    }
+
+    /**
+     * @return the gzipped delta from the version tagged {@code since} to
+     *         {@code current}, as {@link #getCurrent()} returned it, or
+     *         {@code null} if the version is unknown or a delta from it would
+     *         be no smaller than the snapshot
+     */
+    @Metered
+    public byte[] delta(OfflineTimetable current, String since) {
+        OfflineTimetable.Version base;
+        synchronized (versions) {
+            base = since == null ? null : versions.get(since);
+        }
+        if (base == null) {
+            return null;
+        }
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            Built built = built(snapshot);
+            if (built.offline != current) {
+                // replaced since; rare enough not to cache
+                return current.delta(base);
+            }
+            byte[] delta = built.deltas.computeIfAbsent(since, tag -> {
+                byte[] made = current.delta(base);
+                return made == null ? NO_DELTA : made;
+            });
+            return delta == NO_DELTA ? null : delta;
+        }
+    }
+
+    private Built built(TimetableSnapshot snapshot) {
+        return snapshot.derived(BUILT, this::build);
+    }
+
+    private Built build(Timetable timetable) {
+        long start = System.nanoTime();
+        OfflineTimetable offline = new OfflineTimetable(timetable);
+        OfflineTimetable.Version version = offline.version();
+        synchronized (versions) {
+            versions.remove(version.tag());
+            versions.put(version.tag(), version);
+            while (versions.size() > history) {
+                versions.remove(versions.keySet().iterator().next());
+            }
+        }
+        logger.info("Encoded offline timetable {} with {} trips in {} ms, {} bytes", version.tag(),
+                version.tripCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                offline.snapshot().length);
+        return new Built(offline);
+    }
+
+    private static final class Built {
+
+        private final OfflineTimetable offline;
+        /** Deltas already made to this version, by base version, or {@link #NO_DELTA}. */
+        private final Map<String, byte[]> deltas = new ConcurrentHashMap<>();
+
+        Built(OfflineTimetable offline) {
+            this.offline = offline;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.archive.PositionArchive;
+import com.ptjp.application.data.archive.PositionSample;
+import com.ptjp.application.data.live.TrainPosition;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.metrics.Metered;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Records every train position the {@link TrainPositionBroadcaster} works
+ * out into a {@link PositionArchive}, and plays stretches of it back at a
+ * multiple of real time, for reviewing incidents.
+ *
+ * Samples are gathered in memory and written a block of
+ * {@code archive.block-seconds} at a time, so the last block's worth is not
+ * replayable yet. Segments whose newest sample is older than
+ * {@code archive.retention-days} are deleted as new blocks are written.
+ */
+@Service
+public class PositionArchiveService {
+
+    private static final double EARTH_RADIUS_METRES = 6_371_000;
+    private static final long REPLAY_TICK_MILLIS = 250;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final PositionArchive archive;
+    private final ZoneId zone;
+    private final long blockMillis;
+    private final long retentionMillis;
+    private final ScheduledExecutorService replayExecutor;
+
+    // guarded by this
+    private final List<PositionSample> pending = new ArrayList<>();
+    private HashMap<Integer, PositionSample> lastSamples = new HashMap<>();
+    private long blockStart = -1;
+
+    @Autowired
+    public PositionArchiveService(
+            @Value("${archive.dir:${java.io.tmpdir}/capetowntrainmapper-positions}") String directory,
+            @Value("${archive.segment-mb:64}") int segmentMegabytes,
+            @Value("${archive.block-seconds:60}") int blockSeconds,
+            @Value("${archive.retention-days:90}") int retentionDays,
+            @Value("${archive.replay-threads:2}") int replayThreads,
+            @Value("${trains.zone:Africa/Johannesburg}") String zone) throws IOException {
+        this(new PositionArchive(Paths.get(directory), segmentMegabytes << 20), ZoneId.of(zone),
+                Duration.ofSeconds(blockSeconds), Duration.ofDays(retentionDays), replayThreads);
+    }
+
+    public PositionArchiveService(PositionArchive archive, ZoneId zone, Duration block, Duration retention,
+            int replayThreads) {
+        this.archive = archive;
+        this.zone = zone;
+        this.blockMillis = block.toMillis();
+        this.retentionMillis = retention.toMillis();
+        AtomicInteger threads = new AtomicInteger();
+        this.replayExecutor = Executors.newScheduledThreadPool(replayThreads, task -> {
+            Thread thread = new Thread(task, "position-replay-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public PositionArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Adds a tick's positions to the current block, with each train's speed
+     * since its previous sample, and writes the block once it spans
+     * {@code archive.block-seconds}.
+     */
+    @EventListener
+    public synchronized void record(TrainPositionsEvent event) {
+        long time = event.getTime().toEpochMilli();
+        if (blockStart >= 0 && time - blockStart >= blockMillis) {
+            flush();
+        }
+        if (blockStart < 0) {
+            blockStart = time;
+        }
+        Timetable timetable = event.getTimetable();
+        HashMap<Integer, PositionSample> samples = new HashMap<>();
+        for (TrainPosition position : event.getPositions()) {
+            int train = archive.trainId(timetable.tripId(position.getTrip()));
+            PositionSample previous = lastSamples.get(train);
+            float speed = 0;
+            if (previous != null && time > previous.getTimeMillis()) {
+                speed = (float) (metres(previous.getLat(), previous.getLon(), position.getLat(), position.getLon())
+                        * 1000 / (time - previous.getTimeMillis()));
+            }
+            PositionSample sample = new PositionSample(train, time, position.getLat(), position.getLon(), speed);
+            pending.add(sample);
+            samples.put(train, sample);
+        }
+        lastSamples = samples;
+    }
+
+    /**
+     * Plays back what trains did between two times of day in the trains'
+     * time zone, {@code speed} times faster than they did it. Frames go to
+     * the listener a few times a second from a replay thread, the last one
+     * marked finished.
+     */
+    @Metered
+    public Replay replay(LocalDateTime from, LocalDateTime to, int speed, Consumer<ReplayFrame> listener) {
+        if (speed < 1) {
+            throw new IllegalArgumentException("Replay speed must be at least 1, not " + speed);
+        }
+        Replay replay = new Replay(from.atZone(zone).toInstant().toEpochMilli(),
+                to.atZone(zone).toInstant().toEpochMilli(), speed, listener);
+        replay.future = replayExecutor.scheduleAtFixedRate(replay::tick, 0, REPLAY_TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
+        return replay;
+    }
+
+    /**
+     * @return the time of the first sample that can be replayed, or null if
+     *         none can
+     */
+    public LocalDateTime getFirstReplayable() {
+        long first = archive.getFirstMillis();
+        return first < 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(first), zone);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        replayExecutor.shutdownNow();
+        if (!pending.isEmpty()) {
+            flush();
+        }
+        archive.close();
+    }
+
+    private void flush() {
+        try {
+            archive.append(pending);
+            int deleted = archive.deleteBefore(System.currentTimeMillis() - retentionMillis);
+            if (deleted > 0) {
+                logger.info("Deleted {} position archive segments older than the retention period", deleted);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not archive {} train positions", pending.size(), e);
+        }
+        pending.clear();
+        blockStart = -1;
+    }
+
+    private static double metres(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METRES;
+    }
+
+    /**
+     * Samples to show for one step of a replay: the latest of each train since
+     * the previous frame, in time order.
+     */
+    public static final class ReplayFrame {
+
+        private final LocalDateTime time;
+        private final long timeMillis;
+        private final List<PositionSample> samples;
+        private final boolean finished;
+
+        ReplayFrame(LocalDateTime time, long timeMillis, List<PositionSample> samples, boolean finished) {
+            this.time = time;
+            this.timeMillis = timeMillis;
+            this.samples = Collections.unmodifiableList(samples);
+            this.finished = finished;
+        }
+
+        /**
+         * @return the replayed time the frame brings the map up to
+         */
+        public LocalDateTime getTime() {
+            return time;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public List<PositionSample> getSamples() {
+            return samples;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    /**
+     * A replay in progress, read from the archive a block at a time as it
+     * goes.
+     */
+    public final class Replay {
+
+        private final long fromMillis;
+        private final long toMillis;
+        private final int speed;
+        private final Consumer<ReplayFrame> listener;
+        private final PositionArchive.Cursor cursor;
+        private final long started = System.nanoTime();
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean stopped;
+
+        private Replay(long fromMillis, long toMillis, int speed, Consumer<ReplayFrame> listener) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.speed = speed;
+            this.listener = listener;
+            this.cursor = archive.cursor(fromMillis, toMillis);
+        }
+
+        public void stop() {
+            stopped = true;
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+
+        private void tick() {
+            if (stopped) {
+                stop();
+                return;
+            }
+            long replayed = Math.min(toMillis,
+                    fromMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) * speed);
+            boolean finished = replayed >= toMillis;
+            try {
+                HashMap<Integer, PositionSample> latest = new HashMap<>();
+                for (PositionSample sample : cursor.next(replayed)) {
+                    latest.put(sample.getTrain(), sample);
+                }
+                List<PositionSample> samples = new ArrayList<>(latest.values());
+                samples.sort(Comparator.comparingLong(PositionSample::getTimeMillis));
+                listener.accept(new ReplayFrame(LocalDateTime.ofInstant(Instant.ofEpochMilli(replayed), zone),
+                        replayed, samples, finished));
+            } catch (RuntimeException e) {
+                logger.warn("Replay stopped", e);
+                finished = true;
+            }
+            if (finished) {
+                stop();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.search.StationNameIndex;
+import com.ptjp.application.data.spatial.StationGrid;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Finds stations by location: those inside a map viewport, and those nearest
+ * to a point such as a rider's GPS position; and by name, as the rider types.
+ *
+ * Lookups go to a {@link StationGrid} and a {@link StationNameIndex} built
+ * from the current timetable, never to the database, so they are cheap enough
+ * to run on every map move and every keystroke. Station numbers are stop
+ * indexes of the snapshot passed in, which the caller has
+ * {@link TimetableService#acquire()}d for as long as it uses them. Names may
+ * also be found by the aliases in {@code stations.aliases}.
+ */
+@Service
+public class StationService {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final TimetableSnapshot.Key<Indexed> INDEXED = new TimetableSnapshot.Key<>("stations");
+
+    private final TimetableService timetableService;
+    private final Map<String, List<String>> aliases;
+
+    @Autowired
+    public StationService(TimetableService timetableService,
+            @Value("${stations.aliases:classpath:station-aliases.txt}") Resource aliases) {
+        this.timetableService = timetableService;
+        this.aliases = readAliases(aliases);
+        timetableService.addPreparer(this::indexed);
+    }
+
+    /**
+     * @return the stations inside the box, in no particular order
+     */
+    public int[] stationsWithin(TimetableSnapshot snapshot, double south, double west, double north, double east) {
+        return indexed(snapshot).grid.within(south, west, north, east);
+    }
+
+    /**
+     * @return up to {@code k} stations, closest first
+     */
+    public int[] nearestStations(TimetableSnapshot snapshot, double lat, double lon, int k) {
+        return indexed(snapshot).grid.nearest(lat, lon, k);
+    }
+
+    /**
+     * @return the nearest station, or -1 if the timetable has none
+     */
+    public int nearestStation(TimetableSnapshot snapshot, double lat, double lon) {
+        int[] nearest = nearestStations(snapshot, lat, lon, 1);
+        return nearest.length == 0 ? -1 : nearest[0];
+    }
+
+    /**
+     * @return up to {@code limit} stations whose name or alias starts with, or
+     *         nearly with, what has been typed, best first
+     */
+    public int[] suggest(TimetableSnapshot snapshot, String typed, int limit) {
+        return indexed(snapshot).names.suggest(typed, limit);
+    }
+
+    private Indexed indexed(TimetableSnapshot snapshot) {
+        return snapshot.derived(INDEXED,
+                timetable -> new Indexed(StationGrid.of(timetable), StationNameIndex.of(timetable, aliases)));
+    }
+
+    /**
+     * Reads lines of {@code Station name = alias, alias}, skipping blank lines
+     * and {@code #} comments.
+     */
+    private Map<String, List<String>> readAliases(Resource resource) {
+        Map<String, List<String>> read = new HashMap<>();
+        if (!resource.exists()) {
+            logger.warn("No station aliases at {}", resource);
+            return read;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                line = line.trim();
+                int equals = line.indexOf('=');
+                if (line.isEmpty() || line.startsWith("#") || equals < 0) {
+                    continue;
+                }
+                List<String> others = new ArrayList<>();
+                for (String alias : line.substring(equals + 1).split(",")) {
+                    if (!alias.isBlank()) {
+                        others.add(alias.trim());
+                    }
+                }
+                read.put(line.substring(0, equals).trim(), others);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read station aliases from {}", resource, e);
+        }
+        return read;
+    }
+
+    private static final class Indexed {
+
+        private final StationGrid grid;
+        private final StationNameIndex names;
+
+        Indexed(StationGrid grid, StationNameIndex names) {
+            this.grid = grid;
+            this.names = names;
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.tiles.NetworkTileRenderer;
+import com.ptjp.application.data.tiles.TileCache;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.metrics.Metered;
+import java.nio.file.Paths;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Serves the rail network overlay as map tiles.
+ *
+ * Tiles are rendered on first request from the current timetable and kept in
+ * a {@link TileCache}, so every map session shares them instead of building
+ * its own line geometry. Tile keys and ETags start with the network's
+ * fingerprint: loading a timetable that draws differently changes both, while
+ * one that draws the same keeps every cached tile valid.
+ */
+@Service
+public class TileService {
+
+    private static final byte[] EMPTY_TILE = NetworkTileRenderer.emptyTile();
+    private static final TimetableSnapshot.Key<NetworkTileRenderer> RENDERER =
+            new TimetableSnapshot.Key<>("tile renderer");
+
+    private final TimetableService timetableService;
+    private final TileCache cache;
+
+    @Autowired
+    public TileService(TimetableService timetableService,
+            @Value("${tiles.cache-dir:${java.io.tmpdir}/capetowntrainmapper-tiles}") String cacheDirectory,
+            @Value("${tiles.memory-cache-mb:32}") long memoryMegabytes,
+            @Value("${tiles.disk-cache-mb:256}") long diskMegabytes) {
+        this(timetableService, new TileCache(Paths.get(cacheDirectory), memoryMegabytes << 20, diskMegabytes << 20));
+    }
+
+    public TileService(TimetableService timetableService, TileCache cache) {
+        this.timetableService = timetableService;
+        this.cache = cache;
+        timetableService.addPreparer(this::renderer);
+    }
+
+    /**
+     * @return the strong ETag of the tile, known without rendering it
+     */
+    @Metered
+    public String etag(int z, int x, int y) {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            return "\"" + renderer(snapshot).fingerprint() + "-" + z + "-" + x + "-" + y + "\"";
+        }
+    }
+
+    /**
+     * @return the tile as a PNG; {@code z}, {@code x} and {@code y} must pass
+     *         {@link NetworkTileRenderer#isValid(int, int, int)}
+     */
+    @Metered
+    public byte[] tile(int z, int x, int y) {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            NetworkTileRenderer renderer = renderer(snapshot);
+            if (!renderer.covers(z, x, y)) {
+                return EMPTY_TILE;
+            }
+            String key = renderer.fingerprint() + "/" + z + "/" + x + "/" + y + ".png";
+            return cache.get(key, () -> renderer.render(z, x, y));
+        }
+    }
+
+    public TileCache getCache() {
+        return cache;
+    }
+
+    private NetworkTileRenderer renderer(TimetableSnapshot snapshot) {
+        return snapshot.derived(RENDERER, NetworkTileRenderer::new);
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.timetable.GtfsFormatException;
+import com.ptjp.application.data.timetable.GtfsTimetableLoader;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Holds the timetable the application plans journeys and draws maps from.
+ *
+ * Timetables are kept in memory as a {@link Timetable} rather than as JPA
+ * entities; a regional feed has millions of stop times.
+ *
+ * The current timetable is published as a {@link TimetableSnapshot}, and may
+ * be replaced while the application runs. A new feed is loaded, checked and
+ * handed to every registered preparer, which builds what its service derives
+ * from it, while queries carry on against the current snapshot; only then is
+ * it published, by a single reference swap. Queries never lock: those that
+ * must see one version throughout {@link #acquire()} the snapshot, and the
+ * one replaced is reclaimed when the last of them closes it. The feed is
+ * loaded again whenever its files change, so publishing a timetable needs no
+ * restart.
+ */
+@Service
+public class TimetableService {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final GtfsTimetableLoader loader = new GtfsTimetableLoader();
+    private final List<Consumer<TimetableSnapshot>> preparers = new CopyOnWriteArrayList<>();
+
+    private volatile TimetableSnapshot snapshot = new TimetableSnapshot(Timetable.EMPTY, 0, this::reclaimed);
+    private volatile Path feed;
+    private volatile long feedModified;
+
+    /**
+     * @return the current timetable, consistent in itself; stop and trip
+     *         indexes found anywhere else may belong to another, so code
+     *         combining the two {@link #acquire()}s a snapshot instead
+     */
+    public Timetable getTimetable() {
+        return snapshot.timetable();
+    }
+
+    /**
+     * @return whether {@code snapshot} is still the one published
+     */
+    public boolean isCurrent(TimetableSnapshot snapshot) {
+        return this.snapshot == snapshot;
+    }
+
+    /**
+     * @return the current snapshot with a reference taken, to be closed when
+     *         done with
+     */
+    public TimetableSnapshot acquire() {
+        while (true) {
+            TimetableSnapshot current = snapshot;
+            if (current.retain()) {
+                return current;
+            }
+            // replaced and reclaimed in between; the next read sees its successor
+        }
+    }
+
+    /**
+     * Registers a preparer, called with each new snapshot before it is
+     * published. A preparer that throws stops the snapshot from being
+     * published.
+     */
+    public void addPreparer(Consumer<TimetableSnapshot> preparer) {
+        preparers.add(preparer);
+    }
+
+    /**
+     * Loads a GTFS feed, either a zip file or an extracted directory, and makes
+     * it the current timetable once every preparer is done with it. Should
+     * loading, checking or preparing fail, the current timetable stays.
+     */
+    public synchronized Timetable load(Path feed) throws IOException {
+        long start = System.nanoTime();
+        this.feed = feed;
+        this.feedModified = lastModified(feed);
+        Timetable loaded = loader.load(feed);
+        if (loaded.stopCount() == 0 || loaded.tripCount() == 0) {
+            throw new GtfsFormatException(feed + " has no " + (loaded.stopCount() == 0 ? "stops" : "trips"));
+        }
+        long read = System.nanoTime();
+        TimetableSnapshot next = new TimetableSnapshot(loaded, snapshot.version() + 1, this::reclaimed);
+        try {
+            for (Consumer<TimetableSnapshot> preparer : preparers) {
+                preparer.accept(next);
+            }
+        } catch (RuntimeException | Error e) {
+            next.close();
+            throw e;
+        }
+        TimetableSnapshot previous = snapshot;
+        snapshot = next;
+        previous.close();
+        logger.info("Loaded {} from {} in {} ms and prepared it in {} ms, about {} MB of heap", next, feed,
+                TimeUnit.NANOSECONDS.toMillis(read - start), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - read),
+                loaded.estimatedHeapBytes() / (1024 * 1024));
+        return loaded;
+    }
+
+    /**
+     * Loads the last feed again if its files have changed since, every
+     * {@code timetable.reload-check-ms}. A feed that fails to load is not
+     * tried again until it changes once more.
+     */
+    @Scheduled(fixedDelayString = "${timetable.reload-check-ms:60000}")
+    public void reloadIfChanged() {
+        Path current = feed;
+        try {
+            if (current != null && lastModified(current) != feedModified) {
+                logger.info("{} has changed, reloading it", current);
+                load(current);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not reload {}, keeping {}", current, snapshot, e);
+        }
+    }
+
+    /**
+     * @return the latest modification time of the feed's files
+     */
+    private static long lastModified(Path feed) throws IOException {
+        if (!Files.isDirectory(feed)) {
+            return Files.getLastModifiedTime(feed).toMillis();
+        }
+        try (Stream<Path> files = Files.list(feed)) {
+            long latest = Files.getLastModifiedTime(feed).toMillis();
+            for (Path file : (Iterable<Path>) files::iterator) {
+                latest = Math.max(latest, Files.getLastModifiedTime(file).toMillis());
+            }
+            return latest;
+        }
+    }
+
+    private void reclaimed(TimetableSnapshot reclaimed) {
+        if (reclaimed.version() > 0) {
+            logger.info("Reclaimed {} after its last reader", reclaimed);
+        }
+    }
+
+}
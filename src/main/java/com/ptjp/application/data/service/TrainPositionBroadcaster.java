@@ -0,0 +1,319 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.live.EtaOverlay;
+import com.ptjp.application.data.live.TrainPosition;
+import com.ptjp.application.data.live.TrainPositions;
+import com.ptjp.application.data.timetable.Timetable;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends live train positions to every open map.
+ *
+ * Positions are worked out once per tick for all viewers, from the expected
+ * times {@link EtaService} keeps, and diffed against the previous tick, so a
+ * delay reaches maps as the trains it moves. Each {@link Subscription} folds
+ * the changes inside its viewport into its own queue, which keeps only the
+ * latest position per train and holds at most {@code trains.queue-capacity}
+ * of them; a viewer that falls further behind is simply sent a fresh snapshot
+ * when it catches up. Queues are drained on a small pool of push threads, at
+ * most one drain per viewer at a time, so the ticking thread never waits for
+ * a session lock and a slow client only ever delays itself.
+ */
+@Service
+public class TrainPositionBroadcaster {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final EtaService etaService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ZoneId zone;
+    private final int queueCapacity;
+    private final ExecutorService pushExecutor;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    private volatile Frame latest = new Frame(Timetable.EMPTY, new TrainPosition[0]);
+
+    @Autowired
+    public TrainPositionBroadcaster(EtaService etaService, ApplicationEventPublisher eventPublisher,
+            @Value("${trains.zone:Africa/Johannesburg}") String zone,
+            @Value("${trains.push-threads:4}") int pushThreads,
+            @Value("${trains.queue-capacity:1000}") int queueCapacity) {
+        this.etaService = etaService;
+        this.eventPublisher = eventPublisher;
+        this.zone = ZoneId.of(zone);
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threads = new AtomicInteger();
+        this.pushExecutor = Executors.newFixedThreadPool(pushThreads, task -> {
+            Thread thread = new Thread(task, "train-push-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts sending positions to a viewer.
+     *
+     * @param access   runs a task while holding the viewer's session, typically
+     *                 {@code command -> ui.access(command::run)}
+     * @param listener receives the positions, called through {@code access}
+     */
+    public Subscription subscribe(Executor access, Consumer<Update> listener) {
+        Subscription subscription = new Subscription(access, listener);
+        subscriptions.add(subscription);
+        subscription.schedule();
+        return subscription;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Scheduled(fixedRateString = "${trains.broadcast-interval-ms:5000}")
+    public void broadcast() {
+        publish(LocalDateTime.now(zone));
+    }
+
+    /**
+     * Works out where the trains are expected at {@code time}, publishes them
+     * as a {@link TrainPositionsEvent} and hands the changes since the last
+     * call to every subscriber. Returns without waiting for any of them to be
+     * sent.
+     */
+    public void publish(LocalDateTime time) {
+        EtaOverlay etas = etaService.getOverlay();
+        Timetable timetable = etas.getTimetable();
+        Frame previous = latest;
+        Frame next = new Frame(timetable, TrainPositions.at(etas, time.toLocalDate(),
+                time.toLocalTime().toSecondOfDay()));
+        latest = next;
+        eventPublisher.publishEvent(new TrainPositionsEvent(time.atZone(zone).toInstant(), timetable,
+                next.positions));
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        if (previous.timetable != timetable) {
+            subscriptions.forEach(Subscription::resync);
+            return;
+        }
+
+        List<TrainPosition> before = new ArrayList<>();
+        List<TrainPosition> after = new ArrayList<>();
+        TrainPosition[] old = previous.positions;
+        TrainPosition[] now = next.positions;
+        int i = 0;
+        int j = 0;
+        while (i < old.length || j < now.length) {
+            int oldTrip = i < old.length ? old[i].getTrip() : Integer.MAX_VALUE;
+            int newTrip = j < now.length ? now[j].getTrip() : Integer.MAX_VALUE;
+            if (oldTrip < newTrip) {
+                before.add(old[i]);
+                after.add(TrainPosition.gone(oldTrip));
+                i++;
+            } else if (newTrip < oldTrip) {
+                before.add(null);
+                after.add(now[j]);
+                j++;
+            } else {
+                if (!old[i].samePlace(now[j])) {
+                    before.add(old[i]);
+                    after.add(now[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+        if (before.isEmpty()) {
+            return;
+        }
+        TrainPosition[] moved = after.toArray(new TrainPosition[0]);
+        TrainPosition[] from = before.toArray(new TrainPosition[0]);
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(from, moved);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pushExecutor.shutdownNow();
+    }
+
+    /**
+     * Positions to apply to a map. After a reset the positions are the full set
+     * of trains in view and anything else shown should be cleared; otherwise
+     * they are changes, with {@link TrainPosition#isGone()} for trains that
+     * stopped running or left the viewport.
+     */
+    public static final class Update {
+
+        private final boolean reset;
+        private final List<TrainPosition> positions;
+
+        Update(boolean reset, List<TrainPosition> positions) {
+            this.reset = reset;
+            this.positions = Collections.unmodifiableList(positions);
+        }
+
+        public boolean isReset() {
+            return reset;
+        }
+
+        public List<TrainPosition> getPositions() {
+            return positions;
+        }
+    }
+
+    /**
+     * One viewer's coalescing queue.
+     */
+    public final class Subscription {
+
+        private final Executor access;
+        private final Consumer<Update> listener;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // guarded by this
+        private final HashMap<Integer, TrainPosition> pending = new HashMap<>();
+        private boolean resync = true;
+        private double south = -90;
+        private double west = -180;
+        private double north = 90;
+        private double east = 180;
+
+        private Subscription(Executor access, Consumer<Update> listener) {
+            this.access = access;
+            this.listener = listener;
+        }
+
+        /**
+         * Limits the positions sent to those inside a latitude/longitude box.
+         * The next update is a reset with the trains now in view.
+         */
+        public void setViewport(double south, double west, double north, double east) {
+            synchronized (this) {
+                this.south = south;
+                this.west = west;
+                this.north = north;
+                this.east = east;
+            }
+            resync();
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        private void resync() {
+            synchronized (this) {
+                resync = true;
+                pending.clear();
+            }
+            schedule();
+        }
+
+        private void offer(TrainPosition[] before, TrainPosition[] after) {
+            synchronized (this) {
+                if (!resync) {
+                    for (int i = 0; i < after.length; i++) {
+                        boolean visible = isVisible(after[i]);
+                        if (!visible && !isVisible(before[i])) {
+                            continue;
+                        }
+                        int trip = after[i].getTrip();
+                        if (pending.size() >= queueCapacity && !pending.containsKey(trip)) {
+                            resync = true;
+                            pending.clear();
+                            break;
+                        }
+                        pending.put(trip, visible ? after[i] : TrainPosition.gone(trip));
+                    }
+                }
+                if (!resync && pending.isEmpty()) {
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                pushExecutor.execute(() -> {
+                    try {
+                        access.execute(this::drain);
+                    } catch (RuntimeException e) {
+                        // typically the UI has been detached without cancelling
+                        logger.debug("Dropping train position subscriber", e);
+                        cancel();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            Update update;
+            synchronized (this) {
+                scheduled.set(false);
+                if (resync) {
+                    resync = false;
+                    pending.clear();
+                    List<TrainPosition> inView = new ArrayList<>();
+                    for (TrainPosition position : latest.positions) {
+                        if (isVisible(position) && inView.size() < queueCapacity) {
+                            inView.add(position);
+                        }
+                    }
+                    update = new Update(true, inView);
+                } else if (pending.isEmpty()) {
+                    return;
+                } else {
+                    update = new Update(false, new ArrayList<>(pending.values()));
+                    pending.clear();
+                }
+            }
+            listener.accept(update);
+        }
+
+        private boolean isVisible(TrainPosition position) {
+            return position != null && position.isWithin(south, west, north, east);
+        }
+    }
+
+    private static final class Frame {
+
+        private final Timetable timetable;
+        private final TrainPosition[] positions;
+
+        Frame(Timetable timetable, TrainPosition[] positions) {
+            this.timetable = timetable;
+            this.positions = positions;
+        }
+    }
+
+}
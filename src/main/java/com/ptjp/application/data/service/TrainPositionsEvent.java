@@ -0,0 +1,41 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.live.TrainPosition;
+import com.ptjp.application.data.timetable.Timetable;
+import java.time.Instant;
+
+/**
+ * Published by {@link TrainPositionBroadcaster} on every tick with where all
+ * running trains are, so they can be recorded.
+ */
+public class TrainPositionsEvent {
+
+    private final Instant time;
+    private final Timetable timetable;
+    private final TrainPosition[] positions;
+
+    public TrainPositionsEvent(Instant time, Timetable timetable, TrainPosition[] positions) {
+        this.time = time;
+        this.timetable = timetable;
+        this.positions = positions;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+
+    /**
+     * @return the timetable the positions' trip indexes refer to
+     */
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    /**
+     * @return the running trains, ordered by trip index; not to be modified
+     */
+    public TrainPosition[] getPositions() {
+        return positions;
+    }
+
+}
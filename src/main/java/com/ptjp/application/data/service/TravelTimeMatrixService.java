@@ -0,0 +1,301 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.timetable.RaptorRouter;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
+import com.ptjp.application.data.timetable.TravelTimeMatrix;
+import com.ptjp.application.metrics.Metered;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Shortest travel times between all pairs of stations, looked up in constant
+ * time from a {@link TravelTimeMatrix} instead of searched for.
+ *
+ * A travel time is the fastest journey leaving in the window of
+ * {@code matrix.window-minutes} from {@code matrix.window-start} today, up to
+ * {@code matrix.max-travel-minutes}. The rows are filled in the background by
+ * {@link IsochroneService}; a lookup in a row not filled yet has no answer
+ * until then, and moves that row to the front.
+ *
+ * Each timetable snapshot derives matrices of its own, closed when the
+ * snapshot is reclaimed. When the timetable is replaced or the day changes, a
+ * new matrix takes over the rows of the one before that trips running in
+ * those hours cannot have changed, unless the stations themselves changed;
+ * rows are never rewritten in place, so a lookup never sees one half filled.
+ */
+@Service
+public class TravelTimeMatrixService {
+
+    private static final TimetableSnapshot.Key<Matrices> MATRICES =
+            new TimetableSnapshot.Key<>("travel time matrix");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final TimetableService timetableService;
+    private final IsochroneService isochroneService;
+    private final ZoneId zone;
+    private final LocalTime windowStart;
+    private final Duration window;
+    private final Duration maxTravel;
+    private final ExecutorService filler;
+    private final AtomicBoolean filling = new AtomicBoolean();
+
+    @Autowired
+    public TravelTimeMatrixService(TimetableService timetableService, IsochroneService isochroneService,
+            @Value("${trains.zone:Africa/Johannesburg}") String zone,
+            @Value("${matrix.window-start:07:00}") String windowStart,
+            @Value("${matrix.window-minutes:60}") int windowMinutes,
+            @Value("${matrix.max-travel-minutes:120}") int maxTravelMinutes) {
+        this.timetableService = timetableService;
+        this.isochroneService = isochroneService;
+        this.zone = ZoneId.of(zone);
+        this.windowStart = LocalTime.parse(windowStart);
+        this.window = Duration.ofMinutes(windowMinutes);
+        this.maxTravel = Duration.ofMinutes(maxTravelMinutes);
+        if (maxTravel.getSeconds() > TravelTimeMatrix.MAX_SECONDS) {
+            throw new IllegalArgumentException("matrix.max-travel-minutes is too long: " + maxTravelMinutes);
+        }
+        this.filler = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "travel-time-matrix");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timetableService.addPreparer(this::prepare);
+    }
+
+    /**
+     * @return the shortest travel time in seconds between stops given by GTFS
+     *         id, {@link RaptorRouter#UNREACHED} if there is none or either
+     *         stop is unknown, or empty if it has not been worked out yet
+     */
+    @Metered
+    public OptionalInt travelSeconds(String fromStopId, String toStopId) {
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            Timetable timetable = snapshot.timetable();
+            int from = timetable.stopIndex(fromStopId);
+            int to = timetable.stopIndex(toStopId);
+            if (from < 0 || to < 0) {
+                return OptionalInt.of(RaptorRouter.UNREACHED);
+            }
+            Matrix current = matrices(snapshot).today();
+            if (current.matrix.isRowValid(from)) {
+                return OptionalInt.of(current.matrix.travelSeconds(from, to));
+            }
+            current.wanted.add(from);
+        }
+        refresh();
+        return OptionalInt.empty();
+    }
+
+    public LocalTime getWindowStart() {
+        return windowStart;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public Duration getMaxTravel() {
+        return maxTravel;
+    }
+
+    /**
+     * Catches up with a new timetable or day, and fills the rows that are not
+     * valid in the background.
+     */
+    @Metered
+    @Scheduled(fixedDelayString = "${matrix.check-interval-ms:60000}")
+    public void refresh() {
+        TimetableSnapshot snapshot = timetableService.acquire();
+        boolean handedOver = false;
+        try {
+            Matrix current = matrices(snapshot).today();
+            if (current.matrix.validRowCount() < current.matrix.stopCount() && filling.compareAndSet(false, true)) {
+                filler.execute(() -> {
+                    // the reference keeps the matrix from being closed while rows are written
+                    try (snapshot) {
+                        fill(snapshot, current);
+                    } finally {
+                        filling.set(false);
+                    }
+                });
+                handedOver = true;
+            }
+        } catch (RejectedExecutionException e) {
+            filling.set(false);
+        } finally {
+            if (!handedOver) {
+                snapshot.close();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        filler.shutdownNow();
+    }
+
+    private void fill(TimetableSnapshot snapshot, Matrix current) {
+        long start = System.nanoTime();
+        TravelTimeMatrix matrix = current.matrix;
+        int filled = 0;
+        int next = 0;
+        while (true) {
+            if (Thread.currentThread().isInterrupted() || !timetableService.isCurrent(snapshot)
+                    || !current.date.equals(LocalDate.now(zone))) {
+                // superseded; the next refresh carries on with the new one
+                return;
+            }
+            Integer wanted = current.wanted.poll();
+            int from;
+            if (wanted != null) {
+                from = wanted;
+            } else {
+                while (next < matrix.stopCount() && matrix.isRowValid(next)) {
+                    next++;
+                }
+                if (next == matrix.stopCount()) {
+                    break;
+                }
+                from = next;
+            }
+            if (!matrix.isRowValid(from)) {
+                matrix.setRow(isochroneService.isochrone(snapshot, from, current.date.atTime(windowStart), window,
+                        maxTravel));
+                filled++;
+            }
+        }
+        logger.info("Filled {} rows of the {} stop travel time matrix for {} in {} ms", filled, matrix.stopCount(),
+                current.date, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Matrices matrices(TimetableSnapshot snapshot) {
+        return snapshot.derived(MATRICES, timetable -> new Matrices(timetable, null));
+    }
+
+    /**
+     * Builds the new snapshot's matrix from the current one's, while that is
+     * still published and so cannot be closed.
+     */
+    private void prepare(TimetableSnapshot next) {
+        try (TimetableSnapshot previous = timetableService.acquire()) {
+            Matrix seed = matrices(previous).today();
+            next.derived(MATRICES, timetable -> new Matrices(timetable, seed));
+        }
+    }
+
+    /**
+     * @return a matrix for the day, with the rows of {@code previous}, if any,
+     *         that the day's trips cannot have changed
+     */
+    private Matrix matrix(Timetable timetable, LocalDate date, Matrix previous) {
+        TravelTimeMatrix matrix = new TravelTimeMatrix(timetable.stopCount());
+        if (previous == null || !sameStops(previous.timetable, timetable)) {
+            logger.info("Allocated a travel time matrix for {} stops, {} MB off-heap", timetable.stopCount(),
+                    matrix.offHeapBytes() >> 20);
+            return new Matrix(timetable, date, matrix);
+        }
+        long start = System.nanoTime();
+        int from = windowStart.toSecondOfDay();
+        int until = from + (int) window.plus(maxTravel).getSeconds();
+        int copied = matrix.copyUnchanged(previous.matrix, previous.timetable, previous.date, timetable, date, from,
+                until);
+        logger.info("Kept {} of {} travel time matrix rows for {} in {} ms", copied, timetable.stopCount(), date,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return new Matrix(timetable, date, matrix);
+    }
+
+    private static boolean sameStops(Timetable a, Timetable b) {
+        if (a.stopCount() != b.stopCount()) {
+            return false;
+        }
+        for (int stop = 0; stop < a.stopCount(); stop++) {
+            if (!a.stopId(stop).equals(b.stopId(stop))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The matrices of one snapshot: today's, and the day before's, which a
+     * lookup that started just before midnight may still be reading. Older
+     * ones are closed, and both when the snapshot is reclaimed.
+     */
+    private final class Matrices implements AutoCloseable {
+
+        private final Timetable timetable;
+        private volatile Matrix current;
+        private Matrix retired;
+
+        Matrices(Timetable timetable, Matrix seed) {
+            this.timetable = timetable;
+            this.current = seed == null ? null : matrix(timetable, LocalDate.now(zone), seed);
+        }
+
+        Matrix today() {
+            LocalDate today = LocalDate.now(zone);
+            Matrix matrix = current;
+            if (matrix != null && matrix.date.equals(today)) {
+                return matrix;
+            }
+            synchronized (this) {
+                matrix = current;
+                if (matrix == null || !matrix.date.equals(today)) {
+                    Matrix next = matrix(timetable, today, matrix);
+                    if (retired != null) {
+                        retired.matrix.close();
+                    }
+                    retired = matrix;
+                    current = next;
+                    matrix = next;
+                }
+                return matrix;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (retired != null) {
+                retired.matrix.close();
+            }
+            if (current != null) {
+                current.matrix.close();
+            }
+        }
+    }
+
+    private static final class Matrix {
+
+        private final Timetable timetable;
+        private final LocalDate date;
+        private final TravelTimeMatrix matrix;
+        /** Rows lookups missed, filled before the others. */
+        private final Queue<Integer> wanted = new ConcurrentLinkedQueue<>();
+
+        Matrix(Timetable timetable, LocalDate date, TravelTimeMatrix matrix) {
+            this.timetable = timetable;
+            this.date = date;
+            this.matrix = matrix;
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.ptjp.application.data.service;
+
+import java.util.UUID;
+
+/**
+ * Published by {@link UserService} after a user has been saved or deleted, so
+ * copies of that user held elsewhere can be dropped.
+ */
+public class UserChangedEvent {
+
+    private final UUID userId;
+
+    public UserChangedEvent(UUID userId) {
+        this.userId = userId;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+}
@@ -1,21 +1,26 @@
 package com.ptjp.application.data.service;
 
 import com.ptjp.application.data.entity.User;
+import com.ptjp.application.metrics.Metered;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+@Metered
 @Service
 public class UserService {
 
     private final UserRepository repository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public UserService(UserRepository repository) {
+    public UserService(UserRepository repository, ApplicationEventPublisher eventPublisher) {
         this.repository = repository;
+        this.eventPublisher = eventPublisher;
     }
 
     public Optional<User> get(UUID id) {
@@ -23,11 +28,14 @@ public class UserService {
     }
 
     public User update(User entity) {
-        return repository.save(entity);
+        User saved = repository.save(entity);
+        eventPublisher.publishEvent(new UserChangedEvent(saved.getId()));
+        return saved;
     }
 
     public void delete(UUID id) {
         repository.deleteById(id);
+        eventPublisher.publishEvent(new UserChangedEvent(id));
     }
 
     public Page<User> list(Pageable pageable) {
@@ -0,0 +1,27 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.entity.Users;
+import java.util.List;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Seek ("keyset") pagination over {@link Users}: rows are found by comparing
+ * against the sort key of the last row already seen instead of skipping an
+ * OFFSET, so reading deep into the table costs no more than reading its
+ * start.
+ */
+public interface UsersKeysetRepository {
+
+    /**
+     * Lists rows in {@code sort} order, the id breaking ties, that come after a
+     * given row.
+     *
+     * @param sort   orders on properties of {@link Users}; nulls sort first
+     * @param after  the row to continue after, or {@code null} to start from the
+     *               first row; only its sort properties and id are read
+     * @param skip   rows to pass over after {@code after} before the first one
+     *               returned, for jumping a short way past a known row
+     * @param limit  the most rows to return
+     */
+    List<Users> findAfter(Sort sort, Users after, int skip, int limit);
+}
@@ -0,0 +1,73 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.entity.Users;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Sort;
+
+class UsersKeysetRepositoryImpl implements UsersKeysetRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Users> findAfter(Sort sort, Users after, int skip, int limit) {
+        List<Sort.Order> orders = new ArrayList<>();
+        sort.forEach(orders::add);
+        if (sort.getOrderFor("id") == null) {
+            orders.add(Sort.Order.asc("id"));
+        }
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Users> query = builder.createQuery(Users.class);
+        Root<Users> root = query.from(Users.class);
+        List<Order> orderBy = new ArrayList<>();
+        for (Sort.Order order : orders) {
+            Path<?> path = root.get(order.getProperty());
+            orderBy.add(order.isAscending() ? builder.asc(path) : builder.desc(path));
+        }
+        query.select(root).orderBy(orderBy);
+        if (after != null) {
+            query.where(after(builder, root, orders, 0, new BeanWrapperImpl(after)));
+        }
+        return entityManager.createQuery(query).setFirstResult(skip).setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * Rows after the cursor row on the orders from {@code index} onwards, given
+     * equal values on the ones before: greater on the first remaining key, or
+     * equal there and after it on the rest. Nulls come first in either
+     * direction, as configured by {@code hibernate.order_by.default_null_ordering}.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Predicate after(CriteriaBuilder builder, Root<Users> root, List<Sort.Order> orders, int index,
+            BeanWrapperImpl cursor) {
+        Sort.Order order = orders.get(index);
+        Path<Comparable> path = root.get(order.getProperty());
+        Comparable value = (Comparable) cursor.getPropertyValue(order.getProperty());
+        boolean last = index == orders.size() - 1;
+
+        Predicate beyond;
+        Predicate same;
+        if (value == null) {
+            beyond = builder.isNotNull(path);
+            same = builder.isNull(path);
+        } else {
+            beyond = order.isAscending() ? builder.greaterThan(path, value) : builder.lessThan(path, value);
+            same = builder.equal(path, value);
+        }
+        if (last) {
+            return beyond;
+        }
+        return builder.or(beyond, builder.and(same, after(builder, root, orders, index + 1, cursor)));
+    }
+}
@@ -0,0 +1,58 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.entity.Users;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Serves offset/limit requests from a lazy grid with keyset queries.
+ *
+ * A grid scrolls by asking for consecutive ranges, so the pager remembers the
+ * last row of each range it has returned and fetches the next range by
+ * seeking past that row. A jump to an unvisited offset seeks from the nearest
+ * remembered row before it and skips only the gap. Nothing is ever counted.
+ *
+ * One pager belongs to one view; it forgets its rows when the sort order
+ * changes and should be {@link #reset()} whenever the data is refreshed.
+ */
+public class UsersPager {
+
+    private static final int MAX_CURSORS = 10_000;
+
+    private final UsersService usersService;
+
+    /** The row just before each offset, for the current sort. */
+    private final TreeMap<Integer, Users> cursors = new TreeMap<>();
+    private Sort sort = Sort.unsorted();
+
+    public UsersPager(UsersService usersService) {
+        this.usersService = usersService;
+    }
+
+    public List<Users> fetch(int offset, int limit, Sort sort) {
+        if (!sort.equals(this.sort)) {
+            reset();
+            this.sort = sort;
+        }
+        Map.Entry<Integer, Users> from = cursors.floorEntry(offset);
+        List<Users> rows;
+        if (from == null) {
+            rows = usersService.listAfter(sort, null, offset, limit);
+        } else {
+            rows = usersService.listAfter(sort, from.getValue(), offset - from.getKey(), limit);
+        }
+        if (!rows.isEmpty()) {
+            if (cursors.size() >= MAX_CURSORS) {
+                cursors.clear();
+            }
+            cursors.put(offset + rows.size(), rows.get(rows.size() - 1));
+        }
+        return rows;
+    }
+
+    public void reset() {
+        cursors.clear();
+    }
+}
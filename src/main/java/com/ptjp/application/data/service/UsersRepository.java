@@ -4,6 +4,6 @@ import com.ptjp.application.data.entity.Users;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface UsersRepository extends JpaRepository<Users, UUID> {
+public interface UsersRepository extends JpaRepository<Users, UUID>, UsersKeysetRepository {
 
 }
\ No newline at end of file
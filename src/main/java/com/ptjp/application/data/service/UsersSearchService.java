@@ -0,0 +1,104 @@
+package com.ptjp.application.data.service;
+
+import com.ptjp.application.data.entity.Users;
+import com.ptjp.application.data.search.TrigramIndex;
+import com.ptjp.application.metrics.Metered;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+/**
+ * Search-as-you-type over the name, email and phone of {@link Users}, answered
+ * from a {@link TrigramIndex} instead of {@code LIKE '%...%'} scans.
+ *
+ * The index is built from the database once the application is ready and then
+ * kept current by {@link UsersService}, so changes made behind that service's
+ * back are not seen until {@link #rebuild()}.
+ *
+ * The index takes about {@value #HEAP_BYTES_PER_USER} bytes of heap per row.
+ * Building one that would take more than half the heap fails with the heap
+ * needed instead of running the application out of memory.
+ */
+@Metered
+@Service
+public class UsersSearchService {
+
+    /** Measured on generated rows with names, emails and phone numbers. */
+    public static final long HEAP_BYTES_PER_USER = 350;
+
+    private static final int REBUILD_BATCH = 10_000;
+    private static final long MB = 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final UsersRepository repository;
+    private final TrigramIndex index = new TrigramIndex();
+
+    @Autowired
+    public UsersSearchService(UsersRepository repository) {
+        this.repository = repository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.nanoTime();
+        checkHeap(repository.count());
+        index.clear();
+        Sort byId = Sort.by("id");
+        Users last = null;
+        List<Users> batch;
+        do {
+            batch = repository.findAfter(byId, last, 0, REBUILD_BATCH);
+            batch.forEach(this::index);
+            last = batch.isEmpty() ? null : batch.get(batch.size() - 1);
+        } while (batch.size() == REBUILD_BATCH);
+        index.trim();
+        logger.info("Indexed {} users for search in {} ms: {}", index.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), index);
+    }
+
+    public void index(Users users) {
+        index.put(users.getId(), users.getFirstName(), users.getLastName(), users.getEmail(), users.getPhone());
+    }
+
+    public void remove(UUID id) {
+        index.remove(id);
+    }
+
+    /**
+     * @return ids of the users matching {@code filter}, best matches first
+     */
+    public List<UUID> search(String filter, int offset, int limit) {
+        return index.search(filter, offset, limit);
+    }
+
+    public long estimatedHeapBytes() {
+        return index.estimatedHeapBytes();
+    }
+
+    /**
+     * Checks that the index over {@code users} rows fits in half the heap
+     * this JVM may grow to.
+     *
+     * @throws IllegalStateException naming the heap needed, if it does not
+     */
+    public static void checkHeap(long users) {
+        long needed = users * HEAP_BYTES_PER_USER;
+        long available = Runtime.getRuntime().maxMemory() / 2;
+        if (needed > available) {
+            throw new IllegalStateException(String.format(
+                    "The search index over %,d users needs about %,d MB of heap, but only %,d MB (half of -Xmx) is "
+                            + "set aside for it; start the application with -Xmx%dg or more, or with fewer "
+                            + "generator.bulk.users",
+                    users, needed / MB, available / MB, (2 * needed + 1024 * MB - 1) / (1024 * MB)));
+        }
+    }
+
+}
@@ -1,21 +1,31 @@
 package com.ptjp.application.data.service;
 
 import com.ptjp.application.data.entity.Users;
+import com.ptjp.application.metrics.Metered;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+@Metered
 @Service
 public class UsersService {
 
     private final UsersRepository repository;
+    private final UsersSearchService searchService;
 
     @Autowired
-    public UsersService(UsersRepository repository) {
+    public UsersService(UsersRepository repository, UsersSearchService searchService) {
         this.repository = repository;
+        this.searchService = searchService;
     }
 
     public Optional<Users> get(UUID id) {
@@ -23,17 +33,38 @@ public class UsersService {
     }
 
     public Users update(Users entity) {
-        return repository.save(entity);
+        Users saved = repository.save(entity);
+        searchService.index(saved);
+        return saved;
     }
 
     public void delete(UUID id) {
         repository.deleteById(id);
+        searchService.remove(id);
     }
 
     public Page<Users> list(Pageable pageable) {
         return repository.findAll(pageable);
     }
 
+    /**
+     * @see UsersKeysetRepository#findAfter(Sort, Users, int, int)
+     */
+    public List<Users> listAfter(Sort sort, Users after, int skip, int limit) {
+        return repository.findAfter(sort, after, skip, limit);
+    }
+
+    /**
+     * @return a page of the users matching {@code filter}, best matches first
+     * @see UsersSearchService#search(String, int, int)
+     */
+    public List<Users> search(String filter, int offset, int limit) {
+        List<UUID> ids = searchService.search(filter, offset, limit);
+        Map<UUID, Users> found = new HashMap<>();
+        repository.findAllById(ids).forEach(users -> found.put(users.getId(), users));
+        return ids.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     public int count() {
         return (int) repository.count();
     }
@@ -0,0 +1,238 @@
+package com.ptjp.application.data.spatial;
+
+import com.ptjp.application.data.timetable.Timetable;
+import java.util.Arrays;
+
+/**
+ * A static, packed grid index over station coordinates.
+ *
+ * Stations are bucketed into square cells of roughly equal occupancy and
+ * stored cell by cell in parallel primitive arrays, so a viewport query scans a
+ * few contiguous runs of coordinates and a nearest-station query walks
+ * outwards ring by ring until no closer station can exist. Neither query
+ * allocates when given an output array.
+ *
+ * Distances use an equirectangular projection around the index's centre
+ * latitude, which is exact to well under a metre across a metropolitan area.
+ */
+public final class StationGrid {
+
+    private static final double EARTH_RADIUS_METRES = 6_371_000;
+    private static final int STATIONS_PER_CELL = 4;
+
+    private final double minLat;
+    private final double minLon;
+    private final double cellDegrees;
+    private final double metresPerDegreeLat;
+    private final double metresPerDegreeLon;
+    private final int columns;
+    private final int rows;
+    private final int[] cellOffsets;
+    private final int[] stations;
+    private final double[] lats;
+    private final double[] lons;
+
+    public StationGrid(double[] stationLats, double[] stationLons) {
+        int count = stationLats.length;
+        double maxLat = -90;
+        double maxLon = -180;
+        double lowLat = 90;
+        double lowLon = 180;
+        for (int i = 0; i < count; i++) {
+            lowLat = Math.min(lowLat, stationLats[i]);
+            maxLat = Math.max(maxLat, stationLats[i]);
+            lowLon = Math.min(lowLon, stationLons[i]);
+            maxLon = Math.max(maxLon, stationLons[i]);
+        }
+        if (count == 0) {
+            lowLat = maxLat = lowLon = maxLon = 0;
+        }
+        minLat = lowLat;
+        minLon = lowLon;
+        metresPerDegreeLat = Math.toRadians(1) * EARTH_RADIUS_METRES;
+        metresPerDegreeLon = metresPerDegreeLat * Math.cos(Math.toRadians((lowLat + maxLat) / 2));
+
+        double spanLat = Math.max(maxLat - lowLat, 1e-6);
+        double spanLon = Math.max(maxLon - lowLon, 1e-6);
+        double cells = Math.max(1, count / (double) STATIONS_PER_CELL);
+        cellDegrees = Math.sqrt(spanLat * spanLon / cells);
+        columns = (int) (spanLon / cellDegrees) + 1;
+        rows = (int) (spanLat / cellDegrees) + 1;
+
+        cellOffsets = new int[columns * rows + 1];
+        int[] cellOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = cell(column(stationLons[i]), row(stationLats[i]));
+            cellOffsets[cellOf[i] + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellOffsets[cell + 1] += cellOffsets[cell];
+        }
+        stations = new int[count];
+        lats = new double[count];
+        lons = new double[count];
+        int[] next = Arrays.copyOf(cellOffsets, columns * rows);
+        for (int i = 0; i < count; i++) {
+            int slot = next[cellOf[i]]++;
+            stations[slot] = i;
+            lats[slot] = stationLats[i];
+            lons[slot] = stationLons[i];
+        }
+    }
+
+    public static StationGrid of(Timetable timetable) {
+        double[] lats = new double[timetable.stopCount()];
+        double[] lons = new double[timetable.stopCount()];
+        for (int stop = 0; stop < lats.length; stop++) {
+            lats[stop] = timetable.stopLat(stop);
+            lons[stop] = timetable.stopLon(stop);
+        }
+        return new StationGrid(lats, lons);
+    }
+
+    public int size() {
+        return stations.length;
+    }
+
+    /**
+     * Collects the stations inside a latitude/longitude box into {@code out}.
+     *
+     * @return how many stations are in the box; only the first
+     *         {@code out.length} of them are written
+     */
+    public int within(double south, double west, double north, double east, int[] out) {
+        int found = 0;
+        int fromColumn = column(west);
+        int toColumn = column(east);
+        int fromRow = row(south);
+        int toRow = row(north);
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                int cell = cell(column, row);
+                for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+                    if (lats[i] >= south && lats[i] <= north && lons[i] >= west && lons[i] <= east) {
+                        if (found < out.length) {
+                            out[found] = stations[i];
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    public int[] within(double south, double west, double north, double east) {
+        int[] out = new int[Math.min(size(), 256)];
+        int found = within(south, west, north, east, out);
+        if (found > out.length) {
+            out = new int[found];
+            within(south, west, north, east, out);
+        }
+        return Arrays.copyOf(out, found);
+    }
+
+    /**
+     * Finds the {@code out.length} stations nearest to a point, closest first.
+     *
+     * @param distances receives the distance in metres to each station found;
+     *                  must be at least as long as {@code out}
+     * @return how many stations were found, less than {@code out.length} only if
+     *         the index holds fewer stations
+     */
+    public int nearest(double lat, double lon, int[] out, double[] distances) {
+        int k = Math.min(out.length, size());
+        if (k == 0) {
+            return 0;
+        }
+        int found = 0;
+        int centreColumn = column(lon);
+        int centreRow = row(lat);
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (found == k && distanceToRing(lat, lon, centreColumn, centreRow, ring) > distances[k - 1]) {
+                break;
+            }
+            for (int row = centreRow - ring; row <= centreRow + ring; row++) {
+                if (row < 0 || row >= rows) {
+                    continue;
+                }
+                boolean edgeRow = row == centreRow - ring || row == centreRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int column = centreColumn - ring; column <= centreColumn + ring; column += Math.max(step, 1)) {
+                    if (column < 0 || column >= columns) {
+                        continue;
+                    }
+                    int cell = row * columns + column;
+                    for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+                        double distance = distance(lat, lon, lats[i], lons[i]);
+                        if (found < k) {
+                            found++;
+                        } else if (distance >= distances[k - 1]) {
+                            continue;
+                        }
+                        // insertion into the sorted result, dropping the farthest
+                        int j = found - 1;
+                        while (j > 0 && distances[j - 1] > distance) {
+                            distances[j] = distances[j - 1];
+                            out[j] = out[j - 1];
+                            j--;
+                        }
+                        distances[j] = distance;
+                        out[j] = stations[i];
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    public int[] nearest(double lat, double lon, int k) {
+        int[] out = new int[Math.min(k, size())];
+        nearest(lat, lon, out, new double[out.length]);
+        return out;
+    }
+
+    /**
+     * @return the approximate distance in metres between two points
+     */
+    public double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dy = (lat2 - lat1) * metresPerDegreeLat;
+        double dx = (lon2 - lon1) * metresPerDegreeLon;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * A lower bound on the distance from the point to any cell of the given
+     * ring around its cell.
+     */
+    private double distanceToRing(double lat, double lon, int centreColumn, int centreRow, int ring) {
+        if (ring == 0) {
+            return 0;
+        }
+        double cellWest = minLon + centreColumn * cellDegrees;
+        double cellSouth = minLat + centreRow * cellDegrees;
+        double inset = (ring - 1) * cellDegrees;
+        double toWest = (lon - (cellWest - inset)) * metresPerDegreeLon;
+        double toEast = ((cellWest + cellDegrees + inset) - lon) * metresPerDegreeLon;
+        double toSouth = (lat - (cellSouth - inset)) * metresPerDegreeLat;
+        double toNorth = ((cellSouth + cellDegrees + inset) - lat) * metresPerDegreeLat;
+        return Math.min(Math.min(toWest, toEast), Math.min(toSouth, toNorth));
+    }
+
+    private int column(double lon) {
+        return clamp((int) Math.floor((lon - minLon) / cellDegrees), columns);
+    }
+
+    private int row(double lat) {
+        return clamp((int) Math.floor((lat - minLat) / cellDegrees), rows);
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+}
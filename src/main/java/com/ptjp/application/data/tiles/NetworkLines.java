@@ -0,0 +1,313 @@
+package com.ptjp.application.data.tiles;
+
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TripPatterns;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rail network as vector lines, simplified once per zoom band so a map
+ * only receives as much detail as it can draw.
+ *
+ * A line is a distinct shape followed by some trip pattern, or, for patterns
+ * without a shape, the straight segments between its stations (the same line
+ * either way round only once). For each band in {@link #ZOOM_BANDS} but the
+ * last, a line is simplified with Douglas-Peucker in Web Mercator to within
+ * half a pixel at the highest zoom of the band; the last band keeps every
+ * point. Each simplified line is kept as an
+ * <a href="https://developers.google.com/maps/documentation/utilities/polylinealgorithm">encoded
+ * polyline</a>: coordinates rounded to 1e-5 degrees (about a metre), each
+ * point a delta from the one before in a few printable characters.
+ *
+ * Immutable once built.
+ */
+public final class NetworkLines {
+
+    /** The lowest zoom of each band. */
+    public static final int[] ZOOM_BANDS = { 0, 10, 12, 14, 16 };
+
+    private static final double PRECISION = 1e5;
+
+    private final int[] lineRoute;
+    private final double[] south;
+    private final double[] west;
+    private final double[] north;
+    private final double[] east;
+    /** Indexed by band, then line. */
+    private final String[][] encoded;
+    private final int[][] pointCounts;
+
+    public NetworkLines(Timetable timetable) {
+        this(new TripPatterns(timetable));
+    }
+
+    public NetworkLines(TripPatterns patterns) {
+        Timetable timetable = patterns.timetable();
+        Map<Track, Integer> lines = new HashMap<>();
+        int[] routes = new int[16];
+        double[][] tracks = new double[16][];
+        for (int pattern = 0; pattern < patterns.patternCount(); pattern++) {
+            int shape = timetable.tripShape(patterns.patternTrip(pattern, 0));
+            boolean shaped = shape >= 0 && timetable.shapePointCount(shape) >= 2;
+            Track track = shaped ? new Track(shape) : new Track(patterns, pattern);
+            if (lines.putIfAbsent(track, lines.size()) != null) {
+                continue;
+            }
+            int line = lines.size() - 1;
+            if (line == routes.length) {
+                routes = Arrays.copyOf(routes, line * 2);
+                tracks = Arrays.copyOf(tracks, line * 2);
+            }
+            routes[line] = patterns.patternRoute(pattern);
+            tracks[line] = shaped ? shapePoints(timetable, shape) : stopPoints(patterns, pattern);
+        }
+        int count = lines.size();
+        lineRoute = Arrays.copyOf(routes, count);
+        south = new double[count];
+        west = new double[count];
+        north = new double[count];
+        east = new double[count];
+        encoded = new String[ZOOM_BANDS.length][count];
+        pointCounts = new int[ZOOM_BANDS.length][count];
+        for (int line = 0; line < count; line++) {
+            double[] points = tracks[line];
+            bounds(line, points);
+            double[] x = new double[points.length / 2];
+            double[] y = new double[points.length / 2];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = NetworkTileRenderer.x(points[2 * i + 1]);
+                y[i] = NetworkTileRenderer.y(points[2 * i]);
+            }
+            for (int band = 0; band < ZOOM_BANDS.length; band++) {
+                boolean[] keep = new boolean[x.length];
+                if (band == ZOOM_BANDS.length - 1) {
+                    Arrays.fill(keep, true);
+                } else {
+                    // half a pixel at the band's highest zoom, in the renderer's world units
+                    double tolerance = 0.5 / NetworkTileRenderer.TILE_SIZE / (1 << ZOOM_BANDS[band + 1]);
+                    simplify(x, y, tolerance, keep);
+                }
+                StringBuilder polyline = new StringBuilder();
+                pointCounts[band][line] = encode(points, keep, polyline);
+                encoded[band][line] = polyline.toString();
+            }
+        }
+    }
+
+    /**
+     * @return the band for drawing at {@code zoom}
+     */
+    public static int band(double zoom) {
+        int band = 0;
+        while (band + 1 < ZOOM_BANDS.length && zoom >= ZOOM_BANDS[band + 1]) {
+            band++;
+        }
+        return band;
+    }
+
+    public int lineCount() {
+        return lineRoute.length;
+    }
+
+    public int lineRoute(int line) {
+        return lineRoute[line];
+    }
+
+    /**
+     * @return the lines passing through the box, or near enough that their
+     *         bounds do, in no particular order
+     */
+    public int[] linesWithin(double south, double west, double north, double east) {
+        int[] within = new int[lineRoute.length];
+        int count = 0;
+        for (int line = 0; line < lineRoute.length; line++) {
+            if (this.south[line] <= north && this.north[line] >= south && this.west[line] <= east
+                    && this.east[line] >= west) {
+                within[count++] = line;
+            }
+        }
+        return Arrays.copyOf(within, count);
+    }
+
+    /**
+     * @return the line as an encoded polyline, latitude first
+     */
+    public String encoded(int band, int line) {
+        return encoded[band][line];
+    }
+
+    public int pointCount(int band, int line) {
+        return pointCounts[band][line];
+    }
+
+    /**
+     * @return the size of every line of the band together, encoded
+     */
+    public long encodedLength(int band) {
+        long length = 0;
+        for (String polyline : encoded[band]) {
+            length += polyline.length();
+        }
+        return length;
+    }
+
+    private void bounds(int line, double[] points) {
+        south[line] = Double.POSITIVE_INFINITY;
+        west[line] = Double.POSITIVE_INFINITY;
+        north[line] = Double.NEGATIVE_INFINITY;
+        east[line] = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < points.length; i += 2) {
+            south[line] = Math.min(south[line], points[i]);
+            north[line] = Math.max(north[line], points[i]);
+            west[line] = Math.min(west[line], points[i + 1]);
+            east[line] = Math.max(east[line], points[i + 1]);
+        }
+    }
+
+    private static double[] shapePoints(Timetable timetable, int shape) {
+        int first = timetable.shapeFirstPoint(shape);
+        double[] points = new double[2 * timetable.shapePointCount(shape)];
+        for (int i = 0; i < points.length / 2; i++) {
+            points[2 * i] = timetable.shapePointLat(first + i);
+            points[2 * i + 1] = timetable.shapePointLon(first + i);
+        }
+        return points;
+    }
+
+    private static double[] stopPoints(TripPatterns patterns, int pattern) {
+        Timetable timetable = patterns.timetable();
+        double[] points = new double[2 * patterns.patternStopCount(pattern)];
+        for (int i = 0; i < points.length / 2; i++) {
+            int stop = patterns.patternStop(pattern, i);
+            points[2 * i] = timetable.stopLat(stop);
+            points[2 * i + 1] = timetable.stopLon(stop);
+        }
+        return points;
+    }
+
+    /**
+     * Douglas-Peucker: keeps the ends, then the point furthest from the chord
+     * between kept points while it is further than {@code tolerance}. Uses an
+     * explicit stack, as surveyed shapes may have many thousands of points.
+     */
+    static void simplify(double[] x, double[] y, double tolerance, boolean[] keep) {
+        int last = x.length - 1;
+        keep[0] = true;
+        keep[last] = true;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = last;
+        double squaredTolerance = tolerance * tolerance;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double dx = x[end] - x[start];
+            double dy = y[end] - y[start];
+            double length = dx * dx + dy * dy;
+            int furthest = -1;
+            double furthestDistance = squaredTolerance;
+            for (int i = start + 1; i < end; i++) {
+                double distance = squaredDistance(x[i] - x[start], y[i] - y[start], dx, dy, length);
+                if (distance > furthestDistance) {
+                    furthest = i;
+                    furthestDistance = distance;
+                }
+            }
+            if (furthest < 0) {
+                continue;
+            }
+            keep[furthest] = true;
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = start;
+            stack[top++] = furthest;
+            stack[top++] = furthest;
+            stack[top++] = end;
+        }
+    }
+
+    /**
+     * @return the squared distance of the point from the segment from the
+     *         origin to {@code (dx, dy)}
+     */
+    private static double squaredDistance(double px, double py, double dx, double dy, double length) {
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / length));
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Appends the kept points, skipping any that round to the one before.
+     *
+     * @return the number of points encoded
+     */
+    static int encode(double[] points, boolean[] keep, StringBuilder out) {
+        int count = 0;
+        long previousLat = 0;
+        long previousLon = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            long lat = Math.round(points[2 * i] * PRECISION);
+            long lon = Math.round(points[2 * i + 1] * PRECISION);
+            if (count > 0 && lat == previousLat && lon == previousLon) {
+                continue;
+            }
+            encodeValue(lat - previousLat, out);
+            encodeValue(lon - previousLon, out);
+            previousLat = lat;
+            previousLon = lon;
+            count++;
+        }
+        return count;
+    }
+
+    private static void encodeValue(long delta, StringBuilder out) {
+        long value = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (value >= 0x20) {
+            out.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>= 5;
+        }
+        out.append((char) (value + 63));
+    }
+
+    /**
+     * What makes two lines the same: their shape, or their stations in either
+     * direction.
+     */
+    private static final class Track {
+
+        private final int[] key;
+        private final int hash;
+
+        Track(int shape) {
+            this.key = new int[] { -1 - shape };
+            this.hash = Arrays.hashCode(key);
+        }
+
+        Track(TripPatterns patterns, int pattern) {
+            int count = patterns.patternStopCount(pattern);
+            boolean reverse = patterns.patternStop(pattern, 0) > patterns.patternStop(pattern, count - 1);
+            this.key = new int[count];
+            for (int i = 0; i < count; i++) {
+                key[i] = patterns.patternStop(pattern, reverse ? count - 1 - i : i);
+            }
+            this.hash = Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Track && Arrays.equals(key, ((Track) obj).key);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.ptjp.application.data.tiles;
+
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TripPatterns;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.imageio.ImageIO;
+
+/**
+ * Draws the rail network as transparent 256 pixel XYZ tiles in Web Mercator,
+ * for laying over the base map.
+ *
+ * The track segments (pairs of consecutive stations on some trip pattern, one
+ * per route) are projected once when the renderer is built; a tile only draws
+ * the segments whose bounds reach into it. Rendering is deterministic, so the
+ * {@link #fingerprint()} of the geometry identifies every tile's bytes.
+ */
+public final class NetworkTileRenderer {
+
+    public static final int TILE_SIZE = 256;
+    public static final int MAX_ZOOM = 20;
+
+    /** Bump whenever the drawing changes, so cached tiles and ETags change with it. */
+    private static final int STYLE_VERSION = 1;
+    private static final int STATION_MIN_ZOOM = 12;
+    private static final Color[] ROUTE_COLOURS = { new Color(0xe8453c), new Color(0x2f7de1), new Color(0xf2a900),
+            new Color(0x2e9e5b), new Color(0x8e44ad), new Color(0x16a2b8), new Color(0xd35400), new Color(0x7f8c8d) };
+
+    private final double[] fromX;
+    private final double[] fromY;
+    private final double[] toX;
+    private final double[] toY;
+    private final int[] segmentRoute;
+    private final double[] stationX;
+    private final double[] stationY;
+    private final String fingerprint;
+
+    public NetworkTileRenderer(Timetable timetable) {
+        this(new TripPatterns(timetable));
+    }
+
+    public NetworkTileRenderer(TripPatterns patterns) {
+        Timetable timetable = patterns.timetable();
+        Set<Long> seen = new HashSet<>();
+        int segments = 0;
+        double[][] coordinates = new double[4][16];
+        int[] routes = new int[16];
+        long hash = STYLE_VERSION;
+        for (int pattern = 0; pattern < patterns.patternCount(); pattern++) {
+            int route = patterns.patternRoute(pattern);
+            for (int position = 1; position < patterns.patternStopCount(pattern); position++) {
+                int a = patterns.patternStop(pattern, position - 1);
+                int b = patterns.patternStop(pattern, position);
+                long key = ((long) route << 42) ^ ((long) Math.min(a, b) << 21) ^ Math.max(a, b);
+                if (a == b || !seen.add(key)) {
+                    continue;
+                }
+                if (segments == routes.length) {
+                    for (int i = 0; i < 4; i++) {
+                        coordinates[i] = Arrays.copyOf(coordinates[i], segments * 2);
+                    }
+                    routes = Arrays.copyOf(routes, segments * 2);
+                }
+                coordinates[0][segments] = x(timetable.stopLon(a));
+                coordinates[1][segments] = y(timetable.stopLat(a));
+                coordinates[2][segments] = x(timetable.stopLon(b));
+                coordinates[3][segments] = y(timetable.stopLat(b));
+                routes[segments] = route;
+                for (int i = 0; i < 4; i++) {
+                    hash = hash * 31 + Double.hashCode(coordinates[i][segments]);
+                }
+                hash = hash * 31 + route;
+                segments++;
+            }
+        }
+        fromX = Arrays.copyOf(coordinates[0], segments);
+        fromY = Arrays.copyOf(coordinates[1], segments);
+        toX = Arrays.copyOf(coordinates[2], segments);
+        toY = Arrays.copyOf(coordinates[3], segments);
+        segmentRoute = Arrays.copyOf(routes, segments);
+
+        stationX = new double[timetable.stopCount()];
+        stationY = new double[timetable.stopCount()];
+        for (int stop = 0; stop < stationX.length; stop++) {
+            stationX[stop] = x(timetable.stopLon(stop));
+            stationY[stop] = y(timetable.stopLat(stop));
+            hash = hash * 31 + Double.hashCode(stationX[stop]);
+            hash = hash * 31 + Double.hashCode(stationY[stop]);
+        }
+        fingerprint = Long.toHexString(hash);
+    }
+
+    /**
+     * @return a short string that changes whenever the drawn network would
+     */
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    public static boolean isValid(int z, int x, int y) {
+        return z >= 0 && z <= MAX_ZOOM && x >= 0 && y >= 0 && x < (1 << z) && y < (1 << z);
+    }
+
+    /**
+     * @return whether any track passes through the tile
+     */
+    public boolean covers(int z, int x, int y) {
+        double scale = (double) (1 << z);
+        double margin = lineWidth(z) / TILE_SIZE;
+        double minX = x - margin;
+        double maxX = x + 1 + margin;
+        double minY = y - margin;
+        double maxY = y + 1 + margin;
+        for (int i = 0; i < segmentRoute.length; i++) {
+            if (intersects(i, scale, minX, minY, maxX, maxY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the tile as a PNG
+     */
+    public byte[] render(int z, int x, int y) {
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            double scale = (double) (1 << z);
+            float width = lineWidth(z);
+            double margin = width / TILE_SIZE;
+            g.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            Line2D.Double line = new Line2D.Double();
+            for (int i = 0; i < segmentRoute.length; i++) {
+                if (!intersects(i, scale, x - margin, y - margin, x + 1 + margin, y + 1 + margin)) {
+                    continue;
+                }
+                g.setColor(ROUTE_COLOURS[segmentRoute[i] % ROUTE_COLOURS.length]);
+                line.setLine(pixel(fromX[i], scale, x), pixel(fromY[i], scale, y), pixel(toX[i], scale, x),
+                        pixel(toY[i], scale, y));
+                g.draw(line);
+            }
+            if (z >= STATION_MIN_ZOOM) {
+                double radius = width + 1;
+                Ellipse2D.Double dot = new Ellipse2D.Double();
+                g.setStroke(new BasicStroke(1.5f));
+                for (int stop = 0; stop < stationX.length; stop++) {
+                    double px = pixel(stationX[stop], scale, x);
+                    double py = pixel(stationY[stop], scale, y);
+                    if (px < -radius || py < -radius || px > TILE_SIZE + radius || py > TILE_SIZE + radius) {
+                        continue;
+                    }
+                    dot.setFrame(px - radius, py - radius, 2 * radius, 2 * radius);
+                    g.setColor(Color.WHITE);
+                    g.fill(dot);
+                    g.setColor(Color.DARK_GRAY);
+                    g.draw(dot);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return png(image);
+    }
+
+    /**
+     * @return a fully transparent tile
+     */
+    public static byte[] emptyTile() {
+        return png(new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    private boolean intersects(int segment, double scale, double minX, double minY, double maxX, double maxY) {
+        double x0 = fromX[segment] * scale;
+        double x1 = toX[segment] * scale;
+        double y0 = fromY[segment] * scale;
+        double y1 = toY[segment] * scale;
+        return Math.max(x0, x1) >= minX && Math.min(x0, x1) <= maxX && Math.max(y0, y1) >= minY
+                && Math.min(y0, y1) <= maxY;
+    }
+
+    private static double pixel(double world, double scale, int tile) {
+        return (world * scale - tile) * TILE_SIZE;
+    }
+
+    /**
+     * @return the CSS colour lines of the route are drawn in, such as
+     *         {@code #e8453c}
+     */
+    public static String routeColour(int route) {
+        return String.format("#%06x", ROUTE_COLOURS[route % ROUTE_COLOURS.length].getRGB() & 0xffffff);
+    }
+
+    private static float lineWidth(int z) {
+        return Math.max(1.5f, Math.min(8f, z - 8f));
+    }
+
+    /** Longitude to Web Mercator x, from 0 at 180°W to 1 at 180°E. */
+    static double x(double lon) {
+        return (lon + 180) / 360;
+    }
+
+    /** Latitude to Web Mercator y, from 0 at the top of the world to 1 at the bottom. */
+    static double y(double lat) {
+        double sin = Math.sin(Math.toRadians(lat));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static byte[] png(BufferedImage image) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,219 @@
+package com.ptjp.application.data.tiles;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A two-tier cache of rendered tiles: a least-recently-used map in memory in
+ * front of a least-recently-used directory of files, each bounded by the total
+ * bytes it holds.
+ *
+ * Keys are relative paths such as {@code "abc123/12/2291/1614.png"}. A miss in
+ * both tiers renders the tile once, however many requests for it arrive at
+ * the same time, and stores it in both. Files left by an earlier run are
+ * picked up, oldest first in line for eviction.
+ */
+public final class TileCache {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path directory;
+    private final long memoryLimit;
+    private final long diskLimit;
+
+    // both guarded by this
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(1024, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TileCache(Path directory, long memoryLimit, long diskLimit) {
+        this.directory = directory;
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+        try {
+            Files.createDirectories(directory);
+            scan();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the cached tile, or the one {@code render} makes if neither tier
+     *         has it
+     */
+    public byte[] get(String key, Supplier<byte[]> render) {
+        byte[] tile = fromMemory(key);
+        if (tile != null) {
+            memoryHits.increment();
+            return tile;
+        }
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = rendering.putIfAbsent(key, mine);
+        if (running != null) {
+            return running.join();
+        }
+        try {
+            tile = fromDisk(key);
+            if (tile != null) {
+                diskHits.increment();
+            } else {
+                misses.increment();
+                tile = render.get();
+                toDisk(key, tile);
+            }
+            toMemory(key, tile);
+            mine.complete(tile);
+            return tile;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(key, mine);
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    private synchronized byte[] fromMemory(String key) {
+        return memory.get(key);
+    }
+
+    private void toMemory(String key, byte[] tile) {
+        synchronized (this) {
+            if (tile.length > memoryLimit) {
+                return;
+            }
+            byte[] replaced = memory.put(key, tile);
+            memoryBytes += tile.length - (replaced == null ? 0 : replaced.length);
+            Iterator<byte[]> eldest = memory.values().iterator();
+            while (memoryBytes > memoryLimit) {
+                memoryBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private byte[] fromDisk(String key) {
+        synchronized (this) {
+            if (disk.get(key) == null) {
+                return null;
+            }
+        }
+        try {
+            return Files.readAllBytes(directory.resolve(key));
+        } catch (NoSuchFileException e) {
+            forget(key);
+            return null;
+        } catch (IOException e) {
+            logger.warn("Could not read cached tile {}", key, e);
+            return null;
+        }
+    }
+
+    private void toDisk(String key, byte[] tile) {
+        Path file = directory.resolve(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path partial = Files.createTempFile(file.getParent(), "tile", ".part");
+            Files.write(partial, tile);
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not store tile {}", key, e);
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long replaced = disk.put(key, (long) tile.length);
+            diskBytes += tile.length - (replaced == null ? 0 : replaced);
+            Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+            while (diskBytes > diskLimit && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                diskBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (String old : evicted) {
+            try {
+                Files.deleteIfExists(directory.resolve(old));
+            } catch (IOException e) {
+                logger.debug("Could not delete evicted tile {}", old, e);
+            }
+        }
+    }
+
+    private synchronized void forget(String key) {
+        Long size = disk.remove(key);
+        if (size != null) {
+            diskBytes -= size;
+        }
+    }
+
+    private void scan() throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        Map<Path, Long> modified = new HashMap<>();
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(".part")) {
+                Files.deleteIfExists(file);
+            } else {
+                modified.put(file, Files.getLastModifiedTime(file).toMillis());
+            }
+        }
+        List<Path> oldestFirst = modified.keySet().stream().sorted(Comparator.comparing(modified::get))
+                .collect(Collectors.toList());
+        for (Path file : oldestFirst) {
+            long size = Files.size(file);
+            disk.put(directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"), size);
+            diskBytes += size;
+        }
+        logger.info("Tile cache at {} holds {} tiles, {} KB", directory, disk.size(), diskBytes / 1024);
+    }
+}
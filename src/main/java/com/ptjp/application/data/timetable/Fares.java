@@ -0,0 +1,92 @@
+package com.ptjp.application.data.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Distance-based fares, paid for every train boarded: a ride costs the price
+ * of the zone its distance falls in, distances being measured in straight
+ * lines from station to station along the way.
+ *
+ * Journey search relies on a longer ride never costing less than a shorter
+ * one, and on one ride never costing more than two making up the same
+ * distance; the constructor checks the first, and zone prices that rise by
+ * less than the first zone's price give the second.
+ */
+public final class Fares {
+
+    /** Metrorail-like zones: up to 20, 30, 40 and 50 km, and beyond. */
+    public static final Fares DEFAULT = new Fares(new int[] { 20_000, 30_000, 40_000, 50_000 },
+            new int[] { 1000, 1100, 1300, 1500, 1800 });
+
+    private final int[] zoneMetres;
+    private final int[] zoneCents;
+
+    /**
+     * @param zoneMetres the longest ride in each zone but the last, ascending
+     * @param zoneCents  the price of each zone, one more than
+     *                   {@code zoneMetres}
+     */
+    public Fares(int[] zoneMetres, int[] zoneCents) {
+        if (zoneCents.length != zoneMetres.length + 1) {
+            throw new IllegalArgumentException("Expected " + (zoneMetres.length + 1) + " zone prices, not "
+                    + zoneCents.length);
+        }
+        for (int zone = 1; zone < zoneCents.length; zone++) {
+            if (zoneCents[zone] < zoneCents[zone - 1]
+                    || zone < zoneMetres.length && zoneMetres[zone] <= zoneMetres[zone - 1]) {
+                throw new IllegalArgumentException("Zones and their prices must ascend");
+            }
+        }
+        this.zoneMetres = zoneMetres.clone();
+        this.zoneCents = zoneCents.clone();
+    }
+
+    /**
+     * Parses comma-separated zone limits in kilometres and prices in cents,
+     * as in {@code 20,30,40,50} and {@code 1000,1100,1300,1500,1800}.
+     */
+    public static Fares parse(String zoneKilometres, String zoneCents) {
+        int[] metres = Arrays.stream(zoneKilometres.split(",")).map(String::trim).filter(km -> !km.isEmpty())
+                .mapToInt(km -> (int) Math.round(Double.parseDouble(km) * 1000)).toArray();
+        int[] cents = Arrays.stream(zoneCents.split(",")).map(String::trim).filter(price -> !price.isEmpty())
+                .mapToInt(Integer::parseInt).toArray();
+        return new Fares(metres, cents);
+    }
+
+    /**
+     * @return the price in cents of one ride of {@code metres}
+     */
+    public int rideCents(int metres) {
+        int zone = 0;
+        while (zone < zoneMetres.length && metres > zoneMetres[zone]) {
+            zone++;
+        }
+        return zoneCents[zone];
+    }
+
+    /**
+     * @return the price in cents of every leg of the journey
+     */
+    public int journeyCents(Timetable timetable, Journey journey) {
+        int cents = 0;
+        for (Journey.Leg leg : journey.getLegs()) {
+            int[] stops = leg.getStops();
+            int metres = 0;
+            for (int i = 1; i < stops.length; i++) {
+                metres += metres(timetable, stops[i - 1], stops[i]);
+            }
+            cents += rideCents(metres);
+        }
+        return cents;
+    }
+
+    /**
+     * @return the distance between two stops, in whole metres
+     */
+    static int metres(Timetable timetable, int from, int to) {
+        double lat = Math.toRadians(timetable.stopLat(from));
+        double dLat = Math.toRadians(timetable.stopLat(to)) - lat;
+        double dLon = Math.toRadians(timetable.stopLon(to) - timetable.stopLon(from)) * Math.cos(lat);
+        return (int) Math.round(6_371_000 * Math.sqrt(dLat * dLat + dLon * dLon));
+    }
+}
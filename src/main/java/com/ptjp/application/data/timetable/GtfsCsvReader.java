@@ -0,0 +1,262 @@
+package com.ptjp.application.data.timetable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Record-at-a-time reader for GTFS CSV files.
+ *
+ * Fields are kept as offsets into a reused record buffer, so numeric columns
+ * and already interned identifiers are read without creating a String per
+ * field. Only the current record is ever held in memory.
+ */
+final class GtfsCsvReader implements Closeable {
+
+    private final Reader in;
+    private final String fileName;
+    private final char[] buffer = new char[64 * 1024];
+    private int position;
+    private int limit;
+
+    private char[] record = new char[256];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+    private long lineNumber;
+
+    private String[] header = new String[0];
+
+    GtfsCsvReader(Reader in, String fileName) throws IOException {
+        this.in = in;
+        this.fileName = fileName;
+        if (next()) {
+            header = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                header[i] = string(i).trim();
+            }
+            if (header.length > 0 && header[0].startsWith("\uFEFF")) {
+                header[0] = header[0].substring(1);
+            }
+        }
+    }
+
+    /**
+     * @return the column index of the named field, or -1 when the file does not
+     *         have it
+     */
+    int column(String name) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int requiredColumn(String name) throws GtfsFormatException {
+        int column = column(name);
+        if (column < 0) {
+            throw new GtfsFormatException(fileName, lineNumber, "missing required column " + name);
+        }
+        return column;
+    }
+
+    boolean next() throws IOException {
+        fieldCount = 0;
+        int length = 0;
+        int fieldStart = 0;
+        boolean quoted = false;
+        boolean any = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (!any) {
+                        return false;
+                    }
+                    endField(fieldStart, length);
+                    lineNumber++;
+                    return true;
+                }
+            }
+            char c = buffer[position++];
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        position++;
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                }
+            } else if (c == '"') {
+                quoted = true;
+                continue;
+            } else if (c == ',') {
+                endField(fieldStart, length);
+                fieldStart = length;
+                continue;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    position++;
+                }
+                lineNumber++;
+                if (length == 0 && fieldCount == 0) {
+                    // blank line
+                    any = false;
+                    continue;
+                }
+                endField(fieldStart, length);
+                return true;
+            }
+            if (length == record.length) {
+                record = Arrays.copyOf(record, length * 2);
+            }
+            record[length++] = c;
+        }
+    }
+
+    boolean isEmpty(int column) {
+        return column < 0 || column >= fieldCount || starts[column] == ends[column];
+    }
+
+    String string(int column) {
+        if (isEmpty(column)) {
+            return "";
+        }
+        return new String(record, starts[column], ends[column] - starts[column]);
+    }
+
+    /**
+     * Interns the field, or the empty string when the record is too short to
+     * have it.
+     */
+    int intern(StringIndex index, int column) {
+        if (isEmpty(column)) {
+            return index.intern(record, 0, 0);
+        }
+        return index.intern(record, starts[column], ends[column]);
+    }
+
+    int parseInt(int column, int defaultValue) throws GtfsFormatException {
+        if (isEmpty(column)) {
+            return defaultValue;
+        }
+        int start = skipSpaces(starts[column], ends[column]);
+        int end = trimSpaces(start, ends[column]);
+        boolean negative = start < end && record[start] == '-';
+        if (negative) {
+            start++;
+        }
+        if (start == end) {
+            throw error(column, "expected an integer");
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error(column, "expected an integer");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    double parseDouble(int column) throws GtfsFormatException {
+        try {
+            return Double.parseDouble(string(column).trim());
+        } catch (NumberFormatException e) {
+            throw error(column, "expected a number");
+        }
+    }
+
+    /**
+     * Parses a GTFS time of the form {@code H:MM:SS}. Hours may exceed 23 for
+     * trips that run past midnight.
+     *
+     * @return seconds since the start of the service day, or -1 for an empty
+     *         field
+     */
+    int parseTime(int column) throws GtfsFormatException {
+        if (isEmpty(column)) {
+            return -1;
+        }
+        int start = skipSpaces(starts[column], ends[column]);
+        int end = trimSpaces(start, ends[column]);
+        int seconds = 0;
+        int part = 0;
+        int parts = 0;
+        for (int i = start; i < end; i++) {
+            char c = record[i];
+            if (c == ':') {
+                seconds = seconds * 60 + part;
+                part = 0;
+                parts++;
+            } else if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+            } else {
+                throw error(column, "expected a time as HH:MM:SS");
+            }
+        }
+        if (parts != 2) {
+            throw error(column, "expected a time as HH:MM:SS");
+        }
+        return seconds * 60 + part;
+    }
+
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    GtfsFormatException error(int column, String message) {
+        String name = column >= 0 && column < header.length ? header[column] : "#" + column;
+        return new GtfsFormatException(fileName, lineNumber,
+                message + " in " + name + " but found '" + string(column) + "'");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private void endField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private int skipSpaces(int start, int end) {
+        while (start < end && record[start] == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimSpaces(int start, int end) {
+        while (end > start && record[end - 1] == ' ') {
+            end--;
+        }
+        return end;
+    }
+}
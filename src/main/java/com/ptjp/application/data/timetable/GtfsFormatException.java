@@ -0,0 +1,17 @@
+package com.ptjp.application.data.timetable;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a GTFS feed is malformed or internally inconsistent.
+ */
+public class GtfsFormatException extends IOException {
+
+    public GtfsFormatException(String message) {
+        super(message);
+    }
+
+    public GtfsFormatException(String fileName, long lineNumber, String message) {
+        super(fileName + ":" + lineNumber + ": " + message);
+    }
+}
@@ -0,0 +1,465 @@
+package com.ptjp.application.data.timetable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams a GTFS feed into a {@link Timetable}.
+ *
+ * The feed is read directly from the zip through the NIO zip file system (or
+ * from an extracted directory), one record at a time. Identifiers are interned
+ * as they are read and stop times go into growable {@code int[]} columns, so
+ * the only transient cost is a handful of primitive arrays the size of
+ * {@code stop_times.txt}; no file is ever materialized as strings or rows.
+ *
+ * Platforms that name a {@code parent_station} are folded into their station,
+ * so the timetable's stops are the places a rider would pick. Shapes are
+ * read when the feed has a {@code shapes.txt}.
+ */
+public class GtfsTimetableLoader {
+
+    private static final int STATION = 1;
+
+    public Timetable load(Path feed) throws IOException {
+        if (Files.isDirectory(feed)) {
+            return new Feed(feed).read();
+        }
+        try (FileSystem zip = FileSystems.newFileSystem(feed)) {
+            return new Feed(zip.getPath("/")).read();
+        }
+    }
+
+    private static final class Feed {
+
+        private final Path root;
+
+        private final StringIndex stopIds = new StringIndex(1024);
+        private final List<String> stopNames = new ArrayList<>();
+        private double[] stopLat = new double[1024];
+        private double[] stopLon = new double[1024];
+        /** Every stop_id in stops.txt, including platforms, mapped to its station. */
+        private final StringIndex anyStopIds = new StringIndex(1024);
+        private final IntArray anyStopStation = new IntArray(1024);
+
+        private final StringIndex routeIds = new StringIndex();
+        private final List<String> routeNames = new ArrayList<>();
+
+        private final StringIndex serviceIds = new StringIndex();
+        private final IntArray serviceDays = new IntArray();
+        private final IntArray serviceStart = new IntArray();
+        private final IntArray serviceEnd = new IntArray();
+        private final IntArray exceptionService = new IntArray();
+        private final IntArray exceptionDate = new IntArray();
+
+        private final StringIndex tripIds = new StringIndex(1 << 14);
+        private final IntArray tripRoute = new IntArray(1 << 14);
+        private final IntArray tripService = new IntArray(1 << 14);
+        private final IntArray tripShape = new IntArray(1 << 14);
+
+        private final StringIndex shapeIds = new StringIndex();
+        private int[] shapePoints = new int[1];
+        private double[] shapePointLat = new double[0];
+        private double[] shapePointLon = new double[0];
+
+        Feed(Path root) {
+            this.root = root;
+        }
+
+        Timetable read() throws IOException {
+            readStops();
+            readRoutes();
+            readCalendar();
+            readCalendarDates();
+            readShapes();
+            readTrips();
+            return readStopTimes();
+        }
+
+        private GtfsCsvReader open(String name) throws IOException {
+            Path file = root.resolve(name);
+            return new GtfsCsvReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), name);
+        }
+
+        private boolean exists(String name) {
+            return Files.exists(root.resolve(name));
+        }
+
+        private void readStops() throws IOException {
+            List<String> parents = new ArrayList<>();
+            try (GtfsCsvReader csv = open("stops.txt")) {
+                int id = csv.requiredColumn("stop_id");
+                int name = csv.requiredColumn("stop_name");
+                int lat = csv.requiredColumn("stop_lat");
+                int lon = csv.requiredColumn("stop_lon");
+                int type = csv.column("location_type");
+                int parent = csv.column("parent_station");
+                while (csv.next()) {
+                    if (csv.isEmpty(id)) {
+                        throw csv.error(id, "expected a stop_id");
+                    }
+                    int locationType = csv.parseInt(type, 0);
+                    if (locationType > STATION) {
+                        // entrances, generic nodes and boarding areas carry no stop times
+                        continue;
+                    }
+                    int any = csv.intern(anyStopIds, id);
+                    if (any != anyStopStation.size()) {
+                        throw csv.error(id, "expected a unique stop_id");
+                    }
+                    String parentId = csv.string(parent);
+                    if (locationType == 0 && !parentId.isEmpty()) {
+                        anyStopStation.add(-1);
+                        parents.add(parentId);
+                        continue;
+                    }
+                    int stop = csv.intern(stopIds, id);
+                    if (stop == stopLat.length) {
+                        stopLat = Arrays.copyOf(stopLat, stop * 2);
+                        stopLon = Arrays.copyOf(stopLon, stop * 2);
+                    }
+                    stopNames.add(csv.string(name));
+                    stopLat[stop] = csv.parseDouble(lat);
+                    stopLon[stop] = csv.parseDouble(lon);
+                    anyStopStation.add(stop);
+                    parents.add(null);
+                }
+            }
+            for (int any = 0; any < anyStopStation.size(); any++) {
+                if (anyStopStation.get(any) < 0) {
+                    int station = stopIds.indexOf(parents.get(any));
+                    if (station < 0) {
+                        throw new GtfsFormatException("stops.txt: stop " + anyStopIds.get(any)
+                                + " has unknown parent_station " + parents.get(any));
+                    }
+                    anyStopStation.set(any, station);
+                }
+            }
+        }
+
+        private void readRoutes() throws IOException {
+            try (GtfsCsvReader csv = open("routes.txt")) {
+                int id = csv.requiredColumn("route_id");
+                int shortName = csv.column("route_short_name");
+                int longName = csv.column("route_long_name");
+                while (csv.next()) {
+                    if (csv.intern(routeIds, id) != routeNames.size()) {
+                        throw csv.error(id, "expected a unique route_id");
+                    }
+                    routeNames.add(csv.isEmpty(shortName) ? csv.string(longName) : csv.string(shortName));
+                }
+            }
+        }
+
+        private void readCalendar() throws IOException {
+            if (!exists("calendar.txt")) {
+                return;
+            }
+            try (GtfsCsvReader csv = open("calendar.txt")) {
+                int id = csv.requiredColumn("service_id");
+                int[] days = { csv.requiredColumn("monday"), csv.requiredColumn("tuesday"),
+                        csv.requiredColumn("wednesday"), csv.requiredColumn("thursday"), csv.requiredColumn("friday"),
+                        csv.requiredColumn("saturday"), csv.requiredColumn("sunday") };
+                int start = csv.requiredColumn("start_date");
+                int end = csv.requiredColumn("end_date");
+                while (csv.next()) {
+                    int service = internService(csv, id);
+                    int mask = 0;
+                    for (int day = 0; day < days.length; day++) {
+                        if (csv.parseInt(days[day], 0) == 1) {
+                            mask |= 1 << day;
+                        }
+                    }
+                    serviceDays.set(service, mask);
+                    serviceStart.set(service, csv.parseInt(start, 0));
+                    serviceEnd.set(service, csv.parseInt(end, 0));
+                }
+            }
+        }
+
+        private void readCalendarDates() throws IOException {
+            if (!exists("calendar_dates.txt")) {
+                return;
+            }
+            try (GtfsCsvReader csv = open("calendar_dates.txt")) {
+                int id = csv.requiredColumn("service_id");
+                int date = csv.requiredColumn("date");
+                int type = csv.requiredColumn("exception_type");
+                while (csv.next()) {
+                    int service = internService(csv, id);
+                    int day = csv.parseInt(date, 0);
+                    exceptionService.add(service);
+                    exceptionDate.add(csv.parseInt(type, 1) == 2 ? -day : day);
+                }
+            }
+        }
+
+        private int internService(GtfsCsvReader csv, int column) {
+            int service = csv.intern(serviceIds, column);
+            if (service == serviceDays.size()) {
+                serviceDays.add(0);
+                serviceStart.add(0);
+                serviceEnd.add(0);
+            }
+            return service;
+        }
+
+        private void readShapes() throws IOException {
+            if (!exists("shapes.txt")) {
+                return;
+            }
+            IntArray rowShape = new IntArray(1 << 14);
+            IntArray rowSequence = new IntArray(1 << 14);
+            double[] rowLat = new double[1 << 14];
+            double[] rowLon = new double[1 << 14];
+            try (GtfsCsvReader csv = open("shapes.txt")) {
+                int id = csv.requiredColumn("shape_id");
+                int lat = csv.requiredColumn("shape_pt_lat");
+                int lon = csv.requiredColumn("shape_pt_lon");
+                int sequence = csv.requiredColumn("shape_pt_sequence");
+                while (csv.next()) {
+                    if (csv.isEmpty(id)) {
+                        throw csv.error(id, "expected a shape_id");
+                    }
+                    int row = rowShape.size();
+                    if (row == rowLat.length) {
+                        rowLat = Arrays.copyOf(rowLat, row * 2);
+                        rowLon = Arrays.copyOf(rowLon, row * 2);
+                    }
+                    rowShape.add(csv.intern(shapeIds, id));
+                    rowSequence.add(csv.parseInt(sequence, 0));
+                    rowLat[row] = csv.parseDouble(lat);
+                    rowLon[row] = csv.parseDouble(lon);
+                }
+            }
+
+            // Counting sort by shape (stable), then by shape_pt_sequence within each shape.
+            int shapes = shapeIds.size();
+            int rows = rowShape.size();
+            shapePoints = new int[shapes + 1];
+            for (int row = 0; row < rows; row++) {
+                shapePoints[rowShape.get(row) + 1]++;
+            }
+            for (int shape = 0; shape < shapes; shape++) {
+                shapePoints[shape + 1] += shapePoints[shape];
+            }
+            int[] order = new int[rows];
+            int[] next = Arrays.copyOf(shapePoints, shapes);
+            for (int row = 0; row < rows; row++) {
+                order[next[rowShape.get(row)]++] = row;
+            }
+            for (int shape = 0; shape < shapes; shape++) {
+                sortBySequence(order, shapePoints[shape], shapePoints[shape + 1], rowSequence.array());
+            }
+            shapePointLat = new double[rows];
+            shapePointLon = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                shapePointLat[i] = rowLat[order[i]];
+                shapePointLon[i] = rowLon[order[i]];
+            }
+        }
+
+        private void readTrips() throws IOException {
+            try (GtfsCsvReader csv = open("trips.txt")) {
+                int id = csv.requiredColumn("trip_id");
+                int route = csv.requiredColumn("route_id");
+                int service = csv.requiredColumn("service_id");
+                int shape = csv.column("shape_id");
+                while (csv.next()) {
+                    if (csv.intern(tripIds, id) != tripRoute.size()) {
+                        throw csv.error(id, "expected a unique trip_id");
+                    }
+                    int routeIndex = routeIds.indexOf(csv.string(route));
+                    if (routeIndex < 0) {
+                        throw csv.error(route, "unknown route_id");
+                    }
+                    int serviceIndex = serviceIds.indexOf(csv.string(service));
+                    if (serviceIndex < 0) {
+                        throw csv.error(service, "unknown service_id");
+                    }
+                    int shapeIndex = csv.isEmpty(shape) ? -1 : shapeIds.indexOf(csv.string(shape));
+                    if (shapeIndex < 0 && !csv.isEmpty(shape)) {
+                        throw csv.error(shape, "unknown shape_id");
+                    }
+                    tripRoute.add(routeIndex);
+                    tripService.add(serviceIndex);
+                    tripShape.add(shapeIndex);
+                }
+            }
+        }
+
+        private Timetable readStopTimes() throws IOException {
+            int trips = tripRoute.size();
+            IntArray rowTrip = new IntArray(1 << 16);
+            IntArray rowStop = new IntArray(1 << 16);
+            IntArray rowArrival = new IntArray(1 << 16);
+            IntArray rowDeparture = new IntArray(1 << 16);
+            IntArray rowSequence = new IntArray(1 << 16);
+            int[] tripStopTimes = new int[trips + 1];
+            try (GtfsCsvReader csv = open("stop_times.txt")) {
+                int tripColumn = csv.requiredColumn("trip_id");
+                int arrivalColumn = csv.requiredColumn("arrival_time");
+                int departureColumn = csv.requiredColumn("departure_time");
+                int stopColumn = csv.requiredColumn("stop_id");
+                int sequenceColumn = csv.requiredColumn("stop_sequence");
+                int tripCount = tripIds.size();
+                int anyStopCount = anyStopIds.size();
+                while (csv.next()) {
+                    int trip = csv.intern(tripIds, tripColumn);
+                    if (trip >= tripCount) {
+                        throw csv.error(tripColumn, "unknown trip_id");
+                    }
+                    int anyStop = csv.intern(anyStopIds, stopColumn);
+                    if (anyStop >= anyStopCount) {
+                        throw csv.error(stopColumn, "unknown stop_id");
+                    }
+                    rowTrip.add(trip);
+                    rowStop.add(anyStopStation.get(anyStop));
+                    rowArrival.add(csv.parseTime(arrivalColumn));
+                    rowDeparture.add(csv.parseTime(departureColumn));
+                    rowSequence.add(csv.parseInt(sequenceColumn, 0));
+                    tripStopTimes[trip + 1]++;
+                }
+            }
+
+            // Counting sort by trip (stable), then by stop_sequence within each trip.
+            for (int trip = 0; trip < trips; trip++) {
+                tripStopTimes[trip + 1] += tripStopTimes[trip];
+            }
+            int rows = rowTrip.size();
+            int[] order = new int[rows];
+            int[] next = Arrays.copyOf(tripStopTimes, trips);
+            int[] tripOfRow = rowTrip.array();
+            for (int row = 0; row < rows; row++) {
+                order[next[tripOfRow[row]]++] = row;
+            }
+            next = null;
+            int[] sequence = rowSequence.array();
+            for (int trip = 0; trip < trips; trip++) {
+                sortBySequence(order, tripStopTimes[trip], tripStopTimes[trip + 1], sequence);
+            }
+
+            int[] stopTimeStop = new int[rows];
+            int[] stopTimeArrival = new int[rows];
+            int[] stopTimeDeparture = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                int row = order[i];
+                stopTimeStop[i] = rowStop.get(row);
+                stopTimeArrival[i] = rowArrival.get(row);
+                stopTimeDeparture[i] = rowDeparture.get(row);
+            }
+            order = null;
+
+            short[] stopTimeDwell = new short[rows];
+            for (int trip = 0; trip < trips; trip++) {
+                int first = tripStopTimes[trip];
+                int end = tripStopTimes[trip + 1];
+                interpolate(trip, stopTimeArrival, stopTimeDeparture, first, end);
+                for (int i = first; i < end; i++) {
+                    int dwell = stopTimeDeparture[i] - stopTimeArrival[i];
+                    if (dwell < 0 || dwell > Short.MAX_VALUE) {
+                        throw new GtfsFormatException("stop_times.txt: trip " + tripIds.get(trip)
+                                + " departs before it arrives or dwells too long at stop " + stopIds.get(stopTimeStop[i]));
+                    }
+                    if (i > first && stopTimeArrival[i] < stopTimeDeparture[i - 1]) {
+                        throw new GtfsFormatException("stop_times.txt: trip " + tripIds.get(trip)
+                                + " goes back in time at stop " + stopIds.get(stopTimeStop[i]));
+                    }
+                    stopTimeDwell[i] = (short) dwell;
+                }
+            }
+
+            return new Timetable(stopIds.compact(), stopNames.toArray(new String[0]),
+                    Arrays.copyOf(stopLat, stopNames.size()), Arrays.copyOf(stopLon, stopNames.size()),
+                    routeIds.compact(), routeNames.toArray(new String[0]), serviceIds.compact(),
+                    toBytes(serviceDays), serviceStart.toArray(), serviceEnd.toArray(), exceptionOffsets(),
+                    exceptionDates(), tripIds.compact(), tripRoute.toArray(), tripService.toArray(), tripShape.toArray(),
+                    tripStopTimes, stopTimeStop, stopTimeArrival, stopTimeDwell, shapeIds.compact(), shapePoints,
+                    shapePointLat, shapePointLon);
+        }
+
+        /**
+         * Fills in non-timepoint stops (empty arrival and departure) by linear
+         * interpolation between the surrounding timepoints.
+         */
+        private void interpolate(int trip, int[] arrival, int[] departure, int first, int end)
+                throws GtfsFormatException {
+            int previous = -1;
+            for (int i = first; i < end; i++) {
+                if (arrival[i] < 0 && departure[i] >= 0) {
+                    arrival[i] = departure[i];
+                } else if (departure[i] < 0 && arrival[i] >= 0) {
+                    departure[i] = arrival[i];
+                }
+                if (arrival[i] < 0) {
+                    continue;
+                }
+                if (previous < 0 && i > first) {
+                    throw new GtfsFormatException("stop_times.txt: trip " + tripIds.get(trip)
+                            + " has no time at its first stop");
+                }
+                for (int gap = previous + 1; previous >= 0 && gap < i; gap++) {
+                    int time = departure[previous]
+                            + (int) ((long) (arrival[i] - departure[previous]) * (gap - previous) / (i - previous));
+                    arrival[gap] = time;
+                    departure[gap] = time;
+                }
+                previous = i;
+            }
+            if (end > first && previous != end - 1) {
+                throw new GtfsFormatException("stop_times.txt: trip " + tripIds.get(trip)
+                        + " has no time at its last stop");
+            }
+        }
+
+        private int[] exceptionOffsets() {
+            int[] offsets = new int[serviceDays.size() + 1];
+            for (int i = 0; i < exceptionService.size(); i++) {
+                offsets[exceptionService.get(i) + 1]++;
+            }
+            for (int service = 0; service < serviceDays.size(); service++) {
+                offsets[service + 1] += offsets[service];
+            }
+            return offsets;
+        }
+
+        private int[] exceptionDates() {
+            int[] offsets = exceptionOffsets();
+            int[] dates = new int[exceptionDate.size()];
+            for (int i = 0; i < exceptionDate.size(); i++) {
+                dates[offsets[exceptionService.get(i)]++] = exceptionDate.get(i);
+            }
+            return dates;
+        }
+
+        private static void sortBySequence(int[] order, int from, int to, int[] sequence) {
+            // Feeds are almost always already in sequence order, which makes
+            // insertion sort linear.
+            for (int i = from + 1; i < to; i++) {
+                int row = order[i];
+                int key = sequence[row];
+                int j = i - 1;
+                while (j >= from && sequence[order[j]] > key) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = row;
+            }
+        }
+
+        private static byte[] toBytes(IntArray values) {
+            byte[] bytes = new byte[values.size()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) values.get(i);
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.ptjp.application.data.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Growable {@code int[]} used while a feed is being read.
+ */
+final class IntArray {
+
+    private int[] values;
+    private int size;
+
+    IntArray() {
+        this(64);
+    }
+
+    IntArray(int capacity) {
+        values = new int[Math.max(capacity, 4)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1));
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    void set(int index, int value) {
+        values[index] = value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Returns the backing array without copying. Entries past {@link #size()}
+     * are undefined.
+     */
+    int[] array() {
+        return values;
+    }
+}
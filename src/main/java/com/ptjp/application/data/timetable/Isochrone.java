@@ -0,0 +1,107 @@
+package com.ptjp.application.data.timetable;
+
+import java.time.LocalDate;
+
+/**
+ * How quickly each stop can be reached from one origin, for a traveller free
+ * to leave at any time within a window: per stop, the shortest time from
+ * boarding a train at the origin to arriving there.
+ */
+public final class Isochrone {
+
+    private final Timetable timetable;
+    private final int from;
+    private final LocalDate date;
+    private final int windowStart;
+    private final int windowEnd;
+    private final int maxSeconds;
+    private final int searches;
+    private final int[] travelSeconds;
+
+    Isochrone(Timetable timetable, int from, LocalDate date, int windowStart, int windowEnd, int maxSeconds,
+            int searches, int[] travelSeconds) {
+        this.timetable = timetable;
+        this.from = from;
+        this.date = date;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.maxSeconds = maxSeconds;
+        this.searches = searches;
+        this.travelSeconds = travelSeconds;
+    }
+
+    /**
+     * @return the timetable whose stop indexes this uses
+     */
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * @return seconds since the start of the service day
+     */
+    public int getWindowStart() {
+        return windowStart;
+    }
+
+    /**
+     * @return seconds since the start of the service day, exclusive
+     */
+    public int getWindowEnd() {
+        return windowEnd;
+    }
+
+    /**
+     * @return the longest travel time searched for; stops further away count
+     *         as unreached
+     */
+    public int getMaxSeconds() {
+        return maxSeconds;
+    }
+
+    /**
+     * @return how many departures from the origin were searched, one for each
+     *         distinct time a train leaves it in the window
+     */
+    public int getSearches() {
+        return searches;
+    }
+
+    /**
+     * @return the shortest travel time to {@code stop} in seconds, or
+     *         {@link RaptorRouter#UNREACHED}
+     */
+    public int travelSeconds(int stop) {
+        return travelSeconds[stop];
+    }
+
+    public boolean isReached(int stop) {
+        return travelSeconds[stop] != RaptorRouter.UNREACHED;
+    }
+
+    /**
+     * @return how many stops, the origin included, can be reached within
+     *         {@code seconds}
+     */
+    public int countWithin(int seconds) {
+        int count = 0;
+        for (int time : travelSeconds) {
+            if (time <= seconds) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int stopCount() {
+        return travelSeconds.length;
+    }
+}
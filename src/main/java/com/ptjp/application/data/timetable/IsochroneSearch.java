@@ -0,0 +1,166 @@
+package com.ptjp.application.data.timetable;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Profile search for {@link Isochrone}s: the shortest travel time from a stop
+ * to every other over a window of departure times.
+ *
+ * Only the times a train actually leaves the origin matter, since leaving at
+ * any other time means waiting on the platform for the next one. Each such
+ * departure is an independent bounded one-to-all {@link RaptorRouter} search,
+ * so the searches are split across a {@link ForkJoinPool}. Every task keeps
+ * the per-stop minimum of its own searches in its own array and the arrays
+ * are merged as tasks join, so workers share nothing but a pool of
+ * {@link RaptorRouter.Scratch} instances they take and give back once per
+ * task.
+ *
+ * Bound to one {@link TripPatterns} like its router, and safe to share.
+ */
+public final class IsochroneSearch {
+
+    private final RaptorRouter router;
+    private final ForkJoinPool pool;
+    private final ConcurrentLinkedQueue<RaptorRouter.Scratch> scratches = new ConcurrentLinkedQueue<>();
+
+    public IsochroneSearch(RaptorRouter router, ForkJoinPool pool) {
+        this.router = router;
+        this.pool = pool;
+    }
+
+    public RaptorRouter router() {
+        return router;
+    }
+
+    /**
+     * @param windowStart seconds since the start of {@code date}
+     * @param windowEnd   seconds since the start of {@code date}, exclusive
+     * @param maxSeconds  the longest travel time to search for
+     */
+    public Isochrone search(int from, LocalDate date, int windowStart, int windowEnd, int maxSeconds) {
+        int[] departures = departures(from, date, windowStart, windowEnd);
+        int[] travelSeconds = pool.invoke(new Searches(from, date, departures, maxSeconds, 0, departures.length));
+        return new Isochrone(router.patterns().timetable(), from, date, windowStart, windowEnd, maxSeconds,
+                departures.length, travelSeconds);
+    }
+
+    /**
+     * Single-threaded equivalent of {@link #search}, for comparison.
+     */
+    public Isochrone searchSequentially(int from, LocalDate date, int windowStart, int windowEnd, int maxSeconds) {
+        int[] departures = departures(from, date, windowStart, windowEnd);
+        int[] travelSeconds = new Searches(from, date, departures, maxSeconds, 0, departures.length).searchAll();
+        return new Isochrone(router.patterns().timetable(), from, date, windowStart, windowEnd, maxSeconds,
+                departures.length, travelSeconds);
+    }
+
+    /**
+     * @return the distinct times trains running on {@code date} leave
+     *         {@code from} in the window, in order
+     */
+    private int[] departures(int from, LocalDate date, int windowStart, int windowEnd) {
+        TripPatterns patterns = router.patterns();
+        Timetable timetable = patterns.timetable();
+        IntArray times = new IntArray();
+        int end = patterns.stopPatternsStart(from + 1);
+        for (int i = patterns.stopPatternsStart(from); i < end; i++) {
+            int pattern = patterns.stopPattern(i);
+            int position = patterns.stopPatternPosition(i);
+            if (position == patterns.patternStopCount(pattern) - 1
+                    || !timetable.isServiceActive(patterns.patternService(pattern), date)) {
+                continue;
+            }
+            int rank = patterns.earliestTrip(pattern, position, windowStart);
+            if (rank < 0) {
+                continue;
+            }
+            for (; rank < patterns.patternTripCount(pattern); rank++) {
+                int time = timetable.departure(timetable.tripFirstStopTime(patterns.patternTrip(pattern, rank))
+                        + position);
+                if (time >= windowEnd) {
+                    break;
+                }
+                times.add(time);
+            }
+        }
+        int[] sorted = times.toArray();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    private RaptorRouter.Scratch takeScratch() {
+        RaptorRouter.Scratch scratch = scratches.poll();
+        return scratch != null ? scratch : router.newScratch();
+    }
+
+    /**
+     * The searches for departures {@code [start, end)}, split in halves until
+     * one is left.
+     */
+    private final class Searches extends RecursiveTask<int[]> {
+
+        private final int from;
+        private final LocalDate date;
+        private final int[] departures;
+        private final int maxSeconds;
+        private final int start;
+        private final int end;
+
+        Searches(int from, LocalDate date, int[] departures, int maxSeconds, int start, int end) {
+            this.from = from;
+            this.date = date;
+            this.departures = departures;
+            this.maxSeconds = maxSeconds;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (end - start <= 1) {
+                return searchAll();
+            }
+            int middle = (start + end) >>> 1;
+            Searches later = new Searches(from, date, departures, maxSeconds, middle, end);
+            later.fork();
+            int[] best = new Searches(from, date, departures, maxSeconds, start, middle).compute();
+            int[] laterBest = later.join();
+            for (int stop = 0; stop < best.length; stop++) {
+                best[stop] = Math.min(best[stop], laterBest[stop]);
+            }
+            return best;
+        }
+
+        private int[] searchAll() {
+            int stops = router.patterns().timetable().stopCount();
+            int[] best = new int[stops];
+            Arrays.fill(best, RaptorRouter.UNREACHED);
+            RaptorRouter.Scratch scratch = takeScratch();
+            try {
+                for (int i = start; i < end; i++) {
+                    int departure = departures[i];
+                    router.earliestArrivals(from, date, departure, departure + maxSeconds + 1, scratch);
+                    for (int stop = 0; stop < stops; stop++) {
+                        int arrival = router.arrival(stop, scratch);
+                        if (arrival != RaptorRouter.UNREACHED && arrival - departure < best[stop]) {
+                            best[stop] = arrival - departure;
+                        }
+                    }
+                }
+            } finally {
+                scratches.offer(scratch);
+            }
+            return best;
+        }
+    }
+}
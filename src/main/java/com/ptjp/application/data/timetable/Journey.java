@@ -0,0 +1,100 @@
+package com.ptjp.application.data.timetable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A planned journey: one or more train legs, changing trains between them.
+ */
+public final class Journey {
+
+    private final Timetable timetable;
+    private final List<Leg> legs;
+
+    public Journey(Timetable timetable, List<Leg> legs) {
+        if (legs.isEmpty()) {
+            throw new IllegalArgumentException("A journey needs at least one leg");
+        }
+        this.timetable = timetable;
+        this.legs = Collections.unmodifiableList(legs);
+    }
+
+    /**
+     * @return the timetable whose stop indexes this uses
+     */
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    public List<Leg> getLegs() {
+        return legs;
+    }
+
+    public int getDeparture() {
+        return legs.get(0).getDeparture();
+    }
+
+    public int getArrival() {
+        return legs.get(legs.size() - 1).getArrival();
+    }
+
+    public int getTransfers() {
+        return legs.size() - 1;
+    }
+
+    /**
+     * A ride on one trip, from the stop where it is boarded to the stop where it
+     * is left.
+     */
+    public static final class Leg {
+
+        private final String tripId;
+        private final String routeName;
+        private final int[] stops;
+        private final int departure;
+        private final int arrival;
+
+        public Leg(String tripId, String routeName, int[] stops, int departure, int arrival) {
+            this.tripId = tripId;
+            this.routeName = routeName;
+            this.stops = stops;
+            this.departure = departure;
+            this.arrival = arrival;
+        }
+
+        public String getTripId() {
+            return tripId;
+        }
+
+        public String getRouteName() {
+            return routeName;
+        }
+
+        public int getFromStop() {
+            return stops[0];
+        }
+
+        public int getToStop() {
+            return stops[stops.length - 1];
+        }
+
+        /**
+         * @return the stops called at on this leg, boarding and alighting
+         *         stops included
+         */
+        public int[] getStops() {
+            return stops.clone();
+        }
+
+        /**
+         * @return seconds since the start of the service day
+         */
+        public int getDeparture() {
+            return departure;
+        }
+
+        public int getArrival() {
+            return arrival;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.ptjp.application.data.timetable;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multi-criteria journey search with McRAPTOR (Delling, Pajor and Werneck,
+ * "Round-Based Public Transit Routing", section 4): every journey that is
+ * not beaten on arrival time, number of trains and fare all at once.
+ *
+ * As in {@link RaptorRouter}, round {@code k} finds journeys using {@code k}
+ * trains, so the number of trains is the round. Each stop keeps a bag per
+ * round of labels, (arrival, fare) pairs no other label of that round or an
+ * earlier one beats on both. Bags hold at most {@code maxLabels}; a full bag
+ * gives way to an earlier arrival by dropping its latest one, which keeps a
+ * search bounded at the cost of rare pricier-but-slower options.
+ *
+ * Labels are rows in pooled {@code int} columns of a {@link Scratch}, and a
+ * bag is a fixed run of slots per stop holding row numbers, so a search
+ * allocates nothing once its scratch has grown to fit; only
+ * {@link #journeys(Scratch)} creates objects for the result.
+ *
+ * A router and its scratch instances are bound to one {@link TripPatterns}.
+ * The router is immutable and safe to share; a scratch is not and belongs to
+ * one thread at a time.
+ */
+public final class McRaptorRouter {
+
+    private final TripPatterns patterns;
+    private final Timetable timetable;
+    private final Fares fares;
+    private final int maxRounds;
+    private final int transferSeconds;
+    private final int maxLabels;
+    /** Distance along each pattern from its first stop, in metres, starting at {@code patternStart[pattern]}. */
+    private final int[] patternStart;
+    private final int[] patternMetres;
+
+    /**
+     * @param maxRounds       the most trains a journey may use
+     * @param transferSeconds minimum time to change trains at a station
+     * @param maxLabels       the most labels a stop keeps per round
+     */
+    public McRaptorRouter(TripPatterns patterns, Fares fares, int maxRounds, int transferSeconds, int maxLabels) {
+        this.patterns = patterns;
+        this.timetable = patterns.timetable();
+        this.fares = fares;
+        this.maxRounds = maxRounds;
+        this.transferSeconds = transferSeconds;
+        this.maxLabels = maxLabels;
+        patternStart = new int[patterns.patternCount() + 1];
+        for (int pattern = 0; pattern < patterns.patternCount(); pattern++) {
+            patternStart[pattern + 1] = patternStart[pattern] + patterns.patternStopCount(pattern);
+        }
+        patternMetres = new int[patternStart[patterns.patternCount()]];
+        for (int pattern = 0; pattern < patterns.patternCount(); pattern++) {
+            int start = patternStart[pattern];
+            for (int position = 1; position < patterns.patternStopCount(pattern); position++) {
+                patternMetres[start + position] = patternMetres[start + position - 1] + Fares.metres(timetable,
+                        patterns.patternStop(pattern, position - 1), patterns.patternStop(pattern, position));
+            }
+        }
+    }
+
+    public TripPatterns patterns() {
+        return patterns;
+    }
+
+    public Fares fares() {
+        return fares;
+    }
+
+    public Scratch newScratch() {
+        return new Scratch(patterns, maxRounds, maxLabels);
+    }
+
+    /**
+     * Searches for every journey from {@code from} to {@code to}, leaving at or
+     * after {@code departure} on {@code date}, that no other journey beats on
+     * arrival, trains and fare. The result stays in {@code scratch} until its
+     * next use and can be read with {@link #journeys(Scratch)}.
+     *
+     * @return how many such journeys there are
+     */
+    public int search(int from, int to, LocalDate date, int departure, Scratch scratch) {
+        if (scratch.patterns != patterns) {
+            throw new IllegalArgumentException("Scratch belongs to a different timetable");
+        }
+        scratch.reset(timetable, date, from, to);
+        int root = scratch.newLabel(departure, 0, -1, -1, -1, from);
+        scratch.bag[0][from * maxLabels] = root;
+        scratch.bagSize[0][from] = 1;
+        scratch.mark(from);
+
+        for (int round = 1; round <= maxRounds && scratch.anyMarked(); round++) {
+            scratch.roundsUsed = round;
+            collectPatterns(scratch);
+            scanPatterns(round, scratch);
+        }
+        int found = 0;
+        for (int round = 1; round <= scratch.roundsUsed; round++) {
+            found += scratch.bagSize[round][to];
+        }
+        return from == to ? 0 : found;
+    }
+
+    /**
+     * Rebuilds the journeys found by the last search on {@code scratch}.
+     *
+     * @return the journeys, earliest arrival first
+     */
+    public List<Journey> journeys(Scratch scratch) {
+        int to = scratch.to;
+        List<int[]> found = new ArrayList<>();
+        for (int round = 1; round <= scratch.roundsUsed && to != scratch.from; round++) {
+            for (int slot = 0; slot < scratch.bagSize[round][to]; slot++) {
+                int label = scratch.bag[round][to * maxLabels + slot];
+                found.add(new int[] { scratch.labelArrival[label], round, label });
+            }
+        }
+        found.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        List<Journey> journeys = new ArrayList<>(found.size());
+        for (int[] option : found) {
+            journeys.add(journey(option[2], scratch));
+        }
+        return journeys;
+    }
+
+    /**
+     * @return the fare in cents of the journey, priced as the search prices it
+     */
+    public int fareCents(Journey journey) {
+        return fares.journeyCents(timetable, journey);
+    }
+
+    private Journey journey(int label, Scratch scratch) {
+        List<Journey.Leg> legs = new ArrayList<>();
+        for (; scratch.labelParent[label] >= 0; label = scratch.labelParent[label]) {
+            int trip = scratch.labelTrip[label];
+            int board = scratch.labelBoardStopTime[label];
+            int alight = board + 1;
+            while (timetable.stopTimeStop(alight) != scratch.labelStop[label]) {
+                alight++;
+            }
+            int[] stops = new int[alight - board + 1];
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = timetable.stopTimeStop(board + i);
+            }
+            legs.add(0, new Journey.Leg(timetable.tripId(trip), timetable.routeName(timetable.tripRoute(trip)),
+                    stops, timetable.departure(board), timetable.arrival(alight)));
+        }
+        return new Journey(timetable, legs);
+    }
+
+    private void collectPatterns(Scratch scratch) {
+        long[] marked = scratch.marked;
+        for (int word = 0; word < marked.length; word++) {
+            long bits = marked[word];
+            marked[word] = 0;
+            while (bits != 0) {
+                int stop = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int end = patterns.stopPatternsStart(stop + 1);
+                for (int i = patterns.stopPatternsStart(stop); i < end; i++) {
+                    int pattern = patterns.stopPattern(i);
+                    if (!scratch.patternActive[pattern]) {
+                        continue;
+                    }
+                    int position = patterns.stopPatternPosition(i);
+                    int queued = scratch.queuedPosition[pattern];
+                    if (queued < 0) {
+                        scratch.queue[scratch.queueSize++] = pattern;
+                        scratch.queuedPosition[pattern] = position;
+                    } else if (position < queued) {
+                        scratch.queuedPosition[pattern] = position;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rides every queued pattern from its first stop reached in the previous
+     * round, carrying a route bag of boarded trips: at each stop the trips
+     * boarded so far are alighted, then the stop's labels of the previous
+     * round board the earliest trip they can catch.
+     */
+    private void scanPatterns(int round, Scratch scratch) {
+        int[] previousSize = scratch.bagSize[round - 1];
+        int[] previousBag = scratch.bag[round - 1];
+        int slack = round > 1 ? transferSeconds : 0;
+
+        for (int q = 0; q < scratch.queueSize; q++) {
+            int pattern = scratch.queue[q];
+            int start = scratch.queuedPosition[pattern];
+            scratch.queuedPosition[pattern] = -1;
+            int metresStart = patternStart[pattern];
+            scratch.routeSize = 0;
+
+            int stopCount = patterns.patternStopCount(pattern);
+            for (int position = start; position < stopCount; position++) {
+                int stop = patterns.patternStop(pattern, position);
+                int metres = patternMetres[metresStart + position];
+                for (int r = 0; r < scratch.routeSize; r++) {
+                    int time = timetable.arrival(scratch.routeTripFirst[r] + position);
+                    int cents = scratch.routeCents[r]
+                            + fares.rideCents(metres - patternMetres[metresStart + scratch.routeBoardPosition[r]]);
+                    add(round, stop, time, cents, scratch.routeParent[r], scratch.routeTrip[r],
+                            scratch.routeTripFirst[r] + scratch.routeBoardPosition[r], scratch);
+                }
+                for (int slot = 0; slot < previousSize[stop]; slot++) {
+                    int label = previousBag[stop * maxLabels + slot];
+                    int rank = patterns.earliestTrip(pattern, position, scratch.labelArrival[label] + slack);
+                    if (rank >= 0) {
+                        board(rank, pattern, position, metresStart, label, scratch);
+                    }
+                }
+            }
+        }
+        scratch.queueSize = 0;
+    }
+
+    /**
+     * Adds a boarding to the route bag unless a trip already boarded is as
+     * early and, ridden on to here, no dearer; and drops boardings the new one
+     * beats the same way.
+     */
+    private void board(int rank, int pattern, int position, int metresStart, int label, Scratch scratch) {
+        int cents = scratch.labelCents[label];
+        int metres = patternMetres[metresStart + position];
+        for (int r = 0; r < scratch.routeSize; r++) {
+            int sofar = scratch.routeCents[r]
+                    + fares.rideCents(metres - patternMetres[metresStart + scratch.routeBoardPosition[r]]);
+            if (scratch.routeRank[r] <= rank && sofar <= cents) {
+                return;
+            }
+        }
+        int kept = 0;
+        for (int r = 0; r < scratch.routeSize; r++) {
+            if (!(rank <= scratch.routeRank[r] && cents <= scratch.routeCents[r])) {
+                scratch.copyRoute(r, kept++);
+            }
+        }
+        scratch.routeSize = kept;
+        if (kept == scratch.routeRank.length) {
+            return;
+        }
+        int trip = patterns.patternTrip(pattern, rank);
+        scratch.routeRank[kept] = rank;
+        scratch.routeTrip[kept] = trip;
+        scratch.routeTripFirst[kept] = timetable.tripFirstStopTime(trip);
+        scratch.routeBoardPosition[kept] = position;
+        scratch.routeCents[kept] = cents;
+        scratch.routeParent[kept] = label;
+        scratch.routeSize++;
+    }
+
+    /**
+     * Adds an arrival to the stop's bag for the round, unless a label of this
+     * round or an earlier one at the stop, or one already at the destination,
+     * is as early and as cheap.
+     */
+    private void add(int round, int stop, int time, int cents, int parent, int trip, int boardStopTime,
+            Scratch scratch) {
+        int to = scratch.to;
+        for (int k = 0; k <= round; k++) {
+            if (dominated(k, stop, time, cents, scratch) || stop != to && dominated(k, to, time, cents, scratch)) {
+                return;
+            }
+        }
+        int[] bag = scratch.bag[round];
+        int size = scratch.bagSize[round][stop];
+        int base = stop * maxLabels;
+        int kept = 0;
+        int latest = -1;
+        for (int slot = 0; slot < size; slot++) {
+            int label = bag[base + slot];
+            if (time <= scratch.labelArrival[label] && cents <= scratch.labelCents[label]) {
+                continue;
+            }
+            bag[base + kept] = label;
+            if (latest < 0 || scratch.labelArrival[label] > scratch.labelArrival[bag[base + latest]]) {
+                latest = kept;
+            }
+            kept++;
+        }
+        if (kept == maxLabels) {
+            if (time >= scratch.labelArrival[bag[base + latest]]) {
+                scratch.bagSize[round][stop] = kept;
+                return;
+            }
+            // the latest arrival makes way for the new label at the end
+            bag[base + latest] = bag[base + maxLabels - 1];
+            kept = maxLabels - 1;
+        }
+        bag[base + kept] = scratch.newLabel(time, cents, parent, trip, boardStopTime, stop);
+        scratch.bagSize[round][stop] = kept + 1;
+        scratch.mark(stop);
+    }
+
+    private boolean dominated(int round, int stop, int time, int cents, Scratch scratch) {
+        int[] bag = scratch.bag[round];
+        int base = stop * maxLabels;
+        for (int slot = scratch.bagSize[round][stop] - 1; slot >= 0; slot--) {
+            int label = bag[base + slot];
+            if (scratch.labelArrival[label] <= time && scratch.labelCents[label] <= cents) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reusable working arrays for one search at a time.
+     */
+    public static final class Scratch {
+
+        private final TripPatterns patterns;
+        private final int[][] bag;
+        private final int[][] bagSize;
+        private final long[] marked;
+        private final int[] queue;
+        private final int[] queuedPosition;
+        private final boolean[] serviceActive;
+        private final boolean[] patternActive;
+
+        private int[] labelArrival = new int[1024];
+        private int[] labelCents = new int[1024];
+        private int[] labelParent = new int[1024];
+        private int[] labelTrip = new int[1024];
+        private int[] labelBoardStopTime = new int[1024];
+        private int[] labelStop = new int[1024];
+        private int labelCount;
+
+        private final int[] routeRank;
+        private final int[] routeTrip;
+        private final int[] routeTripFirst;
+        private final int[] routeBoardPosition;
+        private final int[] routeCents;
+        private final int[] routeParent;
+        private int routeSize;
+
+        private LocalDate activeDate;
+        private int roundsUsed;
+        private int queueSize;
+        private int from;
+        private int to;
+
+        private Scratch(TripPatterns patterns, int maxRounds, int maxLabels) {
+            this.patterns = patterns;
+            int stops = patterns.timetable().stopCount();
+            bag = new int[maxRounds + 1][stops * maxLabels];
+            bagSize = new int[maxRounds + 1][stops];
+            marked = new long[(stops + 63) >>> 6];
+            queue = new int[patterns.patternCount()];
+            queuedPosition = new int[patterns.patternCount()];
+            Arrays.fill(queuedPosition, -1);
+            serviceActive = new boolean[patterns.timetable().serviceCount()];
+            patternActive = new boolean[patterns.patternCount()];
+            // boardings from a full bag of labels, twice over for those
+            // carried along from earlier stops
+            routeRank = new int[2 * maxLabels];
+            routeTrip = new int[2 * maxLabels];
+            routeTripFirst = new int[2 * maxLabels];
+            routeBoardPosition = new int[2 * maxLabels];
+            routeCents = new int[2 * maxLabels];
+            routeParent = new int[2 * maxLabels];
+        }
+
+        public TripPatterns patterns() {
+            return patterns;
+        }
+
+        /**
+         * @return how many labels the last search made, a measure of its work
+         */
+        public int labelCount() {
+            return labelCount;
+        }
+
+        private void reset(Timetable timetable, LocalDate date, int from, int to) {
+            for (int round = 0; round <= roundsUsed; round++) {
+                Arrays.fill(bagSize[round], 0);
+            }
+            Arrays.fill(marked, 0);
+            roundsUsed = 0;
+            labelCount = 0;
+            this.from = from;
+            this.to = to;
+            if (!date.equals(activeDate)) {
+                for (int service = 0; service < serviceActive.length; service++) {
+                    serviceActive[service] = timetable.isServiceActive(service, date);
+                }
+                for (int pattern = 0; pattern < patternActive.length; pattern++) {
+                    patternActive[pattern] = serviceActive[patterns.patternService(pattern)];
+                }
+                activeDate = date;
+            }
+        }
+
+        private int newLabel(int arrival, int cents, int parent, int trip, int boardStopTime, int stop) {
+            if (labelCount == labelArrival.length) {
+                int capacity = labelCount * 2;
+                labelArrival = Arrays.copyOf(labelArrival, capacity);
+                labelCents = Arrays.copyOf(labelCents, capacity);
+                labelParent = Arrays.copyOf(labelParent, capacity);
+                labelTrip = Arrays.copyOf(labelTrip, capacity);
+                labelBoardStopTime = Arrays.copyOf(labelBoardStopTime, capacity);
+                labelStop = Arrays.copyOf(labelStop, capacity);
+            }
+            int label = labelCount++;
+            labelArrival[label] = arrival;
+            labelCents[label] = cents;
+            labelParent[label] = parent;
+            labelTrip[label] = trip;
+            labelBoardStopTime[label] = boardStopTime;
+            labelStop[label] = stop;
+            return label;
+        }
+
+        private void copyRoute(int from, int to) {
+            routeRank[to] = routeRank[from];
+            routeTrip[to] = routeTrip[from];
+            routeTripFirst[to] = routeTripFirst[from];
+            routeBoardPosition[to] = routeBoardPosition[from];
+            routeCents[to] = routeCents[from];
+            routeParent[to] = routeParent[from];
+        }
+
+        private void mark(int stop) {
+            marked[stop >>> 6] |= 1L << stop;
+        }
+
+        private boolean anyMarked() {
+            for (long word : marked) {
+                if (word != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
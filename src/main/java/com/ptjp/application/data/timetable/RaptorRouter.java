@@ -0,0 +1,297 @@
+package com.ptjp.application.data.timetable;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Earliest-arrival journey search with RAPTOR (Delling, Pajor and Werneck,
+ * "Round-Based Public Transit Routing").
+ *
+ * Round {@code k} finds the best arrival at every stop using at most
+ * {@code k} trains, by scanning each pattern that calls at a stop improved in
+ * the previous round once. All working state lives in a {@link Scratch}, which
+ * is reset rather than reallocated between queries, so a search allocates
+ * nothing; only {@link #journey(int, Scratch)} creates objects for the result.
+ *
+ * A router and its scratch instances are bound to one {@link TripPatterns}.
+ * The router is immutable and safe to share; a scratch is not and belongs to
+ * one thread at a time.
+ */
+public final class RaptorRouter {
+
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final TripPatterns patterns;
+    private final Timetable timetable;
+    private final int maxRounds;
+    private final int transferSeconds;
+
+    /**
+     * @param maxRounds       the most trains a journey may use
+     * @param transferSeconds minimum time to change trains at a station
+     */
+    public RaptorRouter(TripPatterns patterns, int maxRounds, int transferSeconds) {
+        this.patterns = patterns;
+        this.timetable = patterns.timetable();
+        this.maxRounds = maxRounds;
+        this.transferSeconds = transferSeconds;
+    }
+
+    public TripPatterns patterns() {
+        return patterns;
+    }
+
+    public Scratch newScratch() {
+        return new Scratch(patterns, maxRounds);
+    }
+
+    /**
+     * Searches for the earliest arrival at {@code to} when leaving {@code from}
+     * at or after {@code departure} on {@code date}. The search result stays in
+     * {@code scratch} until its next use and can be turned into a
+     * {@link Journey} with {@link #journey(int, Scratch)}.
+     *
+     * @return the arrival time in seconds since the start of the service day, or
+     *         {@link #UNREACHED}
+     */
+    public int earliestArrival(int from, int to, LocalDate date, int departure, Scratch scratch) {
+        search(from, to, date, departure, UNREACHED, scratch);
+        return scratch.arrival[scratch.roundsUsed][to];
+    }
+
+    /**
+     * Searches for the earliest arrival at every stop reachable from
+     * {@code from} before {@code latest}, when leaving at or after
+     * {@code departure} on {@code date}. Read the arrivals with
+     * {@link #arrival(int, Scratch)} until the scratch is next used.
+     *
+     * @param latest arrivals at or after this time are not searched for, which
+     *               keeps a bounded search from scanning the rest of the day
+     */
+    public void earliestArrivals(int from, LocalDate date, int departure, int latest, Scratch scratch) {
+        search(from, -1, date, departure, latest, scratch);
+    }
+
+    /**
+     * @return the arrival at {@code stop} found by the last search on
+     *         {@code scratch}, or {@link #UNREACHED}
+     */
+    public int arrival(int stop, Scratch scratch) {
+        return scratch.arrival[scratch.roundsUsed][stop];
+    }
+
+    /**
+     * Rebuilds the journey found by the last search on {@code scratch}, using
+     * the fewest trains among the earliest-arriving options.
+     *
+     * @return the journey, or {@code null} if {@code to} was not reached
+     */
+    public Journey journey(int to, Scratch scratch) {
+        int[][] arrival = scratch.arrival;
+        int best = arrival[scratch.roundsUsed][to];
+        if (best == UNREACHED || to == scratch.from) {
+            return null;
+        }
+        int round = scratch.roundsUsed;
+        while (round > 1 && arrival[round - 1][to] == best) {
+            round--;
+        }
+        List<Journey.Leg> legs = new ArrayList<>();
+        int stop = to;
+        while (stop != scratch.from) {
+            while (scratch.boardTrip[round][stop] < 0) {
+                round--;
+            }
+            int trip = scratch.boardTrip[round][stop];
+            int board = scratch.boardStopTime[round][stop];
+            int alight = scratch.alightStopTime[round][stop];
+            int[] stops = new int[alight - board + 1];
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = timetable.stopTimeStop(board + i);
+            }
+            legs.add(0, new Journey.Leg(timetable.tripId(trip), timetable.routeName(timetable.tripRoute(trip)),
+                    stops, timetable.departure(board), timetable.arrival(alight)));
+            stop = stops[0];
+            round--;
+        }
+        return new Journey(timetable, legs);
+    }
+
+    private void search(int from, int to, LocalDate date, int departure, int latest, Scratch scratch) {
+        if (scratch.patterns != patterns) {
+            throw new IllegalArgumentException("Scratch belongs to a different timetable");
+        }
+        scratch.reset(timetable, date, from, to);
+        scratch.latest = latest;
+        int[][] arrival = scratch.arrival;
+        arrival[0][from] = departure;
+        scratch.mark(from);
+
+        for (int round = 1; round <= maxRounds && scratch.anyMarked(); round++) {
+            System.arraycopy(arrival[round - 1], 0, arrival[round], 0, arrival[round].length);
+            Arrays.fill(scratch.boardTrip[round], -1);
+            scratch.roundsUsed = round;
+            collectPatterns(scratch);
+            scanPatterns(round, scratch);
+        }
+    }
+
+    private void collectPatterns(Scratch scratch) {
+        long[] marked = scratch.marked;
+        for (int word = 0; word < marked.length; word++) {
+            long bits = marked[word];
+            marked[word] = 0;
+            while (bits != 0) {
+                int stop = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int end = patterns.stopPatternsStart(stop + 1);
+                for (int i = patterns.stopPatternsStart(stop); i < end; i++) {
+                    int pattern = patterns.stopPattern(i);
+                    if (!scratch.patternActive[pattern]) {
+                        continue;
+                    }
+                    int position = patterns.stopPatternPosition(i);
+                    int queued = scratch.queuedPosition[pattern];
+                    if (queued < 0) {
+                        scratch.queue[scratch.queueSize++] = pattern;
+                        scratch.queuedPosition[pattern] = position;
+                    } else if (position < queued) {
+                        scratch.queuedPosition[pattern] = position;
+                    }
+                }
+            }
+        }
+    }
+
+    private void scanPatterns(int round, Scratch scratch) {
+        int[] previous = scratch.arrival[round - 1];
+        int[] current = scratch.arrival[round];
+        int[] boardTrip = scratch.boardTrip[round];
+        int[] boardStopTime = scratch.boardStopTime[round];
+        int[] alightStopTime = scratch.alightStopTime[round];
+        int target = scratch.to;
+        int latest = scratch.latest;
+        int slack = round > 1 ? transferSeconds : 0;
+
+        for (int q = 0; q < scratch.queueSize; q++) {
+            int pattern = scratch.queue[q];
+            int start = scratch.queuedPosition[pattern];
+            scratch.queuedPosition[pattern] = -1;
+
+            int rank = -1;
+            int trip = -1;
+            int tripFirst = 0;
+            int boardedAt = 0;
+            int stopCount = patterns.patternStopCount(pattern);
+            for (int position = start; position < stopCount; position++) {
+                int stop = patterns.patternStop(pattern, position);
+                if (rank >= 0) {
+                    int time = timetable.arrival(tripFirst + position);
+                    if (time < current[stop] && time < latest && (target < 0 || time < current[target])) {
+                        current[stop] = time;
+                        boardTrip[stop] = trip;
+                        boardStopTime[stop] = boardedAt;
+                        // a pattern may call at the stop more than once
+                        alightStopTime[stop] = tripFirst + position;
+                        scratch.mark(stop);
+                    }
+                }
+                int reached = previous[stop];
+                if (reached == UNREACHED) {
+                    continue;
+                }
+                int ready = reached + slack;
+                if (rank < 0 || ready <= timetable.departure(tripFirst + position)) {
+                    int earlier = patterns.earliestTrip(pattern, position, ready);
+                    if (earlier >= 0 && (rank < 0 || earlier < rank)) {
+                        rank = earlier;
+                        trip = patterns.patternTrip(pattern, rank);
+                        tripFirst = timetable.tripFirstStopTime(trip);
+                        boardedAt = tripFirst + position;
+                    }
+                }
+            }
+        }
+        scratch.queueSize = 0;
+    }
+
+    /**
+     * Reusable working arrays for one search at a time.
+     */
+    public static final class Scratch {
+
+        private final TripPatterns patterns;
+        private final int[][] arrival;
+        private final int[][] boardTrip;
+        private final int[][] boardStopTime;
+        private final int[][] alightStopTime;
+        private final long[] marked;
+        private final int[] queue;
+        private final int[] queuedPosition;
+        private final boolean[] serviceActive;
+        private final boolean[] patternActive;
+        private LocalDate activeDate;
+        private int roundsUsed;
+        private int queueSize;
+        private int from;
+        private int to;
+        private int latest;
+
+        private Scratch(TripPatterns patterns, int maxRounds) {
+            this.patterns = patterns;
+            int stops = patterns.timetable().stopCount();
+            arrival = new int[maxRounds + 1][stops];
+            boardTrip = new int[maxRounds + 1][stops];
+            boardStopTime = new int[maxRounds + 1][stops];
+            alightStopTime = new int[maxRounds + 1][stops];
+            marked = new long[(stops + 63) >>> 6];
+            queue = new int[patterns.patternCount()];
+            queuedPosition = new int[patterns.patternCount()];
+            Arrays.fill(queuedPosition, -1);
+            serviceActive = new boolean[patterns.timetable().serviceCount()];
+            patternActive = new boolean[patterns.patternCount()];
+            for (int[] round : arrival) {
+                Arrays.fill(round, UNREACHED);
+            }
+            Arrays.fill(boardTrip[0], -1);
+        }
+
+        public TripPatterns patterns() {
+            return patterns;
+        }
+
+        private void reset(Timetable timetable, LocalDate date, int from, int to) {
+            for (int round = 0; round <= roundsUsed; round++) {
+                Arrays.fill(arrival[round], UNREACHED);
+            }
+            Arrays.fill(marked, 0);
+            roundsUsed = 0;
+            this.from = from;
+            this.to = to;
+            if (!date.equals(activeDate)) {
+                for (int service = 0; service < serviceActive.length; service++) {
+                    serviceActive[service] = timetable.isServiceActive(service, date);
+                }
+                for (int pattern = 0; pattern < patternActive.length; pattern++) {
+                    patternActive[pattern] = serviceActive[patterns.patternService(pattern)];
+                }
+                activeDate = date;
+            }
+        }
+
+        private void mark(int stop) {
+            marked[stop >>> 6] |= 1L << stop;
+        }
+
+        private boolean anyMarked() {
+            for (long word : marked) {
+                if (word != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
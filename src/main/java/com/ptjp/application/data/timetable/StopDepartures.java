@@ -0,0 +1,92 @@
+package com.ptjp.application.data.timetable;
+
+import java.util.Arrays;
+
+/**
+ * The stop times of a {@link Timetable} grouped by stop and ordered by
+ * scheduled departure, for departure boards: the departures from stop
+ * {@code s} are {@code [first(s), end(s))}, and the first leaving at or after
+ * a time is a binary search.
+ *
+ * A trip's last stop time is an arrival only and is left out.
+ */
+public final class StopDepartures {
+
+    private final Timetable timetable;
+    private final int[] stopOffsets;
+    private final int[] stopTimes;
+
+    public StopDepartures(Timetable timetable) {
+        this.timetable = timetable;
+        int stops = timetable.stopCount();
+        stopOffsets = new int[stops + 1];
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            int first = timetable.tripFirstStopTime(trip);
+            for (int stopTime = first; stopTime < first + timetable.tripStopCount(trip) - 1; stopTime++) {
+                stopOffsets[timetable.stopTimeStop(stopTime) + 1]++;
+            }
+        }
+        for (int stop = 0; stop < stops; stop++) {
+            stopOffsets[stop + 1] += stopOffsets[stop];
+        }
+        stopTimes = new int[stopOffsets[stops]];
+        int[] next = Arrays.copyOf(stopOffsets, stops);
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            int first = timetable.tripFirstStopTime(trip);
+            for (int stopTime = first; stopTime < first + timetable.tripStopCount(trip) - 1; stopTime++) {
+                stopTimes[next[timetable.stopTimeStop(stopTime)]++] = stopTime;
+            }
+        }
+        for (int stop = 0; stop < stops; stop++) {
+            sortByDeparture(stopOffsets[stop], stopOffsets[stop + 1]);
+        }
+    }
+
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    public int first(int stop) {
+        return stopOffsets[stop];
+    }
+
+    public int end(int stop) {
+        return stopOffsets[stop + 1];
+    }
+
+    /**
+     * @param index between {@link #first(int)} and {@link #end(int)} of a stop
+     */
+    public int stopTime(int index) {
+        return stopTimes[index];
+    }
+
+    /**
+     * @return the index of the stop's first departure at or after
+     *         {@code time}, or {@link #end(int)} if there is none
+     */
+    public int firstDepartingAt(int stop, int time) {
+        int low = stopOffsets[stop];
+        int high = stopOffsets[stop + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timetable.departure(stopTimes[mid]) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void sortByDeparture(int from, int to) {
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = (long) timetable.departure(stopTimes[i]) << 32 | stopTimes[i];
+        }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++) {
+            stopTimes[i] = (int) keys[i - from];
+        }
+    }
+}
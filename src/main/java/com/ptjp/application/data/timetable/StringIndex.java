@@ -0,0 +1,152 @@
+package com.ptjp.application.data.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Interns GTFS identifiers into dense {@code int} indexes.
+ *
+ * Open addressing over a plain {@code int[]} table, so a lookup never boxes and
+ * a key can be matched straight from a parser buffer without allocating a
+ * {@link String} for identifiers that were already seen.
+ */
+final class StringIndex {
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] table;
+    private int size;
+
+    StringIndex() {
+        this(16);
+    }
+
+    StringIndex(int expectedSize) {
+        keys = new String[Math.max(expectedSize, 4)];
+        hashes = new int[keys.length];
+        table = new int[tableSizeFor(keys.length)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    String get(int index) {
+        return keys[index];
+    }
+
+    int indexOf(String key) {
+        int hash = key.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (hashes[entry - 1] == hash && keys[entry - 1].equals(key)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    int intern(String key) {
+        int hash = key.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return insert(slot, key, hash);
+            }
+            if (hashes[entry - 1] == hash && keys[entry - 1].equals(key)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Interns {@code chars[start, end)}. The hash is the same one
+     * {@link String#hashCode()} computes, so keys added either way collide
+     * correctly.
+     */
+    int intern(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return insert(slot, new String(chars, start, end - start), hash);
+            }
+            if (hashes[entry - 1] == hash && equals(keys[entry - 1], chars, start, end)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Trims the key array to its used length; the index is not modified after
+     * loading, so the slack is dead weight.
+     */
+    StringIndex compact() {
+        keys = Arrays.copyOf(keys, size);
+        hashes = Arrays.copyOf(hashes, size);
+        return this;
+    }
+
+    long estimatedHeapBytes() {
+        long bytes = 16L + 4L * table.length + 4L * hashes.length + 4L * keys.length;
+        for (int i = 0; i < size; i++) {
+            bytes += 40 + keys[i].length();
+        }
+        return bytes;
+    }
+
+    private int insert(int slot, String key, int hash) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(size * 2, 4));
+            hashes = Arrays.copyOf(hashes, keys.length);
+        }
+        keys[size] = key;
+        hashes[size] = hash;
+        table[slot] = ++size;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return size - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = mix(hashes[i]) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = i + 1;
+        }
+        table = rehashed;
+    }
+
+    private static boolean equals(String key, char[] chars, int start, int end) {
+        if (key.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (key.charAt(i - start) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        int mixed = hash * 0x9e3779b9;
+        return mixed ^ (mixed >>> 16);
+    }
+
+    private static int tableSizeFor(int entries) {
+        return Integer.highestOneBit(Math.max(entries * 2 - 1, 8)) << 1;
+    }
+}
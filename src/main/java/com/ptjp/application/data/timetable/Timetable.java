@@ -0,0 +1,322 @@
+package com.ptjp.application.data.timetable;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable, in-memory GTFS timetable.
+ *
+ * Stops, routes, services and trips are interned into dense {@code int}
+ * indexes and every attribute lives in a parallel primitive array. Stop times
+ * are grouped by trip and ordered by stop sequence, so the stop times of trip
+ * {@code t} are the contiguous range
+ * {@code [tripFirstStopTime(t), tripFirstStopTime(t + 1))}. A stop time costs
+ * ten bytes (stop, arrival, dwell) instead of a JPA entity per row.
+ *
+ * Times are seconds since the start of the service day and may exceed 24
+ * hours for trips running past midnight.
+ *
+ * Shapes, the tracks trips follow, are optional. Their points are likewise
+ * grouped by shape and ordered by sequence.
+ */
+public final class Timetable {
+
+    public static final Timetable EMPTY = new Timetable(new StringIndex(), new String[0], new double[0],
+            new double[0], new StringIndex(), new String[0], new StringIndex(), new byte[0], new int[0], new int[0],
+            new int[1], new int[0], new StringIndex(), new int[0], new int[0], new int[0], new int[1], new int[0],
+            new int[0], new short[0], new StringIndex(), new int[1], new double[0], new double[0]);
+
+    private final StringIndex stopIds;
+    private final String[] stopNames;
+    private final double[] stopLat;
+    private final double[] stopLon;
+
+    private final StringIndex routeIds;
+    private final String[] routeNames;
+
+    private final StringIndex serviceIds;
+    private final byte[] serviceDays;
+    private final int[] serviceStart;
+    private final int[] serviceEnd;
+    private final int[] serviceExceptions;
+    private final int[] exceptionDates;
+
+    private final StringIndex tripIds;
+    private final int[] tripRoute;
+    private final int[] tripService;
+    private final int[] tripShape;
+    private final int[] tripStopTimes;
+
+    private final int[] stopTimeStop;
+    private final int[] stopTimeArrival;
+    private final short[] stopTimeDwell;
+
+    private final StringIndex shapeIds;
+    private final int[] shapePoints;
+    private final double[] shapePointLat;
+    private final double[] shapePointLon;
+
+    Timetable(StringIndex stopIds, String[] stopNames, double[] stopLat, double[] stopLon, StringIndex routeIds,
+            String[] routeNames, StringIndex serviceIds, byte[] serviceDays, int[] serviceStart, int[] serviceEnd,
+            int[] serviceExceptions, int[] exceptionDates, StringIndex tripIds, int[] tripRoute, int[] tripService,
+            int[] tripShape, int[] tripStopTimes, int[] stopTimeStop, int[] stopTimeArrival, short[] stopTimeDwell,
+            StringIndex shapeIds, int[] shapePoints, double[] shapePointLat, double[] shapePointLon) {
+        this.stopIds = stopIds;
+        this.stopNames = stopNames;
+        this.stopLat = stopLat;
+        this.stopLon = stopLon;
+        this.routeIds = routeIds;
+        this.routeNames = routeNames;
+        this.serviceIds = serviceIds;
+        this.serviceDays = serviceDays;
+        this.serviceStart = serviceStart;
+        this.serviceEnd = serviceEnd;
+        this.serviceExceptions = serviceExceptions;
+        this.exceptionDates = exceptionDates;
+        this.tripIds = tripIds;
+        this.tripRoute = tripRoute;
+        this.tripService = tripService;
+        this.tripShape = tripShape;
+        this.tripStopTimes = tripStopTimes;
+        this.stopTimeStop = stopTimeStop;
+        this.stopTimeArrival = stopTimeArrival;
+        this.stopTimeDwell = stopTimeDwell;
+        this.shapeIds = shapeIds;
+        this.shapePoints = shapePoints;
+        this.shapePointLat = shapePointLat;
+        this.shapePointLon = shapePointLon;
+    }
+
+    public int stopCount() {
+        return stopNames.length;
+    }
+
+    /**
+     * @return the index of the stop with the given GTFS {@code stop_id}, or -1
+     */
+    public int stopIndex(String stopId) {
+        return stopIds.indexOf(stopId);
+    }
+
+    public String stopId(int stop) {
+        return stopIds.get(stop);
+    }
+
+    public String stopName(int stop) {
+        return stopNames[stop];
+    }
+
+    public double stopLat(int stop) {
+        return stopLat[stop];
+    }
+
+    public double stopLon(int stop) {
+        return stopLon[stop];
+    }
+
+    public int routeCount() {
+        return routeNames.length;
+    }
+
+    public int routeIndex(String routeId) {
+        return routeIds.indexOf(routeId);
+    }
+
+    public String routeId(int route) {
+        return routeIds.get(route);
+    }
+
+    public String routeName(int route) {
+        return routeNames[route];
+    }
+
+    public int serviceCount() {
+        return serviceDays.length;
+    }
+
+    public String serviceId(int service) {
+        return serviceIds.get(service);
+    }
+
+    /**
+     * @return the weekdays the service runs on, Monday in bit 0 to Sunday in
+     *         bit 6
+     */
+    public int serviceDays(int service) {
+        return serviceDays[service];
+    }
+
+    /**
+     * @return the first day of the service, as {@code yyyymmdd}
+     */
+    public int serviceStart(int service) {
+        return serviceStart[service];
+    }
+
+    /**
+     * @return the last day of the service, as {@code yyyymmdd}
+     */
+    public int serviceEnd(int service) {
+        return serviceEnd[service];
+    }
+
+    /**
+     * @return the service's {@code calendar_dates.txt} exceptions as
+     *         {@code yyyymmdd}, negated for days the service is removed
+     */
+    public int[] serviceExceptions(int service) {
+        return Arrays.copyOfRange(exceptionDates, serviceExceptions[service], serviceExceptions[service + 1]);
+    }
+
+    /**
+     * Whether the service runs on {@code date}, taking {@code calendar.txt}
+     * weekdays and date range and {@code calendar_dates.txt} exceptions into
+     * account.
+     */
+    public boolean isServiceActive(int service, LocalDate date) {
+        int day = toDateInt(date);
+        for (int i = serviceExceptions[service]; i < serviceExceptions[service + 1]; i++) {
+            int exception = exceptionDates[i];
+            if (exception == day) {
+                return true;
+            }
+            if (exception == -day) {
+                return false;
+            }
+        }
+        return day >= serviceStart[service] && day <= serviceEnd[service]
+                && (serviceDays[service] & (1 << (date.getDayOfWeek().getValue() - 1))) != 0;
+    }
+
+    /**
+     * @return the services running on {@code date}, indexed by service
+     */
+    public BitSet activeServices(LocalDate date) {
+        BitSet active = new BitSet(serviceCount());
+        for (int service = 0; service < serviceCount(); service++) {
+            if (isServiceActive(service, date)) {
+                active.set(service);
+            }
+        }
+        return active;
+    }
+
+    public int tripCount() {
+        return tripRoute.length;
+    }
+
+    public int tripIndex(String tripId) {
+        return tripIds.indexOf(tripId);
+    }
+
+    public String tripId(int trip) {
+        return tripIds.get(trip);
+    }
+
+    public int tripRoute(int trip) {
+        return tripRoute[trip];
+    }
+
+    public int tripService(int trip) {
+        return tripService[trip];
+    }
+
+    /**
+     * @return the trip's shape, or -1 if the feed gives none
+     */
+    public int tripShape(int trip) {
+        return tripShape[trip];
+    }
+
+    /**
+     * @return the index of the trip's first stop time; the trip's stop times
+     *         end at {@code tripFirstStopTime(trip + 1)}
+     */
+    public int tripFirstStopTime(int trip) {
+        return tripStopTimes[trip];
+    }
+
+    public int tripStopCount(int trip) {
+        return tripStopTimes[trip + 1] - tripStopTimes[trip];
+    }
+
+    public int stopTimeCount() {
+        return stopTimeStop.length;
+    }
+
+    public int stopTimeStop(int stopTime) {
+        return stopTimeStop[stopTime];
+    }
+
+    public int arrival(int stopTime) {
+        return stopTimeArrival[stopTime];
+    }
+
+    public int departure(int stopTime) {
+        return stopTimeArrival[stopTime] + stopTimeDwell[stopTime];
+    }
+
+    public int shapeCount() {
+        return shapePoints.length - 1;
+    }
+
+    public String shapeId(int shape) {
+        return shapeIds.get(shape);
+    }
+
+    /**
+     * @return the index of the shape's first point; the shape's points end at
+     *         {@code shapeFirstPoint(shape + 1)}
+     */
+    public int shapeFirstPoint(int shape) {
+        return shapePoints[shape];
+    }
+
+    public int shapePointCount(int shape) {
+        return shapePoints[shape + 1] - shapePoints[shape];
+    }
+
+    public double shapePointLat(int point) {
+        return shapePointLat[point];
+    }
+
+    public double shapePointLon(int point) {
+        return shapePointLon[point];
+    }
+
+    /**
+     * Approximate retained heap of this timetable, counting array payloads and
+     * interned strings but not object alignment.
+     */
+    public long estimatedHeapBytes() {
+        long bytes = stopIds.estimatedHeapBytes() + routeIds.estimatedHeapBytes() + serviceIds.estimatedHeapBytes()
+                + tripIds.estimatedHeapBytes() + shapeIds.estimatedHeapBytes();
+        bytes += strings(stopNames) + strings(routeNames);
+        bytes += 16L * stopLat.length;
+        bytes += serviceDays.length + 8L * serviceStart.length + 4L * serviceExceptions.length
+                + 4L * exceptionDates.length;
+        bytes += 4L * (tripRoute.length + tripService.length + tripShape.length + tripStopTimes.length);
+        bytes += 10L * stopTimeStop.length;
+        bytes += 4L * shapePoints.length + 16L * shapePointLat.length;
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Timetable[%d stops, %d routes, %d trips, %d stop times]", stopCount(), routeCount(),
+                tripCount(), stopTimeCount());
+    }
+
+    static int toDateInt(LocalDate date) {
+        return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    private static long strings(String[] strings) {
+        long bytes = 16L + 4L * strings.length;
+        for (String string : strings) {
+            bytes += 40 + string.length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,192 @@
+package com.ptjp.application.data.timetable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One published version of the timetable, with whatever services derive from
+ * it: routers, indexes, renderers. Everything derived is built at most once
+ * per snapshot and looked up without locks, so a snapshot can be prepared in
+ * full before it is published and then replaces the previous one with a
+ * single reference swap.
+ *
+ * Snapshots are reference counted. Whoever publishes a snapshot holds the
+ * first reference and releases it when it is replaced; readers that must see
+ * one version throughout take a reference with {@link #retain()} and release
+ * it with {@link #close()}. When the last reference goes the snapshot is
+ * reclaimed: derived values that are {@link AutoCloseable} are closed and the
+ * reclaim listener is told. So derived values are only looked up, and used,
+ * while holding a reference.
+ */
+public final class TimetableSnapshot implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Timetable timetable;
+    private final long version;
+    private final Consumer<TimetableSnapshot> reclaimed;
+
+    private final ConcurrentHashMap<Key<?>, FutureTask<?>> derived = new ConcurrentHashMap<>();
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * @param reclaimed called once, by the thread releasing the last
+     *                  reference
+     */
+    public TimetableSnapshot(Timetable timetable, long version, Consumer<TimetableSnapshot> reclaimed) {
+        this.timetable = timetable;
+        this.version = version;
+        this.reclaimed = reclaimed;
+    }
+
+    public Timetable timetable() {
+        return timetable;
+    }
+
+    /**
+     * @return the number of snapshots published before this one
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the value derived from this snapshot's timetable under
+     *         {@code key}, built by {@code factory} on first use; concurrent
+     *         first uses wait for the one build, and factories may themselves
+     *         derive other values
+     * @throws IllegalStateException if the snapshot has been reclaimed, as
+     *                               the caller held no reference to it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T derived(Key<T> key, Function<Timetable, ? extends T> factory) {
+        if (references.get() <= 0) {
+            throw new IllegalStateException("Deriving " + key + " from reclaimed " + this);
+        }
+        FutureTask<?> task = derived.get(key);
+        if (task == null) {
+            FutureTask<T> created = new FutureTask<>(() -> factory.apply(timetable));
+            task = derived.putIfAbsent(key, created);
+            if (task == null) {
+                task = created;
+                created.run();
+                if (references.get() <= 0) {
+                    // reclaimed while building, so close() may have missed it
+                    derived.remove(key, created);
+                    close(key, created);
+                    throw new IllegalStateException("Deriving " + key + " from reclaimed " + this);
+                }
+            }
+        }
+        try {
+            return (T) task.get();
+        } catch (ExecutionException e) {
+            // let the next caller try again rather than fail forever
+            derived.remove(key, task);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Could not derive " + key + " from " + timetable, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted deriving " + key + " from " + timetable, e);
+        }
+    }
+
+    /**
+     * Takes a reference, unless the snapshot has already been reclaimed.
+     *
+     * @return whether a reference was taken
+     */
+    public boolean retain() {
+        for (int count = references.get(); count > 0; count = references.get()) {
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases a reference, reclaiming the snapshot if it was the last.
+     */
+    @Override
+    public void close() {
+        int count = references.decrementAndGet();
+        if (count < 0) {
+            throw new IllegalStateException("Released more often than retained: " + this);
+        }
+        if (count > 0) {
+            return;
+        }
+        for (Map.Entry<Key<?>, FutureTask<?>> entry : derived.entrySet()) {
+            close(entry.getKey(), entry.getValue());
+        }
+        reclaimed.accept(this);
+    }
+
+    private void close(Key<?> key, FutureTask<?> task) {
+        Object value = built(task);
+        if (value instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) value).close();
+            } catch (Exception e) {
+                logger.warn("Could not close {} of {}", key, this, e);
+            }
+        }
+    }
+
+    /**
+     * @return the task's value if it has been built, otherwise {@code null}
+     */
+    private static Object built(FutureTask<?> task) {
+        if (!task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the references held, 0 once reclaimed
+     */
+    public int references() {
+        return Math.max(0, references.get());
+    }
+
+    @Override
+    public String toString() {
+        return "version " + version + " of " + timetable;
+    }
+
+    /**
+     * Names one kind of value derived from snapshots. Keys are compared by
+     * identity, so each is typically a constant of the service deriving it.
+     */
+    public static final class Key<T> {
+
+        private final String name;
+
+        public Key(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.ptjp.application.data.timetable;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shortest travel time between every pair of stops, one row per origin, each
+ * row an {@link Isochrone} over the same departure window.
+ *
+ * Times are unsigned 16-bit seconds in a direct buffer, so a matrix of 4,000
+ * stops is 32 MB the garbage collector never scans or copies. Rows are
+ * filled one at a time and marked valid once written, and a valid row is
+ * never written again; a row that is not valid must not be read. When the
+ * timetable or the day changes, a new matrix takes over the rows that cannot
+ * differ, see
+ * {@link #copyUnchanged(TravelTimeMatrix, Timetable, LocalDate, Timetable, LocalDate, int, int)}.
+ *
+ * Safe for concurrent reads while rows are being written. Once closed, its
+ * buffer goes to the next matrix of the same size, so it must no longer be
+ * read.
+ */
+public final class TravelTimeMatrix implements AutoCloseable {
+
+    /** The longest travel time a matrix can hold, a little over 18 hours. */
+    public static final int MAX_SECONDS = 0xFFFE;
+
+    private static final char UNREACHED = 0xFFFF;
+
+    /**
+     * The buffer of the last matrix closed. Direct memory is only freed once
+     * its buffer is collected, which may take long after a matrix is done
+     * with, so the next matrix of the same size takes it over instead.
+     */
+    private static final AtomicReference<ByteBuffer> SPARE = new AtomicReference<>();
+
+    private final int stopCount;
+    private final ByteBuffer buffer;
+    private final CharBuffer times;
+    private final AtomicIntegerArray validRows;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public TravelTimeMatrix(int stopCount) {
+        long bytes = 2L * stopCount * stopCount;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many stops for a travel time matrix: " + stopCount);
+        }
+        this.stopCount = stopCount;
+        ByteBuffer spare = SPARE.get();
+        this.buffer = spare != null && spare.capacity() == bytes && SPARE.compareAndSet(spare, null) ? spare
+                : ByteBuffer.allocateDirect((int) bytes);
+        this.times = buffer.asCharBuffer();
+        this.validRows = new AtomicIntegerArray(stopCount);
+    }
+
+    public int stopCount() {
+        return stopCount;
+    }
+
+    public boolean isRowValid(int from) {
+        return validRows.get(from) != 0;
+    }
+
+    public int validRowCount() {
+        int count = 0;
+        for (int from = 0; from < stopCount; from++) {
+            if (validRows.get(from) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the shortest travel time in seconds, or
+     *         {@link RaptorRouter#UNREACHED}; only meaningful if the row of
+     *         {@code from} is valid
+     */
+    public int travelSeconds(int from, int to) {
+        char time = times.get(from * stopCount + to);
+        return time == UNREACHED ? RaptorRouter.UNREACHED : time;
+    }
+
+    /**
+     * Writes the row of the isochrone's origin and marks it valid, unless it
+     * is valid already.
+     */
+    public void setRow(Isochrone isochrone) {
+        if (isochrone.stopCount() != stopCount) {
+            throw new IllegalArgumentException("Isochrone covers " + isochrone.stopCount() + " stops, not "
+                    + stopCount);
+        }
+        if (isochrone.getMaxSeconds() > MAX_SECONDS) {
+            throw new IllegalArgumentException("Travel times are limited to " + MAX_SECONDS + " seconds");
+        }
+        int from = isochrone.getFrom();
+        if (validRows.get(from) != 0) {
+            return;
+        }
+        int offset = from * stopCount;
+        for (int to = 0; to < stopCount; to++) {
+            int time = isochrone.travelSeconds(to);
+            times.put(offset + to, time == RaptorRouter.UNREACHED ? UNREACHED : (char) time);
+        }
+        validRows.set(from, 1);
+    }
+
+    /**
+     * Takes over the rows of {@code previous} that a new timetable or day
+     * cannot change, given that they were computed for {@code before} on
+     * {@code beforeDate}. Both timetables must have the same stops at the same
+     * indexes; {@code previous} is only read, so its readers are unaffected.
+     *
+     * Trips running on the day between {@code from} and {@code until} are
+     * grouped by stop sequence, and a sequence whose trips or times differ
+     * marks its stops as changed. A journey can only use a changed sequence by
+     * first reaching one of its stops on unchanged trains, which it would have
+     * done before as well, so only the rows of changed stops and of origins
+     * that reached one are left to work out again.
+     *
+     * @param from  seconds since the start of the day; trips that have
+     *              arrived by then are ignored
+     * @param until seconds since the start of the day; trips leaving at or
+     *              after then are ignored
+     * @return how many rows were taken over
+     */
+    public int copyUnchanged(TravelTimeMatrix previous, Timetable before, LocalDate beforeDate, Timetable after,
+            LocalDate afterDate, int from, int until) {
+        if (previous.stopCount != stopCount || before.stopCount() != stopCount || after.stopCount() != stopCount) {
+            throw new IllegalArgumentException("Timetables do not match the matrix's " + stopCount + " stops");
+        }
+        Map<StopSequence, Long> fingerprints = fingerprints(before, beforeDate, from, until);
+        Map<StopSequence, Long> current = fingerprints(after, afterDate, from, until);
+        BitSet changed = new BitSet(stopCount);
+        for (Map.Entry<StopSequence, Long> entry : current.entrySet()) {
+            if (!entry.getValue().equals(fingerprints.remove(entry.getKey()))) {
+                entry.getKey().markStops(changed);
+            }
+        }
+        // sequences no longer run at all
+        fingerprints.keySet().forEach(sequence -> sequence.markStops(changed));
+
+        int copied = 0;
+        for (int origin = 0; origin < stopCount; origin++) {
+            if (previous.isRowValid(origin) && validRows.get(origin) == 0 && !changed.get(origin)
+                    && !previous.reachesAny(origin, changed)) {
+                int offset = origin * stopCount;
+                times.put(offset, previous.times, offset, stopCount);
+                validRows.set(origin, 1);
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    public long offHeapBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Invalidates every row and hands the buffer to the next matrix of the
+     * same size.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        for (int from = 0; from < stopCount; from++) {
+            validRows.set(from, 0);
+        }
+        SPARE.set(buffer);
+    }
+
+    private boolean reachesAny(int from, BitSet stops) {
+        int offset = from * stopCount;
+        for (int stop = stops.nextSetBit(0); stop >= 0; stop = stops.nextSetBit(stop + 1)) {
+            if (times.get(offset + stop) != UNREACHED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return per stop sequence, an order-independent hash of the times of the
+     *         trips calling at it on {@code date} between {@code from} and
+     *         {@code until}
+     */
+    private static Map<StopSequence, Long> fingerprints(Timetable timetable, LocalDate date, int from, int until) {
+        BitSet active = timetable.activeServices(date);
+        Map<StopSequence, Long> fingerprints = new HashMap<>();
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            if (!active.get(timetable.tripService(trip))) {
+                continue;
+            }
+            int first = timetable.tripFirstStopTime(trip);
+            int last = first + timetable.tripStopCount(trip) - 1;
+            if (timetable.departure(first) >= until || timetable.arrival(last) < from) {
+                continue;
+            }
+            int[] stops = new int[timetable.tripStopCount(trip)];
+            long hash = 1;
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = timetable.stopTimeStop(first + i);
+                hash = 31 * hash + timetable.arrival(first + i);
+                hash = 31 * hash + timetable.departure(first + i);
+            }
+            // mixed so that summing hashes of different trips rarely cancels out
+            hash *= 0x9E3779B97F4A7C15L;
+            fingerprints.merge(new StopSequence(stops), hash ^ (hash >>> 29), Long::sum);
+        }
+        return fingerprints;
+    }
+
+    private static final class StopSequence {
+
+        private final int[] stops;
+        private final int hash;
+
+        StopSequence(int[] stops) {
+            this.stops = stops;
+            this.hash = Arrays.hashCode(stops);
+        }
+
+        void markStops(BitSet marked) {
+            for (int stop : stops) {
+                marked.set(stop);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StopSequence && Arrays.equals(stops, ((StopSequence) obj).stops);
+        }
+    }
+}
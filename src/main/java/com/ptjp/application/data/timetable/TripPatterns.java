@@ -0,0 +1,249 @@
+package com.ptjp.application.data.timetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the trips of a {@link Timetable} into patterns: trips of one service
+ * that call at exactly the same stops in the same order.
+ *
+ * Trips within a pattern never overtake each other and are ordered by
+ * departure, so the earliest trip leaving a stop after a given time is a binary
+ * search. This is the "route" of the RAPTOR algorithm; a GTFS route usually
+ * splits into several patterns (one per direction, short workings and so on).
+ */
+public final class TripPatterns {
+
+    private final Timetable timetable;
+
+    private final int[] patternStopOffsets;
+    private final int[] patternStops;
+    private final int[] patternTripOffsets;
+    private final int[] patternTrips;
+    private final int[] patternService;
+    private final int[] patternRoute;
+
+    private final int[] stopPatternOffsets;
+    private final int[] stopPatterns;
+    private final int[] stopPatternPositions;
+
+    public TripPatterns(Timetable timetable) {
+        this.timetable = timetable;
+
+        Map<PatternKey, List<Integer>> groups = new HashMap<>();
+        List<PatternKey> keys = new ArrayList<>();
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            if (timetable.tripStopCount(trip) < 2) {
+                continue;
+            }
+            PatternKey key = new PatternKey(timetable, trip);
+            List<Integer> trips = groups.get(key);
+            if (trips == null) {
+                trips = new ArrayList<>();
+                groups.put(key, trips);
+                keys.add(key);
+            }
+            trips.add(trip);
+        }
+
+        IntArray stopOffsets = new IntArray();
+        IntArray stops = new IntArray();
+        IntArray tripOffsets = new IntArray();
+        IntArray trips = new IntArray();
+        IntArray services = new IntArray();
+        IntArray routes = new IntArray();
+        stopOffsets.add(0);
+        tripOffsets.add(0);
+        for (PatternKey key : keys) {
+            for (List<Integer> fifo : splitOvertaking(groups.get(key))) {
+                for (int stop : key.stops) {
+                    stops.add(stop);
+                }
+                stopOffsets.add(stops.size());
+                for (int trip : fifo) {
+                    trips.add(trip);
+                }
+                tripOffsets.add(trips.size());
+                services.add(key.service);
+                routes.add(timetable.tripRoute(fifo.get(0)));
+            }
+        }
+        patternStopOffsets = stopOffsets.toArray();
+        patternStops = stops.toArray();
+        patternTripOffsets = tripOffsets.toArray();
+        patternTrips = trips.toArray();
+        patternService = services.toArray();
+        patternRoute = routes.toArray();
+
+        int stopCount = timetable.stopCount();
+        stopPatternOffsets = new int[stopCount + 1];
+        for (int stop : patternStops) {
+            stopPatternOffsets[stop + 1]++;
+        }
+        for (int stop = 0; stop < stopCount; stop++) {
+            stopPatternOffsets[stop + 1] += stopPatternOffsets[stop];
+        }
+        stopPatterns = new int[patternStops.length];
+        stopPatternPositions = new int[patternStops.length];
+        int[] next = Arrays.copyOf(stopPatternOffsets, stopCount);
+        for (int pattern = 0; pattern < patternCount(); pattern++) {
+            for (int i = patternStopOffsets[pattern]; i < patternStopOffsets[pattern + 1]; i++) {
+                int slot = next[patternStops[i]]++;
+                stopPatterns[slot] = pattern;
+                stopPatternPositions[slot] = i - patternStopOffsets[pattern];
+            }
+        }
+    }
+
+    public Timetable timetable() {
+        return timetable;
+    }
+
+    public int patternCount() {
+        return patternService.length;
+    }
+
+    public int patternService(int pattern) {
+        return patternService[pattern];
+    }
+
+    public int patternRoute(int pattern) {
+        return patternRoute[pattern];
+    }
+
+    public int patternStopCount(int pattern) {
+        return patternStopOffsets[pattern + 1] - patternStopOffsets[pattern];
+    }
+
+    public int patternStop(int pattern, int position) {
+        return patternStops[patternStopOffsets[pattern] + position];
+    }
+
+    public int patternTripCount(int pattern) {
+        return patternTripOffsets[pattern + 1] - patternTripOffsets[pattern];
+    }
+
+    /**
+     * @return the trip at {@code rank} in departure order within the pattern
+     */
+    public int patternTrip(int pattern, int rank) {
+        return patternTrips[patternTripOffsets[pattern] + rank];
+    }
+
+    /**
+     * Patterns calling at {@code stop} are the range
+     * {@code [stopPatternsStart(stop), stopPatternsStart(stop + 1))} of
+     * {@link #stopPattern(int)} and {@link #stopPatternPosition(int)}.
+     */
+    public int stopPatternsStart(int stop) {
+        return stopPatternOffsets[stop];
+    }
+
+    public int stopPattern(int index) {
+        return stopPatterns[index];
+    }
+
+    public int stopPatternPosition(int index) {
+        return stopPatternPositions[index];
+    }
+
+    /**
+     * Finds the first trip of the pattern that departs from the stop at
+     * {@code position} at or after {@code time}.
+     *
+     * @return the trip's rank within the pattern, or -1 if none is left that
+     *         day
+     */
+    public int earliestTrip(int pattern, int position, int time) {
+        int low = patternTripOffsets[pattern];
+        int high = patternTripOffsets[pattern + 1] - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timetable.departure(timetable.tripFirstStopTime(patternTrips[mid]) + position) >= time) {
+                found = mid;
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return found < 0 ? -1 : found - patternTripOffsets[pattern];
+    }
+
+    public long estimatedHeapBytes() {
+        return 4L * (patternStopOffsets.length + patternStops.length + patternTripOffsets.length
+                + patternTrips.length + patternService.length + patternRoute.length + stopPatternOffsets.length
+                + stopPatterns.length + stopPatternPositions.length);
+    }
+
+    /**
+     * Splits trips sharing a stop sequence into runs in which no trip overtakes
+     * another, sorted by departure from the first stop.
+     */
+    private List<List<Integer>> splitOvertaking(List<Integer> trips) {
+        trips.sort((a, b) -> Integer.compare(timetable.departure(timetable.tripFirstStopTime(a)),
+                timetable.departure(timetable.tripFirstStopTime(b))));
+        List<List<Integer>> runs = new ArrayList<>();
+        for (int trip : trips) {
+            List<Integer> target = null;
+            for (List<Integer> run : runs) {
+                if (!overtakes(trip, run.get(run.size() - 1))) {
+                    target = run;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new ArrayList<>();
+                runs.add(target);
+            }
+            target.add(trip);
+        }
+        return runs;
+    }
+
+    private boolean overtakes(int later, int earlier) {
+        int laterFirst = timetable.tripFirstStopTime(later);
+        int earlierFirst = timetable.tripFirstStopTime(earlier);
+        for (int i = 0; i < timetable.tripStopCount(later); i++) {
+            if (timetable.arrival(laterFirst + i) < timetable.arrival(earlierFirst + i)
+                    || timetable.departure(laterFirst + i) < timetable.departure(earlierFirst + i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class PatternKey {
+
+        private final int service;
+        private final int[] stops;
+        private final int hash;
+
+        PatternKey(Timetable timetable, int trip) {
+            service = timetable.tripService(trip);
+            stops = new int[timetable.tripStopCount(trip)];
+            int first = timetable.tripFirstStopTime(trip);
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = timetable.stopTimeStop(first + i);
+            }
+            hash = 31 * service + Arrays.hashCode(stops);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PatternKey)) {
+                return false;
+            }
+            PatternKey other = (PatternKey) obj;
+            return service == other.service && Arrays.equals(stops, other.stops);
+        }
+    }
+}
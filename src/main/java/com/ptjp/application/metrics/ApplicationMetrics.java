@@ -0,0 +1,62 @@
+package com.ptjp.application.metrics;
+
+import com.ptjp.application.data.service.TileService;
+import com.ptjp.application.data.service.TrainPositionBroadcaster;
+import com.ptjp.application.data.service.UsersSearchService;
+import com.ptjp.application.security.AuthenticatedUser;
+import com.ptjp.application.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the counters the caches and pools already keep: signed-in user
+ * cache hits, tile cache hits, the bcrypt pool, live train subscribers, the
+ * Users search index and live Vaadin sessions.
+ *
+ * Not a {@code MeterBinder}: binders are wired into the meter registry, and
+ * these beans reach back to it through the security and web configuration.
+ */
+@Component
+public class ApplicationMetrics {
+
+    @Autowired
+    public ApplicationMetrics(MeterRegistry registry, AuthenticatedUser authenticatedUser, TileService tileService,
+            BoundedPasswordEncoder passwordEncoder, TrainPositionBroadcaster broadcaster,
+            UsersSearchService usersSearchService, SessionFootprintReporter sessions) {
+        FunctionCounter.builder("app.authenticated-user.cache", authenticatedUser, AuthenticatedUser::getCacheHits)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("app.authenticated-user.cache", authenticatedUser, AuthenticatedUser::getCacheMisses)
+                .tag("result", "miss").register(registry);
+
+        FunctionCounter.builder("app.tiles.cache", tileService, tiles -> tiles.getCache().getMemoryHits())
+                .tag("result", "memory-hit").register(registry);
+        FunctionCounter.builder("app.tiles.cache", tileService, tiles -> tiles.getCache().getDiskHits())
+                .tag("result", "disk-hit").register(registry);
+        FunctionCounter.builder("app.tiles.cache", tileService, tiles -> tiles.getCache().getMisses())
+                .tag("result", "miss").register(registry);
+        Gauge.builder("app.tiles.cache.size", tileService, tiles -> tiles.getCache().getMemoryBytes())
+                .tag("tier", "memory").baseUnit("bytes").register(registry);
+        Gauge.builder("app.tiles.cache.size", tileService, tiles -> tiles.getCache().getDiskBytes())
+                .tag("tier", "disk").baseUnit("bytes").register(registry);
+
+        Gauge.builder("app.bcrypt.queued", passwordEncoder, BoundedPasswordEncoder::getQueueDepth)
+                .register(registry);
+        Gauge.builder("app.bcrypt.active", passwordEncoder, BoundedPasswordEncoder::getActiveCount)
+                .register(registry);
+        FunctionCounter.builder("app.bcrypt.hashes", passwordEncoder, BoundedPasswordEncoder::getCompletedCount)
+                .register(registry);
+        FunctionCounter.builder("app.bcrypt.refused", passwordEncoder, BoundedPasswordEncoder::getRejectedCount)
+                .tag("reason", "queue-full").register(registry);
+        FunctionCounter.builder("app.bcrypt.refused", passwordEncoder, BoundedPasswordEncoder::getTimedOutCount)
+                .tag("reason", "timed-out").register(registry);
+
+        Gauge.builder("app.trains.subscribers", broadcaster, TrainPositionBroadcaster::getSubscriberCount)
+                .register(registry);
+        Gauge.builder("app.users.search-index.size", usersSearchService, UsersSearchService::estimatedHeapBytes)
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("vaadin.sessions", sessions, SessionFootprintReporter::getSessionCount).register(registry);
+    }
+}
@@ -0,0 +1,21 @@
+package com.ptjp.application.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Times a Spring bean's public method, or all of a bean's public methods, as
+ * {@link ServiceMetricsAspect#METRIC}.
+ *
+ * Meant for calls that serve a request or a scheduled job. Calls made many
+ * times per request, such as snapshot acquisition, routing queries and
+ * station lookups, are left out: the proxy allocates on every call.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Metered {
+}
@@ -0,0 +1,106 @@
+package com.ptjp.application.metrics;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.server.HandlerHelper;
+import com.vaadin.flow.server.ServiceException;
+import com.vaadin.flow.server.VaadinRequest;
+import com.vaadin.flow.server.VaadinResponse;
+import com.vaadin.flow.server.VaadinServlet;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.shared.ApplicationConstants;
+import com.vaadin.flow.spring.SpringVaadinServletService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Times UIDL requests, the client round-trips of server-side views, as
+ * {@code vaadin.uidl.requests} tagged with the route the UI is showing, and
+ * session lock hold times as {@code vaadin.session.lock.held}.
+ */
+class MeteredVaadinServletService extends SpringVaadinServletService {
+
+    private static final String STARTED = MeteredVaadinServletService.class.getName() + ".started";
+
+    private final transient MeterRegistry registry;
+    private final transient Timer lockHeld;
+    private final ConcurrentHashMap<String, Timer> uidlTimers = new ConcurrentHashMap<>();
+
+    MeteredVaadinServletService(VaadinServlet servlet, DeploymentConfiguration deploymentConfiguration,
+            ApplicationContext context, MeterRegistry registry) {
+        super(servlet, deploymentConfiguration, context);
+        this.registry = registry;
+        this.lockHeld = Timer.builder("vaadin.session.lock.held").description("Time a Vaadin session was locked")
+                .register(registry);
+    }
+
+    @Override
+    public void init() throws ServiceException {
+        super.init();
+        addUIInitListener(event -> {
+            UI ui = event.getUI();
+            ui.addAfterNavigationListener(navigation -> {
+                if (ui.getSession() instanceof MeteredVaadinSession && !navigation.getActiveChain().isEmpty()) {
+                    ((MeteredVaadinSession) ui.getSession()).setRoute(ui.getUIId(),
+                            navigation.getActiveChain().get(0).getClass().getSimpleName());
+                }
+            });
+            ui.addDetachListener(detach -> {
+                if (detach.getSession() instanceof MeteredVaadinSession) {
+                    ((MeteredVaadinSession) detach.getSession()).removeRoute(ui.getUIId());
+                }
+            });
+        });
+    }
+
+    @Override
+    protected VaadinSession createVaadinSession(VaadinRequest request) {
+        return new MeteredVaadinSession(this, lockHeld);
+    }
+
+    @Override
+    public void requestStart(VaadinRequest request, VaadinResponse response) {
+        if (HandlerHelper.isRequestType(request, HandlerHelper.RequestType.UIDL)) {
+            request.setAttribute(STARTED, System.nanoTime());
+        }
+        super.requestStart(request, response);
+    }
+
+    @Override
+    public void requestEnd(VaadinRequest request, VaadinResponse response, VaadinSession session) {
+        try {
+            super.requestEnd(request, response, session);
+        } finally {
+            Object started = request.getAttribute(STARTED);
+            if (started != null) {
+                uidlTimer(route(request, session)).record(System.nanoTime() - (Long) started,
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static String route(VaadinRequest request, VaadinSession session) {
+        String uiId = request.getParameter(ApplicationConstants.UI_ID_PARAMETER);
+        if (!(session instanceof MeteredVaadinSession) || uiId == null) {
+            return "unknown";
+        }
+        try {
+            String route = ((MeteredVaadinSession) session).getRoute(Integer.parseInt(uiId));
+            return route == null ? "unknown" : route;
+        } catch (NumberFormatException e) {
+            return "unknown";
+        }
+    }
+
+    private Timer uidlTimer(String route) {
+        Timer timer = uidlTimers.get(route);
+        if (timer == null) {
+            timer = uidlTimers.computeIfAbsent(route, key -> Timer.builder("vaadin.uidl.requests")
+                    .description("Vaadin client round-trips").tag("route", key).register(registry));
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,65 @@
+package com.ptjp.application.metrics;
+
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.spring.SpringVaadinSession;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A session that times how long its lock is held, from the outermost
+ * {@link #lock()} to the matching {@link #unlock()}, and remembers which
+ * route each of its UIs shows.
+ *
+ * Request handling and {@code UI.access} both lock through these methods; the
+ * brief lock Vaadin takes while looking the session up is not counted.
+ */
+class MeteredVaadinSession extends SpringVaadinSession {
+
+    private final transient Timer lockHeld;
+    private final ConcurrentHashMap<Integer, String> routes = new ConcurrentHashMap<>();
+    private long lockedAt;
+
+    MeteredVaadinSession(VaadinService service, Timer lockHeld) {
+        super(service);
+        this.lockHeld = lockHeld;
+    }
+
+    @Override
+    public void lock() {
+        super.lock();
+        if (holdCount() == 1) {
+            lockedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void unlock() {
+        boolean outermost = holdCount() == 1;
+        long since = lockedAt;
+        super.unlock();
+        if (outermost && lockHeld != null) {
+            lockHeld.record(System.nanoTime() - since, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void setRoute(int uiId, String route) {
+        routes.put(uiId, route);
+    }
+
+    void removeRoute(int uiId) {
+        routes.remove(uiId);
+    }
+
+    /**
+     * @return the route last navigated to in the UI, or {@code null}
+     */
+    String getRoute(int uiId) {
+        return routes.get(uiId);
+    }
+
+    private int holdCount() {
+        return getLockInstance() instanceof ReentrantLock ? ((ReentrantLock) getLockInstance()).getHoldCount() : 0;
+    }
+}
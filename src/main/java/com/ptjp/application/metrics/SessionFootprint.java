@@ -0,0 +1,170 @@
+package com.ptjp.application.metrics;
+
+import java.util.List;
+
+/**
+ * What live Vaadin sessions cost, as measured by
+ * {@link SessionFootprintReporter}: heap retained and bytes serialized per
+ * session, broken down by the views and layouts of their UIs.
+ */
+public class SessionFootprint {
+
+    private final int sessions;
+    private final int measured;
+    private final int truncated;
+    private final Bytes retained;
+    private final Bytes serialized;
+    private final List<Part> parts;
+    private final List<ClassUsage> largestClasses;
+    private final List<String> notSerializable;
+
+    SessionFootprint(int sessions, int measured, int truncated, Bytes retained, Bytes serialized, List<Part> parts,
+            List<ClassUsage> largestClasses, List<String> notSerializable) {
+        this.sessions = sessions;
+        this.measured = measured;
+        this.truncated = truncated;
+        this.retained = retained;
+        this.serialized = serialized;
+        this.parts = parts;
+        this.largestClasses = largestClasses;
+        this.notSerializable = notSerializable;
+    }
+
+    /**
+     * @return the sessions alive
+     */
+    public int getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return the sessions measured, at most the limit asked for
+     */
+    public int getMeasured() {
+        return measured;
+    }
+
+    /**
+     * @return the measured sessions whose walk hit the object limit, and so
+     *         are undercounted
+     */
+    public int getTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the heap retained per session
+     */
+    public Bytes getRetained() {
+        return retained;
+    }
+
+    /**
+     * @return the size of a serialized session, as session replication or
+     *         persistence would write it
+     */
+    public Bytes getSerialized() {
+        return serialized;
+    }
+
+    /**
+     * @return the share of each view, layout, UI and session, largest first
+     */
+    public List<Part> getParts() {
+        return parts;
+    }
+
+    public List<ClassUsage> getLargestClasses() {
+        return largestClasses;
+    }
+
+    /**
+     * @return classes met in sessions that cannot be serialized, and would
+     *         break session replication
+     */
+    public List<String> getNotSerializable() {
+        return notSerializable;
+    }
+
+    /** Average and largest of a size over the measured sessions. */
+    public static class Bytes {
+
+        private final long average;
+        private final long max;
+
+        Bytes(long average, long max) {
+            this.average = average;
+            this.max = max;
+        }
+
+        public long getAverage() {
+            return average;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * One route target or layout, or what a UI or session holds besides its
+     * views. Each object is charged to the innermost part that reaches it, so
+     * a layout's figures leave out the view inside it.
+     */
+    public static class Part {
+
+        private final String name;
+        private final int instances;
+        private final Bytes retained;
+        private final Bytes serialized;
+
+        Part(String name, int instances, Bytes retained, Bytes serialized) {
+            this.name = name;
+            this.instances = instances;
+            this.retained = retained;
+            this.serialized = serialized;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getInstances() {
+            return instances;
+        }
+
+        public Bytes getRetained() {
+            return retained;
+        }
+
+        public Bytes getSerialized() {
+            return serialized;
+        }
+    }
+
+    /** Instances and heap of one class over all measured sessions. */
+    public static class ClassUsage {
+
+        private final String name;
+        private final long instances;
+        private final long bytes;
+
+        ClassUsage(String name, long instances, long bytes) {
+            this.name = name;
+            this.instances = instances;
+            this.bytes = bytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
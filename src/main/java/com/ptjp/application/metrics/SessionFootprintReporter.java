@@ -0,0 +1,274 @@
+package com.ptjp.application.metrics;
+
+import com.ptjp.application.Application;
+import com.vaadin.flow.component.HasElement;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.di.Instantiator;
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.internal.StateNode;
+import com.vaadin.flow.router.Router;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinContext;
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.server.WrappedSession;
+import com.vaadin.flow.server.startup.ApplicationRouteRegistry;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps track of live Vaadin sessions and measures, on demand, the heap each
+ * retains and its serialized size, per route target and layout of each UI.
+ *
+ * Application-wide objects a session refers to are not charged to it:
+ * Spring beans and the data they hold, Vaadin's service, router and
+ * configuration, the servlet container, classes and enum constants. What
+ * remains is what one more session costs.
+ *
+ * Measuring walks every object of a session while holding its lock, so it
+ * is for diagnostics: {@code /actuator/vaadinsessions} on the management
+ * port, over a sample of sessions.
+ */
+@Component
+public class SessionFootprintReporter implements VaadinServiceInitListener {
+
+    private static final int MAX_OBJECTS_PER_SESSION = 2_000_000;
+    private static final int MAX_APPLICATION_OBJECTS = 10_000_000;
+    private static final int LARGEST_CLASSES = 25;
+
+    private static final List<Class<?>> SHARED_TYPES = List.of(Class.class, ClassLoader.class, Thread.class,
+            Module.class, Enum.class, VaadinService.class, VaadinContext.class, DeploymentConfiguration.class,
+            Router.class, ApplicationRouteRegistry.class, Instantiator.class, WrappedSession.class, HttpSession.class,
+            ServletContext.class, MeterRegistry.class, Meter.class, Logger.class);
+    private static final List<String> SHARED_PACKAGES = List.of("org.springframework.", "org.apache.catalina.",
+            "org.apache.coyote.", "org.apache.tomcat.", "org.atmosphere.", "io.micrometer.");
+
+    private final ConfigurableListableBeanFactory beanFactory;
+    private final Set<VaadinSession> sessions = ConcurrentHashMap.newKeySet();
+    private final Map<Class<?>, Boolean> sharedTypes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SessionFootprintReporter(ConfigurableListableBeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addSessionInitListener(init -> sessions.add(init.getSession()));
+        event.getSource().addSessionDestroyListener(destroy -> sessions.remove(destroy.getSession()));
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Measures up to {@code limit} of the live sessions, one at a time.
+     */
+    public SessionFootprint measure(int limit) {
+        Predicate<Object> shared = shared();
+        List<VaadinSession> sample = new ArrayList<>(sessions);
+        Collections.shuffle(sample);
+        sample = sample.subList(0, Math.min(limit, sample.size()));
+
+        List<long[]> totals = new ArrayList<>();
+        Map<String, List<long[]>> parts = new LinkedHashMap<>();
+        Map<Class<?>, long[]> histogram = new HashMap<>();
+        Set<String> notSerializable = new TreeSet<>();
+        int truncated = 0;
+        for (VaadinSession session : sample) {
+            ObjectGraphSizer sizer = new ObjectGraphSizer(shared, MAX_OBJECTS_PER_SESSION);
+            long[] total = new long[2];
+            session.accessSynchronously(() -> {
+                measureSession(session, sizer, shared, parts, notSerializable);
+                total[0] = sizer.getHistogram().values().stream().mapToLong(counts -> counts[1]).sum();
+                total[1] = serializedSize(session, shared, notSerializable);
+            });
+            totals.add(total);
+            if (sizer.isTruncated()) {
+                truncated++;
+            }
+            sizer.getHistogram().forEach((type, counts) -> {
+                long[] merged = histogram.computeIfAbsent(type, key -> new long[2]);
+                merged[0] += counts[0];
+                merged[1] += counts[1];
+            });
+        }
+
+        List<SessionFootprint.Part> partList = parts.entrySet().stream()
+                .map(part -> new SessionFootprint.Part(part.getKey(), part.getValue().size(),
+                        summarize(part.getValue(), 0), summarize(part.getValue(), 1)))
+                .sorted(Comparator.comparingLong((SessionFootprint.Part part) -> part.getRetained().getAverage())
+                        .reversed())
+                .collect(Collectors.toList());
+        List<SessionFootprint.ClassUsage> largest = histogram.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Class<?>, long[]> entry) -> entry.getValue()[1])
+                        .reversed())
+                .limit(LARGEST_CLASSES)
+                .map(entry -> new SessionFootprint.ClassUsage(entry.getKey().getName(), entry.getValue()[0],
+                        entry.getValue()[1]))
+                .collect(Collectors.toList());
+        return new SessionFootprint(sessions.size(), sample.size(), truncated, summarize(totals, 0),
+                summarize(totals, 1), partList, largest, new ArrayList<>(notSerializable));
+    }
+
+    /**
+     * Charges each UI's route target first, then its layouts from the inside
+     * out, then the UI and finally the session itself.
+     */
+    private void measureSession(VaadinSession session, ObjectGraphSizer sizer, Predicate<Object> shared,
+            Map<String, List<long[]>> parts, Set<String> notSerializable) {
+        for (UI ui : session.getUIs()) {
+            for (HasElement target : ui.getInternals().getActiveRouterTargetsChain()) {
+                Set<Object> boundary = identitySet(session, ui, ui.getInternals().getStateTree(),
+                        target.getElement().getNode().getParent());
+                measurePart(target.getClass().getSimpleName(), target, boundary, sizer, shared, parts,
+                        notSerializable);
+            }
+            measurePart("UI", ui, identitySet(session), sizer, shared, parts, notSerializable);
+        }
+        measurePart("VaadinSession", session, identitySet(), sizer, shared, parts, notSerializable);
+    }
+
+    private void measurePart(String name, Object root, Set<Object> boundary, ObjectGraphSizer sizer,
+            Predicate<Object> shared, Map<String, List<long[]>> parts, Set<String> notSerializable) {
+        long retained = sizer.measure(root, boundary);
+        int part = sizer.ownerOf(root);
+        long serialized = serializedSize(root, object -> boundary.contains(object) || shared.test(object)
+                || object != root && sizer.ownerOf(object) >= 0 && sizer.ownerOf(object) < part, notSerializable);
+        parts.computeIfAbsent(name, key -> new ArrayList<>()).add(new long[] { retained, serialized });
+    }
+
+    /**
+     * @return the bytes {@code root} serializes to, with the objects
+     *         {@code cut} matches written as null, or -1 if it cannot be
+     *         serialized
+     */
+    private static long serializedSize(Object root, Predicate<Object> cut, Set<String> notSerializable) {
+        CountingOutputStream bytes = new CountingOutputStream();
+        try (ObjectOutputStream out = new CuttingObjectOutputStream(bytes, cut, notSerializable)) {
+            out.writeObject(root);
+        } catch (IOException | RuntimeException e) {
+            notSerializable.add(e.getClass().getSimpleName() + " serializing " + root.getClass().getName() + ": "
+                    + e.getMessage());
+            return -1;
+        }
+        return bytes.count;
+    }
+
+    /**
+     * Shared types, plus everything reachable from this application's
+     * singletons, and the beans behind their proxies, short of a session, UI
+     * or component: the timetable a view's listener refers to is the
+     * application's, not the view's.
+     */
+    private Predicate<Object> shared() {
+        Predicate<Object> sharedType = object -> sharedTypes.computeIfAbsent(object.getClass(), type -> {
+            String name = type.getName();
+            return SHARED_TYPES.stream().anyMatch(shared -> shared.isAssignableFrom(type))
+                    || SHARED_PACKAGES.stream().anyMatch(name::startsWith);
+        });
+        ObjectGraphSizer application = new ObjectGraphSizer(sharedType.or(object -> object instanceof VaadinSession
+                || object instanceof UI || object instanceof com.vaadin.flow.component.Component
+                || object instanceof StateNode), MAX_APPLICATION_OBJECTS);
+        String applicationPackage = Application.class.getPackageName() + ".";
+        for (String name : beanFactory.getSingletonNames()) {
+            Object singleton = beanFactory.getSingleton(name);
+            Object target = singleton == null ? null : AopProxyUtils.getSingletonTarget(singleton);
+            for (Object bean : new Object[] { singleton, target }) {
+                if (bean != null && bean.getClass().getName().startsWith(applicationPackage)) {
+                    application.measure(bean, Collections.emptySet());
+                }
+            }
+        }
+        return object -> sharedType.test(object) || application.ownerOf(object) >= 0;
+    }
+
+    private static SessionFootprint.Bytes summarize(List<long[]> measurements, int index) {
+        long sum = 0;
+        long max = 0;
+        for (long[] measurement : measurements) {
+            sum += measurement[index];
+            max = Math.max(max, measurement[index]);
+        }
+        return new SessionFootprint.Bytes(measurements.isEmpty() ? 0 : sum / measurements.size(), max);
+    }
+
+    private static Set<Object> identitySet(Object... objects) {
+        Set<Object> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object object : objects) {
+            if (object != null) {
+                set.add(object);
+            }
+        }
+        return set;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /** Writes what {@code cut} matches, and anything not serializable, as null. */
+    private static final class CuttingObjectOutputStream extends ObjectOutputStream {
+
+        private final Predicate<Object> cut;
+        private final Set<String> notSerializable;
+
+        CuttingObjectOutputStream(OutputStream out, Predicate<Object> cut, Set<String> notSerializable)
+                throws IOException {
+            super(out);
+            this.cut = cut;
+            this.notSerializable = notSerializable;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object object) {
+            if (cut.test(object)) {
+                return null;
+            }
+            if (!(object instanceof Serializable)) {
+                // lambda classes differ by a generated suffix
+                notSerializable.add(object.getClass().getName().replaceAll("\\$\\$Lambda.*", "\\$\\$Lambda"));
+                return null;
+            }
+            return object;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ptjp.application.metrics;
+
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.server.ServiceException;
+import com.vaadin.flow.server.VaadinServletService;
+import com.vaadin.flow.spring.RootMappedCondition;
+import com.vaadin.flow.spring.SpringServlet;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Swaps the Vaadin servlet registered by the Vaadin Spring Boot starter for
+ * one whose service and sessions record metrics (see
+ * {@link MeteredVaadinServletService}). The registration itself, with its
+ * mappings and init parameters, is kept as the starter made it.
+ */
+@Configuration
+public class VaadinMetricsConfiguration {
+
+    @Bean
+    public static BeanPostProcessor meteredVaadinServlet(ApplicationContext context,
+            ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof ServletRegistrationBean
+                        && ((ServletRegistrationBean<?>) bean).getServlet().getClass() == SpringServlet.class) {
+                    boolean rootMapping = RootMappedCondition
+                            .isRootMapping(RootMappedCondition.getUrlMapping(context.getEnvironment()));
+                    @SuppressWarnings("unchecked")
+                    ServletRegistrationBean<SpringServlet> registration = (ServletRegistrationBean<SpringServlet>) bean;
+                    registration.setServlet(new MeteredSpringServlet(context, rootMapping, registry));
+                }
+                return bean;
+            }
+        };
+    }
+
+    static class MeteredSpringServlet extends SpringServlet {
+
+        private final transient ApplicationContext context;
+        private final transient ObjectProvider<MeterRegistry> registry;
+
+        MeteredSpringServlet(ApplicationContext context, boolean rootMapping,
+                ObjectProvider<MeterRegistry> registry) {
+            super(context, rootMapping);
+            this.context = context;
+            this.registry = registry;
+        }
+
+        @Override
+        protected VaadinServletService createServletService(DeploymentConfiguration deploymentConfiguration)
+                throws ServiceException {
+            MeteredVaadinServletService service = new MeteredVaadinServletService(this, deploymentConfiguration,
+                    context, registry.getObject());
+            service.init();
+            return service;
+        }
+    }
+}
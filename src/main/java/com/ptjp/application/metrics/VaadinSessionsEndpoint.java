@@ -0,0 +1,30 @@
+package com.ptjp.application.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code /actuator/vaadinsessions?limit=...}: the memory footprint of a
+ * sample of live Vaadin sessions, see {@link SessionFootprintReporter}.
+ */
+@Component
+@Endpoint(id = "vaadinsessions")
+public class VaadinSessionsEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final SessionFootprintReporter reporter;
+
+    @Autowired
+    public VaadinSessionsEndpoint(SessionFootprintReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    @ReadOperation
+    public SessionFootprint footprint(@Nullable Integer limit) {
+        return reporter.measure(limit == null ? DEFAULT_LIMIT : limit);
+    }
+}
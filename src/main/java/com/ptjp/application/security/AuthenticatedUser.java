@@ -1,11 +1,20 @@
 package com.ptjp.application.security;
 
 import com.ptjp.application.data.entity.User;
+import com.ptjp.application.data.service.UserChangedEvent;
 import com.ptjp.application.data.service.UserRepository;
+import com.ptjp.application.metrics.Metered;
 import com.vaadin.flow.component.UI;
 import com.vaadin.flow.server.VaadinServletRequest;
+import com.vaadin.flow.server.VaadinSession;
+import java.io.Serializable;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
@@ -13,11 +22,29 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.logout.SecurityContextLogoutHandler;
 import org.springframework.stereotype.Component;
 
+/**
+ * The signed-in user of the current request.
+ *
+ * The user is looked up once per Vaadin session and kept in the session, as
+ * layouts and views ask for it on every navigation. Only the
+ * {@link SignedInUser} details are kept, so the session stays serializable. A
+ * cached copy is reloaded when the session signs in as someone else, when
+ * {@link com.ptjp.application.data.service.UserService} reports that the user
+ * has changed since it was loaded, or when the session was restored from
+ * storage.
+ */
 @Component
 public class AuthenticatedUser {
 
     private final UserRepository userRepository;
 
+    /** Ticks on every load and every change, so a load can tell whether a change came after it. */
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentHashMap<UUID, Long> changedAt = new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
     @Autowired
     public AuthenticatedUser(UserRepository userRepository) {
         this.userRepository = userRepository;
@@ -29,14 +56,77 @@ public class AuthenticatedUser {
                 .filter(authentication -> !(authentication instanceof AnonymousAuthenticationToken));
     }
 
-    public Optional<User> get() {
-        return getAuthentication().map(authentication -> userRepository.findByUsername(authentication.getName()));
+    @Metered
+    public Optional<SignedInUser> get() {
+        return getAuthentication().map(authentication -> find(authentication.getName()));
     }
 
     public void logout() {
+        VaadinSession.getCurrent().setAttribute(CachedUser.class, null);
         UI.getCurrent().getPage().setLocation(SecurityConfiguration.LOGOUT_URL);
         SecurityContextLogoutHandler logoutHandler = new SecurityContextLogoutHandler();
         logoutHandler.logout(VaadinServletRequest.getCurrent().getHttpServletRequest(), null, null);
     }
 
+    @EventListener
+    public void userChanged(UserChangedEvent event) {
+        changedAt.put(event.getUserId(), clock.incrementAndGet());
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return the share of lookups answered from the session, between 0 and 1
+     */
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    private SignedInUser find(String username) {
+        VaadinSession session = VaadinSession.getCurrent();
+        if (session == null) {
+            return load(username);
+        }
+        CachedUser cached = session.getAttribute(CachedUser.class);
+        if (cached != null && cached.username.equals(username)
+                && changedAt.getOrDefault(cached.user.getId(), 0L) < cached.loadedAt) {
+            cacheHits.increment();
+            return cached.user;
+        }
+        cacheMisses.increment();
+        long loadedAt = clock.incrementAndGet();
+        SignedInUser user = load(username);
+        session.setAttribute(CachedUser.class, user == null ? null : new CachedUser(username, user, loadedAt));
+        return user;
+    }
+
+    private SignedInUser load(String username) {
+        User user = userRepository.findByUsername(username);
+        return user == null ? null : new SignedInUser(user);
+    }
+
+    private static final class CachedUser implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String username;
+        private final SignedInUser user;
+        /** Zero once restored from storage, as the clock it was read from is gone; forces a reload. */
+        private final transient long loadedAt;
+
+        CachedUser(String username, SignedInUser user, long loadedAt) {
+            this.username = username;
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+
 }
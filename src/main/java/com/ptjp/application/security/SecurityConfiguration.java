@@ -2,13 +2,14 @@ package com.ptjp.application.security;
 
 import com.ptjp.application.views.login.LoginView;
 import com.vaadin.flow.spring.security.VaadinWebSecurityConfigurerAdapter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
 @EnableWebSecurity
 @Configuration
@@ -16,9 +17,21 @@ public class SecurityConfiguration extends VaadinWebSecurityConfigurerAdapter {
 
     public static final String LOGOUT_URL = "/";
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    /**
+     * bcrypt, run on its own bounded pool so a burst of sign-ins cannot take
+     * every request thread. Each step of {@code security.bcrypt.strength}
+     * doubles the cost of a hash.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BoundedPasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength,
+            @Value("${security.bcrypt.threads:0}") int threads,
+            @Value("${security.bcrypt.queue-capacity:64}") int queueCapacity,
+            @Value("${security.bcrypt.max-wait-ms:3000}") long maxWaitMillis) {
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), threads, queueCapacity,
+                maxWaitMillis);
     }
 
     @Override
@@ -31,6 +44,8 @@ public class SecurityConfiguration extends VaadinWebSecurityConfigurerAdapter {
     @Override
     public void configure(WebSecurity web) throws Exception {
         super.configure(web);
-        web.ignoring().antMatchers("/images/*.png");
+        web.ignoring().antMatchers("/images/*.png", "/tiles/**", "/offline/**");
+        // metrics are served on the loopback-only management port, see application.properties
+        web.ignoring().requestMatchers(EndpointRequest.toAnyEndpoint());
     }
 }
@@ -0,0 +1,43 @@
+package com.ptjp.application.security;
+
+import com.ptjp.application.data.entity.User;
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * The details of the signed-in user that the UI shows, kept in the Vaadin
+ * session in place of the {@link User} entity, so the session holds neither
+ * the password hash nor anything it cannot serialize.
+ */
+public final class SignedInUser implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UUID id;
+    private final String username;
+    private final String name;
+    private final String profilePictureUrl;
+
+    SignedInUser(User user) {
+        this.id = user.getId();
+        this.username = user.getUsername();
+        this.name = user.getName();
+        this.profilePictureUrl = user.getProfilePictureUrl();
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getProfilePictureUrl() {
+        return profilePictureUrl;
+    }
+}
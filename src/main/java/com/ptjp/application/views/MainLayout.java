@@ -1,13 +1,14 @@
 package com.ptjp.application.views;
 
-import com.ptjp.application.data.entity.User;
 import com.ptjp.application.security.AuthenticatedUser;
+import com.ptjp.application.security.SignedInUser;
 import com.ptjp.application.views.home.HomeView;
 import com.ptjp.application.views.info.InfoView;
 import com.ptjp.application.views.map.MapView;
 import com.ptjp.application.views.me.MeView;
 import com.ptjp.application.views.users.UsersView;
 import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.Text;
 import com.vaadin.flow.component.applayout.AppLayout;
 import com.vaadin.flow.component.avatar.Avatar;
 import com.vaadin.flow.component.contextmenu.ContextMenu;
@@ -22,67 +23,74 @@ import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.html.UnorderedList;
 import com.vaadin.flow.router.RouterLink;
 import com.vaadin.flow.server.auth.AccessAnnotationChecker;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * The main view is a top-level placeholder for other views.
+ *
+ * One instance lives in every UI, so it keeps nothing it does not render: the
+ * menu entries are shared by all UIs, and the header is built from the
+ * signed-in user's name and picture alone.
  */
 public class MainLayout extends AppLayout {
 
     /**
-     * A simple navigation item component, based on ListItem element.
+     * A menu entry: immutable, and shared by every UI.
      */
-    public static class MenuItemInfo extends ListItem {
+    public static final class MenuItemInfo {
 
+        private final String title;
+        private final String iconClass;
         private final Class<? extends Component> view;
 
-        public MenuItemInfo(String menuTitle, String iconClass, Class<? extends Component> view) {
+        public MenuItemInfo(String title, String iconClass, Class<? extends Component> view) {
+            this.title = title;
+            this.iconClass = iconClass;
             this.view = view;
-            RouterLink link = new RouterLink();
-            // Use Lumo classnames for various styling
-            link.addClassNames("flex", "h-m", "items-center", "px-s", "relative", "text-secondary");
-            link.setRoute(view);
+        }
 
-            Span text = new Span(menuTitle);
-            // Use Lumo classnames for various styling
-            text.addClassNames("font-medium", "text-s", "whitespace-nowrap");
+        public String getTitle() {
+            return title;
+        }
 
-            link.add(new LineAwesomeIcon(iconClass), text);
-            add(link);
+        public String getIconClass() {
+            return iconClass;
         }
 
-        public Class<?> getView() {
+        public Class<? extends Component> getView() {
             return view;
         }
+    }
 
-        /**
-         * Simple wrapper to create icons using LineAwesome iconset. See
-         * https://icons8.com/line-awesome
-         */
-        @NpmPackage(value = "line-awesome", version = "1.3.0")
-        public static class LineAwesomeIcon extends Span {
-            public LineAwesomeIcon(String lineawesomeClassnames) {
-                // Use Lumo classnames for suitable font size and margin
-                addClassNames("me-s", "text-l");
-                if (!lineawesomeClassnames.isEmpty()) {
-                    addClassNames(lineawesomeClassnames);
-                }
+    /**
+     * Simple wrapper to create icons using LineAwesome iconset. See
+     * https://icons8.com/line-awesome
+     */
+    @NpmPackage(value = "line-awesome", version = "1.3.0")
+    public static class LineAwesomeIcon extends Span {
+        public LineAwesomeIcon(String lineawesomeClassnames) {
+            // Use Lumo classnames for suitable font size and margin
+            addClassNames("me-s", "text-l");
+            if (!lineawesomeClassnames.isEmpty()) {
+                addClassNames(lineawesomeClassnames);
             }
         }
-
     }
 
-    private AuthenticatedUser authenticatedUser;
-    private AccessAnnotationChecker accessChecker;
+    private static final List<MenuItemInfo> MENU_ITEMS = List.of( //
+            new MenuItemInfo("Home", "la la-train", HomeView.class), //
+            new MenuItemInfo("Map", "la la-map", MapView.class), //
+            new MenuItemInfo("Users", "la la-columns", UsersView.class), //
+            new MenuItemInfo("About", "la la-info", InfoView.class), //
+            new MenuItemInfo("Me", "la la-user", MeView.class));
 
     public MainLayout(AuthenticatedUser authenticatedUser, AccessAnnotationChecker accessChecker) {
-        this.authenticatedUser = authenticatedUser;
-        this.accessChecker = accessChecker;
-
-        addToNavbar(createHeaderContent());
+        addToNavbar(createHeaderContent(authenticatedUser, accessChecker));
     }
 
-    private Component createHeaderContent() {
+    private static Component createHeaderContent(AuthenticatedUser authenticatedUser,
+            AccessAnnotationChecker accessChecker) {
         Header header = new Header();
         header.addClassNames("bg-base", "border-b", "border-contrast-10", "box-border", "flex", "flex-col", "w-full");
 
@@ -93,9 +101,9 @@ public class MainLayout extends AppLayout {
         appName.addClassNames("my-0", "me-auto", "text-l");
         layout.add(appName);
 
-        Optional<User> maybeUser = authenticatedUser.get();
+        Optional<SignedInUser> maybeUser = authenticatedUser.get();
         if (maybeUser.isPresent()) {
-            User user = maybeUser.get();
+            SignedInUser user = maybeUser.get();
 
             Avatar avatar = new Avatar(user.getName(), user.getProfilePictureUrl());
             avatar.addClassNames("me-xs");
@@ -125,31 +133,24 @@ public class MainLayout extends AppLayout {
         list.addClassNames("flex", "list-none", "m-0", "p-0");
         nav.add(list);
 
-        for (MenuItemInfo menuItem : createMenuItems()) {
+        for (MenuItemInfo menuItem : MENU_ITEMS) {
             if (accessChecker.hasAccess(menuItem.getView())) {
-                list.add(menuItem);
+                list.add(createMenuItem(menuItem));
             }
-
         }
 
         header.add(layout, nav);
         return header;
     }
 
-    private MenuItemInfo[] createMenuItems() {
-        return new MenuItemInfo[]{ //
-                new MenuItemInfo("Home", "la la-train", HomeView.class), //
-
-                new MenuItemInfo("Map", "la la-map", MapView.class), //
-
-                new MenuItemInfo("Users", "la la-columns", UsersView.class), //
-
-                new MenuItemInfo("About", "la la-info", InfoView.class), //
-
-                new MenuItemInfo("Me", "la la-user", MeView.class)
-
-        };
+    private static ListItem createMenuItem(MenuItemInfo menuItem) {
+        RouterLink link = new RouterLink();
+        // Use Lumo classnames for various styling
+        link.addClassNames("flex", "h-m", "items-center", "px-s", "relative", "text-secondary", "font-medium",
+                "text-s", "whitespace-nowrap");
+        link.setRoute(menuItem.getView());
+        link.add(new LineAwesomeIcon(menuItem.getIconClass()), new Text(menuItem.getTitle()));
+        return new ListItem(link);
     }
 
 }
-
@@ -1,35 +1,132 @@
 package com.ptjp.application.views.home;
 
+import com.ptjp.application.data.search.StationNameIndex;
+import com.ptjp.application.data.service.JourneyPlannerService;
+import com.ptjp.application.data.service.StationService;
+import com.ptjp.application.data.service.TimetableService;
+import com.ptjp.application.data.timetable.Journey;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
 import com.ptjp.application.views.MainLayout;
+import com.ptjp.application.views.map.MapView;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.button.ButtonVariant;
+import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.datetimepicker.DateTimePicker;
+import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.H2;
-import com.vaadin.flow.component.html.Image;
 import com.vaadin.flow.component.html.Paragraph;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.router.RouteAlias;
+import com.vaadin.flow.router.RouterLink;
 import com.vaadin.flow.server.auth.AnonymousAllowed;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.springframework.beans.factory.annotation.Autowired;
 
+/**
+ * Trip entry: pick two stations by typing part of their names, and get the
+ * earliest journey between them.
+ *
+ * Suggestions come from {@link StationService#suggest} on every keystroke,
+ * so they never touch the database. Stations are held by GTFS stop id, which
+ * stays meaningful when a new timetable is loaded while the page is open.
+ */
 @PageTitle("Home")
 @Route(value = "home", layout = MainLayout.class)
 @RouteAlias(value = "", layout = MainLayout.class)
 @AnonymousAllowed
 public class HomeView extends VerticalLayout {
 
-    public HomeView() {
-        setSpacing(false);
+    private final ComboBox<String> from = new ComboBox<>("From");
+    private final ComboBox<String> to = new ComboBox<>("To");
+    private final DateTimePicker departure = new DateTimePicker("Depart");
+    private final Button plan = new Button("Plan journey");
+    private final Div itinerary = new Div();
 
-        Image img = new Image("images/empty-plant.png", "placeholder plant");
-        img.setWidth("200px");
-        add(img);
+    private final TimetableService timetableService;
+    private final JourneyPlannerService journeyPlannerService;
+    private final StationService stationService;
 
-        add(new H2("This place intentionally left empty"));
-        add(new Paragraph("It’s a place where you can grow your own UI 🤗"));
+    @Autowired
+    public HomeView(TimetableService timetableService, JourneyPlannerService journeyPlannerService,
+            StationService stationService) {
+        this.timetableService = timetableService;
+        this.journeyPlannerService = journeyPlannerService;
+        this.stationService = stationService;
+        addClassNames("home-view");
+        setMaxWidth("32em");
 
-        setSizeFull();
-        setJustifyContentMode(JustifyContentMode.CENTER);
-        setDefaultHorizontalComponentAlignment(Alignment.CENTER);
-        getStyle().set("text-align", "center");
+        stationField(from);
+        stationField(to);
+        departure.setValue(LocalDateTime.now().withSecond(0).withNano(0));
+        plan.addThemeVariants(ButtonVariant.LUMO_PRIMARY);
+        plan.addClickListener(e -> planJourney());
+        itinerary.addClassNames("w-full");
+
+        add(new H2("Where to?"), from, to, departure, plan, itinerary,
+                new RouterLink("Live trains on the map", MapView.class));
+    }
+
+    private void stationField(ComboBox<String> field) {
+        field.setWidthFull();
+        field.setPlaceholder("Station name");
+        field.setItems(query -> {
+            try (TimetableSnapshot snapshot = timetableService.acquire()) {
+                Timetable timetable = snapshot.timetable();
+                int[] stations = stationService.suggest(snapshot, query.getFilter().orElse(""),
+                        query.getOffset() + query.getLimit());
+                List<String> stopIds = IntStream.of(stations).skip(query.getOffset()).limit(query.getLimit())
+                        .mapToObj(timetable::stopId).collect(Collectors.toList());
+                return stopIds.stream();
+            }
+        });
+        field.setPageSize(StationNameIndex.MAX_SUGGESTIONS);
+        field.setItemLabelGenerator(this::stationName);
+    }
+
+    /**
+     * @return the station's name, or its id if the timetable no longer has it
+     */
+    private String stationName(String stopId) {
+        Timetable timetable = timetableService.getTimetable();
+        int stop = timetable.stopIndex(stopId);
+        return stop < 0 ? stopId : timetable.stopName(stop);
+    }
+
+    private void planJourney() {
+        itinerary.removeAll();
+        if (from.isEmpty() || to.isEmpty() || departure.isEmpty()) {
+            Notification.show("Choose where to travel from and to, and when.");
+            return;
+        }
+        Optional<Journey> journey = journeyPlannerService.plan(from.getValue(), to.getValue(), departure.getValue());
+        if (journey.isEmpty()) {
+            Notification.show("No train gets there from here later that day.");
+            return;
+        }
+        Timetable timetable = journey.get().getTimetable();
+        for (Journey.Leg leg : journey.get().getLegs()) {
+            Paragraph step = new Paragraph();
+            step.addClassNames("my-s");
+            Span route = new Span(leg.getRouteName());
+            route.addClassNames("block", "font-medium");
+            step.add(route, new Span(String.format("%s %s → %s %s", time(leg.getDeparture()),
+                    timetable.stopName(leg.getFromStop()), time(leg.getArrival()), timetable.stopName(leg.getToStop()))));
+            itinerary.add(step);
+        }
+    }
+
+    private static String time(int secondsOfServiceDay) {
+        return LocalTime.ofSecondOfDay(secondsOfServiceDay % 86400).toString();
     }
 
 }
@@ -1,33 +1,776 @@
 package com.ptjp.application.views.map;
 
+import com.ptjp.application.data.archive.PositionSample;
+import com.ptjp.application.data.live.StopTimeEta;
+import com.ptjp.application.data.live.TrainPosition;
+import com.ptjp.application.data.service.EtaService;
+import com.ptjp.application.data.service.IsochroneService;
+import com.ptjp.application.data.service.JourneyPlannerService;
+import com.ptjp.application.data.service.NetworkLineService;
+import com.ptjp.application.data.service.PositionArchiveService;
+import com.ptjp.application.data.service.StationService;
+import com.ptjp.application.data.service.TimetableService;
+import com.ptjp.application.data.service.TrainPositionBroadcaster;
+import com.ptjp.application.data.service.TravelTimeMatrixService;
+import com.ptjp.application.data.tiles.NetworkLines;
+import com.ptjp.application.data.tiles.NetworkTileRenderer;
+import com.ptjp.application.data.timetable.Isochrone;
+import com.ptjp.application.data.timetable.Journey;
+import com.ptjp.application.data.timetable.RaptorRouter;
+import com.ptjp.application.data.timetable.Timetable;
+import com.ptjp.application.data.timetable.TimetableSnapshot;
 import com.ptjp.application.views.MainLayout;
-import com.vaadin.flow.component.html.H2;
-import com.vaadin.flow.component.html.Image;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.dependency.JsModule;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.button.ButtonVariant;
+import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.datetimepicker.DateTimePicker;
+import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.Paragraph;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.map.Map;
+import com.vaadin.flow.component.map.configuration.Coordinate;
+import com.vaadin.flow.component.map.configuration.Extent;
+import com.vaadin.flow.component.map.configuration.Feature;
+import com.vaadin.flow.component.map.configuration.feature.MarkerFeature;
+import com.vaadin.flow.component.map.configuration.layer.VectorLayer;
+import com.vaadin.flow.component.map.configuration.source.VectorSource;
+import com.vaadin.flow.component.map.events.MapClickEvent;
+import com.vaadin.flow.component.map.configuration.style.Icon;
+import com.vaadin.flow.component.map.events.MapViewMoveEndEvent;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.server.auth.AnonymousAllowed;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.springframework.beans.factory.annotation.Autowired;
 
 @PageTitle("Map")
 @Route(value = "map", layout = MainLayout.class)
 @AnonymousAllowed
-public class MapView extends VerticalLayout {
+@JsModule("./rail-lines.js")
+public class MapView extends HorizontalLayout {
 
-    public MapView() {
-        setSpacing(false);
+    private static final Coordinate CAPE_TOWN = Coordinate.fromLonLat(18.4241, -33.9249);
+
+    /** Beyond this many stations in view, station markers are hidden until the user zooms in. */
+    private static final int MAX_STATION_MARKERS = 300;
+
+    private static final int DEPARTURES_SHOWN = 8;
+
+    /** A replayed train not sampled for this long has stopped running. */
+    private static final long REPLAY_STALE_MILLIS = 30_000;
+
+    /** Reach is searched over departures in this long after the chosen time. */
+    private static final Duration REACH_WINDOW = Duration.ofHours(1);
 
-        Image img = new Image("images/empty-plant.png", "placeholder plant");
-        img.setWidth("200px");
-        add(img);
+    /** Reached stations are shaded by the quarter of the travel time they fall in, nearest first. */
+    private static final String[] REACH_COLOURS = { "%231a9850", "%2391cf60", "%23fdae61", "%23d73027" };
 
-        add(new H2("This place intentionally left empty"));
-        add(new Paragraph("It’s a place where you can grow your own UI 🤗"));
+    private static final String TRAIN_SVG = "data:image/svg+xml;utf8,<svg xmlns='http://www.w3.org/2000/svg'"
+            + " width='14' height='14'><circle cx='7' cy='7' r='5.5' fill='%23e8453c' stroke='white' stroke-width='2'/>"
+            + "</svg>";
 
+    private final Map map = new Map();
+    private final VectorLayer lineLayer = new VectorLayer();
+    /** Stations by GTFS stop id, which outlives the stop indexes of one timetable. */
+    private final ComboBox<String> from = new ComboBox<>("From");
+    private final ComboBox<String> to = new ComboBox<>("To");
+    private final DateTimePicker departure = new DateTimePicker("Depart");
+    private final Button plan = new Button("Plan journey");
+    private final Span fastest = new Span();
+    private final Div alternatives = new Div();
+    private final Div itinerary = new Div();
+    private final Div departures = new Div();
+    /** The status shown per departure listed, by {@link #departureKey}. */
+    private final HashMap<Long, Span> departureStatus = new HashMap<>();
+    private final DateTimePicker replayFrom = new DateTimePicker("Replay from");
+    private final DateTimePicker replayTo = new DateTimePicker("Replay to");
+    private final ComboBox<Integer> replaySpeed = new ComboBox<>("Replay speed");
+    private final Button replayButton = new Button("Replay");
+    private final Span replayClock = new Span();
+    private final ComboBox<Integer> reachMinutes = new ComboBox<>("Reach within");
+    private final Button reachButton = new Button("Show reach");
+    private final Span reachSummary = new Span();
+    private final HashMap<Integer, Long> replayLastSeen = new HashMap<>();
+    private final List<Feature> journeyFeatures = new ArrayList<>();
+    private final HashMap<String, MarkerFeature> stationMarkers = new HashMap<>();
+    private final HashMap<Integer, MarkerFeature> trainMarkers = new HashMap<>();
+    private final HashMap<Integer, MarkerFeature> reachMarkers = new HashMap<>();
+    /** Lines the browser has been sent, as band:line, and those it shows. */
+    private final Set<String> linesSent = new HashSet<>();
+    private final Set<String> linesShown = new HashSet<>();
+    private final Icon trainIcon = trainIcon();
+    private final Icon[] reachIcons = reachIcons();
+
+    private final TimetableService timetableService;
+    private final JourneyPlannerService journeyPlannerService;
+    private final StationService stationService;
+    private final TrainPositionBroadcaster trainPositionBroadcaster;
+    private final EtaService etaService;
+    private final PositionArchiveService positionArchiveService;
+    private final IsochroneService isochroneService;
+    private final TravelTimeMatrixService travelTimeMatrixService;
+    private final NetworkLineService networkLineService;
+    private TrainPositionBroadcaster.Subscription trains;
+    private EtaService.Subscription departureUpdates;
+    private PositionArchiveService.Replay replay;
+    private Isochrone reach;
+    /** The timetable the station choices and departures were listed from. */
+    private Timetable stations;
+    private Timetable departuresFrom;
+    private NetworkLines lines;
+    private Extent viewport;
+
+    @Autowired
+    public MapView(TimetableService timetableService, JourneyPlannerService journeyPlannerService,
+            StationService stationService, TrainPositionBroadcaster trainPositionBroadcaster,
+            EtaService etaService, PositionArchiveService positionArchiveService,
+            IsochroneService isochroneService, TravelTimeMatrixService travelTimeMatrixService,
+            NetworkLineService networkLineService) {
+        this.timetableService = timetableService;
+        this.journeyPlannerService = journeyPlannerService;
+        this.stationService = stationService;
+        this.trainPositionBroadcaster = trainPositionBroadcaster;
+        this.etaService = etaService;
+        this.positionArchiveService = positionArchiveService;
+        this.isochroneService = isochroneService;
+        this.travelTimeMatrixService = travelTimeMatrixService;
+        this.networkLineService = networkLineService;
+        addClassNames("map-view");
         setSizeFull();
-        setJustifyContentMode(JustifyContentMode.CENTER);
-        setDefaultHorizontalComponentAlignment(Alignment.CENTER);
-        getStyle().set("text-align", "center");
+        setSpacing(false);
+
+        refreshStations();
+        from.addValueChangeListener(e -> {
+            showDepartures();
+            showFastest();
+        });
+        to.addValueChangeListener(e -> showFastest());
+        departure.setValue(LocalDateTime.now().withSecond(0).withNano(0));
+
+        plan.addThemeVariants(ButtonVariant.LUMO_PRIMARY);
+        plan.addClickListener(e -> planJourney());
+
+        fastest.addClassNames("text-s", "text-secondary");
+        departures.addClassNames("text-s", "w-full");
+
+        reachMinutes.setItems(15, 30, 45, 60, 90);
+        reachMinutes.setItemLabelGenerator(minutes -> minutes + " min");
+        reachMinutes.setValue(30);
+        reachButton.addClickListener(e -> toggleReach());
+        reachSummary.addClassNames("text-s", "text-secondary");
+
+        LocalDateTime now = LocalDateTime.now().withSecond(0).withNano(0);
+        replayFrom.setValue(now.minusHours(1));
+        replayTo.setValue(now);
+        replaySpeed.setItems(1, 10, 60, 300);
+        replaySpeed.setItemLabelGenerator(speed -> speed + "×");
+        replaySpeed.setValue(60);
+        replayButton.addClickListener(e -> toggleReplay());
+        replayClock.addClassNames("text-s", "text-secondary");
+
+        alternatives.addClassNames("text-s", "w-full");
+        VerticalLayout sidebar = new VerticalLayout(from, to, fastest, departure, plan, alternatives, itinerary,
+                reachMinutes, reachButton, reachSummary, departures, replayFrom, replayTo, replaySpeed, replayButton, replayClock);
+        sidebar.setWidth("22em");
+        sidebar.addClassNames("flex-shrink-0");
+
+        map.setCenter(CAPE_TOWN);
+        map.setZoom(11);
+        map.setSizeFull();
+        lineLayer.setSource(new VectorSource());
+        map.addLayer(lineLayer);
+        map.addViewMoveEndEventListener(this::viewMoved);
+        map.addClickEventListener(this::pickNearestStation);
+
+        add(sidebar, map);
+        setFlexGrow(1, map);
+    }
+
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        // a new browser-side map has no lines yet
+        lines = null;
+        refreshStations();
+        followLiveTrains(attachEvent.getUI());
+        showDepartures();
+    }
+
+    private void followLiveTrains(UI ui) {
+        trains = trainPositionBroadcaster.subscribe(command -> ui.access(command::run), this::showTrains);
+        if (viewport != null) {
+            setTrainViewport();
+        }
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        if (replay != null) {
+            replay.stop();
+            replay = null;
+        }
+        if (trains != null) {
+            trains.cancel();
+            trains = null;
+        }
+        if (departureUpdates != null) {
+            departureUpdates.cancel();
+            departureUpdates = null;
+        }
+        super.onDetach(detachEvent);
+    }
+
+    /**
+     * Lists the stations of the current timetable to choose from, if a new one
+     * has been loaded since they were listed, keeping the stations chosen
+     * unless it dropped them.
+     */
+    private void refreshStations() {
+        Timetable timetable = timetableService.getTimetable();
+        if (timetable == stations) {
+            return;
+        }
+        stations = timetable;
+        List<String> stopIds = IntStream.range(0, timetable.stopCount()).boxed()
+                .sorted(Comparator.comparing(timetable::stopName)).map(timetable::stopId)
+                .collect(Collectors.toList());
+        for (ComboBox<String> field : List.of(from, to)) {
+            String chosen = field.getValue();
+            field.setItems(stopIds);
+            field.setItemLabelGenerator(stopId -> timetable.stopName(timetable.stopIndex(stopId)));
+            if (chosen != null && timetable.stopIndex(chosen) >= 0) {
+                field.setValue(chosen);
+            }
+        }
+    }
+
+    private void viewMoved(MapViewMoveEndEvent event) {
+        viewport = event.getExtent();
+        refreshStations();
+        showLinesInView(event.getZoom());
+        showStationsInView();
+        showReachInView();
+        if (trains != null) {
+            setTrainViewport();
+        }
+    }
+
+    private void setTrainViewport() {
+        trains.setViewport(WebMercator.toLat(viewport.getMinY()), WebMercator.toLon(viewport.getMinX()),
+                WebMercator.toLat(viewport.getMaxY()), WebMercator.toLon(viewport.getMaxX()));
+    }
+
+    /**
+     * Shows the rail lines in view at the detail of the zoom, sending the
+     * browser only the lines it has not been sent at that detail before.
+     */
+    private void showLinesInView(double zoom) {
+        NetworkLines current = networkLineService.getLines();
+        boolean reset = current != lines;
+        if (reset) {
+            lines = current;
+            linesSent.clear();
+            linesShown.clear();
+        }
+        int band = NetworkLines.band(zoom);
+        int[] inView = current.linesWithin(WebMercator.toLat(viewport.getMinY()),
+                WebMercator.toLon(viewport.getMinX()), WebMercator.toLat(viewport.getMaxY()),
+                WebMercator.toLon(viewport.getMaxX()));
+        Set<String> wanted = new HashSet<>();
+        JsonArray added = Json.createArray();
+        JsonArray visible = Json.createArray();
+        for (int line : inView) {
+            String key = band + ":" + line;
+            wanted.add(key);
+            visible.set(visible.length(), key);
+            if (linesSent.add(key)) {
+                JsonArray sent = Json.createArray();
+                sent.set(0, key);
+                sent.set(1, NetworkTileRenderer.routeColour(current.lineRoute(line)));
+                sent.set(2, current.encoded(band, line));
+                added.set(added.length(), sent);
+            }
+        }
+        if (!reset && wanted.equals(linesShown)) {
+            return;
+        }
+        linesShown.clear();
+        linesShown.addAll(wanted);
+        map.getElement().executeJs("window.railLines.show(this, $0, $1, $2, $3)", lineLayer.getId(), reset,
+                added, visible);
+    }
+
+    private void showStationsInView() {
+        HashMap<String, Coordinate> wanted = new HashMap<>();
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            Timetable timetable = snapshot.timetable();
+            int[] inView = stationService.stationsWithin(snapshot, WebMercator.toLat(viewport.getMinY()),
+                    WebMercator.toLon(viewport.getMinX()), WebMercator.toLat(viewport.getMaxY()),
+                    WebMercator.toLon(viewport.getMaxX()));
+            if (inView.length <= MAX_STATION_MARKERS) {
+                for (int station : inView) {
+                    wanted.put(timetable.stopId(station), coordinate(timetable, station));
+                }
+            }
+        }
+        stationMarkers.entrySet().removeIf(shown -> {
+            if (wanted.remove(shown.getKey()) != null) {
+                return false;
+            }
+            map.getFeatureLayer().removeFeature(shown.getValue());
+            return true;
+        });
+        wanted.forEach((stopId, coordinate) -> {
+            MarkerFeature marker = new MarkerFeature(coordinate, MarkerFeature.POINT_ICON);
+            map.getFeatureLayer().addFeature(marker);
+            stationMarkers.put(stopId, marker);
+        });
+    }
+
+    /**
+     * Shades the stations reachable from the origin within the chosen time,
+     * leaving any time in the hour after the departure time, or hides them
+     * again.
+     */
+    private void toggleReach() {
+        if (reach != null) {
+            clearReach();
+            return;
+        }
+        if (from.isEmpty() || departure.isEmpty()) {
+            Notification.show("Choose where to travel from, and when.");
+            return;
+        }
+        int minutes = reachMinutes.isEmpty() ? 30 : reachMinutes.getValue();
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            int stop = snapshot.timetable().stopIndex(from.getValue());
+            if (stop < 0) {
+                Notification.show("That station is no longer in the timetable.");
+                return;
+            }
+            reach = isochroneService.isochrone(snapshot, stop, departure.getValue(), REACH_WINDOW,
+                    Duration.ofMinutes(minutes));
+        }
+        reachButton.setText("Hide reach");
+        String station = reach.getTimetable().stopName(reach.getFrom());
+        if (reach.getSearches() == 0) {
+            reachSummary.setText(String.format("No trains leave %s between %s and %s", station,
+                    time(reach.getWindowStart()), time(reach.getWindowEnd())));
+        } else {
+            reachSummary.setText(String.format("%d stations within %d min of %s, leaving between %s and %s",
+                    reach.countWithin(minutes * 60) - 1, minutes, station, time(reach.getWindowStart()),
+                    time(reach.getWindowEnd())));
+        }
+        showReachInView();
+    }
+
+    private void showReachInView() {
+        if (reach == null || viewport == null) {
+            return;
+        }
+        Timetable timetable = reach.getTimetable();
+        int[] inView;
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            if (snapshot.timetable() != timetable) {
+                // a new timetable has been loaded since
+                clearReach();
+                return;
+            }
+            inView = stationService.stationsWithin(snapshot, WebMercator.toLat(viewport.getMinY()),
+                    WebMercator.toLon(viewport.getMinX()), WebMercator.toLat(viewport.getMaxY()),
+                    WebMercator.toLon(viewport.getMaxX()));
+        }
+        Set<Integer> wanted = new HashSet<>();
+        if (inView.length <= MAX_STATION_MARKERS) {
+            for (int station : inView) {
+                if (reach.isReached(station)) {
+                    wanted.add(station);
+                }
+            }
+        }
+        reachMarkers.entrySet().removeIf(shown -> {
+            if (wanted.remove(shown.getKey())) {
+                return false;
+            }
+            map.getFeatureLayer().removeFeature(shown.getValue());
+            return true;
+        });
+        for (int station : wanted) {
+            int band = Math.min(REACH_COLOURS.length - 1,
+                    (int) ((long) reach.travelSeconds(station) * REACH_COLOURS.length / (reach.getMaxSeconds() + 1)));
+            MarkerFeature marker = new MarkerFeature(coordinate(timetable, station), reachIcons[band]);
+            map.getFeatureLayer().addFeature(marker);
+            reachMarkers.put(station, marker);
+        }
+    }
+
+    private void clearReach() {
+        reach = null;
+        reachMarkers.values().forEach(map.getFeatureLayer()::removeFeature);
+        reachMarkers.clear();
+        reachButton.setText("Show reach");
+        reachSummary.setText("");
+    }
+
+    private void showTrains(TrainPositionBroadcaster.Update update) {
+        if (replay != null) {
+            // sent before the replay started
+            return;
+        }
+        if (update.isReset()) {
+            trainMarkers.values().forEach(map.getFeatureLayer()::removeFeature);
+            trainMarkers.clear();
+        }
+        for (TrainPosition position : update.getPositions()) {
+            MarkerFeature marker = trainMarkers.get(position.getTrip());
+            if (position.isGone()) {
+                if (marker != null) {
+                    map.getFeatureLayer().removeFeature(marker);
+                    trainMarkers.remove(position.getTrip());
+                }
+            } else if (marker == null) {
+                marker = new MarkerFeature(Coordinate.fromLonLat(position.getLon(), position.getLat()), trainIcon);
+                map.getFeatureLayer().addFeature(marker);
+                trainMarkers.put(position.getTrip(), marker);
+            } else {
+                marker.setCoordinates(Coordinate.fromLonLat(position.getLon(), position.getLat()));
+            }
+        }
+    }
+
+    /**
+     * Shows, in place of the live trains, where trains were over a past
+     * window, sped up, until the window ends or the user stops it.
+     */
+    private void toggleReplay() {
+        if (replay != null) {
+            stopReplay();
+            return;
+        }
+        if (replayFrom.isEmpty() || replayTo.isEmpty() || !replayFrom.getValue().isBefore(replayTo.getValue())) {
+            Notification.show("Choose a window to replay, ending after it starts.");
+            return;
+        }
+        UI ui = getUI().orElseThrow();
+        if (trains != null) {
+            trains.cancel();
+            trains = null;
+        }
+        clearTrains();
+        replayButton.setText("Stop replay");
+        replay = positionArchiveService.replay(replayFrom.getValue(), replayTo.getValue(), replaySpeed.getValue(),
+                frame -> ui.access(() -> showReplayFrame(frame)));
+    }
+
+    private void stopReplay() {
+        replay.stop();
+        replay = null;
+        clearTrains();
+        replayButton.setText("Replay");
+        replayClock.setText("");
+        getUI().ifPresent(this::followLiveTrains);
+    }
+
+    private void showReplayFrame(PositionArchiveService.ReplayFrame frame) {
+        if (replay == null) {
+            return;
+        }
+        for (PositionSample sample : frame.getSamples()) {
+            MarkerFeature marker = trainMarkers.get(sample.getTrain());
+            if (!isInView(sample.getLat(), sample.getLon())) {
+                if (marker != null) {
+                    map.getFeatureLayer().removeFeature(marker);
+                    trainMarkers.remove(sample.getTrain());
+                }
+            } else if (marker == null) {
+                marker = new MarkerFeature(Coordinate.fromLonLat(sample.getLon(), sample.getLat()), trainIcon);
+                map.getFeatureLayer().addFeature(marker);
+                trainMarkers.put(sample.getTrain(), marker);
+            } else {
+                marker.setCoordinates(Coordinate.fromLonLat(sample.getLon(), sample.getLat()));
+            }
+            replayLastSeen.put(sample.getTrain(), sample.getTimeMillis());
+        }
+        replayLastSeen.entrySet().removeIf(seen -> {
+            if (seen.getValue() >= frame.getTimeMillis() - REPLAY_STALE_MILLIS) {
+                return false;
+            }
+            MarkerFeature marker = trainMarkers.remove(seen.getKey());
+            if (marker != null) {
+                map.getFeatureLayer().removeFeature(marker);
+            }
+            return true;
+        });
+        replayClock.setText("Replaying " + frame.getTime().toLocalDate() + " "
+                + frame.getTime().toLocalTime().withNano(0));
+        if (frame.isFinished()) {
+            stopReplay();
+        }
+    }
+
+    private void clearTrains() {
+        trainMarkers.values().forEach(map.getFeatureLayer()::removeFeature);
+        trainMarkers.clear();
+        replayLastSeen.clear();
+    }
+
+    private boolean isInView(double lat, double lon) {
+        return viewport == null || lat >= WebMercator.toLat(viewport.getMinY())
+                && lat <= WebMercator.toLat(viewport.getMaxY()) && lon >= WebMercator.toLon(viewport.getMinX())
+                && lon <= WebMercator.toLon(viewport.getMaxX());
+    }
+
+    /**
+     * Lists the next departures from the origin station, and keeps their
+     * expected times up to date as delays are reported.
+     */
+    private void showDepartures() {
+        if (departureUpdates != null) {
+            departureUpdates.cancel();
+            departureUpdates = null;
+        }
+        departures.removeAll();
+        departureStatus.clear();
+        departuresFrom = null;
+        Optional<UI> ui = getUI();
+        if (from.isEmpty() || ui.isEmpty()) {
+            return;
+        }
+        Timetable timetable;
+        int stop;
+        List<StopTimeEta> next;
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            timetable = snapshot.timetable();
+            stop = timetable.stopIndex(from.getValue());
+            if (stop < 0) {
+                return;
+            }
+            next = etaService.departures(snapshot, stop, DEPARTURES_SHOWN);
+        }
+        departuresFrom = timetable;
+        Span heading = new Span("Departures from " + timetable.stopName(stop));
+        heading.addClassNames("block", "font-medium", "mt-m");
+        departures.add(heading);
+        for (StopTimeEta eta : next) {
+            int trip = eta.getTrip();
+            int last = timetable.tripFirstStopTime(trip) + timetable.tripStopCount(trip) - 1;
+            Span status = new Span();
+            showStatus(status, eta);
+            Paragraph row = new Paragraph(new Span(String.format("%s %s to %s ", time(eta.getScheduledDeparture()),
+                    timetable.routeName(timetable.tripRoute(trip)), timetable.stopName(timetable.stopTimeStop(last)))),
+                    status);
+            row.addClassNames("my-xs");
+            departures.add(row);
+            departureStatus.put(departureKey(eta), status);
+        }
+        departureUpdates = etaService.subscribe(stop, command -> ui.get().access(command::run),
+                this::updateDepartures);
+    }
+
+    private void updateDepartures(List<StopTimeEta> changes) {
+        if (timetableService.getTimetable() != departuresFrom) {
+            // the stop times listed are of a timetable since replaced
+            refreshStations();
+            showDepartures();
+            return;
+        }
+        for (StopTimeEta eta : changes) {
+            Span status = departureStatus.get(departureKey(eta));
+            if (status != null) {
+                showStatus(status, eta);
+            }
+        }
+    }
+
+    /**
+     * @return the stop time on its service day, as runs of the same trip on
+     *         other days are listed, and reported, too
+     */
+    private static long departureKey(StopTimeEta eta) {
+        return eta.getServiceDate().toEpochDay() << 32 | eta.getStopTime();
+    }
+
+    private static void showStatus(Span status, StopTimeEta eta) {
+        status.removeClassNames("text-error", "text-success");
+        if (eta.isCancelled()) {
+            status.setText("cancelled");
+            status.addClassNames("text-error");
+        } else if (eta.getDelaySeconds() >= 60) {
+            status.setText(String.format("+%d min, %s", eta.getDelaySeconds() / 60, time(eta.getDeparture())));
+            status.addClassNames("text-error");
+        } else {
+            status.setText("on time");
+            status.addClassNames("text-success");
+        }
+    }
+
+    /**
+     * Clicking the map picks the nearest station as the origin, or as the
+     * destination once an origin is chosen.
+     */
+    private void pickNearestStation(MapClickEvent event) {
+        Coordinate clicked = event.getCoordinate();
+        String station;
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            int stop = stationService.nearestStation(snapshot, WebMercator.toLat(clicked.getY()),
+                    WebMercator.toLon(clicked.getX()));
+            if (stop < 0) {
+                return;
+            }
+            station = snapshot.timetable().stopId(stop);
+        }
+        refreshStations();
+        if (from.isEmpty() || !to.isEmpty()) {
+            from.setValue(station);
+            to.clear();
+        } else {
+            to.setValue(station);
+        }
+    }
+
+    /**
+     * Tells how long the chosen trip takes at best, from the travel time matrix.
+     */
+    private void showFastest() {
+        if (from.isEmpty() || to.isEmpty() || from.getValue().equals(to.getValue())) {
+            fastest.setText("");
+            return;
+        }
+        OptionalInt seconds = travelTimeMatrixService.travelSeconds(from.getValue(), to.getValue());
+        LocalTime windowStart = travelTimeMatrixService.getWindowStart();
+        String window = windowStart + "–" + windowStart.plus(travelTimeMatrixService.getWindow());
+        if (seconds.isEmpty()) {
+            fastest.setText("Still working out the fastest trip leaving " + window);
+        } else if (seconds.getAsInt() == RaptorRouter.UNREACHED) {
+            fastest.setText(String.format("No trip under %d min leaving %s",
+                    travelTimeMatrixService.getMaxTravel().toMinutes(), window));
+        } else {
+            fastest.setText(String.format("%d min at best, leaving %s", (seconds.getAsInt() + 59) / 60, window));
+        }
+    }
+
+    /**
+     * Plans the journey, listing the alternatives that arrive later but change
+     * trains less or cost less, and shows the earliest on the map.
+     */
+    private void planJourney() {
+        if (from.isEmpty() || to.isEmpty() || departure.isEmpty()) {
+            Notification.show("Choose where to travel from and to, and when.");
+            return;
+        }
+        alternatives.removeAll();
+        LocalDateTime leaving = departure.getValue();
+        List<Journey> options = List.of();
+        try (TimetableSnapshot snapshot = timetableService.acquire()) {
+            int fromStop = snapshot.timetable().stopIndex(from.getValue());
+            int toStop = snapshot.timetable().stopIndex(to.getValue());
+            if (fromStop >= 0 && toStop >= 0) {
+                options = journeyPlannerService.planAlternatives(snapshot, fromStop, toStop, leaving.toLocalDate(),
+                        leaving.toLocalTime().toSecondOfDay());
+            }
+        }
+        if (options.isEmpty()) {
+            clearJourney();
+            Notification.show("No train gets there from here later that day.");
+            return;
+        }
+        List<Button> choices = new ArrayList<>();
+        for (Journey journey : options) {
+            int cents = journeyPlannerService.fareCents(journey);
+            Button choice = new Button(String.format("%s → %s, %s, R%d.%02d", time(journey.getDeparture()),
+                    time(journey.getArrival()), changes(journey.getTransfers()), cents / 100, cents % 100));
+            choice.addThemeVariants(ButtonVariant.LUMO_TERTIARY, ButtonVariant.LUMO_SMALL);
+            choice.addClickListener(e -> {
+                choices.forEach(other -> other.removeClassName("font-bold"));
+                choice.addClassName("font-bold");
+                showJourney(journey);
+            });
+            choices.add(choice);
+            alternatives.add(choice);
+        }
+        choices.get(0).addClassName("font-bold");
+        showJourney(options.get(0));
+    }
+
+    private void showJourney(Journey journey) {
+        Timetable timetable = journey.getTimetable();
+        clearJourney();
+        for (Journey.Leg leg : journey.getLegs()) {
+            int[] stops = leg.getStops();
+            for (int i = journeyFeatures.isEmpty() ? 0 : 1; i < stops.length; i++) {
+                boolean changeOrEnd = i == 0 || i == stops.length - 1;
+                MarkerFeature marker = new MarkerFeature(coordinate(timetable, stops[i]),
+                        changeOrEnd ? MarkerFeature.PIN_ICON : MarkerFeature.POINT_ICON);
+                map.getFeatureLayer().addFeature(marker);
+                journeyFeatures.add(marker);
+            }
+
+            Paragraph step = new Paragraph();
+            step.addClassNames("my-s", "text-s");
+            Span route = new Span(leg.getRouteName());
+            route.addClassNames("block", "font-medium");
+            step.add(route, new Span(String.format("%s %s → %s %s", time(leg.getDeparture()),
+                    timetable.stopName(leg.getFromStop()), time(leg.getArrival()), timetable.stopName(leg.getToStop()))));
+            itinerary.add(step);
+        }
+        map.setCenter(coordinate(timetable, journey.getLegs().get(0).getFromStop()));
+    }
+
+    private void clearJourney() {
+        journeyFeatures.forEach(map.getFeatureLayer()::removeFeature);
+        journeyFeatures.clear();
+        itinerary.removeAll();
+    }
+
+    private static Icon trainIcon() {
+        Icon.Options options = new Icon.Options();
+        options.setSrc(TRAIN_SVG);
+        return new Icon(options);
+    }
+
+    private static Icon[] reachIcons() {
+        Icon[] icons = new Icon[REACH_COLOURS.length];
+        for (int band = 0; band < icons.length; band++) {
+            Icon.Options options = new Icon.Options();
+            options.setSrc("data:image/svg+xml;utf8,<svg xmlns='http://www.w3.org/2000/svg' width='16' height='16'>"
+                    + "<circle cx='8' cy='8' r='6.5' fill='" + REACH_COLOURS[band]
+                    + "' fill-opacity='0.8' stroke='white' stroke-width='1.5'/></svg>");
+            icons[band] = new Icon(options);
+        }
+        return icons;
+    }
+
+    private static Coordinate coordinate(Timetable timetable, int stop) {
+        return Coordinate.fromLonLat(timetable.stopLon(stop), timetable.stopLat(stop));
+    }
+
+    private static String changes(int transfers) {
+        return transfers == 0 ? "direct" : transfers == 1 ? "1 change" : transfers + " changes";
+    }
+
+    private static String time(int secondsOfServiceDay) {
+        return LocalTime.ofSecondOfDay(secondsOfServiceDay % 86400).toString();
     }
 
 }
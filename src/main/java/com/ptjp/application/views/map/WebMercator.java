@@ -0,0 +1,21 @@
+package com.ptjp.application.views.map;
+
+/**
+ * Conversions from the map's EPSG:3857 (Web Mercator) coordinates back to
+ * latitude and longitude.
+ */
+final class WebMercator {
+
+    private static final double EARTH_RADIUS_METRES = 6_378_137;
+
+    private WebMercator() {
+    }
+
+    static double toLon(double x) {
+        return Math.toDegrees(x / EARTH_RADIUS_METRES);
+    }
+
+    static double toLat(double y) {
+        return Math.toDegrees(2 * Math.atan(Math.exp(y / EARTH_RADIUS_METRES)) - Math.PI / 2);
+    }
+}
@@ -1,6 +1,7 @@
 package com.ptjp.application.views.users;
 
 import com.ptjp.application.data.entity.Users;
+import com.ptjp.application.data.service.UsersPager;
 import com.ptjp.application.data.service.UsersService;
 import com.ptjp.application.views.MainLayout;
 import com.vaadin.flow.component.Component;
@@ -11,12 +12,14 @@ import com.vaadin.flow.component.formlayout.FormLayout;
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.grid.GridVariant;
 import com.vaadin.flow.component.html.Div;
+import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.splitlayout.SplitLayout;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.data.binder.BeanValidationBinder;
 import com.vaadin.flow.data.binder.ValidationException;
+import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.BeforeEnterEvent;
 import com.vaadin.flow.router.BeforeEnterObserver;
 import com.vaadin.flow.router.PageTitle;
@@ -26,7 +29,6 @@ import java.util.Optional;
 import java.util.UUID;
 import javax.annotation.security.RolesAllowed;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 
 @PageTitle("Users")
 @Route(value = "Users/:usersID?/:action?(edit)", layout = MainLayout.class)
@@ -37,6 +39,7 @@ public class UsersView extends Div implements BeforeEnterObserver {
     private final String USERS_EDIT_ROUTE_TEMPLATE = "Users/%s/edit";
 
     private Grid<Users> grid = new Grid<>(Users.class, false);
+    private TextField filter = new TextField();
 
     private TextField firstName;
     private TextField lastName;
@@ -51,10 +54,12 @@ public class UsersView extends Div implements BeforeEnterObserver {
     private Users users;
 
     private final UsersService usersService;
+    private final UsersPager pager;
 
     @Autowired
     public UsersView(UsersService usersService) {
         this.usersService = usersService;
+        this.pager = new UsersPager(usersService);
         addClassNames("users-view");
 
         // Create UI
@@ -70,9 +75,13 @@ public class UsersView extends Div implements BeforeEnterObserver {
         grid.addColumn("lastName").setAutoWidth(true);
         grid.addColumn("email").setAutoWidth(true);
         grid.addColumn("phone").setAutoWidth(true);
-        grid.setItems(query -> usersService.list(
-                PageRequest.of(query.getPage(), query.getPageSize(), VaadinSpringDataHelpers.toSpringDataSort(query)))
-                .stream());
+        grid.setItems(query -> {
+            if (filter.isEmpty()) {
+                return pager.fetch(query.getOffset(), query.getLimit(),
+                        VaadinSpringDataHelpers.toSpringDataSort(query)).stream();
+            }
+            return usersService.search(filter.getValue(), query.getOffset(), query.getLimit()).stream();
+        });
         grid.addThemeVariants(GridVariant.LUMO_NO_BORDER);
 
         // when a row is selected or deselected, populate form
@@ -169,11 +178,20 @@ public class UsersView extends Div implements BeforeEnterObserver {
         Div wrapper = new Div();
         wrapper.setClassName("grid-wrapper");
         splitLayout.addToPrimary(wrapper);
-        wrapper.add(grid);
+
+        filter.setPlaceholder("Search name, email or phone");
+        filter.setPrefixComponent(VaadinIcon.SEARCH.create());
+        filter.setClearButtonVisible(true);
+        filter.setValueChangeMode(ValueChangeMode.LAZY);
+        filter.addValueChangeListener(e -> refreshGrid());
+        filter.addClassNames("grid-filter");
+        filter.setWidthFull();
+        wrapper.add(filter, grid);
     }
 
     private void refreshGrid() {
         grid.select(null);
+        pager.reset();
         grid.getLazyDataView().refreshAll();
     }
 
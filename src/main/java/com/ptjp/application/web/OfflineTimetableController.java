@@ -0,0 +1,69 @@
+package com.ptjp.application.web;
+
+import com.ptjp.application.data.offline.OfflineTimetable;
+import com.ptjp.application.data.service.OfflineTimetableService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * The timetable for offline use: the whole of it at
+ * {@value #SNAPSHOT_URL}, and what changed since a version at
+ * {@code offline/timetable-delta.bin?since=<version>}. See
+ * {@link OfflineTimetable} for the format.
+ *
+ * The ETag of either is the current version, so clients revalidate cheaply.
+ * A delta request answers 304 if the client is up to date and 410 if no delta
+ * can be made from its version, in which case it fetches the snapshot.
+ */
+@RestController
+public class OfflineTimetableController {
+
+    public static final String SNAPSHOT_URL = "offline/timetable.bin";
+
+    private final OfflineTimetableService offlineTimetableService;
+
+    @Autowired
+    public OfflineTimetableController(OfflineTimetableService offlineTimetableService) {
+        this.offlineTimetableService = offlineTimetableService;
+    }
+
+    @GetMapping("/" + SNAPSHOT_URL)
+    public ResponseEntity<byte[]> snapshot(WebRequest request) {
+        OfflineTimetable current = offlineTimetableService.getCurrent();
+        String etag = etag(current);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ok(etag).body(current.snapshot());
+    }
+
+    @GetMapping("/offline/timetable-delta.bin")
+    public ResponseEntity<byte[]> delta(@RequestParam(required = false) String since) {
+        OfflineTimetable current = offlineTimetableService.getCurrent();
+        String etag = etag(current);
+        if (current.version().tag().equals(since)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        byte[] delta = offlineTimetableService.delta(current, since);
+        if (delta == null) {
+            return ResponseEntity.status(HttpStatus.GONE).cacheControl(CacheControl.noCache()).build();
+        }
+        return ok(etag).body(delta);
+    }
+
+    private static String etag(OfflineTimetable offline) {
+        return "\"" + offline.version().tag() + "\"";
+    }
+
+    private static ResponseEntity.BodyBuilder ok(String etag) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+    }
+}
@@ -0,0 +1,46 @@
+package com.ptjp.application.web;
+
+import com.ptjp.application.data.service.TileService;
+import com.ptjp.application.data.tiles.NetworkTileRenderer;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * XYZ tiles of the rail network overlay, at {@code /tiles/{z}/{x}/{y}.png}.
+ *
+ * Conditional requests are answered from the ETag alone, without touching the
+ * tile cache, and browsers may reuse a tile for an hour before asking.
+ */
+@RestController
+public class TileController {
+
+    public static final String TILE_URL = "tiles/{z}/{x}/{y}.png";
+
+    private final TileService tileService;
+
+    @Autowired
+    public TileController(TileService tileService) {
+        this.tileService = tileService;
+    }
+
+    @GetMapping("/tiles/{z}/{x}/{y}.png")
+    public ResponseEntity<byte[]> tile(@PathVariable int z, @PathVariable int x, @PathVariable int y,
+            WebRequest request) {
+        if (!NetworkTileRenderer.isValid(z, x, y)) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = tileService.etag(z, x, y);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic())
+                .contentType(MediaType.IMAGE_PNG).body(tileService.tile(z, x, y));
+    }
+}
@@ -0,0 +1,215 @@
+package com.ptjp.application.data.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PositionArchiveTest {
+
+    private static final long START = 1_792_300_000_000L;
+    private static final long MINUTE = 60_000;
+    private static final int SEGMENT_BYTES = 1 << 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackEverySampleToTheMillionthOfADegree() throws IOException {
+        try (PositionArchive archive = new PositionArchive(dir, SEGMENT_BYTES)) {
+            List<PositionSample> written = new ArrayList<>();
+            Random random = new Random(1);
+            for (int minute = 0; minute < 5; minute++) {
+                List<PositionSample> block = minute(archive, random, minute, 40);
+                archive.append(block);
+                written.addAll(block);
+            }
+
+            List<PositionSample> read = archive.cursor(START, START + 5 * MINUTE).next(Long.MAX_VALUE);
+
+            assertThat(archive.getBlockCount()).isEqualTo(5);
+            assertThat(archive.getSampleCount()).isEqualTo(written.size());
+            assertThat(archive.getStoredBytes()).isLessThan(written.size() * 16L);
+            assertThat(read).extracting(PositionSample::getTimeMillis).isSorted();
+            assertThat(describe(read)).containsExactlyInAnyOrderElementsOf(describe(written));
+        }
+    }
+
+    @Test
+    void readsOnlyTheTimeRangeAskedFor() throws IOException {
+        try (PositionArchive archive = new PositionArchive(dir, SEGMENT_BYTES)) {
+            List<PositionSample> written = new ArrayList<>();
+            Random random = new Random(2);
+            for (int minute = 0; minute < 6; minute++) {
+                List<PositionSample> block = minute(archive, random, minute, 20);
+                archive.append(block);
+                written.addAll(block);
+            }
+            long from = START + 2 * MINUTE + 15_000;
+            long to = START + 4 * MINUTE + 30_000;
+
+            List<PositionSample> read = archive.cursor(from, to).next(Long.MAX_VALUE);
+
+            assertThat(describe(read)).containsExactlyInAnyOrderElementsOf(describe(written.stream()
+                    .filter(sample -> sample.getTimeMillis() >= from && sample.getTimeMillis() < to)
+                    .collect(Collectors.toList())));
+        }
+    }
+
+    @Test
+    void reopensWithTheBlocksWrittenSkippingOneCutShort() throws IOException {
+        List<PositionSample> written = new ArrayList<>();
+        Random random = new Random(3);
+        long stored;
+        int train;
+        try (PositionArchive archive = new PositionArchive(dir, SEGMENT_BYTES)) {
+            for (int minute = 0; minute < 3; minute++) {
+                List<PositionSample> block = minute(archive, random, minute, 25);
+                archive.append(block);
+                written.addAll(block);
+            }
+            stored = archive.getStoredBytes();
+            train = archive.trainId("train-4");
+        }
+        // a crash while appending: the header but for its magic number, and part of the block
+        try (FileChannel segment = FileChannel.open(onlySegment(), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(48);
+            torn.putInt(0).putInt(16).putInt(3).putInt(40).putLong(START + 3 * MINUTE).putLong(START + 4 * MINUTE);
+            torn.putLong(-1).putLong(-1).flip();
+            segment.write(torn, stored);
+        }
+
+        try (PositionArchive archive = new PositionArchive(dir, SEGMENT_BYTES)) {
+            assertThat(archive.getBlockCount()).isEqualTo(3);
+            assertThat(archive.getLastMillis()).isLessThan(START + 3 * MINUTE);
+            assertThat(archive.trainId("train-4")).isEqualTo(train);
+            assertThat(archive.trainName(train)).isEqualTo("train-4");
+            assertThat(archive.trainId("train-5")).isEqualTo(5);
+            assertThat(describe(archive.cursor(START, Long.MAX_VALUE).next(Long.MAX_VALUE)))
+                    .containsExactlyInAnyOrderElementsOf(describe(written));
+
+            // written over the torn block
+            List<PositionSample> block = minute(archive, random, 3, 25);
+            archive.append(block);
+            written.addAll(block);
+        }
+
+        try (PositionArchive archive = new PositionArchive(dir, SEGMENT_BYTES)) {
+            assertThat(archive.getBlockCount()).isEqualTo(4);
+            assertThat(describe(archive.cursor(START, Long.MAX_VALUE).next(Long.MAX_VALUE)))
+                    .containsExactlyInAnyOrderElementsOf(describe(written));
+        }
+    }
+
+    @Test
+    void rollsOverToNewSegmentsAndDeletesTheOldOnes() throws IOException {
+        int segmentBytes = 1024;
+        try (PositionArchive archive = new PositionArchive(dir, segmentBytes)) {
+            List<PositionSample> written = new ArrayList<>();
+            Random random = new Random(4);
+            for (int minute = 0; minute < 20; minute++) {
+                List<PositionSample> block = minute(archive, random, minute, 20);
+                archive.append(block);
+                written.addAll(block);
+            }
+            int segments = segmentCount();
+            assertThat(segments).isGreaterThan(3);
+            assertThat(describe(archive.cursor(START, Long.MAX_VALUE).next(Long.MAX_VALUE)))
+                    .containsExactlyInAnyOrderElementsOf(describe(written));
+
+            int deleted = archive.deleteBefore(START + 10 * MINUTE);
+
+            assertThat(deleted).isPositive();
+            assertThat(segmentCount()).isEqualTo(segments - deleted);
+            long first = archive.getFirstMillis();
+            assertThat(first).isLessThan(START + 10 * MINUTE);
+            assertThat(describe(archive.cursor(START, Long.MAX_VALUE).next(Long.MAX_VALUE)))
+                    .containsExactlyInAnyOrderElementsOf(describe(written.stream()
+                            .filter(sample -> sample.getTimeMillis() >= first)
+                            .collect(Collectors.toList())));
+
+            // the segment being written is kept, however old
+            archive.deleteBefore(Long.MAX_VALUE);
+            assertThat(segmentCount()).isEqualTo(1);
+            assertThat(archive.getLastMillis()).isGreaterThanOrEqualTo(START + 19 * MINUTE);
+
+            List<PositionSample> tooBig = minute(archive, random, 20, 2_000);
+            assertThatThrownBy(() -> archive.append(tooBig)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void cursorReadsBlocksAppendedWhileItIsOpen() throws IOException {
+        try (PositionArchive archive = new PositionArchive(dir, SEGMENT_BYTES)) {
+            Random random = new Random(5);
+            List<PositionSample> first = minute(archive, random, 0, 30);
+            archive.append(first);
+            PositionArchive.Cursor cursor = archive.cursor(START, Long.MAX_VALUE);
+
+            List<PositionSample> early = cursor.next(START + 30_000);
+            List<PositionSample> rest = cursor.next(Long.MAX_VALUE);
+
+            assertThat(early).allMatch(sample -> sample.getTimeMillis() < START + 30_000);
+            assertThat(rest).allMatch(sample -> sample.getTimeMillis() >= START + 30_000);
+            List<PositionSample> firstRead = new ArrayList<>(early);
+            firstRead.addAll(rest);
+            assertThat(describe(firstRead)).containsExactlyInAnyOrderElementsOf(describe(first));
+            assertThat(cursor.next(Long.MAX_VALUE)).isEmpty();
+
+            List<PositionSample> second = minute(archive, random, 1, 30);
+            archive.append(second);
+
+            assertThat(describe(cursor.next(Long.MAX_VALUE))).containsExactlyInAnyOrderElementsOf(describe(second));
+        }
+    }
+
+    /**
+     * @return a minute of samples of five trains moving about Cape Town, with
+     *         times in no particular order
+     */
+    private static List<PositionSample> minute(PositionArchive archive, Random random, int minute, int count) {
+        List<PositionSample> samples = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int train = archive.trainId("train-" + random.nextInt(5));
+            samples.add(new PositionSample(train, START + minute * MINUTE + random.nextInt((int) MINUTE),
+                    -34.2 + random.nextDouble() * 0.5, 18.3 + random.nextDouble() * 0.6, random.nextFloat() * 30));
+        }
+        return samples;
+    }
+
+    /**
+     * @return per sample, what the archive keeps of it
+     */
+    private static List<String> describe(List<PositionSample> samples) {
+        return samples.stream().map(sample -> String.format("%d %d %d %d %d", sample.getTrain(),
+                sample.getTimeMillis(), Math.round(sample.getLat() * 1e6), Math.round(sample.getLon() * 1e6),
+                Math.round(sample.getSpeed() * 10))).collect(Collectors.toList());
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> segments = files.filter(file -> file.getFileName().toString().endsWith(".seg"))
+                    .collect(Collectors.toList());
+            assertThat(segments).hasSize(1);
+            return segments.get(0);
+        }
+    }
+
+    private int segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return (int) files.filter(file -> file.getFileName().toString().endsWith(".seg")).count();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ptjp.application.data.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ptjp.application.data.live.DelayEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BatchTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2026, 10, 19);
+
+    @Test
+    void readsBackTheEventsWrittenWithTheirStops() throws IOException {
+        List<DelayEvent> events = List.of(DelayEvent.delay("t1", MONDAY, 3, 120).atStop("CPT"),
+                DelayEvent.cancellation("t2", MONDAY, 0), DelayEvent.delay("t3", MONDAY.minusDays(1), 7, -30));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Batch("a#1", 42, true, events).write(new DataOutputStream(bytes));
+
+        Batch read = Batch.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(read.origin()).isEqualTo("a#1");
+        assertThat(read.firstSequence()).isEqualTo(42);
+        assertThat(read.isReplay()).isTrue();
+        assertThat(read.events()).extracting(DelayEvent::toString)
+                .containsExactlyElementsOf(events.stream().map(DelayEvent::toString)::iterator);
+        assertThat(read.events()).extracting(DelayEvent::getStopId).containsExactly("CPT", null, null);
+    }
+
+    @Test
+    void rejectsMoreEventsThanABatchHoldsBeforeReadingThem() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF("a#1");
+        out.writeLong(1);
+        out.writeBoolean(false);
+        out.writeInt(Batch.MAX_EVENTS + 1);
+
+        assertThatThrownBy(() -> Batch.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))))
+                .isInstanceOf(IOException.class);
+    }
+}
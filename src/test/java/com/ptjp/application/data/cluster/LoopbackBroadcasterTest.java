@@ -0,0 +1,171 @@
+package com.ptjp.application.data.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ptjp.application.data.live.DelayEvent;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class LoopbackBroadcasterTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2026, 10, 19);
+    private static final long BATCH_MILLIS = 5;
+    private static final int BATCH_SIZE = 4;
+    private static final int REPLAY_EVENTS = 100;
+
+    private final LoopbackBroadcaster.Hub hub = new LoopbackBroadcaster.Hub();
+    private final List<LoopbackBroadcaster> nodes = new ArrayList<>();
+
+    @AfterEach
+    void closeNodes() {
+        nodes.forEach(LoopbackBroadcaster::close);
+    }
+
+    @Test
+    void lateJoinerReceivesWhatWasSentBeforeIt() throws InterruptedException {
+        LoopbackBroadcaster a = node("a", new Received());
+        publish(a, "early", 10);
+
+        Received received = new Received();
+        LoopbackBroadcaster b = node("b", received);
+        publish(a, "late", 3);
+
+        await(() -> received.size() == 13);
+        assertThat(received.tripIds()).containsExactlyElementsOf(tripIds("early-", 10, "late-", 3));
+        assertThat(b.receivedCount()).isEqualTo(13);
+        assertThat(b.lostCount()).isZero();
+    }
+
+    @Test
+    void cutOffNodeCatchesUpOnRejoining() throws InterruptedException {
+        Received receivedByA = new Received();
+        Received receivedByB = new Received();
+        LoopbackBroadcaster a = node("a", receivedByA);
+        LoopbackBroadcaster b = node("b", receivedByB);
+
+        b.setConnected(false);
+        publish(a, "missed", 6);
+        publish(b, "unsent", 2);
+        assertThat(receivedByB.tripIds()).isEmpty();
+        assertThat(receivedByA.tripIds()).isEmpty();
+
+        b.setConnected(true);
+        publish(a, "after", 1);
+
+        await(() -> receivedByB.size() == 7);
+        assertThat(receivedByB.tripIds()).containsExactlyElementsOf(tripIds("missed-", 6, "after-", 1));
+        assertThat(receivedByA.tripIds()).containsExactly("unsent-0", "unsent-1");
+        assertThat(a.lostCount() + b.lostCount()).isZero();
+    }
+
+    @Test
+    void restartedOriginIsNotTakenForOneAlreadySeen() throws InterruptedException {
+        Received received = new Received();
+        LoopbackBroadcaster b = node("b", received);
+        LoopbackBroadcaster a = node("a", new Received());
+        publish(a, "before", 3);
+        await(() -> received.size() == 3);
+
+        a.close();
+        LoopbackBroadcaster restarted = node("a", new Received());
+        publish(restarted, "after", 2);
+
+        await(() -> received.size() == 5);
+        assertThat(restarted.origin()).isNotEqualTo(a.origin());
+        assertThat(received.tripIds()).containsExactlyElementsOf(tripIds("before-", 3, "after-", 2));
+        assertThat(b.lostCount()).isZero();
+    }
+
+    @Test
+    void deliversWithoutKeepingAnythingToReplay() throws InterruptedException {
+        Received received = new Received();
+        LoopbackBroadcaster a = node("a", new Received(), 0);
+        LoopbackBroadcaster b = node("b", received, 0);
+        publish(a, "live", 6);
+
+        await(() -> received.size() == 6);
+        assertThat(received.tripIds()).containsExactlyElementsOf(tripIds("live-", 6, "", 0));
+        assertThat(b.lostCount()).isZero();
+
+        b.setConnected(false);
+        publish(a, "missed", 2);
+        b.setConnected(true);
+        publish(a, "after", 1);
+
+        await(() -> received.size() == 7);
+        assertThat(received.tripIds()).endsWith("after-0");
+        assertThat(b.lostCount()).isEqualTo(2);
+    }
+
+    private LoopbackBroadcaster node(String name, Received received) {
+        return node(name, received, REPLAY_EVENTS);
+    }
+
+    private LoopbackBroadcaster node(String name, Received received, int replayEvents) {
+        LoopbackBroadcaster node = new LoopbackBroadcaster(hub, name, BATCH_MILLIS, BATCH_SIZE, replayEvents);
+        nodes.add(node);
+        node.addListener(received::add);
+        node.setConnected(true);
+        return node;
+    }
+
+    /**
+     * Publishes events for trips {@code prefix-0} on, and waits for them all
+     * to have been sent.
+     */
+    private static void publish(LoopbackBroadcaster node, String prefix, int count) throws InterruptedException {
+        long sent = node.position().firstSequence() + count;
+        for (int i = 0; i < count; i++) {
+            node.publish(DelayEvent.delay(prefix + "-" + i, MONDAY, 0, 60));
+        }
+        await(() -> node.position().firstSequence() == sent);
+    }
+
+    /**
+     * @return the trips of {@code firstCount} events published as
+     *         {@code first}, then of {@code thenCount} as {@code then}
+     */
+    private static List<String> tripIds(String first, int firstCount, String then, int thenCount) {
+        List<String> tripIds = new ArrayList<>();
+        for (int i = 0; i < firstCount; i++) {
+            tripIds.add(first + i);
+        }
+        for (int i = 0; i < thenCount; i++) {
+            tripIds.add(then + i);
+        }
+        return tripIds;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("still waiting after 5 s").isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * The trips of the events a node's listener was handed, in order.
+     */
+    private static final class Received {
+
+        private final List<String> tripIds = new ArrayList<>();
+
+        synchronized void add(List<DelayEvent> events) {
+            events.forEach(event -> tripIds.add(event.getTripId()));
+        }
+
+        synchronized int size() {
+            return tripIds.size();
+        }
+
+        synchronized List<String> tripIds() {
+            return new ArrayList<>(tripIds);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.ptjp.application.data.live;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ptjp.application.data.timetable.TestFeed;
+import com.ptjp.application.data.timetable.Timetable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EtaOverlayTest {
+
+    private static final int MIN_DWELL_SECONDS = 30;
+    private static final String[] STOPS = { "A", "B", "C", "D", "E" };
+    /** A five minute dwell at B and a one minute dwell at C. */
+    private static final int[] ARRIVALS = { time(8, 0), time(8, 10), time(8, 25), time(8, 36), time(8, 46) };
+    private static final int[] DEPARTURES = { time(8, 0), time(8, 15), time(8, 26), time(8, 36), time(8, 46) };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void makesUpTimeWhereTheTrainDwellsLongerThanItMust() throws IOException {
+        Timetable timetable = timetable();
+        EtaOverlay overlay = new EtaOverlay(timetable, MIN_DWELL_SECONDS);
+        int trip = timetable.tripIndex("t");
+        int first = timetable.tripFirstStopTime(trip);
+
+        overlay.apply(DelayEvent.delay("t", TestFeed.MONDAY, 0, 600));
+
+        EtaOverlay.TripEtas etas = overlay.get(trip, TestFeed.MONDAY);
+        assertThat(etas.arrival(first + 1)).isEqualTo(time(8, 20));
+        // five minutes scheduled at B, of which all but the minimum is made up
+        assertThat(etas.departure(first + 1)).isEqualTo(time(8, 20) + MIN_DWELL_SECONDS);
+        assertThat(etas.arrival(first + 2)).isEqualTo(time(8, 30) + MIN_DWELL_SECONDS);
+        assertThat(etas.departure(first + 2)).isEqualTo(time(8, 31));
+        assertThat(etas.arrival(first + 4)).isEqualTo(time(8, 51));
+    }
+
+    @Test
+    void stopsAtTheFirstStopWhoseTimesComeOutUnchanged() throws IOException {
+        Timetable timetable = timetable();
+        EtaOverlay overlay = new EtaOverlay(timetable, MIN_DWELL_SECONDS);
+
+        // four minutes late at A is made up by the dwell at B
+        List<StopTimeEta> changes = overlay.apply(DelayEvent.delay("t", TestFeed.MONDAY, 0, 240));
+
+        assertThat(changes).extracting(StopTimeEta::getStop)
+                .containsExactly(timetable.stopIndex("A"), timetable.stopIndex("B"));
+        assertThat(changes.get(1).getArrival()).isEqualTo(time(8, 14));
+        assertThat(changes.get(1).getDeparture()).isEqualTo(time(8, 15));
+    }
+
+    @Test
+    void reinstatesACancelledRunOnADelay() throws IOException {
+        Timetable timetable = timetable();
+        EtaOverlay overlay = new EtaOverlay(timetable, MIN_DWELL_SECONDS);
+        int trip = timetable.tripIndex("t");
+
+        List<StopTimeEta> cancelled = overlay.apply(DelayEvent.cancellation("t", TestFeed.MONDAY, 2));
+
+        assertThat(cancelled).extracting(StopTimeEta::getStop).containsExactly(timetable.stopIndex("C"),
+                timetable.stopIndex("D"), timetable.stopIndex("E"));
+        assertThat(cancelled).allMatch(StopTimeEta::isCancelled);
+        assertThat(overlay.get(trip, TestFeed.MONDAY).getStopsServed()).isEqualTo(2);
+
+        List<StopTimeEta> reinstated = overlay.apply(DelayEvent.delay("t", TestFeed.MONDAY, 3, 0));
+
+        assertThat(reinstated).extracting(StopTimeEta::getStop).containsExactly(timetable.stopIndex("C"),
+                timetable.stopIndex("D"), timetable.stopIndex("E"));
+        assertThat(reinstated).noneMatch(StopTimeEta::isCancelled);
+        // running to schedule again, so nothing is kept for it
+        assertThat(overlay.get(trip, TestFeed.MONDAY)).isNull();
+    }
+
+    @Test
+    void forgetsARunOnceItIsBackOnSchedule() throws IOException {
+        Timetable timetable = timetable();
+        EtaOverlay overlay = new EtaOverlay(timetable, MIN_DWELL_SECONDS);
+        int trip = timetable.tripIndex("t");
+
+        overlay.apply(DelayEvent.delay("t", TestFeed.MONDAY, 3, 120));
+        assertThat(overlay.size()).isEqualTo(1);
+        assertThat(overlay.get(trip, TestFeed.MONDAY.plusDays(1))).isNull();
+
+        List<StopTimeEta> changes = overlay.apply(DelayEvent.delay("t", TestFeed.MONDAY, 3, 0));
+
+        assertThat(changes).extracting(StopTimeEta::getArrival).containsExactly(time(8, 36), time(8, 46));
+        assertThat(overlay.get(trip, TestFeed.MONDAY)).isNull();
+        assertThat(overlay.size()).isZero();
+    }
+
+    @Test
+    void appliesAReportToTheStopItNamesWhereverTheTripCallsAtIt() throws IOException {
+        // the report's sender had the trip calling at A, B and C
+        Timetable timetable = new TestFeed().stops("A", "X", "B", "C").route("R")
+                .trip("t", "R", "A 08:00:00", "X 08:05:00", "B 08:10:00", "C 08:20:00")
+                .load(dir);
+        EtaOverlay overlay = new EtaOverlay(timetable, 30);
+
+        List<StopTimeEta> changes = overlay.apply(DelayEvent.delay("t", TestFeed.MONDAY, 1, 300).atStop("B"));
+
+        assertThat(changes).extracting(StopTimeEta::getStop)
+                .containsExactly(timetable.stopIndex("B"), timetable.stopIndex("C"));
+        assertThat(changes.get(0).getArrival()).isEqualTo(8 * 3600 + 15 * 60);
+        assertThatThrownBy(() -> overlay.apply(DelayEvent.cancellation("t", TestFeed.MONDAY, 1).atStop("D")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Timetable timetable() throws IOException {
+        return new TestFeed().stops(STOPS).route("R")
+                .trip("t", "R", TestFeed.DAILY, STOPS, ARRIVALS, DEPARTURES)
+                .load(dir);
+    }
+
+    private static int time(int hours, int minutes) {
+        return hours * 3600 + minutes * 60;
+    }
+}
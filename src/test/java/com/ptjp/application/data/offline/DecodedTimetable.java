@@ -0,0 +1,355 @@
+package com.ptjp.application.data.offline;
+
+import com.ptjp.application.data.timetable.Timetable;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * What a client reads out of an {@link OfflineTimetable} snapshot, and how it
+ * applies a delta to it, as the format documented there describes; each
+ * section is kept as one line per entry, for comparing with a
+ * {@link Timetable} through {@link #of(Timetable)}.
+ */
+public final class DecodedTimetable {
+
+    private final long version;
+    private final List<String> stops;
+    private final List<String> routes;
+    private final List<String> services;
+    /** In snapshot order, by index rather than id, as runs refer to them. */
+    private final List<Trip> trips;
+
+    private DecodedTimetable(long version, List<String> stops, List<String> routes, List<String> services,
+            List<Trip> trips) {
+        this.version = version;
+        this.stops = stops;
+        this.routes = routes;
+        this.services = services;
+        this.trips = trips;
+    }
+
+    public static DecodedTimetable read(byte[] snapshot) throws IOException {
+        Input in = new Input(snapshot);
+        in.expectMagic("CTT1");
+        long version = in.readFixed64();
+        List<String> stops = readStops(in);
+        List<String> routes = readRoutes(in);
+        List<String> services = readServices(in);
+        List<Trip> trips = readTrips(in);
+        in.expectEnd();
+        return new DecodedTimetable(version, stops, routes, services, trips);
+    }
+
+    /**
+     * @return this copy brought up to date by the delta
+     */
+    public DecodedTimetable apply(byte[] delta) throws IOException {
+        Input in = new Input(delta);
+        in.expectMagic("CTD1");
+        long base = in.readFixed64();
+        if (base != version) {
+            throw new IOException(String.format("Delta from %016x applied to %016x", base, version));
+        }
+        long next = in.readFixed64();
+        int sections = in.read();
+        List<String> nextStops = (sections & 1) != 0 ? readStops(in) : stops;
+        List<String> nextRoutes = (sections & 2) != 0 ? readRoutes(in) : routes;
+        List<String> nextServices = (sections & 4) != 0 ? readServices(in) : services;
+        int[][] runs = new int[(int) in.readVarint()][];
+        int keptEnd = 0;
+        for (int i = 0; i < runs.length; i++) {
+            long run = in.readVarint();
+            int length = (int) (run >>> 1);
+            if ((run & 1) != 0) {
+                runs[i] = new int[] { length, -1 };
+            } else {
+                int start = keptEnd + (int) in.readSigned();
+                runs[i] = new int[] { length, start };
+                keptEnd = start + length;
+            }
+        }
+        List<Trip> added = readTrips(in);
+        in.expectEnd();
+
+        List<Trip> nextTrips = new ArrayList<>();
+        int addedNext = 0;
+        for (int[] run : runs) {
+            for (int i = 0; i < run[0]; i++) {
+                nextTrips.add(run[1] < 0 ? added.get(addedNext++) : trips.get(run[1] + i));
+            }
+        }
+        if (addedNext != added.size()) {
+            throw new IOException("Runs place " + addedNext + " of " + added.size() + " new trips");
+        }
+        return new DecodedTimetable(next, nextStops, nextRoutes, nextServices, nextTrips);
+    }
+
+    /**
+     * @return the timetable as a client should decode it, with trips in the
+     *         order of their ids, since only the encoder decides theirs
+     */
+    public static DecodedTimetable of(Timetable timetable) {
+        List<String> stops = new ArrayList<>();
+        for (int stop = 0; stop < timetable.stopCount(); stop++) {
+            stops.add(timetable.stopId(stop) + " " + timetable.stopName(stop) + " "
+                    + Math.round(timetable.stopLat(stop) * 1e5) + " " + Math.round(timetable.stopLon(stop) * 1e5));
+        }
+        List<String> routes = new ArrayList<>();
+        for (int route = 0; route < timetable.routeCount(); route++) {
+            routes.add(timetable.routeId(route) + " " + timetable.routeName(route));
+        }
+        List<String> services = new ArrayList<>();
+        for (int service = 0; service < timetable.serviceCount(); service++) {
+            services.add(timetable.serviceId(service) + " " + timetable.serviceDays(service) + " "
+                    + timetable.serviceStart(service) + "-" + timetable.serviceEnd(service) + " "
+                    + Arrays.toString(timetable.serviceExceptions(service)));
+        }
+        List<Trip> trips = new ArrayList<>();
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            int first = timetable.tripFirstStopTime(trip);
+            int count = timetable.tripStopCount(trip);
+            int[] tripStops = new int[count];
+            int[] arrivals = new int[count];
+            int[] departures = new int[count];
+            for (int s = 0; s < count; s++) {
+                tripStops[s] = timetable.stopTimeStop(first + s);
+                arrivals[s] = timetable.arrival(first + s);
+                departures[s] = timetable.departure(first + s);
+            }
+            trips.add(new Trip(timetable.tripId(trip), timetable.tripRoute(trip), timetable.tripService(trip),
+                    tripStops, arrivals, departures));
+        }
+        return new DecodedTimetable(0, stops, routes, services, trips);
+    }
+
+    /**
+     * @return the version as {@link OfflineTimetable.Version#tag()} gives it
+     */
+    public String tag() {
+        return String.format("%016x", version);
+    }
+
+    public List<String> stops() {
+        return stops;
+    }
+
+    public List<String> routes() {
+        return routes;
+    }
+
+    public List<String> services() {
+        return services;
+    }
+
+    /**
+     * @return per trip, its id, route, service and stop times, by id
+     */
+    public List<String> trips() {
+        List<String> lines = new ArrayList<>();
+        for (Trip trip : trips) {
+            StringBuilder line = new StringBuilder(trip.id).append(' ').append(routes.get(trip.route).split(" ")[0])
+                    .append(' ').append(services.get(trip.service).split(" ")[0]);
+            for (int s = 0; s < trip.stops.length; s++) {
+                line.append(' ').append(stops.get(trip.stops[s]).split(" ")[0]).append('@')
+                        .append(trip.arrivals[s]).append('/').append(trip.departures[s]);
+            }
+            lines.add(line.toString());
+        }
+        lines.sort(null);
+        return lines;
+    }
+
+    private static List<String> readStops(Input in) throws IOException {
+        List<String> stops = new ArrayList<>();
+        String id = "";
+        long lat = 0;
+        long lon = 0;
+        for (long count = in.readVarint(); count > 0; count--) {
+            id = in.readString(id);
+            String name = in.readString();
+            lat += in.readSigned();
+            lon += in.readSigned();
+            stops.add(id + " " + name + " " + lat + " " + lon);
+        }
+        return stops;
+    }
+
+    private static List<String> readRoutes(Input in) throws IOException {
+        List<String> routes = new ArrayList<>();
+        String id = "";
+        for (long count = in.readVarint(); count > 0; count--) {
+            id = in.readString(id);
+            routes.add(id + " " + in.readString());
+        }
+        return routes;
+    }
+
+    private static List<String> readServices(Input in) throws IOException {
+        List<String> services = new ArrayList<>();
+        String id = "";
+        long start = 0;
+        for (long count = in.readVarint(); count > 0; count--) {
+            id = in.readString(id);
+            int days = in.read();
+            start += in.readSigned();
+            long end = start + in.readSigned();
+            int[] exceptions = new int[(int) in.readVarint()];
+            long exception = 0;
+            for (int i = 0; i < exceptions.length; i++) {
+                exception += in.readSigned();
+                exceptions[i] = (int) exception;
+            }
+            services.add(id + " " + days + " " + start + "-" + end + " " + Arrays.toString(exceptions));
+        }
+        return services;
+    }
+
+    private static List<Trip> readTrips(Input in) throws IOException {
+        int[][] patterns = new int[(int) in.readVarint()][];
+        for (int p = 0; p < patterns.length; p++) {
+            int[] stops = new int[(int) in.readVarint()];
+            long stop = 0;
+            for (int s = 0; s < stops.length; s++) {
+                stop += in.readSigned();
+                stops[s] = (int) stop;
+            }
+            patterns[p] = stops;
+        }
+        // per profile: the first dwell, then running time and dwell per further stop
+        int[][] profiles = new int[(int) in.readVarint()][];
+        for (int p = 0; p < profiles.length; p++) {
+            int[] profile = new int[2 * (int) in.readVarint() - 1];
+            profile[0] = (int) in.readVarint();
+            for (int i = 1; i < profile.length; i += 2) {
+                profile[i] = (int) in.readSigned();
+                profile[i + 1] = (int) in.readVarint();
+            }
+            profiles[p] = profile;
+        }
+
+        List<Trip> trips = new ArrayList<>();
+        String id = "";
+        int pattern = 0;
+        int departure = 0;
+        for (long count = in.readVarint(); count > 0; count--) {
+            id = in.readString(id);
+            int route = (int) in.readVarint();
+            int service = (int) in.readVarint();
+            int patternDelta = (int) in.readVarint();
+            if (patternDelta != 0) {
+                departure = 0;
+            }
+            pattern += patternDelta;
+            int[] profile = profiles[(int) in.readVarint()];
+            departure += (int) in.readVarint();
+            int[] stops = patterns[pattern];
+            int[] arrivals = new int[stops.length];
+            int[] departures = new int[stops.length];
+            arrivals[0] = departure - profile[0];
+            departures[0] = departure;
+            for (int s = 1; s < stops.length; s++) {
+                arrivals[s] = departures[s - 1] + profile[2 * s - 1];
+                departures[s] = arrivals[s] + profile[2 * s];
+            }
+            trips.add(new Trip(id, route, service, stops, arrivals, departures));
+        }
+        return trips;
+    }
+
+    private static final class Trip {
+
+        private final String id;
+        private final int route;
+        private final int service;
+        private final int[] stops;
+        private final int[] arrivals;
+        private final int[] departures;
+
+        Trip(String id, int route, int service, int[] stops, int[] arrivals, int[] departures) {
+            this.id = id;
+            this.route = route;
+            this.service = service;
+            this.stops = stops;
+            this.arrivals = arrivals;
+            this.departures = departures;
+        }
+    }
+
+    /**
+     * The reading side of {@link VarintOutput}, over gunzipped bytes.
+     */
+    private static final class Input {
+
+        private final InputStream in;
+
+        Input(byte[] gzipped) throws IOException {
+            this.in = new ByteArrayInputStream(new GZIPInputStream(new ByteArrayInputStream(gzipped)).readAllBytes());
+        }
+
+        int read() throws IOException {
+            int value = in.read();
+            if (value < 0) {
+                throw new EOFException();
+            }
+            return value;
+        }
+
+        void expectMagic(String magic) throws IOException {
+            for (int i = 0; i < magic.length(); i++) {
+                if (read() != magic.charAt(i)) {
+                    throw new IOException("Not " + magic);
+                }
+            }
+        }
+
+        void expectEnd() throws IOException {
+            if (in.read() >= 0) {
+                throw new IOException("Bytes left over");
+            }
+        }
+
+        long readFixed64() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = value << 8 | read();
+            }
+            return value;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7f) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+        }
+
+        long readSigned() throws IOException {
+            long value = readVarint();
+            return value >>> 1 ^ -(value & 1);
+        }
+
+        String readString() throws IOException {
+            byte[] utf8 = new byte[(int) readVarint()];
+            for (int i = 0; i < utf8.length; i++) {
+                utf8[i] = (byte) read();
+            }
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        String readString(String previous) throws IOException {
+            int common = (int) readVarint();
+            return previous.substring(0, common) + readString();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.ptjp.application.data.offline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ptjp.application.data.timetable.TestFeed;
+import com.ptjp.application.data.timetable.Timetable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OfflineTimetableTest {
+
+    private static final String[] LOOP = { "S1", "S2", "S3", "S1" };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void decodesToTheTimetableEncoded() throws IOException {
+        for (long seed = 1; seed <= 4; seed++) {
+            Timetable timetable = TestFeed.random(seed, 12, 10, 8)
+                    .trip("dwell", "L0", TestFeed.DAILY, LOOP, new int[] { 0, 600, 1200, 1800 },
+                            new int[] { 60, 660, 1200, 1920 })
+                    .load(Files.createDirectory(dir.resolve("feed" + seed)));
+            OfflineTimetable offline = new OfflineTimetable(timetable);
+
+            DecodedTimetable decoded = DecodedTimetable.read(offline.snapshot());
+
+            assertDecodesTo(decoded, timetable);
+            assertThat(decoded.tag()).isEqualTo(offline.version().tag());
+        }
+    }
+
+    @Test
+    void appliesADeltaOfAddedRemovedAndRetimedTrips() throws IOException {
+        Timetable base = feed(false).load(Files.createDirectory(dir.resolve("base")));
+        Timetable next = feed(true).load(Files.createDirectory(dir.resolve("next")));
+        OfflineTimetable baseOffline = new OfflineTimetable(base);
+        OfflineTimetable nextOffline = new OfflineTimetable(next);
+
+        byte[] delta = nextOffline.delta(baseOffline.version());
+
+        assertThat(delta).isNotNull();
+        assertThat(delta.length).isLessThan(nextOffline.snapshot().length);
+        DecodedTimetable updated = DecodedTimetable.read(baseOffline.snapshot()).apply(delta);
+        assertDecodesTo(updated, next);
+        assertThat(updated.tag()).isEqualTo(nextOffline.version().tag());
+    }
+
+    @Test
+    void makesNoDeltaAcrossChangedStops() throws IOException {
+        Timetable base = TestFeed.random(1, 12, 10, 8).load(Files.createDirectory(dir.resolve("base")));
+        Timetable next = TestFeed.random(1, 13, 10, 8).load(Files.createDirectory(dir.resolve("next")));
+
+        assertThat(new OfflineTimetable(next).delta(new OfflineTimetable(base).version())).isNull();
+    }
+
+    /**
+     * A random network, and either two trips that the next version drops or
+     * one it adds and one it runs five minutes later.
+     */
+    private static TestFeed feed(boolean next) {
+        TestFeed feed = TestFeed.random(3, 12, 10, 30);
+        int[] times = { 8 * 3600, 8 * 3600 + 600, 8 * 3600 + 1200, 8 * 3600 + 1800 };
+        int[] retimed = times.clone();
+        if (next) {
+            for (int i = 0; i < retimed.length; i++) {
+                retimed[i] += 300;
+            }
+            feed.trip("added", "L1", TestFeed.SUNDAYS, LOOP, times, times);
+        } else {
+            feed.trip("gone-1", "L1", TestFeed.DAILY, LOOP, times, times);
+            feed.trip("gone-2", "L2", TestFeed.DAILY, LOOP, times, times);
+        }
+        return feed.trip("retimed", "L0", TestFeed.DAILY, LOOP, retimed, retimed);
+    }
+
+    private static void assertDecodesTo(DecodedTimetable decoded, Timetable timetable) {
+        DecodedTimetable expected = DecodedTimetable.of(timetable);
+        assertThat(decoded.stops()).isEqualTo(expected.stops());
+        assertThat(decoded.routes()).isEqualTo(expected.routes());
+        assertThat(decoded.services()).isEqualTo(expected.services());
+        assertThat(decoded.trips()).isEqualTo(expected.trips());
+    }
+}
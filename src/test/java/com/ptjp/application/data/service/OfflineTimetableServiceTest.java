@@ -0,0 +1,44 @@
+package com.ptjp.application.data.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ptjp.application.data.offline.DecodedTimetable;
+import com.ptjp.application.data.offline.OfflineTimetable;
+import com.ptjp.application.data.timetable.TestFeed;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OfflineTimetableServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void bringsAnOlderCopyUpToDateAfterAReload() throws IOException {
+        TimetableService timetableService = new TimetableService();
+        OfflineTimetableService service = new OfflineTimetableService(timetableService, 4);
+        timetableService.load(write(TestFeed.random(5, 12, 10, 30), "base"));
+        OfflineTimetable base = service.getCurrent();
+
+        timetableService.load(write(TestFeed.random(5, 12, 10, 30)
+                .trip("added", "L0", "S0 06:00:00", "S1 06:10:00"), "next"));
+        OfflineTimetable next = service.getCurrent();
+        byte[] delta = service.delta(next, base.version().tag());
+
+        assertThat(delta).isNotNull();
+        DecodedTimetable updated = DecodedTimetable.read(base.snapshot()).apply(delta);
+        DecodedTimetable current = DecodedTimetable.read(next.snapshot());
+        assertThat(updated.tag()).isEqualTo(current.tag());
+        assertThat(updated.trips()).isEqualTo(current.trips());
+        assertThat(service.delta(next, "0123456789abcdef")).isNull();
+    }
+
+    private Path write(TestFeed feed, String name) throws IOException {
+        Path feedDir = Files.createDirectory(dir.resolve(name));
+        feed.write(feedDir);
+        return feedDir;
+    }
+}
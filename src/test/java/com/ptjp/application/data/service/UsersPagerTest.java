@@ -0,0 +1,78 @@
+package com.ptjp.application.data.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ptjp.application.data.entity.Users;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+
+@DataJpaTest
+class UsersPagerTest {
+
+    private static final String[] FIRST_NAMES = { "Aisha", "Bongani", "Chloe", null, "Aisha", "Dawid" };
+    private static final String[] LAST_NAMES = { "Adams", null, "Botha", "Botha", null };
+    private static final int PAGE = 7;
+
+    @Autowired
+    private UsersRepository repository;
+
+    private UsersPager pager;
+
+    @BeforeEach
+    void fill() {
+        List<Users> rows = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Users users = new Users();
+            users.setFirstName(FIRST_NAMES[i % FIRST_NAMES.length]);
+            users.setLastName(LAST_NAMES[i % LAST_NAMES.length]);
+            users.setEmail(i % 4 == 0 ? null : "user" + i + "@example.com");
+            rows.add(users);
+        }
+        repository.saveAllAndFlush(rows);
+        pager = new UsersPager(new UsersService(repository, new UsersSearchService(repository)));
+    }
+
+    @Test
+    void scrollsInFindAllOrderWithNullSortKeys() {
+        for (Sort sort : sorts()) {
+            List<UUID> expected = ids(repository.findAll(sort.and(Sort.by("id"))));
+            List<UUID> paged = new ArrayList<>();
+            for (int offset = 0; offset < expected.size() + PAGE; offset += PAGE) {
+                paged.addAll(ids(pager.fetch(offset, PAGE, sort)));
+            }
+            assertThat(paged).as(sort.toString()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void jumpsToAnyOffsetInFindAllOrder() {
+        Random random = new Random(8);
+        for (Sort sort : sorts()) {
+            List<UUID> expected = ids(repository.findAll(sort.and(Sort.by("id"))));
+            for (int jump = 0; jump < 40; jump++) {
+                int offset = random.nextInt(expected.size());
+                List<UUID> page = ids(pager.fetch(offset, PAGE, sort));
+                assertThat(page).as(sort + " at " + offset)
+                        .isEqualTo(expected.subList(offset, Math.min(expected.size(), offset + PAGE)));
+            }
+        }
+    }
+
+    private static List<Sort> sorts() {
+        return List.of(Sort.by("firstName"), Sort.by(Sort.Direction.DESC, "firstName"),
+                Sort.by("lastName").and(Sort.by(Sort.Direction.DESC, "firstName")), Sort.by("email"),
+                Sort.by(Sort.Direction.DESC, "lastName").and(Sort.by("email")));
+    }
+
+    private static List<UUID> ids(List<Users> rows) {
+        return rows.stream().map(Users::getId).collect(Collectors.toList());
+    }
+}
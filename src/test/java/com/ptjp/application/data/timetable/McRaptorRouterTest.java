@@ -0,0 +1,124 @@
+package com.ptjp.application.data.timetable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class McRaptorRouterTest {
+
+    private static final int MAX_TRAINS = 4;
+    private static final int TRANSFER_SECONDS = 120;
+    private static final int MAX_LABELS = 8;
+    /** Zones of 2, 5 and 10 km, so fares differ on a small network. */
+    private static final Fares FARES = new Fares(new int[] { 2_000, 5_000, 10_000 },
+            new int[] { 500, 550, 650, 800 });
+    private static final int[] DEPARTURES = { 4 * 3600, 7 * 3600 + 1800, 12 * 3600, 17 * 3600 + 900, 23 * 3600 };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsASlowerJourneyOnFewerTrains() throws IOException {
+        Timetable timetable = new TestFeed().stops("A", "B", "C").route("R").route("S")
+                .trip("direct", "R", "A 08:00:00", "C 09:00:00")
+                .trip("first", "S", "A 08:05:00", "B 08:15:00")
+                .trip("second", "S", "B 08:20:00", "C 08:40:00")
+                .load(dir);
+        McRaptorRouter router = new McRaptorRouter(new TripPatterns(timetable), FARES, MAX_TRAINS, TRANSFER_SECONDS,
+                MAX_LABELS);
+        McRaptorRouter.Scratch scratch = router.newScratch();
+
+        router.search(timetable.stopIndex("A"), timetable.stopIndex("C"), TestFeed.MONDAY, 8 * 3600, scratch);
+        List<Journey> journeys = router.journeys(scratch);
+
+        assertThat(journeys).extracting(Journey::getArrival).containsExactly(8 * 3600 + 40 * 60, 9 * 3600);
+        assertThat(journeys.get(1).getLegs()).extracting(Journey.Leg::getTripId).containsExactly("direct");
+        assertThat(router.fareCents(journeys.get(1))).isLessThan(router.fareCents(journeys.get(0)));
+    }
+
+    @Test
+    void returnsOnlyNonDominatedJourneysOnRandomNetworks() throws IOException {
+        int withAlternatives = 0;
+        for (long seed = 1; seed <= 6; seed++) {
+            Timetable timetable = TestFeed.random(seed, 12, 10, 8)
+                    .load(Files.createDirectory(dir.resolve("feed" + seed)));
+            McRaptorRouter router = new McRaptorRouter(new TripPatterns(timetable), FARES, MAX_TRAINS,
+                    TRANSFER_SECONDS, MAX_LABELS);
+            McRaptorRouter.Scratch scratch = router.newScratch();
+            for (int from = 0; from < timetable.stopCount(); from++) {
+                for (int to = 0; to < timetable.stopCount(); to++) {
+                    for (int departure : DEPARTURES) {
+                        String query = "seed " + seed + " from " + from + " to " + to + " at " + departure;
+                        int found = router.search(from, to, TestFeed.MONDAY, departure, scratch);
+                        List<Journey> journeys = router.journeys(scratch);
+                        assertThat(journeys).as(query).hasSize(found);
+                        if (found > 1) {
+                            withAlternatives++;
+                        }
+                        for (Journey journey : journeys) {
+                            assertThat(journey.getLegs().get(0).getFromStop()).as(query).isEqualTo(from);
+                            assertThat(journey.getLegs().get(0).getDeparture()).as(query)
+                                    .isGreaterThanOrEqualTo(departure);
+                            assertThat(journey.getLegs().get(journey.getLegs().size() - 1).getToStop()).as(query)
+                                    .isEqualTo(to);
+                            for (Journey other : journeys) {
+                                if (other != journey) {
+                                    assertThat(dominates(router, other, journey)).as(query + ": " + other
+                                            + " dominates " + journey).isFalse();
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        // otherwise the networks would test nothing but earliest arrival
+        assertThat(withAlternatives).isPositive();
+    }
+
+    @Test
+    void arrivesAsEarlyAsRaptorOnRandomNetworks() throws IOException {
+        for (long seed = 1; seed <= 6; seed++) {
+            Timetable timetable = TestFeed.random(seed, 12, 10, 8)
+                    .load(Files.createDirectory(dir.resolve("feed" + seed)));
+            TripPatterns patterns = new TripPatterns(timetable);
+            McRaptorRouter router = new McRaptorRouter(patterns, FARES, MAX_TRAINS, TRANSFER_SECONDS, MAX_LABELS);
+            McRaptorRouter.Scratch scratch = router.newScratch();
+            RaptorRouter raptor = new RaptorRouter(patterns, MAX_TRAINS, TRANSFER_SECONDS);
+            RaptorRouter.Scratch raptorScratch = raptor.newScratch();
+            for (int from = 0; from < timetable.stopCount(); from++) {
+                for (int to = 0; to < timetable.stopCount(); to++) {
+                    if (to == from) {
+                        continue;
+                    }
+                    for (int departure : DEPARTURES) {
+                        String query = "seed " + seed + " from " + from + " to " + to + " at " + departure;
+                        int expected = raptor.earliestArrival(from, to, TestFeed.MONDAY, departure, raptorScratch);
+                        router.search(from, to, TestFeed.MONDAY, departure, scratch);
+                        List<Journey> journeys = router.journeys(scratch);
+                        if (expected == RaptorRouter.UNREACHED) {
+                            assertThat(journeys).as(query).isEmpty();
+                        } else {
+                            assertThat(journeys).as(query).isNotEmpty();
+                            assertThat(journeys.get(0).getArrival()).as(query).isEqualTo(expected);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code a} is no worse than {@code b} on arrival, trains
+     *         and fare, which the search should have kept only one of
+     */
+    private static boolean dominates(McRaptorRouter router, Journey a, Journey b) {
+        return a.getArrival() <= b.getArrival() && a.getLegs().size() <= b.getLegs().size()
+                && router.fareCents(a) <= router.fareCents(b);
+    }
+}
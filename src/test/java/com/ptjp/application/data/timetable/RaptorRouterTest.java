@@ -0,0 +1,153 @@
+package com.ptjp.application.data.timetable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RaptorRouterTest {
+
+    private static final int TRANSFER_SECONDS = 120;
+    private static final int[] DEPARTURES = { 4 * 3600, 7 * 3600 + 1800, 12 * 3600, 17 * 3600 + 900, 23 * 3600 };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void waitsForALaterTripThatOvertakes() throws IOException {
+        Timetable timetable = new TestFeed().stops("A", "B", "C").route("R")
+                .trip("slow", "R", "A 08:00:00", "B 08:30:00", "C 09:00:00")
+                .trip("fast", "R", "A 08:10:00", "B 08:20:00", "C 08:30:00")
+                .load(dir);
+        RaptorRouter router = new RaptorRouter(new TripPatterns(timetable), 4, TRANSFER_SECONDS);
+        RaptorRouter.Scratch scratch = router.newScratch();
+
+        int arrival = router.earliestArrival(timetable.stopIndex("A"), timetable.stopIndex("C"), TestFeed.MONDAY,
+                8 * 3600, scratch);
+
+        assertThat(arrival).isEqualTo(8 * 3600 + 30 * 60);
+        assertThat(router.journey(timetable.stopIndex("C"), scratch).getLegs())
+                .extracting(Journey.Leg::getTripId).containsExactly("fast");
+    }
+
+    @Test
+    void followsATripPastMidnight() throws IOException {
+        Timetable timetable = new TestFeed().stops("A", "B").route("R")
+                .trip("late", "R", "A 23:50:00", "B 24:20:00")
+                .load(dir);
+        RaptorRouter router = new RaptorRouter(new TripPatterns(timetable), 4, TRANSFER_SECONDS);
+
+        int arrival = router.earliestArrival(timetable.stopIndex("A"), timetable.stopIndex("B"), TestFeed.MONDAY,
+                23 * 3600 + 45 * 60, router.newScratch());
+
+        assertThat(arrival).isEqualTo(24 * 3600 + 20 * 60);
+    }
+
+    @Test
+    void alightsAtTheCallItArrivedBy() throws IOException {
+        Timetable timetable = new TestFeed().stops("A", "B", "C", "D").route("R")
+                .trip("loop", "R", "A 08:00:00", "B 08:10:00", "C 08:20:00", "B 08:30:00", "D 08:40:00")
+                .load(dir);
+        RaptorRouter router = new RaptorRouter(new TripPatterns(timetable), 4, TRANSFER_SECONDS);
+        RaptorRouter.Scratch scratch = router.newScratch();
+
+        router.earliestArrival(timetable.stopIndex("C"), timetable.stopIndex("B"), TestFeed.MONDAY, 8 * 3600 + 900,
+                scratch);
+        Journey.Leg leg = router.journey(timetable.stopIndex("B"), scratch).getLegs().get(0);
+
+        assertThat(leg.getStops()).containsExactly(timetable.stopIndex("C"), timetable.stopIndex("B"));
+        assertThat(leg.getArrival()).isEqualTo(8 * 3600 + 30 * 60);
+    }
+
+    @Test
+    void matchesAConnectionScanOnRandomNetworks() throws IOException {
+        for (long seed = 1; seed <= 6; seed++) {
+            Path feed = Files.createDirectory(dir.resolve("feed" + seed));
+            Timetable timetable = TestFeed.random(seed, 12, 10, 8).load(feed);
+            RaptorRouter router = new RaptorRouter(new TripPatterns(timetable), timetable.stopCount(),
+                    TRANSFER_SECONDS);
+            RaptorRouter.Scratch scratch = router.newScratch();
+            for (int from = 0; from < timetable.stopCount(); from++) {
+                for (int departure : DEPARTURES) {
+                    int[] expected = connectionScan(timetable, from, TestFeed.MONDAY, departure);
+                    for (int to = 0; to < timetable.stopCount(); to++) {
+                        if (to == from) {
+                            continue;
+                        }
+                        String query = "seed " + seed + " from " + from + " to " + to + " at " + departure;
+                        assertThat(router.earliestArrival(from, to, TestFeed.MONDAY, departure, scratch))
+                                .as(query).isEqualTo(expected[to]);
+                        Journey journey = router.journey(to, scratch);
+                        if (expected[to] == RaptorRouter.UNREACHED) {
+                            assertThat(journey).as(query).isNull();
+                        } else {
+                            assertConsistent(journey, from, to, departure, expected[to], query);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertConsistent(Journey journey, int from, int to, int departure, int arrival,
+            String query) {
+        List<Journey.Leg> legs = journey.getLegs();
+        assertThat(legs.get(0).getFromStop()).as(query).isEqualTo(from);
+        assertThat(legs.get(0).getDeparture()).as(query).isGreaterThanOrEqualTo(departure);
+        assertThat(legs.get(legs.size() - 1).getToStop()).as(query).isEqualTo(to);
+        assertThat(journey.getArrival()).as(query).isEqualTo(arrival);
+        for (int i = 0; i < legs.size(); i++) {
+            Journey.Leg leg = legs.get(i);
+            assertThat(leg.getArrival()).as(query).isGreaterThan(leg.getDeparture());
+            if (i > 0) {
+                assertThat(leg.getFromStop()).as(query).isEqualTo(legs.get(i - 1).getToStop());
+                assertThat(leg.getDeparture()).as(query)
+                        .isGreaterThanOrEqualTo(legs.get(i - 1).getArrival() + TRANSFER_SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Earliest arrivals by scanning every connection of the day in departure
+     * order, with the router's rules: no change time at the origin, and
+     * {@link #TRANSFER_SECONDS} to change anywhere else.
+     */
+    private static int[] connectionScan(Timetable timetable, int from, LocalDate date, int departure) {
+        // departure, arrival, trip, from stop, to stop
+        List<int[]> connections = new ArrayList<>();
+        for (int trip = 0; trip < timetable.tripCount(); trip++) {
+            if (!timetable.isServiceActive(timetable.tripService(trip), date)) {
+                continue;
+            }
+            int first = timetable.tripFirstStopTime(trip);
+            for (int i = first; i < first + timetable.tripStopCount(trip) - 1; i++) {
+                connections.add(new int[] { timetable.departure(i), timetable.arrival(i + 1), trip,
+                        timetable.stopTimeStop(i), timetable.stopTimeStop(i + 1) });
+            }
+        }
+        connections.sort(Comparator.<int[]>comparingInt(c -> c[0]).thenComparingInt(c -> c[1]));
+
+        int[] arrival = new int[timetable.stopCount()];
+        Arrays.fill(arrival, RaptorRouter.UNREACHED);
+        arrival[from] = departure;
+        boolean[] onBoard = new boolean[timetable.tripCount()];
+        for (int[] c : connections) {
+            int reached = arrival[c[3]];
+            boolean boardable = c[3] == from ? c[0] >= departure
+                    : reached != RaptorRouter.UNREACHED && reached + TRANSFER_SECONDS <= c[0];
+            if (onBoard[c[2]] || boardable) {
+                onBoard[c[2]] = true;
+                arrival[c[4]] = Math.min(arrival[c[4]], c[1]);
+            }
+        }
+        return arrival;
+    }
+}
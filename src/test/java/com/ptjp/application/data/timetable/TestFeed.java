@@ -0,0 +1,152 @@
+package com.ptjp.application.data.timetable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes small GTFS feeds for tests and loads them as a {@link Timetable}.
+ *
+ * Trips run on service {@value #DAILY}, every day of 2026, or on
+ * {@value #SUNDAYS}, the Sundays of 2026.
+ */
+public final class TestFeed {
+
+    public static final String DAILY = "daily";
+    public static final String SUNDAYS = "sundays";
+    /** A Monday, when only the daily service runs. */
+    public static final LocalDate MONDAY = LocalDate.of(2026, 10, 19);
+
+    private final List<String> stops = new ArrayList<>();
+    private final List<String> routes = new ArrayList<>();
+    private final StringBuilder trips = new StringBuilder("trip_id,route_id,service_id\n");
+    private final StringBuilder stopTimes = new StringBuilder(
+            "trip_id,arrival_time,departure_time,stop_id,stop_sequence\n");
+
+    public TestFeed stops(String... ids) {
+        stops.addAll(List.of(ids));
+        return this;
+    }
+
+    public TestFeed route(String id) {
+        routes.add(id);
+        return this;
+    }
+
+    /**
+     * Adds a trip calling at {@code stops}, arriving and leaving at the given
+     * seconds since the start of the service day.
+     */
+    public TestFeed trip(String id, String route, String service, String[] stops, int[] arrivals, int[] departures) {
+        trips.append(id).append(',').append(route).append(',').append(service).append('\n');
+        for (int i = 0; i < stops.length; i++) {
+            stopTimes.append(id).append(',').append(time(arrivals[i])).append(',').append(time(departures[i]))
+                    .append(',').append(stops[i]).append(',').append(i + 1).append('\n');
+        }
+        return this;
+    }
+
+    /**
+     * Adds a trip from calls written as {@code "A 08:00:00"}, or
+     * {@code "A 08:00:00 08:01:00"} for a stop with a dwell.
+     */
+    public TestFeed trip(String id, String route, String... calls) {
+        String[] stops = new String[calls.length];
+        int[] arrivals = new int[calls.length];
+        int[] departures = new int[calls.length];
+        for (int i = 0; i < calls.length; i++) {
+            String[] parts = calls[i].split(" ");
+            stops[i] = parts[0];
+            arrivals[i] = seconds(parts[1]);
+            departures[i] = seconds(parts[parts.length - 1]);
+        }
+        return trip(id, route, DAILY, stops, arrivals, departures);
+    }
+
+    public void write(Path dir) throws IOException {
+        StringBuilder stopsTxt = new StringBuilder("stop_id,stop_name,stop_lat,stop_lon\n");
+        for (int i = 0; i < stops.size(); i++) {
+            stopsTxt.append(stops.get(i)).append(",Station ").append(stops.get(i)).append(',')
+                    .append(-33.9 + i * 0.01).append(',').append(18.4 + i * 0.01).append('\n');
+        }
+        StringBuilder routesTxt = new StringBuilder("route_id,route_short_name\n");
+        for (String route : routes) {
+            routesTxt.append(route).append(',').append(route).append('\n');
+        }
+        Files.writeString(dir.resolve("stops.txt"), stopsTxt, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("routes.txt"), routesTxt, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("calendar.txt"),
+                "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date\n"
+                        + DAILY + ",1,1,1,1,1,1,1,20260101,20261231\n"
+                        + SUNDAYS + ",0,0,0,0,0,0,1,20260101,20261231\n",
+                StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("trips.txt"), trips, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("stop_times.txt"), stopTimes, StandardCharsets.UTF_8);
+    }
+
+    public Timetable load(Path dir) throws IOException {
+        write(dir);
+        return new GtfsTimetableLoader().load(dir);
+    }
+
+    /**
+     * A random network of {@code stopCount} stops: lines along random stop
+     * sequences, some of them loops calling at a stop twice, with trips whose
+     * running times vary enough for later trips to overtake earlier ones, and
+     * late trips running past midnight. A few trips run on Sundays only.
+     */
+    public static TestFeed random(long seed, int stopCount, int lineCount, int tripsPerLine) {
+        Random random = new Random(seed);
+        TestFeed feed = new TestFeed();
+        for (int stop = 0; stop < stopCount; stop++) {
+            feed.stops("S" + stop);
+        }
+        for (int line = 0; line < lineCount; line++) {
+            String route = "L" + line;
+            feed.route(route);
+            List<String> calls = new ArrayList<>();
+            int length = 2 + random.nextInt(Math.min(6, stopCount - 1));
+            while (calls.size() < length) {
+                String stop = "S" + random.nextInt(stopCount);
+                if (!calls.contains(stop)) {
+                    calls.add(stop);
+                }
+            }
+            if (line % 4 == 3) {
+                // a loop back to its second stop
+                calls.add(calls.get(1));
+            }
+            String[] stops = calls.toArray(new String[0]);
+            for (int trip = 0; trip < tripsPerLine; trip++) {
+                int[] arrivals = new int[stops.length];
+                int[] departures = new int[stops.length];
+                int time = trip == tripsPerLine - 1 ? 23 * 3600 + 30 * 60 : 5 * 3600 + random.nextInt(17 * 3600);
+                for (int i = 0; i < stops.length; i++) {
+                    if (i > 0) {
+                        time += 60 + random.nextInt(15 * 60);
+                    }
+                    arrivals[i] = time;
+                    time += random.nextInt(3) * 30;
+                    departures[i] = time;
+                }
+                String service = random.nextInt(10) == 0 ? SUNDAYS : DAILY;
+                feed.trip(route + "-" + trip, route, service, stops, arrivals, departures);
+            }
+        }
+        return feed;
+    }
+
+    private static String time(int seconds) {
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    private static int seconds(String time) {
+        String[] parts = time.split(":");
+        return Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60 + Integer.parseInt(parts[2]);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ptjp.application.data.timetable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TimetableSnapshotTest {
+
+    private static final TimetableSnapshot.Key<AutoCloseable> RESOURCE = new TimetableSnapshot.Key<>("resource");
+
+    @Test
+    void closesDerivedValuesOnceTheLastReferenceIsReleased() {
+        AtomicInteger reclaimed = new AtomicInteger();
+        TimetableSnapshot snapshot = new TimetableSnapshot(null, 0, s -> reclaimed.incrementAndGet());
+        AtomicBoolean closed = new AtomicBoolean();
+        AutoCloseable resource = () -> closed.set(true);
+
+        assertThat(snapshot.derived(RESOURCE, timetable -> resource)).isSameAs(resource);
+        assertThat(snapshot.retain()).isTrue();
+        snapshot.close();
+        assertThat(closed).isFalse();
+        snapshot.close();
+
+        assertThat(closed).isTrue();
+        assertThat(reclaimed).hasValue(1);
+        assertThat(snapshot.retain()).isFalse();
+    }
+
+    @Test
+    void refusesToDeriveFromAReclaimedSnapshot() {
+        TimetableSnapshot snapshot = new TimetableSnapshot(null, 0, s -> { });
+        snapshot.close();
+
+        assertThatThrownBy(() -> snapshot.derived(RESOURCE, timetable -> () -> { }))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void closesAValueBuiltWhileTheSnapshotWasReclaimed() {
+        TimetableSnapshot snapshot = new TimetableSnapshot(null, 0, s -> { });
+        AtomicBoolean closed = new AtomicBoolean();
+
+        assertThatThrownBy(() -> snapshot.derived(RESOURCE, timetable -> {
+            snapshot.close();
+            return () -> closed.set(true);
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(closed).isTrue();
+    }
+}
@@ -0,0 +1,95 @@
+package com.ptjp.application.data.timetable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TravelTimeMatrixTest {
+
+    private static final int FROM = 7 * 3600;
+    private static final int UNTIL = 10 * 3600;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsTheRowsAChangedLineCannotReach() throws IOException {
+        Timetable before = feed("08:20:00").load(Files.createDirectory(dir.resolve("before")));
+        Timetable after = feed("08:25:00").load(Files.createDirectory(dir.resolve("after")));
+        TravelTimeMatrix previous = filled(before);
+
+        TravelTimeMatrix matrix = new TravelTimeMatrix(after.stopCount());
+        int copied = matrix.copyUnchanged(previous, before, TestFeed.MONDAY, after, TestFeed.MONDAY, FROM, UNTIL);
+
+        assertThat(copied).isEqualTo(3);
+        for (String stop : new String[] { "A", "B", "C" }) {
+            assertThat(matrix.isRowValid(after.stopIndex(stop))).as(stop).isTrue();
+        }
+        assertThat(matrix.isRowValid(after.stopIndex("D"))).isFalse();
+        assertThat(matrix.isRowValid(after.stopIndex("E"))).isFalse();
+        // the matrix taken from is left as it was for whoever still reads it
+        assertThat(previous.validRowCount()).isEqualTo(previous.stopCount());
+
+        TravelTimeMatrix expected = filled(after);
+        fill(matrix, after);
+        for (int from = 0; from < after.stopCount(); from++) {
+            for (int to = 0; to < after.stopCount(); to++) {
+                assertThat(matrix.travelSeconds(from, to)).isEqualTo(expected.travelSeconds(from, to));
+            }
+        }
+    }
+
+    @Test
+    void neverRewritesAValidRow() throws IOException {
+        Timetable timetable = feed("08:20:00").load(dir);
+        TravelTimeMatrix matrix = filled(timetable);
+        int a = timetable.stopIndex("A");
+        int b = timetable.stopIndex("B");
+        int seconds = matrix.travelSeconds(a, b);
+
+        IsochroneSearch later = new IsochroneSearch(router(timetable), ForkJoinPool.commonPool());
+        matrix.setRow(later.searchSequentially(a, TestFeed.MONDAY, FROM + 3600, UNTIL, UNTIL - FROM));
+
+        assertThat(matrix.travelSeconds(a, b)).isEqualTo(seconds);
+    }
+
+    @Test
+    void closingInvalidatesEveryRow() throws IOException {
+        TravelTimeMatrix matrix = filled(feed("08:20:00").load(dir));
+
+        matrix.close();
+
+        assertThat(matrix.validRowCount()).isZero();
+    }
+
+    /**
+     * A line A-B-C, and a line D-E leaving D at {@code leaving}.
+     */
+    private static TestFeed feed(String leaving) {
+        return new TestFeed().stops("A", "B", "C", "D", "E").route("R").route("S")
+                .trip("r", "R", "A 08:00:00", "B 08:10:00", "C 08:20:00")
+                .trip("s", "S", "D " + leaving, "E 08:40:00");
+    }
+
+    private static TravelTimeMatrix filled(Timetable timetable) {
+        TravelTimeMatrix matrix = new TravelTimeMatrix(timetable.stopCount());
+        fill(matrix, timetable);
+        return matrix;
+    }
+
+    private static void fill(TravelTimeMatrix matrix, Timetable timetable) {
+        IsochroneSearch search = new IsochroneSearch(router(timetable), ForkJoinPool.commonPool());
+        for (int from = 0; from < timetable.stopCount(); from++) {
+            matrix.setRow(search.searchSequentially(from, TestFeed.MONDAY, FROM, FROM + 3600, UNTIL - FROM));
+        }
+    }
+
+    private static RaptorRouter router(Timetable timetable) {
+        return new RaptorRouter(new TripPatterns(timetable), 4, 120);
+    }
+}